@@ -7,7 +7,7 @@ import android.view.ViewGroup;
 import android.widget.BaseAdapter;
 import android.widget.TextView;
 
-import com.dominic.skuface.FaceApi;
+import com.dominic.skuface.Face;
 
 import java.lang.reflect.Field;
 
@@ -21,9 +21,9 @@ public class DialogFaceEmotionAdaptor extends BaseAdapter {
 
     private static final int FACE_EMOTION_ATT_CNT = 8;
 
-    private FaceApi.Face face;
+    private Face face;
 
-    public DialogFaceEmotionAdaptor(Context context, FaceApi.Face face) {
+    public DialogFaceEmotionAdaptor(Context context, Face face) {
         this.context = context;
         this.face = face;
     }
@@ -9,7 +9,6 @@ import android.graphics.Bitmap;
 import android.graphics.Matrix;
 import android.net.Uri;
 import android.os.Bundle;
-import android.provider.MediaStore;
 import android.support.v4.app.ActivityCompat;
 import android.support.v4.content.ContextCompat;
 import android.support.v7.app.AppCompatActivity;
@@ -20,20 +19,42 @@ import android.widget.Button;
 import android.widget.ImageView;
 import android.widget.ListView;
 
+import com.dominic.skuface.BitmapDecoder;
+import com.dominic.skuface.BitmapPool;
+import com.dominic.skuface.DetectionCache;
+import com.dominic.skuface.DetectionPipeline;
+import com.dominic.skuface.DetectionResult;
+import com.dominic.skuface.Face;
 import com.dominic.skuface.FaceApi;
 import com.dominic.skuface.FaceDetectionCamera;
+import com.dominic.skuface.FaceHitTest;
+import com.dominic.skuface.FaceOverlayView;
+import com.dominic.skuface.FacePrefilter;
 
+import java.io.File;
 import java.io.IOException;
-import java.util.List;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
 
 public class MainActivity extends AppCompatActivity {
 
     private FaceApi faceAPI = null;
+    private DetectionPipeline detectionPipeline = null;
     private FaceDetectionCamera faceDetectionCamera = null;
 
     private static final int PICK_IMAGE = 1;
     private static final int FACE_DETECTION = 2;
 
+    // 갤러리 이미지를 디코딩할 최소 크기
+    private static final int DECODE_TARGET_SIZE = 1280;
+
+    // 다 사용한 비트맵을 다음 디코딩에서 재사용한다.
+    private final BitmapPool bitmapPool = new BitmapPool(32 * 1024 * 1024);
+    private Bitmap shownBitmap = null;
+    // 파이프라인이 아직 인코딩 중인 비트맵. 풀에 돌려주지 않는다.
+    private final Set<Bitmap> pendingBitmaps = Collections.newSetFromMap(new IdentityHashMap<Bitmap, Boolean>());
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
@@ -49,20 +70,61 @@ public class MainActivity extends AppCompatActivity {
 
         faceAPI = FaceApi.getInstance();
 
+        // 같은 이미지, 거의 같은 카메라 프레임은 다시 요청하지 않는다.
+        faceAPI.setDetectionCache(new DetectionCache(32, new File(getCacheDir(), "face-detect"), 4 * 1024 * 1024)
+                .setNearDuplicateDistance(4));
+
+        // 단계별 소요 시간을 1분마다 로그로 남긴다.
+        faceAPI.getMetrics().startLogging(60 * 1000);
+
+        initDetectionPipeline();
         initEvents();
     }
 
+    // 인코딩과 요청은 파이프라인 스레드에서, 결과는 UI 스레드에서 받는다.
+    private void initDetectionPipeline() {
+        final FaceOverlayView faceOverlayView = findViewById(R.id.face_overlay);
+
+        detectionPipeline = new DetectionPipeline(faceAPI);
+        // 얼굴이 없는 갤러리 이미지는 요청하지 않는다.
+        detectionPipeline.setFacePrefilter(new FacePrefilter());
+        detectionPipeline.setOnPipelineListener(new DetectionPipeline.OnPipelineListener() {
+            @Override
+            public void onResult(DetectionResult result) {
+                faceOverlayView.setResult(result);
+            }
+
+            @Override
+            public void onFailure(String requestId, IOException e) {
+                e.printStackTrace();
+            }
+
+            @Override
+            public void onDropped(String requestId) {
+            }
+
+            @Override
+            public void onSourceReleased(Bitmap bitmap) {
+                pendingBitmaps.remove(bitmap);
+                if (bitmap != shownBitmap)
+                    bitmapPool.put(bitmap);
+            }
+        });
+    }
+
     // 카메라 초기화 및 안면인식 시 이벤트
     private void initFaceDetectionCamera() {
         faceDetectionCamera = new FaceDetectionCamera(MainActivity.this);
+        faceDetectionCamera.setBitmapDecoding(bitmapPool, DECODE_TARGET_SIZE, DECODE_TARGET_SIZE);
+        faceDetectionCamera.setMetrics(FaceApi.getInstance().getMetrics());
 
         faceDetectionCamera.setOnFaceDetectedListener(new FaceDetectionCamera.OnFaceDetectedListener() {
             @Override
             public void onFaceDetected(Bitmap capturedFace) {
-                ImageView imageView = findViewById(R.id.imageView1);
-                imageView.setImageBitmap(capturedFace);
+                showBitmap(capturedFace);
 
-                faceAPI.detectAndFrameRest(capturedFace);
+                // 카메라가 이미 얼굴을 찾았으므로 다시 검사하지 않는다.
+                requestDetection(capturedFace, false);
                 faceDetectionCamera.stopFaceDetection();
             }
         });
@@ -93,19 +155,11 @@ public class MainActivity extends AppCompatActivity {
             }
         });
 
-        // faceAPI 요청 후 성공 적으로 응답 했을 때의 이벤트
-        faceAPI.setOnResponseListener(new FaceApi.OnResponseListener() {
-            @Override
-            public void onResponse(final Bitmap framedImage, List<FaceApi.Face> faceList) {
-                runOnUiThread(new Runnable() {
-                    @Override
-                    public void run() {
-                        ImageView imageView = findViewById(R.id.imageView1);
-                        imageView.setImageBitmap(framedImage);
-                    }
-                });
-            }
-        });
+        // 얼굴 사각형은 이미지 위의 오버레이에 그린다.
+        FaceOverlayView faceOverlayView = findViewById(R.id.face_overlay);
+        faceOverlayView.setImageView(imageView1);
+        faceOverlayView.setEmotionLabelEnabled(true);
+        faceOverlayView.setMetrics(faceAPI.getMetrics());
 
         // 좌표 변환 과정. 중요하지 않다.
         imageView1.setOnTouchListener(new View.OnTouchListener() {
@@ -131,22 +185,21 @@ public class MainActivity extends AppCompatActivity {
 
                     // -------------------------------------------------------------
 
-                    for (FaceApi.Face face : faceAPI.getFaceList()) {
-                        if (face.getFaceRectangle().contains((int) originalImageOffsetX, (int) originalImageOffsetY)) {
-                            Context context = MainActivity.this;
-                            LayoutInflater layoutInflater = (LayoutInflater) context.getSystemService(context.LAYOUT_INFLATER_SERVICE);
-                            View dialogView = layoutInflater.inflate(R.layout.dialog_face_emotion, null, false);
-
-                            ListView listView = dialogView.findViewById(R.id.list_view);
-                            listView.setAdapter(new DialogFaceEmotionAdaptor(MainActivity.this, face));
-
-                            AlertDialog ad = new AlertDialog.Builder(context)
-                                    .setView(dialogView)
-                                    .setPositiveButton("OK", null)
-                                    .create();
-                            ad.show();
-                            break;
-                        }
+                    Face face = FaceHitTest.findFaceAt(faceAPI.getFaceList(),
+                            (int) originalImageOffsetX, (int) originalImageOffsetY);
+                    if (face != null) {
+                        Context context = MainActivity.this;
+                        LayoutInflater layoutInflater = (LayoutInflater) context.getSystemService(context.LAYOUT_INFLATER_SERVICE);
+                        View dialogView = layoutInflater.inflate(R.layout.dialog_face_emotion, null, false);
+
+                        ListView listView = dialogView.findViewById(R.id.list_view);
+                        listView.setAdapter(new DialogFaceEmotionAdaptor(MainActivity.this, face));
+
+                        AlertDialog ad = new AlertDialog.Builder(context)
+                                .setView(dialogView)
+                                .setPositiveButton("OK", null)
+                                .create();
+                        ad.show();
                     }
                 }
                 return true;
@@ -154,6 +207,25 @@ public class MainActivity extends AppCompatActivity {
         });
     }
 
+    // 새 이미지를 보여주고 이전 이미지는 풀에 돌려준다.
+    private void showBitmap(Bitmap bitmap) {
+        ImageView imageView = findViewById(R.id.imageView1);
+        imageView.setImageBitmap(bitmap);
+
+        if (shownBitmap != null && shownBitmap != bitmap && !pendingBitmaps.contains(shownBitmap))
+            bitmapPool.put(shownBitmap);
+        shownBitmap = bitmap;
+    }
+
+    // 파이프라인에 넣고 결과가 오면 오버레이를 갱신한다.
+    private void requestDetection(Bitmap bitmap, boolean prefilter) {
+        FaceOverlayView faceOverlayView = findViewById(R.id.face_overlay);
+        faceOverlayView.clear();
+
+        pendingBitmaps.add(bitmap);
+        detectionPipeline.submit(bitmap, prefilter);
+    }
+
     @Override
     protected void onActivityResult(int requestCode, int resultCode, Intent data) {
         super.onActivityResult(requestCode, resultCode, data);
@@ -163,11 +235,11 @@ public class MainActivity extends AppCompatActivity {
                     faceAPI.clearFaceList();
                     Uri uri = data.getData();
                     try {
-                        Bitmap bitmap = MediaStore.Images.Media.getBitmap(getContentResolver(), uri);
-                        ImageView imageView = findViewById(R.id.imageView1);
-                        imageView.setImageBitmap(bitmap);
+                        Bitmap bitmap = BitmapDecoder.decode(getContentResolver(), uri,
+                                DECODE_TARGET_SIZE, DECODE_TARGET_SIZE, bitmapPool);
+                        showBitmap(bitmap);
 
-                        faceAPI.detectAndFrameRest(bitmap);
+                        requestDetection(bitmap, true);
                     } catch (IOException e) {
                         e.printStackTrace();
                     }
@@ -184,6 +256,9 @@ public class MainActivity extends AppCompatActivity {
     @Override
     protected void onDestroy() {
         faceDetectionCamera.stopFaceDetection();
+        detectionPipeline.shutdown();
+        faceAPI.getMetrics().stopReporting();
+        bitmapPool.clear();
         super.onDestroy();
     }
 
@@ -0,0 +1,49 @@
+package com.dominic.skuface;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+
+/**
+ * 여러 트랙에 감정 결과를 하나씩 누적하는 비용
+ */
+@State(Scope.Benchmark)
+public class EmotionAggregatorBenchmark {
+
+    private static final int EMOTION_COUNT = 1024;
+
+    @Param({"1", "100", "1000"})
+    public int trackCount;
+
+    @Param({"30", "300"})
+    public int windowSize;
+
+    private EmotionAggregator aggregator;
+    private Face.Emotion[] emotions;
+    private int next = 0;
+    private long timestamp = 0;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(trackCount);
+        emotions = new Face.Emotion[EMOTION_COUNT];
+        for (int i = 0; i < EMOTION_COUNT; i++) {
+            emotions[i] = new Face.Emotion(random.nextDouble(), random.nextDouble(), random.nextDouble(),
+                    random.nextDouble(), random.nextDouble(), random.nextDouble(), random.nextDouble(),
+                    random.nextDouble());
+        }
+        aggregator = new EmotionAggregator(windowSize);
+    }
+
+    @Benchmark
+    public double update() {
+        int i = next++;
+        EmotionAggregator.Series series =
+                aggregator.update(i % trackCount, timestamp++, emotions[i & (EMOTION_COUNT - 1)]);
+        return series.getMean(EmotionAggregator.HAPPINESS);
+    }
+}
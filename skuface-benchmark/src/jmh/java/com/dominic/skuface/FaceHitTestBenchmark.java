@@ -0,0 +1,53 @@
+package com.dominic.skuface;
+
+import android.support.constraint.solver.widgets.Rectangle;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * 터치 좌표로 얼굴을 찾는 비용
+ */
+@State(Scope.Benchmark)
+public class FaceHitTestBenchmark {
+
+    private static final int POINT_COUNT = 1024;
+
+    @Param({"1", "10", "100"})
+    public int faceCount;
+
+    private List<Face> faces;
+    private int[] points;
+    private int next = 0;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(faceCount);
+        faces = new ArrayList<>(faceCount);
+        for (int i = 0; i < faceCount; i++) {
+            Rectangle rectangle = new Rectangle();
+            rectangle.setBounds(random.nextInt(1200), random.nextInt(900), 36 + random.nextInt(300), 36 + random.nextInt(300));
+            faces.add(new Face(null, rectangle, null));
+        }
+
+        points = new int[POINT_COUNT * 2];
+        for (int i = 0; i < points.length; i += 2) {
+            points[i] = random.nextInt(1280);
+            points[i + 1] = random.nextInt(960);
+        }
+    }
+
+    @Benchmark
+    public Face findFaceAt() {
+        int i = next;
+        next = (i + 2) & (points.length - 1);
+        return FaceHitTest.findFaceAt(faces, points[i], points[i + 1]);
+    }
+}
@@ -0,0 +1,89 @@
+package com.dominic.skuface;
+
+import android.support.constraint.solver.widgets.Rectangle;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * 응답 값으로 {@link Face}를 만들고 원본 좌표로 되돌린 뒤 대표 감정을 구하는 비용
+ */
+@State(Scope.Benchmark)
+public class FaceModelBenchmark {
+
+    @Param({"1", "10", "100"})
+    public int faceCount;
+
+    @Param({"0", "90"})
+    public int rotation;
+
+    private int[] rectangles;
+    private double[] emotions;
+    private EncodedImage encodedImage;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(faceCount);
+        rectangles = new int[faceCount * 4];
+        emotions = new double[faceCount * 8];
+        for (int i = 0; i < rectangles.length; i++) {
+            rectangles[i] = random.nextInt(600);
+        }
+        for (int i = 0; i < emotions.length; i++) {
+            emotions[i] = random.nextDouble();
+        }
+
+        Rectangle region = new Rectangle();
+        region.setBounds(320, 240, 640, 480);
+        encodedImage = new EncodedImage(new byte[0], 800, 600, region, 1280, 960, rotation);
+    }
+
+    @Benchmark
+    public List<Face> buildFaces() {
+        List<Face> faces = new ArrayList<>(faceCount);
+        for (int i = 0; i < faceCount; i++) {
+            faces.add(newFace(i));
+        }
+        return faces;
+    }
+
+    @Benchmark
+    public List<Face> buildAndMapFaces() {
+        List<Face> faces = new ArrayList<>(faceCount);
+        for (int i = 0; i < faceCount; i++) {
+            Face face = newFace(i);
+            encodedImage.toSourceRectangle(face.getFaceRectangle());
+            faces.add(face);
+        }
+        return faces;
+    }
+
+    @Benchmark
+    public void dominantEmotion(Blackhole blackhole) {
+        for (int i = 0; i < faceCount; i++) {
+            int e = i * 8;
+            Face.Emotion emotion = new Face.Emotion(emotions[e], emotions[e + 1], emotions[e + 2], emotions[e + 3],
+                    emotions[e + 4], emotions[e + 5], emotions[e + 6], emotions[e + 7]);
+            blackhole.consume(emotion.getDominantEmotion());
+        }
+    }
+
+    private Face newFace(int i) {
+        int r = i * 4;
+        Rectangle rectangle = new Rectangle();
+        rectangle.setBounds(rectangles[r], rectangles[r + 1], rectangles[r + 2], rectangles[r + 3]);
+
+        int e = i * 8;
+        Face.Emotion emotion = new Face.Emotion(emotions[e], emotions[e + 1], emotions[e + 2], emotions[e + 3],
+                emotions[e + 4], emotions[e + 5], emotions[e + 6], emotions[e + 7]);
+        return new Face(null, rectangle, emotion);
+    }
+}
@@ -0,0 +1,34 @@
+package com.dominic.skuface;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.util.List;
+
+import okio.Buffer;
+
+/**
+ * 얼굴 수에 따른 detect 응답 파싱 비용
+ */
+@State(Scope.Benchmark)
+public class FaceResponseParserBenchmark {
+
+    @Param({"1", "10", "100"})
+    public int faceCount;
+
+    private byte[] response;
+
+    @Setup
+    public void setUp() {
+        response = FaceResponses.detectResponse(faceCount);
+    }
+
+    @Benchmark
+    public List<Face> parse() throws IOException {
+        return FaceResponseParser.parse(new Buffer().write(response));
+    }
+}
@@ -0,0 +1,44 @@
+package com.dominic.skuface;
+
+import java.nio.charset.Charset;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * 벤치마크용 detect 응답
+ */
+final class FaceResponses {
+
+    private static final String[] EMOTION_NAMES =
+            {"anger", "contempt", "disgust", "fear", "happiness", "neutral", "sadness", "surprise"};
+
+    private FaceResponses() {
+    }
+
+    /**
+     * @param faceCount 응답에 포함할 얼굴 수
+     * @return 실제 응답과 같은 모양의 UTF-8 JSON. 같은 얼굴 수에는 항상 같은 응답을 만든다.
+     */
+    static byte[] detectResponse(int faceCount) {
+        Random random = new Random(faceCount);
+        StringBuilder sb = new StringBuilder("[");
+        for (int i = 0; i < faceCount; i++) {
+            if (i > 0)
+                sb.append(',');
+            sb.append("{\"faceId\":\"").append(String.format(Locale.US, "c5c24a82-6845-4031-9d5d-%012d", i)).append("\",");
+            sb.append("\"faceRectangle\":{\"top\":").append(random.nextInt(3000))
+                    .append(",\"left\":").append(random.nextInt(4000))
+                    .append(",\"width\":").append(36 + random.nextInt(500))
+                    .append(",\"height\":").append(36 + random.nextInt(500)).append("},");
+            sb.append("\"faceAttributes\":{\"emotion\":{");
+            for (int n = 0; n < EMOTION_NAMES.length; n++) {
+                if (n > 0)
+                    sb.append(',');
+                sb.append('"').append(EMOTION_NAMES[n]).append("\":").append(random.nextInt(1000) / 1000.0);
+            }
+            sb.append("}}}");
+        }
+        sb.append(']');
+        return sb.toString().getBytes(Charset.forName("UTF-8"));
+    }
+}
@@ -0,0 +1,160 @@
+package com.dominic.skuface;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * detect 요청에서 돌려받을 항목과 모델을 고른다.
+ * 필요한 것만 요청할수록 응답이 작아지고 서버 처리도 빨라진다.
+ * 예를 들어 추적 중인 얼굴의 위치만 갱신할 때는 {@link #rectanglesOnly()}를, 처음 본 얼굴에는 기본값(faceId + emotion)을 사용한다.
+ * <p>
+ * 요청을 보낼 때 {@link #toQueryString()}으로 한 번 읽으므로, 보낸 뒤에 값을 바꿔도 진행 중인 요청에는 영향이 없다.
+ *
+ * @version 0.1
+ */
+public class DetectOptions {
+
+    public static final String ATTRIBUTE_AGE = "age";
+    public static final String ATTRIBUTE_GENDER = "gender";
+    public static final String ATTRIBUTE_HEAD_POSE = "headPose";
+    public static final String ATTRIBUTE_SMILE = "smile";
+    public static final String ATTRIBUTE_FACIAL_HAIR = "facialHair";
+    public static final String ATTRIBUTE_GLASSES = "glasses";
+    public static final String ATTRIBUTE_EMOTION = "emotion";
+    public static final String ATTRIBUTE_HAIR = "hair";
+    public static final String ATTRIBUTE_MAKEUP = "makeup";
+    public static final String ATTRIBUTE_OCCLUSION = "occlusion";
+    public static final String ATTRIBUTE_ACCESSORIES = "accessories";
+    public static final String ATTRIBUTE_BLUR = "blur";
+    public static final String ATTRIBUTE_EXPOSURE = "exposure";
+    public static final String ATTRIBUTE_NOISE = "noise";
+
+    /**
+     * 얼굴 속성을 돌려주는 검출 모델
+     */
+    public static final String DETECTION_01 = "detection_01";
+    /**
+     * 작거나 흐린 얼굴에 더 정확하지만 얼굴 속성과 랜드마크를 돌려주지 않는 검출 모델
+     */
+    public static final String DETECTION_02 = "detection_02";
+
+    public static final String RECOGNITION_01 = "recognition_01";
+    public static final String RECOGNITION_02 = "recognition_02";
+
+    private boolean returnFaceId = true;
+    private boolean returnFaceLandmarks = false;
+    private final Set<String> attributes = new LinkedHashSet<>();
+    private String detectionModel = null;
+    private String recognitionModel = null;
+
+    /**
+     * 기본값 : faceId 와 emotion 속성, 랜드마크 없음, 서비스 기본 모델
+     */
+    public DetectOptions() {
+        attributes.add(ATTRIBUTE_EMOTION);
+    }
+
+    /**
+     * @return 얼굴 사각형만 돌려받는 옵션. 위치 갱신용
+     */
+    public static DetectOptions rectanglesOnly() {
+        return new DetectOptions()
+                .setReturnFaceId(false)
+                .setAttributes();
+    }
+
+    /**
+     * @param returnFaceId faceId 를 돌려받을지 여부. verify, findsimilars 등에 필요하다. Default : true
+     */
+    public DetectOptions setReturnFaceId(boolean returnFaceId) {
+        this.returnFaceId = returnFaceId;
+        return this;
+    }
+
+    public boolean isReturnFaceId() {
+        return returnFaceId;
+    }
+
+    /**
+     * @param returnFaceLandmarks 27개의 얼굴 랜드마크를 돌려받을지 여부. {@link Face#getLandmarks()}로 읽는다. Default : false
+     */
+    public DetectOptions setReturnFaceLandmarks(boolean returnFaceLandmarks) {
+        this.returnFaceLandmarks = returnFaceLandmarks;
+        return this;
+    }
+
+    public boolean isReturnFaceLandmarks() {
+        return returnFaceLandmarks;
+    }
+
+    /**
+     * @param attributes 돌려받을 얼굴 속성 (예: {@link #ATTRIBUTE_EMOTION}). 비우면 속성을 요청하지 않는다. Default : emotion
+     */
+    public DetectOptions setAttributes(String... attributes) {
+        this.attributes.clear();
+        Collections.addAll(this.attributes, attributes);
+        return this;
+    }
+
+    public List<String> getAttributes() {
+        return Collections.unmodifiableList(new ArrayList<>(attributes));
+    }
+
+    /**
+     * @param detectionModel 검출 모델 (예: {@link #DETECTION_01}). null 이면 서비스 기본값. Default : null
+     */
+    public DetectOptions setDetectionModel(String detectionModel) {
+        this.detectionModel = detectionModel;
+        return this;
+    }
+
+    public String getDetectionModel() {
+        return detectionModel;
+    }
+
+    /**
+     * @param recognitionModel faceId 를 만들 인식 모델 (예: {@link #RECOGNITION_02}). null 이면 서비스 기본값. Default : null
+     */
+    public DetectOptions setRecognitionModel(String recognitionModel) {
+        this.recognitionModel = recognitionModel;
+        return this;
+    }
+
+    public String getRecognitionModel() {
+        return recognitionModel;
+    }
+
+    /**
+     * @return detect URL 뒤에 붙일 쿼리 문자열 (예: "?returnFaceId=true&amp;returnFaceLandmarks=false&amp;returnFaceAttributes=emotion")
+     */
+    public String toQueryString() {
+        StringBuilder query = new StringBuilder(128)
+                .append("?returnFaceId=").append(returnFaceId)
+                .append("&returnFaceLandmarks=").append(returnFaceLandmarks);
+
+        if (!attributes.isEmpty()) {
+            query.append("&returnFaceAttributes=");
+            boolean first = true;
+            for (String attribute : attributes) {
+                if (!first)
+                    query.append(',');
+                query.append(attribute);
+                first = false;
+            }
+        }
+        if (detectionModel != null)
+            query.append("&detectionModel=").append(detectionModel);
+        if (recognitionModel != null)
+            query.append("&recognitionModel=").append(recognitionModel);
+
+        return query.toString();
+    }
+
+    @Override
+    public String toString() {
+        return "DetectOptions" + toQueryString();
+    }
+}
@@ -0,0 +1,849 @@
+package com.dominic.skuface;
+
+import android.support.constraint.solver.widgets.Rectangle;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 분석 결과를 디렉터리에 이어 쓰는 바이너리 로그
+ * 결과를 다시 분석하지 않고도 기간별로 읽거나 집계할 수 있다.
+ * <p>
+ * 1. 세그먼트 : 미리 크기를 잡은 파일을 메모리 매핑하여 이어 쓴다. 다 차거나 오래되면 실제 길이로 자르고 새 세그먼트를 연다.
+ * 2. 색인 : 레코드 64개마다 시각의 최소/최대와 위치를 기억한다. 닫힌 세그먼트의 색인은 .idx 파일로 저장한다.
+ * 3. 보존 : 전체 용량이나 보존 기간을 넘으면 가장 오래된 닫힌 세그먼트부터 지운다.
+ * <p>
+ * 레코드 : 길이(int), 시각(long), source id(UTF-8), 얼굴 수, 얼굴마다 사각형(int 4개), 감정(float 8개), faceId.
+ * UUID 모양의 faceId 는 16바이트로 저장한다. 길이는 나머지를 쓴 뒤 마지막에 기록하므로 쓰다 만 레코드는 다시 열 때 버려진다.
+ * 시각은 뒤섞여 들어와도 되지만 순서대로 들어올수록 색인이 더 많은 블록을 건너뛴다.
+ *
+ * @version 0.1
+ */
+public class DetectionLog implements Closeable {
+
+    private static final int MAGIC = 0x534B444C;
+    private static final int INDEX_MAGIC = 0x534B4449;
+    private static final int FORMAT_VERSION = 1;
+    private static final int HEADER_BYTES = 8;
+    private static final int MIN_RECORD_BYTES = 16;
+    private static final int RECORDS_PER_BLOCK = 64;
+
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final String INDEX_SUFFIX = ".idx";
+
+    private static final int FLAG_EMOTION = 1;
+    private static final int FLAG_UUID_FACE_ID = 2;
+    private static final int FLAG_STRING_FACE_ID = 4;
+
+    private final File dir;
+
+    private int segmentBytes = 8 * 1024 * 1024;
+    private long segmentMaxAgeMillis = TimeUnit.HOURS.toMillis(1);
+    private long maxTotalBytes = 256L * 1024 * 1024;
+    private long maxAgeMillis = TimeUnit.DAYS.toMillis(7);
+
+    // 오래된 순서. 마지막 세그먼트는 쓰는 중일 수 있다.
+    private final List<Segment> segments = new ArrayList<>();
+    private Segment active = null;
+    private long nextSegmentNumber = 0;
+    private boolean closed = false;
+
+    private final Record cursor = new Record();
+
+    /**
+     * 디렉터리의 기존 세그먼트를 열고, 마지막 세그먼트가 닫히지 않았으면 이어서 쓴다.
+     *
+     * @param dir 로그 디렉터리 (예: {@code new File(context.getFilesDir(), "detections")})
+     */
+    public DetectionLog(File dir) throws IOException {
+        this.dir = dir;
+        if (!dir.isDirectory() && !dir.mkdirs())
+            throw new IOException("Cannot create log directory " + dir);
+
+        File[] files = dir.listFiles(new FilenameFilter() {
+            @Override
+            public boolean accept(File directory, String name) {
+                return name.endsWith(SEGMENT_SUFFIX);
+            }
+        });
+        if (files == null)
+            files = new File[0];
+        Arrays.sort(files);
+
+        for (int i = 0; i < files.length; i++) {
+            open(files[i], i == files.length - 1);
+        }
+    }
+
+    /**
+     * @param segmentBytes 새 세그먼트의 크기. 레코드 하나가 이보다 클 수 없다. Default : 8MB
+     */
+    public synchronized DetectionLog setSegmentBytes(int segmentBytes) {
+        if (segmentBytes < 1024)
+            throw new IllegalArgumentException("segmentBytes too small: " + segmentBytes);
+        this.segmentBytes = segmentBytes;
+        return this;
+    }
+
+    /**
+     * @param segmentMaxAgeMillis 세그먼트의 첫 레코드보다 이 시간 이상 지난 레코드는 새 세그먼트에 쓴다. 0이면 크기로만 나눈다. Default : 1시간
+     */
+    public synchronized DetectionLog setSegmentMaxAgeMillis(long segmentMaxAgeMillis) {
+        this.segmentMaxAgeMillis = segmentMaxAgeMillis;
+        return this;
+    }
+
+    /**
+     * 세그먼트가 닫힐 때마다, 그리고 {@link #enforceRetention()}을 호출할 때 적용한다. 쓰는 중인 세그먼트는 지우지 않는다.
+     *
+     * @param maxTotalBytes 전체 로그의 최대 용량. 0이면 제한 없음. Default : 256MB
+     * @param maxAgeMillis  마지막 레코드가 이 시간보다 오래된 세그먼트를 지운다. 0이면 제한 없음. Default : 7일
+     */
+    public synchronized DetectionLog setRetention(long maxTotalBytes, long maxAgeMillis) {
+        this.maxTotalBytes = maxTotalBytes;
+        this.maxAgeMillis = maxAgeMillis;
+        return this;
+    }
+
+    /**
+     * 결과의 시각과 요청 ID 로 기록한다.
+     *
+     * @see #append(long, String, List)
+     */
+    public void append(DetectionResult result) throws IOException {
+        append(result.getTimestampMillis(), result.getRequestId(), result.getFaces());
+    }
+
+    /**
+     * @param timestampMillis 결과 시각 (epoch ms)
+     * @param sourceId        이미지나 요청을 가리키는 id. null 이면 빈 문자열로 기록한다.
+     * @param faces           기록할 얼굴들. 랜드마크는 기록하지 않는다.
+     */
+    public synchronized void append(long timestampMillis, String sourceId, List<Face> faces) throws IOException {
+        ensureOpen();
+        if (faces.size() > 0xFFFF)
+            throw new IllegalArgumentException("Too many faces: " + faces.size());
+
+        byte[] source = (sourceId != null ? sourceId : "").getBytes(StandardCharsets.UTF_8);
+        if (source.length > 0xFFFF)
+            throw new IllegalArgumentException("sourceId too long: " + source.length + " bytes");
+
+        // faceId 는 UUID 이면 16바이트, 아니면 UTF-8 로 저장한다.
+        UUID[] uuids = new UUID[faces.size()];
+        byte[][] faceIds = new byte[faces.size()][];
+        int size = 4 + 8 + 2 + source.length + 2;
+        for (int i = 0; i < faces.size(); i++) {
+            Face face = faces.get(i);
+            size += 16 + 1;
+            if (face.getEmotion() != null)
+                size += 4 * EmotionAggregator.EMOTION_COUNT;
+
+            String faceId = face.getFaceId();
+            if (faceId == null)
+                continue;
+            uuids[i] = parseUuid(faceId);
+            if (uuids[i] != null) {
+                size += 16;
+            } else {
+                faceIds[i] = faceId.getBytes(StandardCharsets.UTF_8);
+                if (faceIds[i].length > 0xFFFF)
+                    throw new IllegalArgumentException("faceId too long: " + faceIds[i].length + " bytes");
+                size += 2 + faceIds[i].length;
+            }
+        }
+        if (size > segmentBytes - HEADER_BYTES)
+            throw new IllegalArgumentException("Record of " + size + " bytes does not fit in a segment");
+
+        if (active != null && (active.end + size > active.capacity
+                || (segmentMaxAgeMillis > 0 && active.recordCount > 0
+                && timestampMillis - active.firstTimestampMillis >= segmentMaxAgeMillis))) {
+            seal(active);
+            active = null;
+            enforceRetention();
+        }
+        if (active == null)
+            openNewSegment();
+
+        MappedByteBuffer out = active.buffer;
+        int start = active.end;
+        out.position(start + 4);
+        out.putLong(timestampMillis);
+        out.putShort((short) source.length);
+        out.put(source);
+        out.putShort((short) faces.size());
+        for (int i = 0; i < faces.size(); i++) {
+            Face face = faces.get(i);
+            Rectangle r = face.getFaceRectangle();
+            out.putInt(r.x);
+            out.putInt(r.y);
+            out.putInt(r.width);
+            out.putInt(r.height);
+
+            Face.Emotion e = face.getEmotion();
+            int flags = (e != null ? FLAG_EMOTION : 0)
+                    | (uuids[i] != null ? FLAG_UUID_FACE_ID : 0)
+                    | (faceIds[i] != null ? FLAG_STRING_FACE_ID : 0);
+            out.put((byte) flags);
+            if (e != null) {
+                out.putFloat((float) e.anger);
+                out.putFloat((float) e.contempt);
+                out.putFloat((float) e.disgust);
+                out.putFloat((float) e.fear);
+                out.putFloat((float) e.happiness);
+                out.putFloat((float) e.neutral);
+                out.putFloat((float) e.sadness);
+                out.putFloat((float) e.surprise);
+            }
+            if (uuids[i] != null) {
+                out.putLong(uuids[i].getMostSignificantBits());
+                out.putLong(uuids[i].getLeastSignificantBits());
+            } else if (faceIds[i] != null) {
+                out.putShort((short) faceIds[i].length);
+                out.put(faceIds[i]);
+            }
+        }
+        // 길이를 마지막에 써야 다시 열 때 쓰다 만 레코드를 끝으로 본다.
+        out.putInt(start, size);
+
+        active.onAppended(start, timestampMillis);
+        active.end = start + size;
+    }
+
+    /**
+     * 기간 안의 레코드를 기록한 순서대로 읽는다. 읽는 동안 {@link #append(long, String, List)}는 기다린다.
+     *
+     * @param fromMillis 시작 시각 (포함)
+     * @param toMillis   끝 시각 (제외)
+     * @param visitor    레코드마다 호출된다. false 를 돌려주면 멈춘다.
+     */
+    public synchronized void scan(long fromMillis, long toMillis, RecordVisitor visitor) throws IOException {
+        ensureOpen();
+        try {
+            for (Segment segment : segments) {
+                if (segment.recordCount == 0
+                        || segment.maxTimestampMillis < fromMillis || segment.minTimestampMillis >= toMillis)
+                    continue;
+
+                ByteBuffer buffer = segment.buffer != null ? segment.buffer.duplicate() : mapReadOnly(segment);
+                for (int b = 0; b < segment.blockCount; b++) {
+                    if (segment.blockMax[b] < fromMillis || segment.blockMin[b] >= toMillis)
+                        continue;
+
+                    int end = b + 1 < segment.blockCount ? segment.blockOffset[b + 1] : segment.end;
+                    for (int pos = segment.blockOffset[b]; pos < end; pos += buffer.getInt(pos)) {
+                        long timestamp = buffer.getLong(pos + 4);
+                        if (timestamp < fromMillis || timestamp >= toMillis)
+                            continue;
+                        cursor.reset(buffer, pos);
+                        if (!visitor.visit(cursor))
+                            return;
+                    }
+                }
+            }
+        } finally {
+            cursor.reset(null, 0);
+        }
+    }
+
+    /**
+     * 기간 안의 레코드를 객체를 만들지 않고 집계한다.
+     *
+     * @see #scan(long, long, RecordVisitor)
+     */
+    public Aggregate aggregate(long fromMillis, long toMillis) throws IOException {
+        final Aggregate aggregate = new Aggregate();
+        scan(fromMillis, toMillis, new RecordVisitor() {
+            @Override
+            public boolean visit(Record record) {
+                aggregate.add(record);
+                return true;
+            }
+        });
+        return aggregate;
+    }
+
+    /**
+     * 보존 기간과 용량을 넘은 세그먼트를 오래된 것부터 지운다. 기간 제한은 주기적으로 호출해야 적용된다.
+     *
+     * @return 지운 세그먼트 수
+     */
+    public synchronized int enforceRetention() {
+        long now = System.currentTimeMillis();
+        long total = getTotalBytes();
+        int deleted = 0;
+
+        Iterator<Segment> it = segments.iterator();
+        while (it.hasNext()) {
+            Segment segment = it.next();
+            if (segment == active)
+                break;
+
+            boolean expired = maxAgeMillis > 0
+                    && (segment.recordCount == 0 || now - segment.maxTimestampMillis >= maxAgeMillis);
+            boolean overSize = maxTotalBytes > 0 && total > maxTotalBytes;
+            if (!expired && !overSize)
+                break;
+
+            total -= segment.end;
+            segment.path.delete();
+            indexFile(segment.path).delete();
+            it.remove();
+            deleted++;
+        }
+        return deleted;
+    }
+
+    /**
+     * 쓰는 중인 세그먼트를 디스크에 반영한다.
+     */
+    public synchronized void flush() {
+        if (active != null)
+            active.buffer.force();
+    }
+
+    /**
+     * 쓰는 중인 세그먼트는 닫지 않고 남겨 두며, 다시 열면 이어서 쓴다.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed)
+            return;
+        closed = true;
+        if (active != null) {
+            active.buffer.force();
+            active.buffer = null;
+            active.file.close();
+            active = null;
+        }
+    }
+
+    public synchronized int getSegmentCount() {
+        return segments.size();
+    }
+
+    /**
+     * @return 레코드가 차지하는 바이트 수. 쓰는 중인 세그먼트의 미리 잡은 빈 공간은 세지 않는다.
+     */
+    public synchronized long getTotalBytes() {
+        long total = 0;
+        for (Segment segment : segments) {
+            total += segment.end;
+        }
+        return total;
+    }
+
+    public synchronized long getRecordCount() {
+        long count = 0;
+        for (Segment segment : segments) {
+            count += segment.recordCount;
+        }
+        return count;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "DetectionLog{segments=" + segments.size()
+                + ", records=" + getRecordCount()
+                + ", bytes=" + getTotalBytes() + "}";
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed)
+            throw new IOException("DetectionLog is closed");
+    }
+
+    private void open(File file, boolean last) throws IOException {
+        String name = file.getName();
+        long number;
+        try {
+            number = Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return;
+        }
+        nextSegmentNumber = Math.max(nextSegmentNumber, number + 1);
+
+        Segment segment = new Segment(file);
+        if (!last && readIndex(segment)) {
+            segments.add(segment);
+            return;
+        }
+
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            long length = raf.length();
+            if (length < HEADER_BYTES) {
+                // 세그먼트를 만들다 멈춘 경우
+                raf.close();
+                file.delete();
+                return;
+            }
+            if (length > Integer.MAX_VALUE)
+                throw new IOException("Segment too large: " + file);
+
+            MappedByteBuffer buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, length);
+            if (buffer.getInt(0) == 0) {
+                raf.close();
+                file.delete();
+                return;
+            }
+            rebuildIndex(segment, buffer, (int) length);
+
+            if (last) {
+                // 쓰다 만 레코드의 나머지 바이트가 다음 레코드의 길이로 읽히지 않도록 지운다.
+                for (int pos = segment.end; pos < length; pos++) {
+                    if (buffer.get(pos) != 0)
+                        buffer.put(pos, (byte) 0);
+                }
+                segment.file = raf;
+                segment.buffer = buffer;
+                segment.capacity = (int) length;
+                active = segment;
+            } else {
+                raf.setLength(segment.end);
+                raf.close();
+                writeIndex(segment);
+            }
+            segments.add(segment);
+        } catch (IOException e) {
+            raf.close();
+            throw e;
+        }
+    }
+
+    private void openNewSegment() throws IOException {
+        File file = new File(dir, String.format("%019d", nextSegmentNumber) + SEGMENT_SUFFIX);
+        nextSegmentNumber++;
+        Segment segment = new Segment(file);
+
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.setLength(segmentBytes);
+            segment.buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes);
+        } catch (IOException e) {
+            raf.close();
+            file.delete();
+            throw e;
+        }
+        segment.buffer.putInt(0, MAGIC);
+        segment.buffer.putInt(4, FORMAT_VERSION);
+        segment.file = raf;
+        segment.capacity = segmentBytes;
+
+        segments.add(segment);
+        active = segment;
+    }
+
+    /**
+     * 미리 잡은 공간을 잘라내고 색인을 저장한다.
+     */
+    private void seal(Segment segment) throws IOException {
+        segment.buffer.force();
+        segment.buffer = null;
+        try {
+            segment.file.setLength(segment.end);
+        } finally {
+            segment.file.close();
+            segment.file = null;
+        }
+        writeIndex(segment);
+    }
+
+    private static MappedByteBuffer mapReadOnly(Segment segment) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(segment.path, "r")) {
+            return raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, segment.end);
+        }
+    }
+
+    private static void rebuildIndex(Segment segment, ByteBuffer buffer, int limit) throws IOException {
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != FORMAT_VERSION)
+            throw new IOException("Not a detection log segment: " + segment.path);
+
+        int pos = HEADER_BYTES;
+        while (pos + MIN_RECORD_BYTES <= limit) {
+            int length = buffer.getInt(pos);
+            if (length < MIN_RECORD_BYTES || pos + length > limit)
+                break;
+            segment.onAppended(pos, buffer.getLong(pos + 4));
+            pos += length;
+        }
+        segment.end = pos;
+    }
+
+    private static File indexFile(File segmentFile) {
+        String name = segmentFile.getName();
+        return new File(segmentFile.getParentFile(),
+                name.substring(0, name.length() - SEGMENT_SUFFIX.length()) + INDEX_SUFFIX);
+    }
+
+    private static void writeIndex(Segment segment) throws IOException {
+        File file = indexFile(segment.path);
+        File temp = new File(file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+            out.writeInt(INDEX_MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeInt(segment.end);
+            out.writeInt(segment.recordCount);
+            out.writeLong(segment.firstTimestampMillis);
+            out.writeLong(segment.minTimestampMillis);
+            out.writeLong(segment.maxTimestampMillis);
+            out.writeInt(segment.blockCount);
+            for (int b = 0; b < segment.blockCount; b++) {
+                out.writeInt(segment.blockOffset[b]);
+                out.writeLong(segment.blockMin[b]);
+                out.writeLong(segment.blockMax[b]);
+            }
+        }
+        if (!temp.renameTo(file)) {
+            temp.delete();
+            throw new IOException("Cannot write index " + file);
+        }
+    }
+
+    /**
+     * @return 색인이 있고 세그먼트 길이와 맞으면 true
+     */
+    private static boolean readIndex(Segment segment) {
+        File file = indexFile(segment.path);
+        if (!file.isFile())
+            return false;
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != INDEX_MAGIC || in.readInt() != FORMAT_VERSION)
+                return false;
+
+            int end = in.readInt();
+            if (end != segment.path.length())
+                return false;
+
+            segment.end = end;
+            segment.recordCount = in.readInt();
+            segment.firstTimestampMillis = in.readLong();
+            segment.minTimestampMillis = in.readLong();
+            segment.maxTimestampMillis = in.readLong();
+
+            int blockCount = in.readInt();
+            segment.blockOffset = new int[Math.max(16, blockCount)];
+            segment.blockMin = new long[segment.blockOffset.length];
+            segment.blockMax = new long[segment.blockOffset.length];
+            for (int b = 0; b < blockCount; b++) {
+                segment.blockOffset[b] = in.readInt();
+                segment.blockMin[b] = in.readLong();
+                segment.blockMax[b] = in.readLong();
+            }
+            segment.blockCount = blockCount;
+            return true;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    private static UUID parseUuid(String faceId) {
+        if (faceId.length() != 36)
+            return null;
+        try {
+            UUID uuid = UUID.fromString(faceId);
+            return uuid.toString().equals(faceId) ? uuid : null;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * {@link #scan(long, long, RecordVisitor)}의 레코드마다 호출된다.
+     */
+    public interface RecordVisitor {
+        /**
+         * @param record 매핑된 파일을 직접 읽는 레코드. 이 호출 안에서만 유효하다.
+         * @return 계속 읽으려면 true
+         */
+        boolean visit(Record record);
+    }
+
+    /**
+     * 매핑된 세그먼트의 레코드 하나를 복사하지 않고 읽는다.
+     * 문자열과 {@link Face}를 돌려주는 메서드만 객체를 만든다. 감정 번호는 {@link EmotionAggregator#ANGER} ~ {@link EmotionAggregator#SURPRISE}
+     */
+    public static final class Record {
+        private ByteBuffer buffer;
+        private int offset;
+        private int faceCount;
+        private int[] faceOffsets = new int[16];
+
+        Record() {
+        }
+
+        void reset(ByteBuffer buffer, int offset) {
+            this.buffer = buffer;
+            this.offset = offset;
+            if (buffer == null)
+                return;
+
+            int pos = offset + 12;
+            pos += 2 + (buffer.getShort(pos) & 0xFFFF);
+            faceCount = buffer.getShort(pos) & 0xFFFF;
+            pos += 2;
+
+            if (faceOffsets.length < faceCount)
+                faceOffsets = new int[Math.max(faceCount, faceOffsets.length * 2)];
+            for (int i = 0; i < faceCount; i++) {
+                faceOffsets[i] = pos;
+                int flags = buffer.get(pos + 16);
+                pos += 17;
+                if ((flags & FLAG_EMOTION) != 0)
+                    pos += 4 * EmotionAggregator.EMOTION_COUNT;
+                if ((flags & FLAG_UUID_FACE_ID) != 0)
+                    pos += 16;
+                else if ((flags & FLAG_STRING_FACE_ID) != 0)
+                    pos += 2 + (buffer.getShort(pos) & 0xFFFF);
+            }
+        }
+
+        public long getTimestampMillis() {
+            return buffer.getLong(offset + 4);
+        }
+
+        public String getSourceId() {
+            return readString(offset + 12);
+        }
+
+        public int getFaceCount() {
+            return faceCount;
+        }
+
+        /**
+         * @param out 값을 채울 사각형
+         * @return out
+         */
+        public Rectangle getFaceRectangle(int face, Rectangle out) {
+            int pos = faceOffsets[face];
+            out.setBounds(buffer.getInt(pos), buffer.getInt(pos + 4), buffer.getInt(pos + 8), buffer.getInt(pos + 12));
+            return out;
+        }
+
+        public boolean hasEmotion(int face) {
+            return (buffer.get(faceOffsets[face] + 16) & FLAG_EMOTION) != 0;
+        }
+
+        /**
+         * @return 감정 점수. 감정이 없으면 0
+         */
+        public float getEmotion(int face, int emotion) {
+            if (!hasEmotion(face))
+                return 0;
+            return buffer.getFloat(faceOffsets[face] + 17 + 4 * emotion);
+        }
+
+        /**
+         * @return 점수가 가장 높은 감정의 번호. 감정이 없으면 -1
+         */
+        public int getDominantEmotion(int face) {
+            if (!hasEmotion(face))
+                return -1;
+            int pos = faceOffsets[face] + 17;
+            int best = 0;
+            for (int k = 1; k < EmotionAggregator.EMOTION_COUNT; k++) {
+                if (buffer.getFloat(pos + 4 * k) > buffer.getFloat(pos + 4 * best))
+                    best = k;
+            }
+            return best;
+        }
+
+        /**
+         * @return faceId. 없으면 null
+         */
+        public String getFaceId(int face) {
+            int pos = faceOffsets[face];
+            int flags = buffer.get(pos + 16);
+            pos += 17;
+            if ((flags & FLAG_EMOTION) != 0)
+                pos += 4 * EmotionAggregator.EMOTION_COUNT;
+
+            if ((flags & FLAG_UUID_FACE_ID) != 0)
+                return new UUID(buffer.getLong(pos), buffer.getLong(pos + 8)).toString();
+            if ((flags & FLAG_STRING_FACE_ID) != 0)
+                return readString(pos);
+            return null;
+        }
+
+        /**
+         * @return 레코드의 얼굴들. 감정은 float 로 저장되었으므로 원래 값과 조금 다를 수 있다.
+         */
+        public List<Face> toFaces() {
+            List<Face> faces = new ArrayList<>(faceCount);
+            for (int i = 0; i < faceCount; i++) {
+                Face.Emotion emotion = null;
+                if (hasEmotion(i)) {
+                    emotion = new Face.Emotion(
+                            getEmotion(i, EmotionAggregator.ANGER), getEmotion(i, EmotionAggregator.CONTEMPT),
+                            getEmotion(i, EmotionAggregator.DISGUST), getEmotion(i, EmotionAggregator.FEAR),
+                            getEmotion(i, EmotionAggregator.HAPPINESS), getEmotion(i, EmotionAggregator.NEUTRAL),
+                            getEmotion(i, EmotionAggregator.SADNESS), getEmotion(i, EmotionAggregator.SURPRISE));
+                }
+                faces.add(new Face(getFaceId(i), getFaceRectangle(i, new Rectangle()), emotion));
+            }
+            return faces;
+        }
+
+        private String readString(int pos) {
+            byte[] bytes = new byte[buffer.getShort(pos) & 0xFFFF];
+            for (int i = 0; i < bytes.length; i++) {
+                bytes[i] = buffer.get(pos + 2 + i);
+            }
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * {@link #aggregate(long, long)}의 결과
+     */
+    public static final class Aggregate {
+        private long recordCount;
+        private long faceCount;
+        private long emotionFaceCount;
+        private final double[] emotionSums = new double[EmotionAggregator.EMOTION_COUNT];
+        private final long[] dominantCounts = new long[EmotionAggregator.EMOTION_COUNT];
+        private long firstTimestampMillis = Long.MAX_VALUE;
+        private long lastTimestampMillis = Long.MIN_VALUE;
+
+        Aggregate() {
+        }
+
+        void add(Record record) {
+            recordCount++;
+            long timestamp = record.getTimestampMillis();
+            firstTimestampMillis = Math.min(firstTimestampMillis, timestamp);
+            lastTimestampMillis = Math.max(lastTimestampMillis, timestamp);
+
+            int faces = record.getFaceCount();
+            faceCount += faces;
+            for (int i = 0; i < faces; i++) {
+                if (!record.hasEmotion(i))
+                    continue;
+                emotionFaceCount++;
+                for (int k = 0; k < EmotionAggregator.EMOTION_COUNT; k++) {
+                    emotionSums[k] += record.getEmotion(i, k);
+                }
+                dominantCounts[record.getDominantEmotion(i)]++;
+            }
+        }
+
+        public long getRecordCount() {
+            return recordCount;
+        }
+
+        public long getFaceCount() {
+            return faceCount;
+        }
+
+        /**
+         * @return 감정이 기록된 얼굴 수
+         */
+        public long getEmotionFaceCount() {
+            return emotionFaceCount;
+        }
+
+        /**
+         * @return 감정이 기록된 얼굴들의 평균 점수. 없으면 0
+         */
+        public double getMeanEmotion(int emotion) {
+            return emotionFaceCount == 0 ? 0 : emotionSums[emotion] / emotionFaceCount;
+        }
+
+        /**
+         * @return 이 감정이 가장 높았던 얼굴 수
+         */
+        public long getDominantCount(int emotion) {
+            return dominantCounts[emotion];
+        }
+
+        /**
+         * @return 가장 이른 레코드의 시각. 레코드가 없으면 {@link Long#MAX_VALUE}
+         */
+        public long getFirstTimestampMillis() {
+            return firstTimestampMillis;
+        }
+
+        /**
+         * @return 가장 늦은 레코드의 시각. 레코드가 없으면 {@link Long#MIN_VALUE}
+         */
+        public long getLastTimestampMillis() {
+            return lastTimestampMillis;
+        }
+
+        @Override
+        public String toString() {
+            return "Aggregate{records=" + recordCount
+                    + ", faces=" + faceCount
+                    + ", emotionFaces=" + emotionFaceCount + "}";
+        }
+    }
+
+    private static final class Segment {
+        final File path;
+
+        RandomAccessFile file = null;
+        MappedByteBuffer buffer = null;
+        int capacity = 0;
+
+        int end = HEADER_BYTES;
+        int recordCount = 0;
+        long firstTimestampMillis = 0;
+        long minTimestampMillis = Long.MAX_VALUE;
+        long maxTimestampMillis = Long.MIN_VALUE;
+
+        // 레코드 RECORDS_PER_BLOCK 개마다 첫 위치와 그 안의 시각 범위
+        int[] blockOffset = new int[16];
+        long[] blockMin = new long[16];
+        long[] blockMax = new long[16];
+        int blockCount = 0;
+
+        Segment(File path) {
+            this.path = path;
+        }
+
+        void onAppended(int offset, long timestampMillis) {
+            if (recordCount == 0)
+                firstTimestampMillis = timestampMillis;
+
+            if (recordCount % RECORDS_PER_BLOCK == 0) {
+                if (blockCount == blockOffset.length) {
+                    blockOffset = Arrays.copyOf(blockOffset, blockCount * 2);
+                    blockMin = Arrays.copyOf(blockMin, blockCount * 2);
+                    blockMax = Arrays.copyOf(blockMax, blockCount * 2);
+                }
+                blockOffset[blockCount] = offset;
+                blockMin[blockCount] = timestampMillis;
+                blockMax[blockCount] = timestampMillis;
+                blockCount++;
+            } else {
+                int b = blockCount - 1;
+                blockMin[b] = Math.min(blockMin[b], timestampMillis);
+                blockMax[b] = Math.max(blockMax[b], timestampMillis);
+            }
+
+            recordCount++;
+            minTimestampMillis = Math.min(minTimestampMillis, timestampMillis);
+            maxTimestampMillis = Math.max(maxTimestampMillis, timestampMillis);
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package com.dominic.skuface;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 요청 하나에 대한 분석 결과
+ * 생성 후에는 변경되지 않으므로 잠금 없이 여러 스레드에서 읽을 수 있다.
+ * 가장 나중에 보낸 요청의 결과는 FaceApi#getLatestResult() 로 게시된다.
+ *
+ * @version 0.1
+ */
+public final class DetectionResult {
+
+    static final DetectionResult EMPTY = new DetectionResult(0, null, Collections.<Face>emptyList());
+
+    private final long sequence;
+    private final String requestId;
+    private final List<Face> faces;
+    private final long timestampMillis;
+    private final long faceIdTimestampMillis;
+
+    /**
+     * @param sequence  요청 순서. 더 큰 값이 더 나중에 보낸 요청이다.
+     * @param requestId 호출자가 결과를 짝 맞추기 위한 ID
+     * @param faces     응답의 얼굴들. 복사되어 보관된다.
+     */
+    DetectionResult(long sequence, String requestId, List<Face> faces) {
+        this(sequence, requestId, faces, 0);
+    }
+
+    /**
+     * @param faceIdTimestampMillis 얼굴들의 faceId 를 서비스에서 받은 시각. 캐시에서 돌려준 결과처럼 이전에 받았으면 그 시각, 0이면 지금
+     */
+    DetectionResult(long sequence, String requestId, List<Face> faces, long faceIdTimestampMillis) {
+        this.sequence = sequence;
+        this.requestId = requestId;
+        this.faces = Collections.unmodifiableList(new ArrayList<>(faces));
+        this.timestampMillis = System.currentTimeMillis();
+        this.faceIdTimestampMillis = faceIdTimestampMillis > 0 ? faceIdTimestampMillis : timestampMillis;
+    }
+
+    long getSequence() {
+        return sequence;
+    }
+
+    public String getRequestId() {
+        return requestId;
+    }
+
+    /**
+     * @return 변경할 수 없는 얼굴 리스트
+     */
+    public List<Face> getFaces() {
+        return faces;
+    }
+
+    /**
+     * @return 결과가 만들어진 시각 (epoch ms)
+     */
+    public long getTimestampMillis() {
+        return timestampMillis;
+    }
+
+    /**
+     * @return faceId 를 서비스에서 받은 시각. faceId 의 만료 시각은 이 값으로 계산한다.
+     */
+    long getFaceIdTimestampMillis() {
+        return faceIdTimestampMillis;
+    }
+
+    @Override
+    public String toString() {
+        return "DetectionResult{requestId=" + requestId + ", faces=" + faces.size() + "}";
+    }
+}
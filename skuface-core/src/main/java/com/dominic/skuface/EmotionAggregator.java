@@ -0,0 +1,433 @@
+package com.dominic.skuface;
+
+/**
+ * 트랙마다 최근 {@link Face.Emotion}들을 모아 평균, EWMA, 최소/최대, 우세한 감정을 계산한다.
+ * 응답을 모두 보관하지 않고 트랙마다 고정 크기의 double 링 버퍼만 사용한다.
+ * <p>
+ * 갱신은 트랙 수와 창 크기에 관계없이 상수 시간(최소/최대는 분할 상환)이며, 새 트랙이 생길 때 말고는 객체를 만들지 않는다.
+ * 1. 평균 : 창에 들어오고 나가는 값으로 합을 갱신한다. 오차가 쌓이지 않도록 창 크기만큼 갱신할 때마다 다시 더한다.
+ * 2. 최소/최대 : 감정마다 단조 덱을 유지한다.
+ * 3. 창 : 샘플 수({@link #EmotionAggregator(int)})와 시간({@link #setWindowMillis(long)}) 중 먼저 넘는 쪽으로 오래된 샘플을 뺀다.
+ *
+ * @version 0.1
+ */
+public class EmotionAggregator {
+
+    public static final int ANGER = 0;
+    public static final int CONTEMPT = 1;
+    public static final int DISGUST = 2;
+    public static final int FEAR = 3;
+    public static final int HAPPINESS = 4;
+    public static final int NEUTRAL = 5;
+    public static final int SADNESS = 6;
+    public static final int SURPRISE = 7;
+
+    public static final int EMOTION_COUNT = 8;
+
+    private static final String[] NAMES =
+            {"anger", "contempt", "disgust", "fear", "happiness", "neutral", "sadness", "surprise"};
+
+    private final int windowSize;
+    private long windowMillis = 0;
+    private double ewmaAlpha = 0.2;
+
+    // 트랙 id 를 박싱하지 않도록 선형 탐사 해시 테이블을 직접 둔다. 빈 칸은 values 가 null 이다.
+    private int[] keys = new int[16];
+    private Series[] values = new Series[16];
+    private int size = 0;
+
+    /**
+     * @param windowSize 트랙마다 보관할 최근 샘플 수
+     */
+    public EmotionAggregator(int windowSize) {
+        if (windowSize < 1)
+            throw new IllegalArgumentException("windowSize must be positive: " + windowSize);
+        this.windowSize = windowSize;
+    }
+
+    /**
+     * @param windowMillis 마지막 샘플보다 이 시간 이상 오래된 샘플을 창에서 뺀다. 0이면 샘플 수로만 자른다. Default : 0
+     */
+    public synchronized EmotionAggregator setWindowMillis(long windowMillis) {
+        this.windowMillis = windowMillis;
+        return this;
+    }
+
+    /**
+     * @param ewmaAlpha 새 샘플의 EWMA 가중치 (0 ~ 1). 클수록 최근 값을 빨리 따라간다. Default : 0.2
+     */
+    public synchronized EmotionAggregator setEwmaAlpha(double ewmaAlpha) {
+        if (ewmaAlpha <= 0 || ewmaAlpha > 1)
+            throw new IllegalArgumentException("ewmaAlpha must be in (0, 1]: " + ewmaAlpha);
+        this.ewmaAlpha = ewmaAlpha;
+        return this;
+    }
+
+    /**
+     * @param trackId         트랙 id (예: FaceTracker 의 트랙 id)
+     * @param timestampMillis 감정을 받은 시각. 트랙마다 늘어나는 순서로 넣어야 한다.
+     * @return 갱신된 트랙의 통계
+     */
+    public synchronized Series update(int trackId, long timestampMillis, Face.Emotion emotion) {
+        Series series = find(trackId);
+        if (series == null) {
+            series = new Series(windowSize);
+            insert(trackId, series);
+        }
+        series.add(timestampMillis, emotion.anger, emotion.contempt, emotion.disgust, emotion.fear,
+                emotion.happiness, emotion.neutral, emotion.sadness, emotion.surprise, ewmaAlpha, windowMillis);
+        return series;
+    }
+
+    /**
+     * @return 트랙의 통계. 받은 감정이 없으면 null
+     */
+    public synchronized Series get(int trackId) {
+        return find(trackId);
+    }
+
+    /**
+     * 사라진 트랙의 통계를 버린다.
+     *
+     * @return 있었으면 true
+     */
+    public synchronized boolean remove(int trackId) {
+        int mask = keys.length - 1;
+        int i = indexOf(trackId);
+        if (i < 0)
+            return false;
+
+        values[i] = null;
+        size--;
+
+        // 지운 칸 뒤에 이어진 항목들을 다시 넣어 탐사 사슬이 끊기지 않게 한다.
+        for (int j = (i + 1) & mask; values[j] != null; j = (j + 1) & mask) {
+            int key = keys[j];
+            Series series = values[j];
+            values[j] = null;
+            size--;
+            insert(key, series);
+        }
+        return true;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    public synchronized void clear() {
+        keys = new int[16];
+        values = new Series[16];
+        size = 0;
+    }
+
+    /**
+     * @param emotion {@link #ANGER} ~ {@link #SURPRISE}
+     * @return 감정 이름 (예: "happiness"). {@link Face.Emotion#getDominantEmotion()}와 같은 이름이다.
+     */
+    public static String getEmotionName(int emotion) {
+        return NAMES[emotion];
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "EmotionAggregator{tracks=" + size + ", windowSize=" + windowSize + ", windowMillis=" + windowMillis + "}";
+    }
+
+    private Series find(int key) {
+        int i = indexOf(key);
+        return i < 0 ? null : values[i];
+    }
+
+    private int indexOf(int key) {
+        int mask = keys.length - 1;
+        for (int i = hash(key) & mask; values[i] != null; i = (i + 1) & mask) {
+            if (keys[i] == key)
+                return i;
+        }
+        return -1;
+    }
+
+    private void insert(int key, Series series) {
+        if ((size + 1) * 2 > keys.length)
+            grow();
+
+        int mask = keys.length - 1;
+        int i = hash(key) & mask;
+        while (values[i] != null && keys[i] != key) {
+            i = (i + 1) & mask;
+        }
+        if (values[i] == null)
+            size++;
+        keys[i] = key;
+        values[i] = series;
+    }
+
+    private void grow() {
+        int[] oldKeys = keys;
+        Series[] oldValues = values;
+        keys = new int[oldKeys.length * 2];
+        values = new Series[oldValues.length * 2];
+        size = 0;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldValues[i] != null)
+                insert(oldKeys[i], oldValues[i]);
+        }
+    }
+
+    private static int hash(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * 트랙 하나의 감정 통계
+     * 값을 읽는 메서드는 객체를 만들지 않는다. 감정 번호는 {@link #ANGER} ~ {@link #SURPRISE}
+     */
+    public static final class Series {
+        private final int capacity;
+
+        // 샘플 번호 seq 의 감정 k 는 values[(seq % capacity) * 8 + k]
+        private final double[] values;
+        private final long[] timestamps;
+        private long first = 0;
+        private long next = 0;
+
+        private final double[] sums = new double[EMOTION_COUNT];
+        private final double[] ewma = new double[EMOTION_COUNT];
+        private int sinceResum = 0;
+        private long updateCount = 0;
+
+        // 감정 k 의 덱은 [k * capacity, (k + 1) * capacity) 구간의 원형 배열이며 샘플 번호를 담는다.
+        private final long[] minDeque;
+        private final int[] minHead = new int[EMOTION_COUNT];
+        private final int[] minSize = new int[EMOTION_COUNT];
+        private final long[] maxDeque;
+        private final int[] maxHead = new int[EMOTION_COUNT];
+        private final int[] maxSize = new int[EMOTION_COUNT];
+
+        private final double[] sample = new double[EMOTION_COUNT];
+
+        Series(int capacity) {
+            this.capacity = capacity;
+            this.values = new double[capacity * EMOTION_COUNT];
+            this.timestamps = new long[capacity];
+            this.minDeque = new long[capacity * EMOTION_COUNT];
+            this.maxDeque = new long[capacity * EMOTION_COUNT];
+        }
+
+        synchronized void add(long timestampMillis,
+                              double anger, double contempt, double disgust, double fear,
+                              double happiness, double neutral, double sadness, double surprise,
+                              double alpha, long windowMillis) {
+            if (windowMillis > 0) {
+                while (next > first && timestampMillis - timestamps[slot(first)] >= windowMillis) {
+                    evictOldest();
+                }
+            }
+            if (next - first == capacity)
+                evictOldest();
+
+            sample[ANGER] = anger;
+            sample[CONTEMPT] = contempt;
+            sample[DISGUST] = disgust;
+            sample[FEAR] = fear;
+            sample[HAPPINESS] = happiness;
+            sample[NEUTRAL] = neutral;
+            sample[SADNESS] = sadness;
+            sample[SURPRISE] = surprise;
+
+            long seq = next++;
+            int base = slot(seq) * EMOTION_COUNT;
+            timestamps[slot(seq)] = timestampMillis;
+            for (int k = 0; k < EMOTION_COUNT; k++) {
+                double v = sample[k];
+                values[base + k] = v;
+                sums[k] += v;
+                ewma[k] = updateCount == 0 ? v : ewma[k] + alpha * (v - ewma[k]);
+
+                int offset = k * capacity;
+                while (minSize[k] > 0 && value(minDeque[offset + back(minHead[k], minSize[k])], k) >= v) {
+                    minSize[k]--;
+                }
+                minDeque[offset + back(minHead[k], minSize[k] + 1)] = seq;
+                minSize[k]++;
+
+                while (maxSize[k] > 0 && value(maxDeque[offset + back(maxHead[k], maxSize[k])], k) <= v) {
+                    maxSize[k]--;
+                }
+                maxDeque[offset + back(maxHead[k], maxSize[k] + 1)] = seq;
+                maxSize[k]++;
+            }
+            updateCount++;
+
+            if (++sinceResum >= capacity)
+                resum();
+        }
+
+        /**
+         * @return 창에 있는 샘플 수
+         */
+        public synchronized int getCount() {
+            return (int) (next - first);
+        }
+
+        /**
+         * @return 지금까지 받은 전체 샘플 수
+         */
+        public synchronized long getUpdateCount() {
+            return updateCount;
+        }
+
+        /**
+         * @return 가장 최근 샘플의 시각. 없으면 0
+         */
+        public synchronized long getLastTimestampMillis() {
+            return next == first ? 0 : timestamps[slot(next - 1)];
+        }
+
+        /**
+         * @return 창 안의 평균. 샘플이 없으면 0
+         */
+        public synchronized double getMean(int emotion) {
+            long count = next - first;
+            return count == 0 ? 0 : sums[emotion] / count;
+        }
+
+        /**
+         * @return 창과 관계없이 모든 샘플의 지수 가중 이동 평균. 샘플이 없으면 0
+         */
+        public synchronized double getEwma(int emotion) {
+            return ewma[emotion];
+        }
+
+        /**
+         * @return 창 안의 최솟값. 샘플이 없으면 0
+         */
+        public synchronized double getMin(int emotion) {
+            return minSize[emotion] == 0 ? 0 : value(minDeque[emotion * capacity + minHead[emotion]], emotion);
+        }
+
+        /**
+         * @return 창 안의 최댓값. 샘플이 없으면 0
+         */
+        public synchronized double getMax(int emotion) {
+            return maxSize[emotion] == 0 ? 0 : value(maxDeque[emotion * capacity + maxHead[emotion]], emotion);
+        }
+
+        /**
+         * @return 가장 최근 샘플의 값. 샘플이 없으면 0
+         */
+        public synchronized double getLatest(int emotion) {
+            return next == first ? 0 : value(next - 1, emotion);
+        }
+
+        /**
+         * @return 창 안의 평균이 가장 높은 감정의 번호. 샘플이 없으면 {@link #ANGER}
+         */
+        public synchronized int getDominantIndex() {
+            return argMax(sums);
+        }
+
+        /**
+         * @return 창 안의 평균이 가장 높은 감정의 이름 (예: "happiness")
+         */
+        public String getDominantEmotion() {
+            return NAMES[getDominantIndex()];
+        }
+
+        /**
+         * @return EWMA 가 가장 높은 감정의 번호. 평균보다 최근 변화를 빨리 따라간다.
+         */
+        public synchronized int getEwmaDominantIndex() {
+            return argMax(ewma);
+        }
+
+        /**
+         * 여덟 감정의 창 평균을 한 번에 복사한다.
+         *
+         * @param out 길이 {@link #EMOTION_COUNT} 이상의 배열
+         */
+        public synchronized void copyMeans(double[] out) {
+            long count = next - first;
+            for (int k = 0; k < EMOTION_COUNT; k++) {
+                out[k] = count == 0 ? 0 : sums[k] / count;
+            }
+        }
+
+        /**
+         * @return 창 평균으로 만든 감정. 화면 표시 등 기존 {@link Face.Emotion} 코드에 넘길 때 사용한다.
+         */
+        public synchronized Face.Emotion toMeanEmotion() {
+            double[] means = new double[EMOTION_COUNT];
+            copyMeans(means);
+            return new Face.Emotion(means[ANGER], means[CONTEMPT], means[DISGUST], means[FEAR],
+                    means[HAPPINESS], means[NEUTRAL], means[SADNESS], means[SURPRISE]);
+        }
+
+        @Override
+        public synchronized String toString() {
+            return "Series{count=" + (next - first)
+                    + ", updates=" + updateCount
+                    + ", dominant=" + NAMES[argMax(sums)] + "}";
+        }
+
+        private void evictOldest() {
+            long seq = first++;
+            int base = slot(seq) * EMOTION_COUNT;
+            for (int k = 0; k < EMOTION_COUNT; k++) {
+                sums[k] -= values[base + k];
+
+                int offset = k * capacity;
+                if (minSize[k] > 0 && minDeque[offset + minHead[k]] == seq) {
+                    minHead[k] = (minHead[k] + 1) % capacity;
+                    minSize[k]--;
+                }
+                if (maxSize[k] > 0 && maxDeque[offset + maxHead[k]] == seq) {
+                    maxHead[k] = (maxHead[k] + 1) % capacity;
+                    maxSize[k]--;
+                }
+            }
+        }
+
+        /**
+         * 빼고 더하며 쌓인 부동소수점 오차를 없앤다. 창 크기만큼 갱신할 때 한 번이므로 갱신당 상수 시간이다.
+         */
+        private void resum() {
+            sinceResum = 0;
+            for (int k = 0; k < EMOTION_COUNT; k++) {
+                sums[k] = 0;
+            }
+            for (long seq = first; seq < next; seq++) {
+                int base = slot(seq) * EMOTION_COUNT;
+                for (int k = 0; k < EMOTION_COUNT; k++) {
+                    sums[k] += values[base + k];
+                }
+            }
+        }
+
+        private double value(long seq, int emotion) {
+            return values[slot(seq) * EMOTION_COUNT + emotion];
+        }
+
+        private int slot(long seq) {
+            return (int) (seq % capacity);
+        }
+
+        /**
+         * @return 덱의 position 번째(1부터) 칸의 구간 안 위치
+         */
+        private int back(int head, int position) {
+            return (head + position - 1) % capacity;
+        }
+
+        private static int argMax(double[] scores) {
+            int best = 0;
+            for (int k = 1; k < EMOTION_COUNT; k++) {
+                if (scores[k] > scores[best])
+                    best = k;
+            }
+            return best;
+        }
+    }
+}
@@ -0,0 +1,237 @@
+package com.dominic.skuface;
+
+import android.support.constraint.solver.widgets.Rectangle;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * skuface 의 ImageEncoder 가 만든 결과
+ * 업로드한 이미지는 원본보다 작거나 원본의 일부분일 수 있으므로 응답의 좌표를 원본 좌표로 되돌리는 방법을 함께 가진다.
+ *
+ * @version 0.1
+ */
+public class EncodedImage {
+
+    private final byte[] data;
+    private final int width;
+    private final int height;
+    private final int regionX;
+    private final int regionY;
+    private final int regionWidth;
+    private final int regionHeight;
+    private final int sourceWidth;
+    private final int sourceHeight;
+    private final int rotation;
+
+    private boolean hasPerceptualHash = false;
+    private long perceptualHash;
+
+    private volatile String digest = null;
+
+    /**
+     * @param data         업로드할 이미지 바이트
+     * @param width        인코딩된 이미지의 너비
+     * @param height       인코딩된 이미지의 높이
+     * @param sourceWidth  원본 이미지의 너비
+     * @param sourceHeight 원본 이미지의 높이
+     */
+    public EncodedImage(byte[] data, int width, int height, int sourceWidth, int sourceHeight) {
+        this(data, width, height, sourceWidth, sourceHeight, 0);
+    }
+
+    /**
+     * 픽셀을 회전하지 않고 방향을 메타데이터로만 가지는 이미지
+     *
+     * @param rotation 인코딩된 이미지를 바로 세우기 위해 시계 방향으로 돌려야 하는 각도 (0, 90, 180, 270)
+     * @see #toSourceRectangle(Rectangle)
+     */
+    public EncodedImage(byte[] data, int width, int height, int sourceWidth, int sourceHeight, int rotation) {
+        this(data, width, height, 0, 0, sourceWidth, sourceHeight, sourceWidth, sourceHeight, rotation);
+    }
+
+    /**
+     * 원본의 일부분(region)만 인코딩한 이미지
+     *
+     * @param region       원본에서 잘라낸 영역 (회전 전 원본 좌표)
+     * @param sourceWidth  원본 이미지의 너비
+     * @param sourceHeight 원본 이미지의 높이
+     * @param rotation     원본을 바로 세우기 위해 시계 방향으로 돌려야 하는 각도 (0, 90, 180, 270)
+     */
+    public EncodedImage(byte[] data, int width, int height, Rectangle region,
+                        int sourceWidth, int sourceHeight, int rotation) {
+        this(data, width, height, region.x, region.y, region.width, region.height,
+                sourceWidth, sourceHeight, rotation);
+    }
+
+    private EncodedImage(byte[] data, int width, int height,
+                         int regionX, int regionY, int regionWidth, int regionHeight,
+                         int sourceWidth, int sourceHeight, int rotation) {
+        if (rotation % 90 != 0)
+            throw new IllegalArgumentException("rotation must be a multiple of 90 : " + rotation);
+
+        this.data = data;
+        this.width = width;
+        this.height = height;
+        this.regionX = regionX;
+        this.regionY = regionY;
+        this.regionWidth = regionWidth;
+        this.regionHeight = regionHeight;
+        this.sourceWidth = sourceWidth;
+        this.sourceHeight = sourceHeight;
+        this.rotation = ((rotation % 360) + 360) % 360;
+    }
+
+    public byte[] getData() {
+        return data;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getSourceWidth() {
+        return sourceWidth;
+    }
+
+    public int getSourceHeight() {
+        return sourceHeight;
+    }
+
+    /**
+     * @return 바로 세우기 위해 시계 방향으로 돌려야 하는 각도 (0, 90, 180, 270)
+     */
+    public int getRotation() {
+        return rotation;
+    }
+
+    /**
+     * @return 원본 전체를 인코딩했으면 true, 일부분만 잘라냈으면 false
+     */
+    public boolean isFullFrame() {
+        return regionX == 0 && regionY == 0 && regionWidth == sourceWidth && regionHeight == sourceHeight;
+    }
+
+    /**
+     * @return 인코딩된 이미지 크기 / 원본(또는 잘라낸 영역) 크기 (0 초과 1 이하)
+     */
+    public float getScale() {
+        return (float) width / regionWidth;
+    }
+
+    /**
+     * @return 업로드할 바이트의 SHA-256 (16진수). 처음 호출할 때 한 번만 계산한다.
+     */
+    public String getDigest() {
+        String value = digest;
+        if (value == null)
+            digest = value = digestOf(data);
+        return value;
+    }
+
+    static String digestOf(byte[] data) {
+        MessageDigest sha256;
+        try {
+            sha256 = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        byte[] hash = sha256.digest(data);
+
+        char[] hex = new char[hash.length * 2];
+        for (int i = 0; i < hash.length; i++) {
+            hex[i * 2] = Character.forDigit((hash[i] >> 4) & 0xF, 16);
+            hex[i * 2 + 1] = Character.forDigit(hash[i] & 0xF, 16);
+        }
+        return new String(hex);
+    }
+
+    boolean hasPerceptualHash() {
+        return hasPerceptualHash;
+    }
+
+    long getPerceptualHash() {
+        return perceptualHash;
+    }
+
+    /**
+     * @param perceptualHash 원본 이미지의 PerceptualHash.dHash(Bitmap)
+     */
+    void setPerceptualHash(long perceptualHash) {
+        this.perceptualHash = perceptualHash;
+        this.hasPerceptualHash = true;
+    }
+
+    /**
+     * 인코딩된 이미지 기준의 좌표를 원본 이미지 좌표로 변환한다.
+     * 잘라낸 영역이면 영역의 위치만큼 옮기고,
+     * {@link #getRotation()}이 0이 아니면 원본을 그 각도만큼 돌려 바로 세운 이미지의 좌표가 된다.
+     *
+     * @param rectangle 응답으로 받은 faceRectangle. 값이 직접 변경된다.
+     * @return 변환된 rectangle
+     */
+    public Rectangle toSourceRectangle(Rectangle rectangle) {
+        if (width != regionWidth || height != regionHeight) {
+            float scaleX = (float) regionWidth / width;
+            float scaleY = (float) regionHeight / height;
+            rectangle.x = Math.round(rectangle.x * scaleX);
+            rectangle.y = Math.round(rectangle.y * scaleY);
+            rectangle.width = Math.round(rectangle.width * scaleX);
+            rectangle.height = Math.round(rectangle.height * scaleY);
+        }
+
+        int x = rectangle.x + regionX;
+        int y = rectangle.y + regionY;
+        int w = rectangle.width;
+        int h = rectangle.height;
+        switch (rotation) {
+            case 90:
+                rectangle.setBounds(sourceHeight - y - h, x, h, w);
+                break;
+            case 180:
+                rectangle.setBounds(sourceWidth - x - w, sourceHeight - y - h, w, h);
+                break;
+            case 270:
+                rectangle.setBounds(y, sourceWidth - x - w, h, w);
+                break;
+            default:
+                rectangle.setBounds(x, y, w, h);
+                break;
+        }
+        return rectangle;
+    }
+
+    /**
+     * {@link #toSourceRectangle(Rectangle)}와 같은 변환을 점 하나에 적용한다.
+     *
+     * @param point 응답으로 받은 {x, y}. 값이 직접 변경된다.
+     * @return 변환된 point
+     */
+    public float[] toSourcePoint(float[] point) {
+        float x = point[0] * regionWidth / width + regionX;
+        float y = point[1] * regionHeight / height + regionY;
+        switch (rotation) {
+            case 90:
+                point[0] = sourceHeight - y;
+                point[1] = x;
+                break;
+            case 180:
+                point[0] = sourceWidth - x;
+                point[1] = sourceHeight - y;
+                break;
+            case 270:
+                point[0] = y;
+                point[1] = sourceWidth - x;
+                break;
+            default:
+                point[0] = x;
+                point[1] = y;
+                break;
+        }
+        return point;
+    }
+}
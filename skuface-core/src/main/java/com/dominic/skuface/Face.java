@@ -0,0 +1,170 @@
+package com.dominic.skuface;
+
+import android.support.constraint.solver.widgets.Rectangle;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 얼굴들에 대한 정보를 저장하는 클래스
+ * Android 에 의존하지 않으므로 데스크톱 JVM 에서도 사용할 수 있다.
+ *
+ * @version 0.1
+ */
+public class Face {
+    private String faceId;
+
+    /**
+     *  인식된 얼굴의 비트맵 좌표를 나타낸다. 외부에서 접근 할 때 오류가 발생하면 'com.android.support.constraint:constraint-layout:1.0.2'를 'build.gradle'의 'dependencies' 에 추가한다.
+     */
+    private Rectangle faceRectangle;
+
+    private Emotion emotion;
+
+    private Map<String, float[]> landmarks;
+
+    // faceId 를 발급한 엔드포인트의 detect URL. faceId 는 발급한 리소스에서만 쓸 수 있다.
+    private String origin;
+
+    public Face(String faceId, Rectangle faceRectangle, Emotion emotion) {
+        this.setFaceId(faceId);
+        this.setFaceRectangle(faceRectangle);
+        this.setEmotion(emotion);
+    }
+
+    public String getFaceId() {
+        return faceId;
+    }
+
+    public void setFaceId(String faceId) {
+        this.faceId = faceId;
+    }
+
+    /**
+     *  인식된 얼굴의 비트맵 좌표를 나타낸다. 외부에서 접근 할 때 오류가 발생하면 'com.android.support.constraint:constraint-layout:1.0.2'를 'build.gradle'의 'dependencies' 에 추가한다.
+     */
+    public Rectangle getFaceRectangle() {
+        return faceRectangle;
+    }
+
+    public void setFaceRectangle(Rectangle faceRectangle) {
+        this.faceRectangle = faceRectangle;
+    }
+
+    /**
+     * @return 사각형과 감정까지 새로 만든 복사본. 결과를 여러 곳에 나눠 줄 때 서로의 좌표 변환이 섞이지 않도록 한다.
+     */
+    public Face copy() {
+        Rectangle r = null;
+        if (faceRectangle != null) {
+            r = new Rectangle();
+            r.setBounds(faceRectangle.x, faceRectangle.y, faceRectangle.width, faceRectangle.height);
+        }
+
+        Emotion e = emotion == null ? null : new Emotion(
+                emotion.anger, emotion.contempt, emotion.disgust, emotion.fear,
+                emotion.happiness, emotion.neutral, emotion.sadness, emotion.surprise);
+
+        Face copy = new Face(faceId, r, e);
+        copy.setLandmarks(landmarks);
+        copy.origin = origin;
+        return copy;
+    }
+
+    public Emotion getEmotion() {
+        return emotion;
+    }
+
+    public void setEmotion(Emotion emotion) {
+        this.emotion = emotion;
+    }
+
+    /**
+     * @return 랜드마크 이름(예: "pupilLeft")과 얼굴 사각형과 같은 좌표계의 {x, y}. 요청하지 않았으면 null
+     * @see DetectOptions#setReturnFaceLandmarks(boolean)
+     */
+    public Map<String, float[]> getLandmarks() {
+        return landmarks;
+    }
+
+    /**
+     * @return faceId 를 발급한 엔드포인트의 detect URL. 모르면 null
+     */
+    String getOrigin() {
+        return origin;
+    }
+
+    void setOrigin(String origin) {
+        this.origin = origin;
+    }
+
+    /**
+     * @param landmarks 랜드마크들. 좌표까지 복사되어 보관된다. null 이면 지운다.
+     */
+    public void setLandmarks(Map<String, float[]> landmarks) {
+        if (landmarks == null) {
+            this.landmarks = null;
+            return;
+        }
+
+        Map<String, float[]> copy = new LinkedHashMap<>(landmarks.size() * 2);
+        for (Map.Entry<String, float[]> entry : landmarks.entrySet()) {
+            copy.put(entry.getKey(), entry.getValue().clone());
+        }
+        this.landmarks = Collections.unmodifiableMap(copy);
+    }
+
+    public static class Emotion implements Serializable {
+        public double anger;
+        public double contempt;
+        public double disgust;
+        public double fear;
+        public double happiness;
+        public double neutral;
+        public double sadness;
+        public double surprise;
+
+        public Emotion(double anger, double contempt, double disgust, double fear, double happiness, double neutral, double sadness, double surprise) {
+            this.anger = anger;
+            this.contempt = contempt;
+            this.disgust = disgust;
+            this.fear = fear;
+            this.happiness = happiness;
+            this.neutral = neutral;
+            this.sadness = sadness;
+            this.surprise = surprise;
+        }
+
+        /**
+         * @return 점수가 가장 높은 감정의 이름 (예: "happiness")
+         */
+        public String getDominantEmotion() {
+            String name = "anger";
+            double max = anger;
+            if (contempt > max) { max = contempt; name = "contempt"; }
+            if (disgust > max) { max = disgust; name = "disgust"; }
+            if (fear > max) { max = fear; name = "fear"; }
+            if (happiness > max) { max = happiness; name = "happiness"; }
+            if (neutral > max) { max = neutral; name = "neutral"; }
+            if (sadness > max) { max = sadness; name = "sadness"; }
+            if (surprise > max) { name = "surprise"; }
+            return name;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(
+                    "anger\t: %f\n" +
+                            "contempt\t: %f\n" +
+                            "disgust\t: %f\n" +
+                            "fear\t: %f\n" +
+                            "happiness: %f\n" +
+                            "neutral\t: %f\n" +
+                            "sadness\t: %f\n" +
+                            "surprise\t: %f\n",
+                    anger, contempt, disgust, fear, happiness, neutral, sadness, surprise);
+        }
+    }
+}
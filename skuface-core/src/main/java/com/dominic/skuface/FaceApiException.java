@@ -0,0 +1,58 @@
+package com.dominic.skuface;
+
+import java.io.IOException;
+
+/**
+ * Face API 가 2xx 가 아닌 응답을 돌려주었거나, 회로 차단기가 열려 요청을 보내지 않았을 때
+ * FaceApi.DetectCallback#onFailure(IOException) 로 전달된다.
+ *
+ * @version 0.1
+ */
+public class FaceApiException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * {@link #getErrorCode()} : 회로 차단기가 열려 요청을 보내지 않았다.
+     */
+    public static final String CIRCUIT_OPEN = "CircuitOpen";
+
+    private final int statusCode;
+    private final String errorCode;
+    private final long retryAfterMillis;
+
+    /**
+     * @param statusCode       HTTP 상태 코드. 요청을 보내지 않았으면 0
+     * @param errorCode        응답 본문의 error.code
+     * @param message          응답 본문의 error.message
+     * @param retryAfterMillis Retry-After 헤더 값(ms). 없으면 -1
+     */
+    public FaceApiException(int statusCode, String errorCode, String message, long retryAfterMillis) {
+        super(statusCode > 0 ? statusCode + " " + errorCode + ": " + message : errorCode + ": " + message);
+        this.statusCode = statusCode;
+        this.errorCode = errorCode;
+        this.retryAfterMillis = retryAfterMillis;
+    }
+
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    public String getErrorCode() {
+        return errorCode;
+    }
+
+    /**
+     * @return Retry-After 헤더 값(ms). 없으면 -1
+     */
+    public long getRetryAfterMillis() {
+        return retryAfterMillis;
+    }
+
+    /**
+     * @return 429 또는 5xx 처럼 다시 보내면 성공할 수 있는 오류인지
+     */
+    public boolean isRetryable() {
+        return statusCode == 408 || statusCode == 429 || statusCode >= 500;
+    }
+}
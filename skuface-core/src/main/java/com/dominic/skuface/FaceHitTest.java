@@ -0,0 +1,41 @@
+package com.dominic.skuface;
+
+import android.support.constraint.solver.widgets.Rectangle;
+
+import java.util.List;
+
+/**
+ * 이미지 좌표의 한 점이 어느 얼굴 위에 있는지 찾는다.
+ *
+ * @version 0.1
+ */
+public final class FaceHitTest {
+
+    private FaceHitTest() {
+    }
+
+    /**
+     * @param faces 이미지 좌표의 얼굴들
+     * @param x     이미지 좌표 x
+     * @param y     이미지 좌표 y
+     * @return 점을 포함하는 얼굴 중 가장 작은 얼굴. 겹친 얼굴은 안쪽 얼굴이 선택된다. 없으면 null
+     */
+    public static Face findFaceAt(List<Face> faces, int x, int y) {
+        Face hit = null;
+        long hitArea = Long.MAX_VALUE;
+
+        for (int i = 0, size = faces.size(); i < size; i++) {
+            Face face = faces.get(i);
+            Rectangle rectangle = face.getFaceRectangle();
+            if (rectangle == null || !rectangle.contains(x, y))
+                continue;
+
+            long area = (long) rectangle.width * rectangle.height;
+            if (area < hitArea) {
+                hit = face;
+                hitArea = area;
+            }
+        }
+        return hit;
+    }
+}
@@ -0,0 +1,278 @@
+package com.dominic.skuface;
+
+import com.squareup.moshi.JsonDataException;
+import com.squareup.moshi.JsonReader;
+import com.squareup.moshi.JsonWriter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import okio.BufferedSink;
+import okio.BufferedSource;
+
+/**
+ * 이미지 대신 faceId 만 보내는 verify, findsimilars, group 요청의 본문과 응답
+ * 본문은 수백 바이트의 JSON 이므로 이미지를 다시 올리는 것보다 훨씬 작고 빠르다.
+ *
+ * @version 0.1
+ * @see FaceIdRegistry
+ */
+public final class FaceIdOperations {
+
+    /**
+     * findsimilars 한 번에 보낼 수 있는 후보 faceId 수
+     */
+    public static final int MAX_FIND_SIMILAR_CANDIDATES = 1000;
+
+    /**
+     * group 한 번에 보낼 수 있는 faceId 수
+     */
+    public static final int MAX_GROUP_FACES = 1000;
+
+    private static final JsonReader.Options VERIFY_NAMES = JsonReader.Options.of("isIdentical", "confidence");
+    private static final JsonReader.Options SIMILAR_NAMES = JsonReader.Options.of("faceId", "confidence");
+    private static final JsonReader.Options GROUP_NAMES = JsonReader.Options.of("groups", "messyGroup");
+
+    private FaceIdOperations() {
+    }
+
+    /**
+     * 두 얼굴이 같은 사람인지의 판단
+     */
+    public static final class VerifyResult {
+        private final boolean identical;
+        private final double confidence;
+
+        VerifyResult(boolean identical, double confidence) {
+            this.identical = identical;
+            this.confidence = confidence;
+        }
+
+        public boolean isIdentical() {
+            return identical;
+        }
+
+        public double getConfidence() {
+            return confidence;
+        }
+
+        @Override
+        public String toString() {
+            return "VerifyResult{identical=" + identical + ", confidence=" + confidence + "}";
+        }
+    }
+
+    /**
+     * 후보 중 비슷한 얼굴 하나
+     */
+    public static final class SimilarFace {
+        private final String faceId;
+        private final double confidence;
+
+        SimilarFace(String faceId, double confidence) {
+            this.faceId = faceId;
+            this.confidence = confidence;
+        }
+
+        public String getFaceId() {
+            return faceId;
+        }
+
+        public double getConfidence() {
+            return confidence;
+        }
+
+        @Override
+        public String toString() {
+            return "SimilarFace{faceId=" + faceId + ", confidence=" + confidence + "}";
+        }
+    }
+
+    /**
+     * 같은 사람끼리 묶은 결과
+     */
+    public static final class GroupResult {
+        private final List<List<String>> groups;
+        private final List<String> messyGroup;
+
+        GroupResult(List<List<String>> groups, List<String> messyGroup) {
+            this.groups = Collections.unmodifiableList(groups);
+            this.messyGroup = Collections.unmodifiableList(messyGroup);
+        }
+
+        /**
+         * @return 사람마다의 faceId 묶음. 큰 묶음부터
+         */
+        public List<List<String>> getGroups() {
+            return groups;
+        }
+
+        /**
+         * @return 어느 묶음에도 속하지 않은 faceId 들
+         */
+        public List<String> getMessyGroup() {
+            return messyGroup;
+        }
+
+        @Override
+        public String toString() {
+            return "GroupResult{groups=" + groups.size() + ", messyGroup=" + messyGroup.size() + "}";
+        }
+    }
+
+    static void writeVerify(BufferedSink sink, String faceId1, String faceId2) throws IOException {
+        JsonWriter writer = JsonWriter.of(sink);
+        writer.beginObject();
+        writer.name("faceId1").value(faceId1);
+        writer.name("faceId2").value(faceId2);
+        writer.endObject();
+        writer.flush();
+    }
+
+    /**
+     * @param mode "matchPerson" 또는 "matchFace"
+     */
+    static void writeFindSimilar(BufferedSink sink, String faceId, List<String> candidateIds,
+                                 int maxCandidates, String mode) throws IOException {
+        JsonWriter writer = JsonWriter.of(sink);
+        writer.beginObject();
+        writer.name("faceId").value(faceId);
+        writer.name("faceIds");
+        writeIds(writer, candidateIds);
+        writer.name("maxNumOfCandidatesReturned").value(maxCandidates);
+        writer.name("mode").value(mode);
+        writer.endObject();
+        writer.flush();
+    }
+
+    static void writeGroup(BufferedSink sink, List<String> faceIds) throws IOException {
+        JsonWriter writer = JsonWriter.of(sink);
+        writer.beginObject();
+        writer.name("faceIds");
+        writeIds(writer, faceIds);
+        writer.endObject();
+        writer.flush();
+    }
+
+    static VerifyResult parseVerify(BufferedSource source) throws IOException {
+        JsonReader reader = JsonReader.of(source);
+        try {
+            boolean identical = false;
+            double confidence = 0;
+
+            reader.beginObject();
+            while (reader.hasNext()) {
+                switch (reader.selectName(VERIFY_NAMES)) {
+                    case 0:
+                        identical = reader.nextBoolean();
+                        break;
+                    case 1:
+                        confidence = reader.nextDouble();
+                        break;
+                    default:
+                        reader.skipName();
+                        reader.skipValue();
+                        break;
+                }
+            }
+            reader.endObject();
+
+            return new VerifyResult(identical, confidence);
+        } catch (JsonDataException e) {
+            throw new IOException("Unexpected verify response: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * @return 응답 순서(비슷한 순서)대로의 얼굴들
+     */
+    static List<SimilarFace> parseFindSimilar(BufferedSource source) throws IOException {
+        JsonReader reader = JsonReader.of(source);
+        try {
+            List<SimilarFace> faces = new ArrayList<>();
+
+            reader.beginArray();
+            while (reader.hasNext()) {
+                String faceId = null;
+                double confidence = 0;
+
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    switch (reader.selectName(SIMILAR_NAMES)) {
+                        case 0:
+                            faceId = reader.nextString();
+                            break;
+                        case 1:
+                            confidence = reader.nextDouble();
+                            break;
+                        default:
+                            reader.skipName();
+                            reader.skipValue();
+                            break;
+                    }
+                }
+                reader.endObject();
+
+                faces.add(new SimilarFace(faceId, confidence));
+            }
+            reader.endArray();
+
+            return faces;
+        } catch (JsonDataException e) {
+            throw new IOException("Unexpected findsimilars response: " + e.getMessage(), e);
+        }
+    }
+
+    static GroupResult parseGroup(BufferedSource source) throws IOException {
+        JsonReader reader = JsonReader.of(source);
+        try {
+            List<List<String>> groups = new ArrayList<>();
+            List<String> messyGroup = new ArrayList<>();
+
+            reader.beginObject();
+            while (reader.hasNext()) {
+                switch (reader.selectName(GROUP_NAMES)) {
+                    case 0:
+                        reader.beginArray();
+                        while (reader.hasNext()) {
+                            groups.add(readIds(reader));
+                        }
+                        reader.endArray();
+                        break;
+                    case 1:
+                        messyGroup = readIds(reader);
+                        break;
+                    default:
+                        reader.skipName();
+                        reader.skipValue();
+                        break;
+                }
+            }
+            reader.endObject();
+
+            return new GroupResult(groups, messyGroup);
+        } catch (JsonDataException e) {
+            throw new IOException("Unexpected group response: " + e.getMessage(), e);
+        }
+    }
+
+    private static void writeIds(JsonWriter writer, List<String> faceIds) throws IOException {
+        writer.beginArray();
+        for (String faceId : faceIds) {
+            writer.value(faceId);
+        }
+        writer.endArray();
+    }
+
+    private static List<String> readIds(JsonReader reader) throws IOException {
+        List<String> ids = new ArrayList<>();
+        reader.beginArray();
+        while (reader.hasNext()) {
+            ids.add(reader.nextString());
+        }
+        reader.endArray();
+        return ids;
+    }
+}
@@ -0,0 +1,269 @@
+package com.dominic.skuface;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 트랙, 이미지 등 우리 쪽 키로 detect 응답의 faceId 를 보관한다.
+ * faceId 가 유효한 동안에는 verify, findsimilars, group 같은 후속 작업에 이미지를 다시 올리지 않고 id 만 보낼 수 있다.
+ * <p>
+ * faceId 는 서비스에서 검출 후 24시간이 지나면 만료되므로 그 전에 여유 시간을 두고 버린다.
+ * 항목은 넣은 순서로 보관하며, 넣을 때마다 앞에서부터 만료된 항목을 지운다.
+ * faceId 는 발급한 리소스에서만 유효하므로 항목마다 발급한 엔드포인트를 함께 보관한다. ({@link #getOrigin(String)})
+ *
+ * @version 0.1
+ */
+public class FaceIdRegistry {
+
+    /**
+     * 서비스의 faceId 유효 시간
+     */
+    public static final long FACE_ID_TTL_MILLIS = TimeUnit.HOURS.toMillis(24);
+
+    private long ttlMillis = FACE_ID_TTL_MILLIS;
+    private long safetyMarginMillis = TimeUnit.MINUTES.toMillis(5);
+    private int maxEntries = 10_000;
+
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>();
+
+    // faceId 로 항목 찾기. 같은 faceId 를 여러 키로 넣으면 마지막 항목을 가리킨다.
+    private final HashMap<String, Entry> entriesByFaceId = new HashMap<>();
+
+    private long hitCount;
+    private long missCount;
+    private long expiredCount;
+
+    /**
+     * @param ttlMillis 항목 유효 시간. {@link #FACE_ID_TTL_MILLIS}를 넘을 수 없다. Default : 24시간
+     */
+    public synchronized FaceIdRegistry setTtlMillis(long ttlMillis) {
+        this.ttlMillis = Math.min(FACE_ID_TTL_MILLIS, ttlMillis);
+        return this;
+    }
+
+    /**
+     * @param safetyMarginMillis 만료 직전의 id 로 보낸 요청이 서비스에서 실패하지 않도록 유효 시간보다 먼저 버리는 시간. Default : 5분
+     */
+    public synchronized FaceIdRegistry setSafetyMarginMillis(long safetyMarginMillis) {
+        this.safetyMarginMillis = safetyMarginMillis;
+        return this;
+    }
+
+    /**
+     * @param maxEntries 보관할 최대 항목 수. 넘으면 가장 오래된 항목부터 버린다. Default : 10000
+     */
+    public synchronized FaceIdRegistry setMaxEntries(int maxEntries) {
+        this.maxEntries = maxEntries;
+        trim();
+        return this;
+    }
+
+    /**
+     * 지금 검출한 faceId 를 보관한다. 같은 키가 있으면 바꾼다.
+     */
+    public void put(String key, String faceId) {
+        put(key, faceId, System.currentTimeMillis());
+    }
+
+    /**
+     * @param key              트랙 id, 이미지 id 등 우리 쪽 키
+     * @param faceId           detect 응답의 faceId
+     * @param detectedAtMillis faceId 를 받은 시각 (epoch ms). 만료 시각은 이 값으로 계산한다.
+     */
+    public void put(String key, String faceId, long detectedAtMillis) {
+        put(key, faceId, detectedAtMillis, null);
+    }
+
+    /**
+     * @param origin faceId 를 발급한 엔드포인트의 detect URL. 모르면 null
+     * @see #put(String, String, long)
+     */
+    public synchronized void put(String key, String faceId, long detectedAtMillis, String origin) {
+        unindex(entries.remove(key));
+        Entry entry = new Entry(faceId, detectedAtMillis, origin);
+        entries.put(key, entry);
+        entriesByFaceId.put(faceId, entry);
+        evictExpired(System.currentTimeMillis());
+        trim();
+    }
+
+    /**
+     * @param face detect 결과의 얼굴. faceId 를 요청하지 않아 없으면 보관하지 않는다.
+     * @return 보관했으면 true
+     */
+    public boolean put(String key, Face face) {
+        if (face.getFaceId() == null)
+            return false;
+        put(key, face.getFaceId(), System.currentTimeMillis(), face.getOrigin());
+        return true;
+    }
+
+    /**
+     * 이미지 하나의 얼굴들을 "imageKey/순번" 키로 보관한다.
+     *
+     * @return 보관한 얼굴 수
+     */
+    public int putAll(String imageKey, List<Face> faces) {
+        return putAll(imageKey, faces, System.currentTimeMillis());
+    }
+
+    /**
+     * @param detectedAtMillis faceId 들을 받은 시각 (epoch ms)
+     * @see #putAll(String, List)
+     */
+    public int putAll(String imageKey, List<Face> faces, long detectedAtMillis) {
+        int count = 0;
+        for (int i = 0; i < faces.size(); i++) {
+            Face face = faces.get(i);
+            if (face.getFaceId() == null)
+                continue;
+            put(imageKey + "/" + i, face.getFaceId(), detectedAtMillis, face.getOrigin());
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * @return 유효한 faceId. 없거나 만료되었으면 null
+     */
+    public synchronized String get(String key) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            missCount++;
+            return null;
+        }
+        if (isExpired(entry, System.currentTimeMillis())) {
+            unindex(entries.remove(key));
+            expiredCount++;
+            missCount++;
+            return null;
+        }
+        hitCount++;
+        return entry.faceId;
+    }
+
+    /**
+     * @param keys 찾을 키들
+     * @return 키 순서대로의 유효한 faceId. 없거나 만료된 키는 건너뛰고 중복된 id 는 한 번만 담는다.
+     */
+    public synchronized List<String> getFaceIds(Collection<String> keys) {
+        List<String> faceIds = new ArrayList<>(keys.size());
+        for (String key : keys) {
+            String faceId = get(key);
+            if (faceId != null && !faceIds.contains(faceId))
+                faceIds.add(faceId);
+        }
+        return faceIds;
+    }
+
+    /**
+     * @return 유효한 faceId 를 발급한 엔드포인트의 detect URL. 보관하지 않았거나 만료되었거나 모르면 null
+     */
+    public synchronized String getOrigin(String faceId) {
+        Entry entry = entriesByFaceId.get(faceId);
+        if (entry == null || isExpired(entry, System.currentTimeMillis()))
+            return null;
+        return entry.origin;
+    }
+
+    public synchronized boolean remove(String key) {
+        Entry entry = entries.remove(key);
+        unindex(entry);
+        return entry != null;
+    }
+
+    /**
+     * 만료된 항목을 지운다. 보통은 {@link #put(String, String)}에서 함께 지워진다.
+     *
+     * @return 지운 항목 수
+     */
+    public synchronized int evictExpired() {
+        return evictExpired(System.currentTimeMillis());
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        entriesByFaceId.clear();
+    }
+
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * @return 만료되어 버린 항목 수
+     */
+    public synchronized long getExpiredCount() {
+        return expiredCount;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "FaceIdRegistry{size=" + entries.size()
+                + ", hits=" + hitCount
+                + ", misses=" + missCount
+                + ", expired=" + expiredCount + "}";
+    }
+
+    /**
+     * 넣은 순서의 앞에서부터 만료되지 않은 항목을 만날 때까지 지운다.
+     * 과거 시각으로 넣은 항목이 뒤에 남아 있을 수 있지만 {@link #get(String)}에서 다시 확인한다.
+     */
+    private int evictExpired(long now) {
+        int evicted = 0;
+        Iterator<Entry> it = entries.values().iterator();
+        while (it.hasNext()) {
+            Entry entry = it.next();
+            if (!isExpired(entry, now))
+                break;
+            it.remove();
+            unindex(entry);
+            evicted++;
+        }
+        expiredCount += evicted;
+        return evicted;
+    }
+
+    private void trim() {
+        Iterator<Entry> it = entries.values().iterator();
+        while (entries.size() > maxEntries && it.hasNext()) {
+            Entry entry = it.next();
+            it.remove();
+            unindex(entry);
+        }
+    }
+
+    private void unindex(Entry entry) {
+        if (entry != null && entriesByFaceId.get(entry.faceId) == entry)
+            entriesByFaceId.remove(entry.faceId);
+    }
+
+    private boolean isExpired(Entry entry, long now) {
+        return now - entry.detectedAtMillis >= ttlMillis - safetyMarginMillis;
+    }
+
+    private static final class Entry {
+        final String faceId;
+        final long detectedAtMillis;
+        final String origin;
+
+        Entry(String faceId, long detectedAtMillis, String origin) {
+            this.faceId = faceId;
+            this.detectedAtMillis = detectedAtMillis;
+            this.origin = origin;
+        }
+    }
+}
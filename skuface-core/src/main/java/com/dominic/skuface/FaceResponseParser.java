@@ -0,0 +1,248 @@
+package com.dominic.skuface;
+
+import android.support.constraint.solver.widgets.Rectangle;
+
+import com.squareup.moshi.JsonDataException;
+import com.squareup.moshi.JsonReader;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import okio.BufferedSource;
+
+/**
+ * detect 응답을 문자열이나 JSON 트리로 만들지 않고 토큰 단위로 읽어 {@link Face}를 바로 채운다.
+ * 응답에 있는 필드만 채우므로 {@link DetectOptions}로 요청하지 않은 faceId, 랜드마크, emotion 은 null 로 남는다.
+ * {@link Face}에 없는 속성(age, headPose 등)은 읽지 않고 건너뛴다.
+ *
+ * @version 0.1
+ */
+final class FaceResponseParser {
+
+    private static final JsonReader.Options FACE_NAMES =
+            JsonReader.Options.of("faceId", "faceRectangle", "faceAttributes", "faceLandmarks");
+
+    private static final JsonReader.Options RECTANGLE_NAMES =
+            JsonReader.Options.of("left", "top", "width", "height");
+
+    private static final JsonReader.Options ATTRIBUTE_NAMES =
+            JsonReader.Options.of("emotion");
+
+    private static final JsonReader.Options POINT_NAMES =
+            JsonReader.Options.of("x", "y");
+
+    private static final JsonReader.Options ERROR_NAMES =
+            JsonReader.Options.of("error");
+
+    private static final JsonReader.Options ERROR_FIELD_NAMES =
+            JsonReader.Options.of("code", "message");
+
+    private static final JsonReader.Options EMOTION_NAMES = JsonReader.Options.of(
+            "anger", "contempt", "disgust", "fear", "happiness", "neutral", "sadness", "surprise");
+
+    private FaceResponseParser() {
+    }
+
+    /**
+     * @param source detect 응답 본문. 다 읽은 후에도 닫지 않는다.
+     * @return 응답 순서대로의 얼굴 리스트
+     * @throws IOException 본문을 읽지 못했거나 응답 형식이 맞지 않을 때
+     */
+    static List<Face> parse(BufferedSource source) throws IOException {
+        JsonReader reader = JsonReader.of(source);
+        try {
+            List<Face> faces = new ArrayList<>();
+            reader.beginArray();
+            while (reader.hasNext()) {
+                faces.add(readFace(reader));
+            }
+            reader.endArray();
+            return faces;
+        } catch (JsonDataException e) {
+            throw new IOException("Unexpected detect response: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 2xx 가 아닌 응답의 {"error":{"code":..., "message":...}} 본문을 읽는다.
+     * 본문이 이 형식이 아니어도 상태 코드를 담은 예외를 돌려준다.
+     *
+     * @param statusCode       HTTP 상태 코드
+     * @param source           응답 본문. 다 읽은 후에도 닫지 않는다.
+     * @param retryAfterMillis Retry-After 헤더 값(ms). 없으면 -1
+     */
+    static FaceApiException parseError(int statusCode, BufferedSource source, long retryAfterMillis) {
+        String code = "HttpError";
+        String message = "";
+
+        JsonReader reader = JsonReader.of(source);
+        try {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if (reader.selectName(ERROR_NAMES) != 0) {
+                    reader.skipName();
+                    reader.skipValue();
+                    continue;
+                }
+
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    switch (reader.selectName(ERROR_FIELD_NAMES)) {
+                        case 0:
+                            code = reader.nextString();
+                            break;
+                        case 1:
+                            message = reader.nextString();
+                            break;
+                        default:
+                            reader.skipName();
+                            reader.skipValue();
+                            break;
+                    }
+                }
+                reader.endObject();
+            }
+        } catch (IOException | JsonDataException e) {
+            // 형식이 다른 오류 본문(HTML 게이트웨이 오류 등)은 상태 코드만 전달한다.
+        }
+
+        return new FaceApiException(statusCode, code, message, retryAfterMillis);
+    }
+
+    private static Face readFace(JsonReader reader) throws IOException {
+        String faceId = null;
+        Rectangle rectangle = null;
+        Face.Emotion emotion = null;
+        Map<String, float[]> landmarks = null;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.selectName(FACE_NAMES)) {
+                case 0:
+                    faceId = reader.nextString();
+                    break;
+                case 1:
+                    rectangle = readRectangle(reader);
+                    break;
+                case 2:
+                    emotion = readEmotion(reader);
+                    break;
+                case 3:
+                    landmarks = readLandmarks(reader);
+                    break;
+                default:
+                    reader.skipName();
+                    reader.skipValue();
+                    break;
+            }
+        }
+        reader.endObject();
+
+        Face face = new Face(faceId, rectangle, emotion);
+        if (landmarks != null)
+            face.setLandmarks(landmarks);
+        return face;
+    }
+
+    /**
+     * {"pupilLeft": {"x": .., "y": ..}, ...} 를 응답 순서대로 읽는다.
+     */
+    private static Map<String, float[]> readLandmarks(JsonReader reader) throws IOException {
+        Map<String, float[]> landmarks = new LinkedHashMap<>(64);
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            float[] point = new float[2];
+
+            reader.beginObject();
+            while (reader.hasNext()) {
+                int index = reader.selectName(POINT_NAMES);
+                if (index >= 0) {
+                    point[index] = (float) reader.nextDouble();
+                } else {
+                    reader.skipName();
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+
+            landmarks.put(name, point);
+        }
+        reader.endObject();
+
+        return landmarks;
+    }
+
+    private static Rectangle readRectangle(JsonReader reader) throws IOException {
+        Rectangle r = new Rectangle();
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.selectName(RECTANGLE_NAMES)) {
+                case 0:
+                    r.x = reader.nextInt();
+                    break;
+                case 1:
+                    r.y = reader.nextInt();
+                    break;
+                case 2:
+                    r.width = reader.nextInt();
+                    break;
+                case 3:
+                    r.height = reader.nextInt();
+                    break;
+                default:
+                    reader.skipName();
+                    reader.skipValue();
+                    break;
+            }
+        }
+        reader.endObject();
+
+        return r;
+    }
+
+    /**
+     * faceAttributes 객체에서 emotion 만 읽는다.
+     */
+    private static Face.Emotion readEmotion(JsonReader reader) throws IOException {
+        Face.Emotion emotion = null;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (reader.selectName(ATTRIBUTE_NAMES) == 0) {
+                emotion = readEmotionScores(reader);
+            } else {
+                reader.skipName();
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        return emotion;
+    }
+
+    private static Face.Emotion readEmotionScores(JsonReader reader) throws IOException {
+        double[] scores = new double[8];
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            int index = reader.selectName(EMOTION_NAMES);
+            if (index >= 0) {
+                scores[index] = reader.nextDouble();
+            } else {
+                reader.skipName();
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        return new Face.Emotion(
+                scores[0], scores[1], scores[2], scores[3],
+                scores[4], scores[5], scores[6], scores[7]);
+    }
+}
@@ -0,0 +1,194 @@
+package com.dominic.skuface;
+
+import android.support.constraint.solver.widgets.Rectangle;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 여러 이미지의 얼굴 영역(타일)을 하나의 이미지에 배치하는 shelf 방식의 bin-packing
+ * 타일은 넣은 순서대로 왼쪽에서 오른쪽으로 놓이며, 줄이 차면 지금까지 가장 높은 타일 아래에 새 줄을 시작한다.
+ * 타일 사이와 가장자리에는 gutter 만큼 빈 공간을 두어 서비스가 이웃한 타일의 얼굴을 하나로 보지 않도록 한다.
+ * <p>
+ * 합친 이미지의 응답은 {@link #split(List)}로 타일마다 나누어 원래 이미지 좌표로 되돌린다.
+ *
+ * @version 0.1
+ */
+public final class MosaicLayout {
+
+    private final int maxWidth;
+    private final int maxHeight;
+    private final int gutter;
+
+    private final List<Rectangle> sourceRegions = new ArrayList<>();
+    private final List<Rectangle> placements = new ArrayList<>();
+
+    private int shelfX;
+    private int shelfY;
+    private int shelfHeight;
+    private int width;
+    private int height;
+
+    /**
+     * @param maxWidth  합친 이미지의 최대 너비
+     * @param maxHeight 합친 이미지의 최대 높이
+     * @param gutter    타일 사이와 가장자리의 빈 공간(px)
+     */
+    public MosaicLayout(int maxWidth, int maxHeight, int gutter) {
+        if (maxWidth <= 2 * gutter || maxHeight <= 2 * gutter)
+            throw new IllegalArgumentException("Mosaic is smaller than its gutters");
+
+        this.maxWidth = maxWidth;
+        this.maxHeight = maxHeight;
+        this.gutter = gutter;
+        this.shelfX = gutter;
+        this.shelfY = gutter;
+    }
+
+    /**
+     * @param sourceRegion 타일로 옮길 원래 이미지의 영역. 변경되지 않는다.
+     * @param tileWidth    합친 이미지에서의 타일 너비
+     * @param tileHeight   합친 이미지에서의 타일 높이
+     * @return 타일 번호. 남은 공간에 들어가지 않으면 -1
+     */
+    public int add(Rectangle sourceRegion, int tileWidth, int tileHeight) {
+        if (tileWidth <= 0 || tileHeight <= 0)
+            throw new IllegalArgumentException("Tile size must be positive");
+
+        int x = shelfX;
+        int y = shelfY;
+        int rowHeight = shelfHeight;
+        if (x + tileWidth + gutter > maxWidth) {
+            // 새 줄
+            x = gutter;
+            y = shelfY + shelfHeight + gutter;
+            rowHeight = 0;
+        }
+        if (x + tileWidth + gutter > maxWidth || y + tileHeight + gutter > maxHeight)
+            return -1;
+
+        Rectangle placement = new Rectangle();
+        placement.setBounds(x, y, tileWidth, tileHeight);
+        Rectangle source = new Rectangle();
+        source.setBounds(sourceRegion.x, sourceRegion.y, sourceRegion.width, sourceRegion.height);
+
+        placements.add(placement);
+        sourceRegions.add(source);
+
+        shelfX = x + tileWidth + gutter;
+        shelfY = y;
+        shelfHeight = Math.max(rowHeight, tileHeight);
+        width = Math.max(width, shelfX);
+        height = Math.max(height, shelfY + shelfHeight + gutter);
+        return placements.size() - 1;
+    }
+
+    public int getTileCount() {
+        return placements.size();
+    }
+
+    /**
+     * @return 합친 이미지에서 타일의 위치
+     */
+    public Rectangle getPlacement(int tile) {
+        return placements.get(tile);
+    }
+
+    public Rectangle getSourceRegion(int tile) {
+        return sourceRegions.get(tile);
+    }
+
+    /**
+     * @return 지금까지 놓은 타일을 모두 담는 합친 이미지의 너비. 타일이 없으면 0
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * @return 지금까지 놓은 타일을 모두 담는 합친 이미지의 높이. 타일이 없으면 0
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * @return 점을 포함하는 타일 번호. 빈 공간이면 -1
+     */
+    public int tileAt(int x, int y) {
+        for (int i = 0; i < placements.size(); i++) {
+            if (placements.get(i).contains(x, y))
+                return i;
+        }
+        return -1;
+    }
+
+    /**
+     * 얼굴은 중심점이 있는 타일에 속하며, 타일 밖으로 나간 부분은 잘라낸다. 빈 공간에 중심이 있는 얼굴은 버린다.
+     *
+     * @param faces 합친 이미지 좌표의 응답 얼굴들. 변경되지 않는다.
+     * @return 타일 번호 순서의, 원래 이미지 좌표로 되돌린 얼굴 복사본들
+     */
+    public List<List<Face>> split(List<Face> faces) {
+        List<List<Face>> result = new ArrayList<>(placements.size());
+        for (int i = 0; i < placements.size(); i++) {
+            result.add(new ArrayList<Face>());
+        }
+
+        for (Face face : faces) {
+            Rectangle r = face.getFaceRectangle();
+            if (r == null)
+                continue;
+
+            int tile = tileAt(r.x + r.width / 2, r.y + r.height / 2);
+            if (tile < 0)
+                continue;
+
+            Face copy = face.copy();
+            copy.setFaceRectangle(toSourceRectangle(tile, r));
+            if (copy.getLandmarks() != null) {
+                for (float[] point : copy.getLandmarks().values()) {
+                    toSourcePoint(tile, point);
+                }
+            }
+            result.get(tile).add(copy);
+        }
+        return result;
+    }
+
+    /**
+     * @param point 합친 이미지 좌표의 {x, y}. 값이 직접 변경된다.
+     */
+    void toSourcePoint(int tile, float[] point) {
+        Rectangle p = placements.get(tile);
+        Rectangle s = sourceRegions.get(tile);
+        point[0] = s.x + (point[0] - p.x) * s.width / p.width;
+        point[1] = s.y + (point[1] - p.y) * s.height / p.height;
+    }
+
+    /**
+     * @param rectangle 합친 이미지 좌표의 사각형
+     * @return 타일의 원래 이미지 좌표로 바꾼 새 사각형
+     */
+    Rectangle toSourceRectangle(int tile, Rectangle rectangle) {
+        Rectangle p = placements.get(tile);
+        Rectangle s = sourceRegions.get(tile);
+
+        int left = Math.max(rectangle.x, p.x);
+        int top = Math.max(rectangle.y, p.y);
+        int right = Math.min(rectangle.x + rectangle.width, p.x + p.width);
+        int bottom = Math.min(rectangle.y + rectangle.height, p.y + p.height);
+
+        double scaleX = (double) s.width / p.width;
+        double scaleY = (double) s.height / p.height;
+
+        int x0 = s.x + (int) Math.round((left - p.x) * scaleX);
+        int y0 = s.y + (int) Math.round((top - p.y) * scaleY);
+        int x1 = s.x + (int) Math.round((right - p.x) * scaleX);
+        int y1 = s.y + (int) Math.round((bottom - p.y) * scaleY);
+
+        Rectangle result = new Rectangle();
+        result.setBounds(x0, y0, x1 - x0, y1 - y0);
+        return result;
+    }
+}
@@ -0,0 +1,36 @@
+package com.dominic.skuface;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * {@link DetectOptions}가 만드는 쿼리 문자열을 확인한다.
+ */
+public class DetectOptionsTest {
+
+    @Test
+    public void defaults_matchPreviousQuery() {
+        assertEquals("?returnFaceId=true&returnFaceLandmarks=false&returnFaceAttributes=emotion",
+                new DetectOptions().toQueryString());
+    }
+
+    @Test
+    public void rectanglesOnly_requestsNothingElse() {
+        assertEquals("?returnFaceId=false&returnFaceLandmarks=false",
+                DetectOptions.rectanglesOnly().toQueryString());
+    }
+
+    @Test
+    public void allOptions() {
+        DetectOptions options = new DetectOptions()
+                .setReturnFaceLandmarks(true)
+                .setAttributes(DetectOptions.ATTRIBUTE_AGE, DetectOptions.ATTRIBUTE_EMOTION)
+                .setDetectionModel(DetectOptions.DETECTION_01)
+                .setRecognitionModel(DetectOptions.RECOGNITION_02);
+
+        assertEquals("?returnFaceId=true&returnFaceLandmarks=true&returnFaceAttributes=age,emotion"
+                        + "&detectionModel=detection_01&recognitionModel=recognition_02",
+                options.toQueryString());
+    }
+}
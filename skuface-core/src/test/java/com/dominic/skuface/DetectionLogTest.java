@@ -0,0 +1,129 @@
+package com.dominic.skuface;
+
+import android.support.constraint.solver.widgets.Rectangle;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * {@link DetectionLog}의 기록, 기간 조회, 세그먼트 교체와 보존을 확인한다.
+ */
+public class DetectionLogTest {
+
+    private static final String UUID_FACE_ID = "c5c24a82-6845-4031-9d5d-978df9175426";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void recordsRoundTripAcrossReopen() throws Exception {
+        File dir = folder.newFolder();
+        List<Face> faces = Arrays.asList(
+                face(UUID_FACE_ID, 10, 20, 30, 40, new Face.Emotion(0, 0, 0, 0, 0.75, 0.25, 0, 0)),
+                face("not-a-uuid", 1, 2, 3, 4, null),
+                face(null, 5, 6, 7, 8, null));
+
+        DetectionLog log = new DetectionLog(dir);
+        log.append(1000, "image-1", faces);
+        log.append(2000, null, Collections.<Face>emptyList());
+        log.close();
+
+        log = new DetectionLog(dir);
+        final List<DetectionLog.Record> seen = new ArrayList<>();
+        final List<List<Face>> read = new ArrayList<>();
+        final List<String> sources = new ArrayList<>();
+        log.scan(0, Long.MAX_VALUE, new DetectionLog.RecordVisitor() {
+            @Override
+            public boolean visit(DetectionLog.Record record) {
+                seen.add(record);
+                read.add(record.toFaces());
+                sources.add(record.getSourceId());
+                return true;
+            }
+        });
+
+        assertEquals(2, read.size());
+        assertEquals(Arrays.asList("image-1", ""), sources);
+        List<Face> first = read.get(0);
+        assertEquals(3, first.size());
+        assertEquals(UUID_FACE_ID, first.get(0).getFaceId());
+        assertEquals("not-a-uuid", first.get(1).getFaceId());
+        assertNull(first.get(2).getFaceId());
+        assertEquals(30, first.get(0).getFaceRectangle().width);
+        assertEquals(8, first.get(2).getFaceRectangle().height);
+        assertEquals("happiness", first.get(0).getEmotion().getDominantEmotion());
+        assertNull(first.get(1).getEmotion());
+
+        // 다시 연 로그에 이어 쓴다.
+        log.append(3000, "image-3", faces);
+        assertEquals(3, log.getRecordCount());
+        assertEquals(1, log.getSegmentCount());
+        log.close();
+    }
+
+    @Test
+    public void rollsOverAndScansTimeRange() throws Exception {
+        File dir = folder.newFolder();
+        DetectionLog log = new DetectionLog(dir).setSegmentBytes(4096).setRetention(0, 0);
+        List<Face> faces = Collections.singletonList(
+                face(UUID_FACE_ID, 0, 0, 50, 50, new Face.Emotion(0.9, 0, 0, 0, 0.1, 0, 0, 0)));
+        for (int i = 0; i < 1000; i++) {
+            log.append(i * 10L, "image-" + i, faces);
+        }
+        assertTrue(log.getSegmentCount() > 1);
+
+        DetectionLog.Aggregate aggregate = log.aggregate(2000, 3000);
+        assertEquals(100, aggregate.getRecordCount());
+        assertEquals(100, aggregate.getFaceCount());
+        assertEquals(2000, aggregate.getFirstTimestampMillis());
+        assertEquals(2990, aggregate.getLastTimestampMillis());
+        assertEquals(100, aggregate.getDominantCount(EmotionAggregator.ANGER));
+        assertEquals(0.9, aggregate.getMeanEmotion(EmotionAggregator.ANGER), 1e-6);
+        int segments = log.getSegmentCount();
+        log.close();
+
+        // 닫힌 세그먼트는 저장된 색인으로 다시 연다.
+        log = new DetectionLog(dir);
+        assertEquals(segments, log.getSegmentCount());
+        assertEquals(1000, log.getRecordCount());
+        assertEquals(100, log.aggregate(2000, 3000).getRecordCount());
+        assertEquals(0, log.aggregate(20000, 30000).getRecordCount());
+        log.close();
+    }
+
+    @Test
+    public void retention_deletesOldestSegments() throws Exception {
+        File dir = folder.newFolder();
+        DetectionLog log = new DetectionLog(dir).setSegmentBytes(4096).setRetention(8192, 0);
+        List<Face> faces = Collections.singletonList(face(UUID_FACE_ID, 0, 0, 50, 50, null));
+        for (int i = 0; i < 2000; i++) {
+            log.append(i, "image-" + i, faces);
+        }
+
+        assertTrue(log.getTotalBytes() <= 8192 + 4096);
+        DetectionLog.Aggregate aggregate = log.aggregate(0, Long.MAX_VALUE);
+        assertEquals(1999, aggregate.getLastTimestampMillis());
+        assertTrue(aggregate.getFirstTimestampMillis() > 0);
+
+        log.setRetention(0, 1);
+        log.append(System.currentTimeMillis(), "now", faces);
+        log.enforceRetention();
+        assertEquals(1, log.getSegmentCount());
+        log.close();
+    }
+
+    private static Face face(String faceId, int x, int y, int width, int height, Face.Emotion emotion) {
+        Rectangle r = new Rectangle();
+        r.setBounds(x, y, width, height);
+        return new Face(faceId, r, emotion);
+    }
+}
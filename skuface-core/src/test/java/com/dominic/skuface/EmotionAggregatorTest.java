@@ -0,0 +1,112 @@
+package com.dominic.skuface;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * {@link EmotionAggregator}의 증분 통계를 창 안의 값을 다시 계산한 결과와 비교한다.
+ */
+public class EmotionAggregatorTest {
+
+    private static final int WINDOW = 7;
+
+    @Test
+    public void slidingStatistics_matchRecomputation() {
+        EmotionAggregator aggregator = new EmotionAggregator(WINDOW);
+        Random random = new Random(0);
+        double[][] history = new double[200][];
+
+        EmotionAggregator.Series series = null;
+        for (int n = 0; n < history.length; n++) {
+            Face.Emotion emotion = randomEmotion(random);
+            history[n] = scores(emotion);
+            series = aggregator.update(1, n, emotion);
+
+            int from = Math.max(0, n - WINDOW + 1);
+            assertEquals(n - from + 1, series.getCount());
+            for (int k = 0; k < EmotionAggregator.EMOTION_COUNT; k++) {
+                double sum = 0;
+                double min = Double.MAX_VALUE;
+                double max = -Double.MAX_VALUE;
+                for (int i = from; i <= n; i++) {
+                    sum += history[i][k];
+                    min = Math.min(min, history[i][k]);
+                    max = Math.max(max, history[i][k]);
+                }
+                assertEquals(sum / (n - from + 1), series.getMean(k), 1e-9);
+                assertEquals(min, series.getMin(k), 0);
+                assertEquals(max, series.getMax(k), 0);
+            }
+        }
+        assertEquals(history.length, series.getUpdateCount());
+    }
+
+    @Test
+    public void ewmaAndDominant() {
+        EmotionAggregator aggregator = new EmotionAggregator(4).setEwmaAlpha(0.5);
+        aggregator.update(1, 0, emotionWith(EmotionAggregator.SADNESS));
+        EmotionAggregator.Series series = aggregator.update(1, 1, emotionWith(EmotionAggregator.HAPPINESS));
+
+        assertEquals(0.5, series.getEwma(EmotionAggregator.SADNESS), 1e-9);
+        assertEquals(0.5, series.getEwma(EmotionAggregator.HAPPINESS), 1e-9);
+
+        aggregator.update(1, 2, emotionWith(EmotionAggregator.HAPPINESS));
+        assertEquals("happiness", series.getDominantEmotion());
+        assertEquals(EmotionAggregator.HAPPINESS, series.getEwmaDominantIndex());
+        assertEquals("happiness", series.toMeanEmotion().getDominantEmotion());
+    }
+
+    @Test
+    public void timeWindow_dropsOldSamples() {
+        EmotionAggregator aggregator = new EmotionAggregator(100).setWindowMillis(1000);
+        aggregator.update(1, 0, emotionWith(EmotionAggregator.ANGER));
+        aggregator.update(1, 500, emotionWith(EmotionAggregator.ANGER));
+        EmotionAggregator.Series series = aggregator.update(1, 1200, emotionWith(EmotionAggregator.FEAR));
+
+        assertEquals(2, series.getCount());
+        assertEquals(0.5, series.getMean(EmotionAggregator.ANGER), 1e-9);
+        assertEquals(1200, series.getLastTimestampMillis());
+    }
+
+    @Test
+    public void manyTracks_keepSeparateSeries() {
+        EmotionAggregator aggregator = new EmotionAggregator(2);
+        for (int id = 0; id < 1000; id++) {
+            aggregator.update(id, 0, emotionWith(id % EmotionAggregator.EMOTION_COUNT));
+        }
+        assertEquals(1000, aggregator.size());
+
+        for (int id = 0; id < 1000; id += 2) {
+            assertTrue(aggregator.remove(id));
+        }
+        assertFalse(aggregator.remove(0));
+        assertEquals(500, aggregator.size());
+
+        for (int id = 0; id < 1000; id++) {
+            EmotionAggregator.Series series = aggregator.get(id);
+            if (id % 2 == 0) {
+                assertNull(series);
+            } else {
+                assertEquals(id % EmotionAggregator.EMOTION_COUNT, series.getDominantIndex());
+            }
+        }
+    }
+
+    private static Face.Emotion emotionWith(int dominant) {
+        double[] s = new double[EmotionAggregator.EMOTION_COUNT];
+        s[dominant] = 1;
+        return new Face.Emotion(s[0], s[1], s[2], s[3], s[4], s[5], s[6], s[7]);
+    }
+
+    private static Face.Emotion randomEmotion(Random random) {
+        return new Face.Emotion(random.nextDouble(), random.nextDouble(), random.nextDouble(), random.nextDouble(),
+                random.nextDouble(), random.nextDouble(), random.nextDouble(), random.nextDouble());
+    }
+
+    private static double[] scores(Face.Emotion e) {
+        return new double[]{e.anger, e.contempt, e.disgust, e.fear, e.happiness, e.neutral, e.sadness, e.surprise};
+    }
+}
@@ -0,0 +1,90 @@
+package com.dominic.skuface;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * {@link FaceIdRegistry}의 만료와 용량 제한을 확인한다.
+ */
+public class FaceIdRegistryTest {
+
+    @Test
+    public void expiresBeforeServiceTtlBySafetyMargin() {
+        FaceIdRegistry registry = new FaceIdRegistry().setSafetyMarginMillis(TimeUnit.MINUTES.toMillis(5));
+        long now = System.currentTimeMillis();
+
+        registry.put("fresh", "id-1", now - TimeUnit.HOURS.toMillis(23));
+        registry.put("almost", "id-2", now - TimeUnit.HOURS.toMillis(24) + TimeUnit.MINUTES.toMillis(1));
+
+        assertEquals("id-1", registry.get("fresh"));
+        assertNull(registry.get("almost"));
+        assertEquals(1, registry.getExpiredCount());
+    }
+
+    @Test
+    public void putEvictsExpiredEntriesFromTheFront() {
+        FaceIdRegistry registry = new FaceIdRegistry().setTtlMillis(1000).setSafetyMarginMillis(0);
+        long now = System.currentTimeMillis();
+
+        registry.put("old-1", "id-1", now - 5000);
+        registry.put("old-2", "id-2", now - 5000);
+        registry.put("new", "id-3", now);
+
+        assertEquals(1, registry.size());
+        assertEquals(2, registry.getExpiredCount());
+    }
+
+    @Test
+    public void maxEntries_dropsOldest() {
+        FaceIdRegistry registry = new FaceIdRegistry().setMaxEntries(2);
+        registry.put("a", "id-a");
+        registry.put("b", "id-b");
+        registry.put("c", "id-c");
+
+        assertEquals(2, registry.size());
+        assertNull(registry.get("a"));
+        assertEquals("id-c", registry.get("c"));
+    }
+
+    @Test
+    public void getFaceIds_skipsMissingAndDuplicates() {
+        FaceIdRegistry registry = new FaceIdRegistry();
+        registry.put("track-1", "id-1");
+        registry.put("track-2", "id-1");
+        registry.put("track-3", "id-3");
+
+        assertEquals(Arrays.asList("id-1", "id-3"),
+                registry.getFaceIds(Arrays.asList("track-1", "track-2", "track-9", "track-3")));
+        assertEquals(1, registry.getMissCount());
+    }
+
+    @Test
+    public void ttlCannotExceedServiceLimit() {
+        FaceIdRegistry registry = new FaceIdRegistry().setTtlMillis(TimeUnit.DAYS.toMillis(7)).setSafetyMarginMillis(0);
+        registry.put("a", "id-a", System.currentTimeMillis() - FaceIdRegistry.FACE_ID_TTL_MILLIS);
+        assertNull(registry.get("a"));
+    }
+
+    @Test
+    public void keepsIssuingEndpointPerFaceId() {
+        FaceIdRegistry registry = new FaceIdRegistry().setMaxEntries(2);
+        long now = System.currentTimeMillis();
+
+        registry.put("a", "id-1", now, "https://westus/detect");
+        registry.put("b", "id-2", now, "https://eastus/detect");
+        assertEquals("https://westus/detect", registry.getOrigin("id-1"));
+        assertEquals("https://eastus/detect", registry.getOrigin("id-2"));
+
+        // 같은 키를 다시 넣거나 밀려난 항목의 id 는 더 이상 찾지 않는다.
+        registry.put("b", "id-3", now, null);
+        registry.put("c", "id-4", now, "https://eastus/detect");
+        assertNull(registry.getOrigin("id-1"));
+        assertNull(registry.getOrigin("id-2"));
+        assertNull(registry.getOrigin("id-3"));
+        assertEquals("https://eastus/detect", registry.getOrigin("id-4"));
+    }
+}
@@ -0,0 +1,171 @@
+package com.dominic.skuface;
+
+import android.support.constraint.solver.widgets.Rectangle;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import okio.Buffer;
+
+import static org.junit.Assert.*;
+
+/**
+ * {@link FaceResponseParser}가 기존 org.json 파싱과 같은 결과를 내는지 확인한다.
+ */
+public class FaceResponseParserTest {
+
+    @Test
+    public void emptyResponse() throws Exception {
+        assertTrue(FaceResponseParser.parse(new Buffer().writeUtf8("[]")).isEmpty());
+    }
+
+    @Test
+    public void sameAsJsonTree_1Face() throws Exception {
+        assertSameAsJsonTree(response(1, false));
+    }
+
+    @Test
+    public void sameAsJsonTree_100Faces() throws Exception {
+        assertSameAsJsonTree(response(100, false));
+    }
+
+    @Test
+    public void skipsFieldsNotRequested() throws Exception {
+        assertSameAsJsonTree(response(10, true));
+    }
+
+    @Test
+    public void rectanglesOnly_leavesMissingFieldsNull() throws Exception {
+        List<Face> faces = FaceResponseParser.parse(new Buffer().writeUtf8(
+                "[{\"faceRectangle\":{\"top\":10,\"left\":20,\"width\":30,\"height\":40}}]"));
+
+        assertEquals(1, faces.size());
+        Face face = faces.get(0);
+        assertNull(face.getFaceId());
+        assertNull(face.getEmotion());
+        assertNull(face.getLandmarks());
+        assertEquals(20, face.getFaceRectangle().x);
+        assertEquals(40, face.getFaceRectangle().height);
+    }
+
+    @Test
+    public void readsLandmarksWhenPresent() throws Exception {
+        List<Face> faces = FaceResponseParser.parse(new Buffer().writeUtf8(response(2, true)));
+
+        float[] pupilLeft = faces.get(0).getLandmarks().get("pupilLeft");
+        assertEquals(504.8f, pupilLeft[0], 0.001f);
+        assertEquals(206.8f, pupilLeft[1], 0.001f);
+        assertEquals(2, faces.get(1).getLandmarks().size());
+    }
+
+    @Test(expected = java.io.IOException.class)
+    public void errorBody_throwsIOException() throws Exception {
+        FaceResponseParser.parse(new Buffer().writeUtf8(
+                "{\"error\":{\"code\":\"RateLimitExceeded\",\"message\":\"Rate limit is exceeded.\"}}"));
+    }
+
+    private static void assertSameAsJsonTree(String json) throws Exception {
+        List<Face> expected = parseWithJsonTree(json);
+        List<Face> actual = FaceResponseParser.parse(new Buffer().writeUtf8(json));
+
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            Face e = expected.get(i);
+            Face a = actual.get(i);
+
+            assertEquals(e.getFaceId(), a.getFaceId());
+
+            Rectangle er = e.getFaceRectangle();
+            Rectangle ar = a.getFaceRectangle();
+            assertEquals(er.x, ar.x);
+            assertEquals(er.y, ar.y);
+            assertEquals(er.width, ar.width);
+            assertEquals(er.height, ar.height);
+
+            assertEquals(e.getEmotion().toString(), a.getEmotion().toString());
+            assertEquals(e.getEmotion().anger, a.getEmotion().anger, 0);
+            assertEquals(e.getEmotion().contempt, a.getEmotion().contempt, 0);
+            assertEquals(e.getEmotion().disgust, a.getEmotion().disgust, 0);
+            assertEquals(e.getEmotion().fear, a.getEmotion().fear, 0);
+            assertEquals(e.getEmotion().happiness, a.getEmotion().happiness, 0);
+            assertEquals(e.getEmotion().neutral, a.getEmotion().neutral, 0);
+            assertEquals(e.getEmotion().sadness, a.getEmotion().sadness, 0);
+            assertEquals(e.getEmotion().surprise, a.getEmotion().surprise, 0);
+        }
+    }
+
+    /**
+     * 스트리밍 파서 도입 전 FaceApi 의 org.json 파싱 방식
+     */
+    private static List<Face> parseWithJsonTree(String json) throws Exception {
+        List<Face> faces = new ArrayList<>();
+        JSONArray result = new JSONArray(json);
+
+        for (int i = 0; i < result.length(); i++) {
+            JSONObject face = result.getJSONObject(i);
+
+            String faceId = face.getString("faceId");
+
+            JSONObject faceRectangle = face.getJSONObject("faceRectangle");
+            Rectangle r = new Rectangle();
+            r.width = faceRectangle.getInt("width");
+            r.height = faceRectangle.getInt("height");
+            r.x = faceRectangle.getInt("left");
+            r.y = faceRectangle.getInt("top");
+
+            JSONObject emotion = face.getJSONObject("faceAttributes").getJSONObject("emotion");
+
+            faces.add(new Face(faceId, r, new Face.Emotion(
+                    emotion.getDouble("anger"),
+                    emotion.getDouble("contempt"),
+                    emotion.getDouble("disgust"),
+                    emotion.getDouble("fear"),
+                    emotion.getDouble("happiness"),
+                    emotion.getDouble("neutral"),
+                    emotion.getDouble("sadness"),
+                    emotion.getDouble("surprise")
+            )));
+        }
+        return faces;
+    }
+
+    /**
+     * @param faceCount 응답에 포함할 얼굴 수
+     * @param extraFields true 이면 요청하지 않은 필드(landmarks, 다른 attributes)를 섞는다.
+     */
+    private static String response(int faceCount, boolean extraFields) {
+        Random random = new Random(faceCount);
+        StringBuilder sb = new StringBuilder("[");
+        for (int i = 0; i < faceCount; i++) {
+            if (i > 0)
+                sb.append(',');
+            sb.append("{\"faceId\":\"").append(String.format(Locale.US, "c5c24a82-6845-4031-9d5d-%012d", i)).append("\",");
+            sb.append("\"faceRectangle\":{\"top\":").append(random.nextInt(3000))
+                    .append(",\"left\":").append(random.nextInt(4000))
+                    .append(",\"width\":").append(36 + random.nextInt(500))
+                    .append(",\"height\":").append(36 + random.nextInt(500)).append("},");
+            if (extraFields) {
+                sb.append("\"faceLandmarks\":{\"pupilLeft\":{\"x\":504.8,\"y\":206.8},\"noseTip\":{\"x\":558.7,\"y\":260.2}},");
+            }
+            sb.append("\"faceAttributes\":{");
+            if (extraFields) {
+                sb.append("\"age\":27.0,\"gender\":\"male\",\"hair\":{\"bald\":0.1,\"hairColor\":[{\"color\":\"brown\",\"confidence\":1.0}]},");
+            }
+            sb.append("\"emotion\":{");
+            String[] names = {"anger", "contempt", "disgust", "fear", "happiness", "neutral", "sadness", "surprise"};
+            for (int n = 0; n < names.length; n++) {
+                if (n > 0)
+                    sb.append(',');
+                sb.append('"').append(names[n]).append("\":").append(random.nextInt(1000) / 1000.0);
+            }
+            sb.append("}}}");
+        }
+        return sb.append(']').toString();
+    }
+}
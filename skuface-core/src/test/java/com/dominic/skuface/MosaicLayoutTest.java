@@ -0,0 +1,104 @@
+package com.dominic.skuface;
+
+import android.support.constraint.solver.widgets.Rectangle;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * {@link MosaicLayout}의 배치와 응답 좌표 되돌리기를 확인한다.
+ */
+public class MosaicLayoutTest {
+
+    @Test
+    public void tilesDoNotOverlapAndKeepGutter() {
+        MosaicLayout layout = new MosaicLayout(1000, 1000, 10);
+        int added = 0;
+        for (int i = 0; i < 200; i++) {
+            int size = 50 + (i * 37) % 150;
+            if (layout.add(rect(0, 0, size * 2, size * 2), size, size) < 0)
+                break;
+            added++;
+        }
+        assertTrue(added > 10);
+        assertEquals(added, layout.getTileCount());
+        assertTrue(layout.getWidth() <= 1000);
+        assertTrue(layout.getHeight() <= 1000);
+
+        for (int i = 0; i < added; i++) {
+            Rectangle a = layout.getPlacement(i);
+            assertTrue(a.x >= 10 && a.y >= 10);
+            assertTrue(a.x + a.width + 10 <= layout.getWidth());
+            assertTrue(a.y + a.height + 10 <= layout.getHeight());
+            for (int j = i + 1; j < added; j++) {
+                Rectangle b = layout.getPlacement(j);
+                boolean apart = a.x + a.width + 10 <= b.x || b.x + b.width + 10 <= a.x
+                        || a.y + a.height + 10 <= b.y || b.y + b.height + 10 <= a.y;
+                assertTrue("tiles " + i + " and " + j + " are too close", apart);
+            }
+        }
+    }
+
+    @Test
+    public void rejectsTileThatDoesNotFit() {
+        MosaicLayout layout = new MosaicLayout(100, 100, 10);
+        assertEquals(-1, layout.add(rect(0, 0, 90, 90), 90, 90));
+        assertEquals(0, layout.add(rect(0, 0, 80, 80), 80, 80));
+        assertEquals(-1, layout.add(rect(0, 0, 10, 10), 10, 10));
+        assertEquals(100, layout.getWidth());
+        assertEquals(100, layout.getHeight());
+    }
+
+    @Test
+    public void splitMapsFacesBackToSourceCoordinates() {
+        MosaicLayout layout = new MosaicLayout(1000, 1000, 10);
+        // 원본 400x400 영역을 200x200 타일로 줄여서 (10, 10)에 둔다.
+        assertEquals(0, layout.add(rect(1000, 2000, 400, 400), 200, 200));
+        // 원본 100x100 영역을 그대로 (220, 10)에 둔다.
+        assertEquals(1, layout.add(rect(50, 60, 100, 100), 100, 100));
+
+        List<Face> faces = new ArrayList<>();
+        faces.add(new Face("a", rect(60, 60, 50, 50), null));
+        faces.add(new Face("b", rect(240, 30, 40, 40), null));
+        // 중심이 빈 공간에 있는 얼굴은 버린다.
+        faces.add(new Face("gutter", rect(205, 100, 10, 10), null));
+        // 타일 밖으로 나간 부분은 잘린다.
+        faces.add(new Face("c", rect(290, 80, 40, 40), null));
+
+        List<List<Face>> split = layout.split(faces);
+        assertEquals(2, split.size());
+        assertEquals(1, split.get(0).size());
+        assertEquals(2, split.get(1).size());
+
+        Rectangle a = split.get(0).get(0).getFaceRectangle();
+        assertEquals("a", split.get(0).get(0).getFaceId());
+        assertEquals(1000 + 100, a.x);
+        assertEquals(2000 + 100, a.y);
+        assertEquals(100, a.width);
+        assertEquals(100, a.height);
+
+        Rectangle b = split.get(1).get(0).getFaceRectangle();
+        assertEquals(50 + 20, b.x);
+        assertEquals(60 + 20, b.y);
+        assertEquals(40, b.width);
+
+        Rectangle c = split.get(1).get(1).getFaceRectangle();
+        assertEquals(50 + 70, c.x);
+        assertEquals(60 + 70, c.y);
+        assertEquals(30, c.width);
+        assertEquals(30, c.height);
+
+        // 입력은 바뀌지 않는다.
+        assertEquals(60, faces.get(0).getFaceRectangle().x);
+    }
+
+    private static Rectangle rect(int x, int y, int width, int height) {
+        Rectangle r = new Rectangle();
+        r.setBounds(x, y, width, height);
+        return r;
+    }
+}
@@ -0,0 +1,54 @@
+package com.dominic.skuface;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Color;
+import android.support.constraint.solver.widgets.Rectangle;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.*;
+
+/**
+ * 합친 이미지가 배치한 크기 그대로 인코딩되어 타일 안의 얼굴이 다시 작아지지 않는지 확인한다.
+ * {@link AdaptiveJpegEncoder#encode(Bitmap)}는 같은 크기의 이미지를 0.5배 가까이 줄인다.
+ */
+@RunWith(AndroidJUnit4.class)
+public class MosaicEncodingTest {
+
+    @Test
+    public void mosaic_isEncodedAtLayoutSize() throws Exception {
+        MosaicLayout layout = new MosaicLayout(1920, 1920, 16);
+        Rectangle whole = new Rectangle();
+        whole.setBounds(0, 0, 1888, 1416);
+        assertEquals(0, layout.add(whole, 1888, 1416));
+        Rectangle region = new Rectangle();
+        region.setBounds(0, 0, 256, 256);
+        assertTrue(layout.add(region, 256, 256) >= 0);
+
+        Bitmap mosaic = Bitmap.createBitmap(layout.getWidth(), layout.getHeight(), Bitmap.Config.ARGB_8888);
+        mosaic.eraseColor(Color.GRAY);
+
+        FaceApi faceApi = new FaceApi(new FaceApiConfig()
+                .setEndpoint("https://localhost/face/v1.0/detect")
+                .setSubscriptionKey("key"));
+        try {
+            EncodedImage encoded = faceApi.encodeMosaic(mosaic);
+
+            assertEquals(layout.getWidth(), encoded.getWidth());
+            assertEquals(layout.getHeight(), encoded.getHeight());
+            assertEquals(1f, encoded.getScale(), 0);
+
+            BitmapFactory.Options bounds = new BitmapFactory.Options();
+            bounds.inJustDecodeBounds = true;
+            BitmapFactory.decodeByteArray(encoded.getData(), 0, encoded.getData().length, bounds);
+            assertEquals(layout.getWidth(), bounds.outWidth);
+            assertEquals(layout.getHeight(), bounds.outHeight);
+        } finally {
+            faceApi.shutdown();
+            mosaic.recycle();
+        }
+    }
+}
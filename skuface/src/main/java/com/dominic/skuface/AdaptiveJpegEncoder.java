@@ -0,0 +1,169 @@
+package com.dominic.skuface;
+
+import android.graphics.Bitmap;
+
+import java.io.ByteArrayOutputStream;
+
+/**
+ * 업로드 바이트를 줄이기 위한 기본 {@link ImageEncoder}
+ * <p>
+ * 1. 가장 작은 예상 얼굴이 검출기의 최소 얼굴 크기보다 크게 유지되는 가장 작은 해상도로 줄인다.
+ * 2. 바이트 예산 안에 들어오는 가장 높은 JPEG 품질을 이진 탐색으로 고른다.
+ * 3. 최저 품질로도 예산을 넘으면 해상도를 더 줄여 다시 시도한다.
+ *
+ * @version 0.1
+ */
+public class AdaptiveJpegEncoder implements ImageEncoder {
+
+    /**
+     * Face API 가 허용하는 최대 이미지 크기 (4MB)
+     */
+    public static final int MAX_UPLOAD_BYTES = 4 * 1024 * 1024;
+
+    /**
+     * Face API 가 검출할 수 있는 최소 얼굴 크기 (36 x 36 px)
+     */
+    public static final int DETECTOR_MIN_FACE_SIZE = 36;
+
+    /**
+     * Face API 가 허용하는 이미지의 최대 변 길이
+     */
+    public static final int MAX_DIMENSION = 4096;
+
+    private static final float STEP_DOWN_SCALE = 0.75f;
+
+    private float minFaceRatio = 0.05f;
+    private int targetFaceSize = 48;
+    private int maxBytes = 1024 * 1024;
+    private int minQuality = 50;
+    private int maxQuality = 90;
+
+    /**
+     * @param minFaceRatio 검출해야 하는 가장 작은 얼굴의 크기를 이미지 짧은 변에 대한 비율로 준다. Default : 0.05
+     */
+    public AdaptiveJpegEncoder setMinFaceRatio(float minFaceRatio) {
+        this.minFaceRatio = minFaceRatio;
+        return this;
+    }
+
+    /**
+     * @param targetFaceSize 축소 후 가장 작은 얼굴이 가져야 할 크기(px). {@link #DETECTOR_MIN_FACE_SIZE} 이상이어야 한다. Default : 48
+     */
+    public AdaptiveJpegEncoder setTargetFaceSize(int targetFaceSize) {
+        this.targetFaceSize = Math.max(DETECTOR_MIN_FACE_SIZE, targetFaceSize);
+        return this;
+    }
+
+    /**
+     * @param maxBytes 업로드 바이트 예산. {@link #MAX_UPLOAD_BYTES}를 넘을 수 없다. Default : 1MB
+     */
+    public AdaptiveJpegEncoder setMaxBytes(int maxBytes) {
+        this.maxBytes = Math.min(MAX_UPLOAD_BYTES, maxBytes);
+        return this;
+    }
+
+    /**
+     * @param minQuality 탐색할 최저 JPEG 품질. Default : 50
+     * @param maxQuality 탐색할 최고 JPEG 품질. Default : 90
+     */
+    public AdaptiveJpegEncoder setQualityRange(int minQuality, int maxQuality) {
+        this.minQuality = minQuality;
+        this.maxQuality = maxQuality;
+        return this;
+    }
+
+    @Override
+    public EncodedImage encode(Bitmap source) {
+        float scale = computeScale(source.getWidth(), source.getHeight());
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(maxBytes / 4);
+
+        while (true) {
+            int width = Math.max(1, Math.round(source.getWidth() * scale));
+            int height = Math.max(1, Math.round(source.getHeight() * scale));
+
+            Bitmap scaled = scale < 1f
+                    ? Bitmap.createScaledBitmap(source, width, height, true)
+                    : source;
+            try {
+                byte[] data = compressWithinBudget(scaled, buffer);
+                if (data != null)
+                    return new EncodedImage(data, width, height, source.getWidth(), source.getHeight());
+
+                // 최저 품질로도 예산을 넘는 경우 해상도를 더 줄인다.
+                if (Math.min(width, height) * STEP_DOWN_SCALE < DETECTOR_MIN_FACE_SIZE) {
+                    compress(scaled, minQuality, buffer);
+                    return new EncodedImage(buffer.toByteArray(), width, height, source.getWidth(), source.getHeight());
+                }
+                scale *= STEP_DOWN_SCALE;
+            } finally {
+                if (scaled != source)
+                    scaled.recycle();
+            }
+        }
+    }
+
+    /**
+     * 해상도를 줄이지 않고 품질만 탐색해 압축한다.
+     * 타일 크기를 이미 얼굴 크기에 맞춰 정한 합친 이미지처럼 더 줄이면 얼굴이 최소 크기 아래로 작아지는 이미지에 사용한다.
+     * 최저 품질로도 예산을 넘으면 최저 품질 결과를 그대로 돌려준다.
+     *
+     * @param source 원본 이미지. 변경하거나 recycle 하지 않는다.
+     * @return 원본과 같은 크기의 인코딩 결과
+     */
+    public EncodedImage encodeAtFullResolution(Bitmap source) {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(maxBytes / 4);
+        byte[] data = compressWithinBudget(source, buffer);
+        if (data == null) {
+            compress(source, minQuality, buffer);
+            data = buffer.toByteArray();
+        }
+        return new EncodedImage(data, source.getWidth(), source.getHeight(), source.getWidth(), source.getHeight());
+    }
+
+    /**
+     * 가장 작은 예상 얼굴이 {@link #targetFaceSize} 이상 유지되는 배율을 구한다.
+     *
+     * @return 0 초과 1 이하의 배율
+     */
+    float computeScale(int width, int height) {
+        float smallestFace = Math.min(width, height) * minFaceRatio;
+        float scale = smallestFace > 0 ? targetFaceSize / smallestFace : 1f;
+
+        int longest = Math.max(width, height);
+        if (longest * scale > MAX_DIMENSION)
+            scale = (float) MAX_DIMENSION / longest;
+
+        return Math.min(1f, scale);
+    }
+
+    /**
+     * 예산 안에 들어오는 가장 높은 품질로 압축한다.
+     *
+     * @return 예산을 만족하는 결과가 없으면 null
+     */
+    private byte[] compressWithinBudget(Bitmap bitmap, ByteArrayOutputStream buffer) {
+        compress(bitmap, maxQuality, buffer);
+        if (buffer.size() <= maxBytes)
+            return buffer.toByteArray();
+
+        byte[] best = null;
+        int low = minQuality;
+        int high = maxQuality - 1;
+        while (low <= high) {
+            int quality = (low + high) >>> 1;
+            compress(bitmap, quality, buffer);
+            if (buffer.size() <= maxBytes) {
+                best = buffer.toByteArray();
+                low = quality + 1;
+            } else {
+                high = quality - 1;
+            }
+        }
+        return best;
+    }
+
+    private static void compress(Bitmap bitmap, int quality, ByteArrayOutputStream buffer) {
+        buffer.reset();
+        bitmap.compress(Bitmap.CompressFormat.JPEG, quality, buffer);
+    }
+}
@@ -0,0 +1,158 @@
+package com.dominic.skuface;
+
+import android.content.ContentResolver;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.RectF;
+import android.net.Uri;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * 필요한 해상도로 줄여서 디코딩하는 유틸리티
+ * 먼저 크기만 읽은 뒤 {@link BitmapFactory.Options#inSampleSize}로 줄여서 디코딩하고,
+ * {@link BitmapPool}이 있으면 {@link BitmapFactory.Options#inBitmap}으로 메모리를 재사용한다.
+ *
+ * @version 0.1
+ */
+public final class BitmapDecoder {
+
+    private BitmapDecoder() {
+    }
+
+    /**
+     * @param data      JPEG 등 인코딩된 이미지
+     * @param reqWidth  필요한 최소 너비
+     * @param reqHeight 필요한 최소 높이
+     * @param pool      재사용할 비트맵 풀. null 이면 새로 할당한다.
+     * @return 디코딩된 mutable 비트맵. 디코딩할 수 없으면 null
+     */
+    public static Bitmap decode(byte[] data, int reqWidth, int reqHeight, BitmapPool pool) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray(data, 0, data.length, options);
+        if (options.outWidth <= 0 || options.outHeight <= 0)
+            return null;
+
+        prepare(options, reqWidth, reqHeight, pool);
+        try {
+            return BitmapFactory.decodeByteArray(data, 0, data.length, options);
+        } catch (IllegalArgumentException e) {
+            // inBitmap 을 재사용할 수 없는 경우 새로 할당한다.
+            releaseInBitmap(options, pool);
+            return BitmapFactory.decodeByteArray(data, 0, data.length, options);
+        }
+    }
+
+    /**
+     * @param resolver  이미지를 읽을 {@link ContentResolver}
+     * @param uri       갤러리 등에서 받은 이미지 {@link Uri}
+     * @param reqWidth  필요한 최소 너비
+     * @param reqHeight 필요한 최소 높이
+     * @param pool      재사용할 비트맵 풀. null 이면 새로 할당한다.
+     * @return 디코딩된 mutable 비트맵
+     * @throws IOException 이미지를 읽거나 디코딩할 수 없을 때
+     */
+    public static Bitmap decode(ContentResolver resolver, Uri uri, int reqWidth, int reqHeight, BitmapPool pool)
+            throws IOException {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        try (InputStream in = open(resolver, uri)) {
+            BitmapFactory.decodeStream(in, null, options);
+        }
+        if (options.outWidth <= 0 || options.outHeight <= 0)
+            throw new IOException("Cannot decode image " + uri);
+
+        prepare(options, reqWidth, reqHeight, pool);
+        Bitmap bitmap;
+        try (InputStream in = open(resolver, uri)) {
+            bitmap = BitmapFactory.decodeStream(in, null, options);
+        } catch (IllegalArgumentException e) {
+            releaseInBitmap(options, pool);
+            try (InputStream in = open(resolver, uri)) {
+                bitmap = BitmapFactory.decodeStream(in, null, options);
+            }
+        }
+        if (bitmap == null)
+            throw new IOException("Cannot decode image " + uri);
+        return bitmap;
+    }
+
+    /**
+     * 비트맵을 시계 방향으로 돌린다. 결과 비트맵은 풀에서 재사용하며 원본은 변경하지 않는다.
+     *
+     * @param source  원본 비트맵
+     * @param degrees 시계 방향 회전 각도 (90 의 배수)
+     * @param pool    재사용할 비트맵 풀. null 이면 새로 할당한다.
+     * @return 회전된 mutable 비트맵. 0도이면 원본
+     */
+    public static Bitmap rotate(Bitmap source, int degrees, BitmapPool pool) {
+        degrees = ((degrees % 360) + 360) % 360;
+        if (degrees == 0)
+            return source;
+
+        boolean swap = degrees % 180 != 0;
+        int width = swap ? source.getHeight() : source.getWidth();
+        int height = swap ? source.getWidth() : source.getHeight();
+
+        Bitmap rotated = pool != null ? pool.get(width * height * 4) : null;
+        if (rotated != null) {
+            rotated.reconfigure(width, height, Bitmap.Config.ARGB_8888);
+        } else {
+            rotated = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        }
+
+        Matrix matrix = new Matrix();
+        matrix.postRotate(degrees);
+        RectF bounds = new RectF(0, 0, source.getWidth(), source.getHeight());
+        matrix.mapRect(bounds);
+        matrix.postTranslate(-bounds.left, -bounds.top);
+
+        new Canvas(rotated).drawBitmap(source, matrix, new Paint(Paint.FILTER_BITMAP_FLAG));
+        return rotated;
+    }
+
+    /**
+     * 결과가 요청 크기 이상으로 유지되는 가장 큰 2의 거듭제곱 배율을 구한다.
+     */
+    static int computeSampleSize(int width, int height, int reqWidth, int reqHeight) {
+        int sampleSize = 1;
+        while (width / (sampleSize * 2) >= reqWidth && height / (sampleSize * 2) >= reqHeight) {
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+
+    private static void prepare(BitmapFactory.Options options, int reqWidth, int reqHeight, BitmapPool pool) {
+        options.inSampleSize = computeSampleSize(options.outWidth, options.outHeight, reqWidth, reqHeight);
+        options.inJustDecodeBounds = false;
+        options.inMutable = true;
+        options.inPreferredConfig = Bitmap.Config.ARGB_8888;
+
+        if (pool != null) {
+            // inSampleSize 로 줄어든 크기는 올림이 될 수 있으므로 여유있게 계산한다.
+            int width = (options.outWidth + options.inSampleSize - 1) / options.inSampleSize;
+            int height = (options.outHeight + options.inSampleSize - 1) / options.inSampleSize;
+            options.inBitmap = pool.get(width * height * 4);
+        }
+    }
+
+    private static void releaseInBitmap(BitmapFactory.Options options, BitmapPool pool) {
+        if (options.inBitmap != null) {
+            pool.put(options.inBitmap);
+            options.inBitmap = null;
+        }
+    }
+
+    private static InputStream open(ContentResolver resolver, Uri uri) throws FileNotFoundException {
+        InputStream in = resolver.openInputStream(uri);
+        if (in == null)
+            throw new FileNotFoundException(uri.toString());
+        return in;
+    }
+}
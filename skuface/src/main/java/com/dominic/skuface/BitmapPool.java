@@ -0,0 +1,125 @@
+package com.dominic.skuface;
+
+import android.graphics.Bitmap;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 다 사용한 {@link Bitmap}의 메모리를 다음 디코딩에서 재사용하기 위한 풀
+ * 할당 크기(byte)별로 나누어 보관하며 {@link android.graphics.BitmapFactory.Options#inBitmap}에 사용한다.
+ * 긴 시간 동작하는 키오스크에서 이미지마다 수 MB를 새로 할당하여 생기는 {@link OutOfMemoryError}를 줄인다.
+ *
+ * @version 0.1
+ * @see BitmapDecoder
+ */
+public class BitmapPool {
+
+    /**
+     * 요청 크기보다 이 배수 이상 큰 비트맵은 낭비가 커서 재사용하지 않는다.
+     */
+    private static final int MAX_SIZE_MULTIPLE = 2;
+
+    private final long maxPoolBytes;
+    private final TreeMap<Integer, ArrayDeque<Bitmap>> buckets = new TreeMap<>();
+    private long pooledBytes = 0;
+
+    private int hits = 0;
+    private int misses = 0;
+
+    /**
+     * @param maxPoolBytes 풀에 보관할 최대 바이트 수 (예: 메모리 클래스의 1/8)
+     */
+    public BitmapPool(long maxPoolBytes) {
+        this.maxPoolBytes = maxPoolBytes;
+    }
+
+    /**
+     * @param byteCount 필요한 바이트 수 (너비 x 높이 x 픽셀당 바이트)
+     * @return 재사용할 수 있는 mutable 비트맵. 없으면 null
+     */
+    public synchronized Bitmap get(int byteCount) {
+        Map.Entry<Integer, ArrayDeque<Bitmap>> entry = buckets.ceilingEntry(byteCount);
+        while (entry != null && entry.getKey() <= (long) byteCount * MAX_SIZE_MULTIPLE) {
+            Bitmap bitmap = entry.getValue().pollFirst();
+            if (entry.getValue().isEmpty())
+                buckets.remove(entry.getKey());
+
+            if (bitmap != null) {
+                pooledBytes -= entry.getKey();
+                if (!bitmap.isRecycled()) {
+                    hits++;
+                    return bitmap;
+                }
+            }
+            entry = buckets.ceilingEntry(byteCount);
+        }
+        misses++;
+        return null;
+    }
+
+    /**
+     * 다 사용한 비트맵을 돌려준다. 돌려준 후에는 사용하지 않는다.
+     * 재사용할 수 없는 비트맵(immutable 등)이나 용량을 넘는 경우에는 recycle 된다.
+     *
+     * @param bitmap 다 사용한 비트맵
+     */
+    public synchronized void put(Bitmap bitmap) {
+        if (bitmap == null || bitmap.isRecycled())
+            return;
+
+        int size = bitmap.getAllocationByteCount();
+        if (!bitmap.isMutable() || size > maxPoolBytes) {
+            bitmap.recycle();
+            return;
+        }
+
+        ArrayDeque<Bitmap> bucket = buckets.get(size);
+        if (bucket == null) {
+            bucket = new ArrayDeque<>();
+            buckets.put(size, bucket);
+        }
+        bucket.addLast(bitmap);
+        pooledBytes += size;
+
+        trimTo(maxPoolBytes);
+    }
+
+    /**
+     * 보관 중인 비트맵을 모두 recycle 한다.
+     */
+    public synchronized void clear() {
+        trimTo(0);
+    }
+
+    public synchronized long getPooledBytes() {
+        return pooledBytes;
+    }
+
+    public synchronized int getHitCount() {
+        return hits;
+    }
+
+    public synchronized int getMissCount() {
+        return misses;
+    }
+
+    /**
+     * 가장 큰 크기의 비트맵부터 버린다.
+     */
+    private void trimTo(long maxBytes) {
+        while (pooledBytes > maxBytes && !buckets.isEmpty()) {
+            Map.Entry<Integer, ArrayDeque<Bitmap>> largest = buckets.lastEntry();
+            Iterator<Bitmap> iterator = largest.getValue().iterator();
+            Bitmap bitmap = iterator.next();
+            iterator.remove();
+            if (largest.getValue().isEmpty())
+                buckets.remove(largest.getKey());
+
+            pooledBytes -= largest.getKey();
+            bitmap.recycle();
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package com.dominic.skuface;
+
+import android.graphics.Bitmap;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import okio.BufferedSink;
+
+/**
+ * {@link Bitmap}을 요청 sink 로 바로 압축하는 {@link RequestBody}
+ * 중간 byte[] 없이 OkHttp 가 재사용하는 세그먼트 버퍼를 거쳐 소켓으로 나가므로,
+ * {@link java.io.ByteArrayOutputStream}의 배열 확장과 toByteArray() 복사로 생기던 인코딩 크기의 몇 배의 임시 메모리가 생기지 않는다.
+ * <p>
+ * 보낼 때마다 같은 비트맵을 다시 압축하므로 재시도, 헤지 요청에도 그대로 다시 보낼 수 있다.
+ * 길이를 모르면 chunked 로 보내며, {@link #precompute()}로 한 번 압축해 보며 길이와 SHA-256 을 미리 구할 수 있다.
+ *
+ * @version 0.1
+ * @see FaceApi#detectStreaming(Bitmap, int, boolean, FaceApi.DetectCallback)
+ */
+final class BitmapRequestBody extends RequestBody {
+
+    private static final MediaType OCTET_STREAM = MediaType.parse("application/octet-stream");
+
+    private final Bitmap bitmap;
+    private final int quality;
+
+    private volatile long contentLength = -1;
+    private volatile String digest = null;
+
+    /**
+     * @param bitmap  보낼 이미지. 요청이 끝나기 전까지 recycle 하지 않는다.
+     * @param quality JPEG 품질 (0 ~ 100)
+     */
+    BitmapRequestBody(Bitmap bitmap, int quality) {
+        this.bitmap = bitmap;
+        this.quality = quality;
+    }
+
+    /**
+     * 버리는 스트림으로 한 번 압축해 Content-Length 와 바이트의 SHA-256 을 구한다. 압축 결과는 보관하지 않는다.
+     */
+    BitmapRequestBody precompute() throws IOException {
+        CountingDigestStream out = new CountingDigestStream();
+        compressTo(out);
+        digest = out.hex();
+        contentLength = out.count;
+        return this;
+    }
+
+    /**
+     * @return {@link EncodedImage#getDigest()}와 같은 형식의 SHA-256. {@link #precompute()} 전에는 null
+     */
+    String getDigest() {
+        return digest;
+    }
+
+    @Override
+    public MediaType contentType() {
+        return OCTET_STREAM;
+    }
+
+    /**
+     * @return {@link #precompute()} 전에는 -1 (chunked)
+     */
+    @Override
+    public long contentLength() {
+        return contentLength;
+    }
+
+    @Override
+    public void writeTo(BufferedSink sink) throws IOException {
+        compressTo(sink.outputStream());
+    }
+
+    private void compressTo(OutputStream out) throws IOException {
+        if (bitmap.isRecycled())
+            throw new IOException("Bitmap was recycled before upload");
+        if (!bitmap.compress(Bitmap.CompressFormat.JPEG, quality, out))
+            throw new IOException("Failed to compress bitmap");
+    }
+
+    /**
+     * 바이트를 보관하지 않고 세면서 SHA-256 만 갱신한다.
+     */
+    private static final class CountingDigestStream extends OutputStream {
+        private final MessageDigest sha256;
+        long count;
+
+        CountingDigestStream() {
+            try {
+                sha256 = MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        @Override
+        public void write(int b) {
+            sha256.update((byte) b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            sha256.update(b, off, len);
+            count += len;
+        }
+
+        String hex() {
+            byte[] hash = sha256.digest();
+            char[] hex = new char[hash.length * 2];
+            for (int i = 0; i < hash.length; i++) {
+                hex[i * 2] = Character.forDigit((hash[i] >> 4) & 0xF, 16);
+                hex[i * 2 + 1] = Character.forDigit(hash[i] & 0xF, 16);
+            }
+            return new String(hex);
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package com.dominic.skuface;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 카메라 미리보기 프레임을 {@link android.graphics.Bitmap} 없이 바로 JPEG 으로 만든 결과
+ * 픽셀은 센서 방향 그대로이며 화면 방향은 {@link #getRotation()}으로만 전달된다.
+ * ROI 모드에서는 프레임 전체 대신 얼굴 주변을 잘라낸 JPEG 으로 구성된다.
+ * 영역이 여럿이면 {@link MosaicLayout}으로 한 장에 배치한 JPEG 하나로 보내 요청(트랜잭션)을 한 번만 쓴다.
+ *
+ * @version 0.1
+ * @see FaceDetectionCamera#CAPTURE_MODE_PREVIEW
+ * @see FaceApi#detect(CapturedFrame, FaceApi.DetectCallback)
+ */
+public class CapturedFrame {
+
+    private final int width;
+    private final int height;
+    private final int rotation;
+    private final List<EncodedImage> parts;
+    private final MosaicLayout layout;
+    private final long timestampMillis;
+    private volatile DetectOptions detectOptions = null;
+
+    /**
+     * 프레임 전체를 하나의 JPEG 으로 만든 경우
+     *
+     * @param jpeg     JPEG 바이트
+     * @param width    프레임 너비 (센서 방향)
+     * @param height   프레임 높이 (센서 방향)
+     * @param rotation 화면에 바로 세우기 위해 시계 방향으로 돌려야 하는 각도
+     */
+    public CapturedFrame(byte[] jpeg, int width, int height, int rotation) {
+        this(width, height, rotation,
+                Collections.singletonList(new EncodedImage(jpeg, width, height, width, height, rotation)));
+    }
+
+    /**
+     * @param parts 업로드할 JPEG 들. 각각 프레임 안의 영역과 회전 정보를 가진다.
+     */
+    CapturedFrame(int width, int height, int rotation, List<EncodedImage> parts) {
+        this(width, height, rotation, parts, null);
+    }
+
+    /**
+     * 여러 영역을 한 장으로 합친 경우
+     *
+     * @param mosaic 합친 이미지의 JPEG. 좌표는 합친 이미지 기준이다.
+     * @param layout 타일마다 프레임(센서 방향)의 영역을 가진 배치
+     */
+    CapturedFrame(int width, int height, int rotation, EncodedImage mosaic, MosaicLayout layout) {
+        this(width, height, rotation, Collections.singletonList(mosaic), layout);
+    }
+
+    private CapturedFrame(int width, int height, int rotation, List<EncodedImage> parts, MosaicLayout layout) {
+        this.width = width;
+        this.height = height;
+        this.rotation = rotation;
+        this.parts = Collections.unmodifiableList(parts);
+        this.layout = layout;
+        this.timestampMillis = System.currentTimeMillis();
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getRotation() {
+        return rotation;
+    }
+
+    public long getTimestampMillis() {
+        return timestampMillis;
+    }
+
+    /**
+     * @return 업로드할 JPEG 들. 응답 좌표는 각 파트(합친 이미지면 {@link #getLayout()}의 타일)가 바로 세운 프레임 기준으로 되돌린다.
+     */
+    public List<EncodedImage> getParts() {
+        return parts;
+    }
+
+    /**
+     * @return 여러 영역을 합친 프레임이면 {@link #getParts()}의 유일한 이미지의 배치. 아니면 null
+     */
+    MosaicLayout getLayout() {
+        return layout;
+    }
+
+    /**
+     * @return 이 프레임을 요청할 때 사용할 옵션. null 이면 {@link FaceApi#getDetectOptions()}
+     * @see FaceTracker#getRequestOptions()
+     */
+    public DetectOptions getDetectOptions() {
+        return detectOptions;
+    }
+
+    public void setDetectOptions(DetectOptions detectOptions) {
+        this.detectOptions = detectOptions;
+    }
+
+    /**
+     * @return 모든 파트의 업로드 바이트 수
+     */
+    public int getByteCount() {
+        int count = 0;
+        for (EncodedImage part : parts) {
+            count += part.getData().length;
+        }
+        return count;
+    }
+}
@@ -0,0 +1,107 @@
+package com.dominic.skuface;
+
+/**
+ * 연속 실패가 기준을 넘으면 일정 시간 요청을 막아 장애 중에 빨리 실패하도록 한다.
+ * <p>
+ * CLOSED → (연속 실패) → OPEN → (대기 시간 경과) → HALF_OPEN → 시험 요청 성공 시 CLOSED, 실패 시 다시 OPEN
+ *
+ * @version 0.1
+ * @see FaceApiConfig#setCircuitBreaker(int, long)
+ */
+public class CircuitBreaker {
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    // acquire() 의 결과. 시험 요청이면 0 보다 큰 번호를 돌려준다.
+    static final long REJECTED = -1;
+    static final long NOT_TRIAL = 0;
+
+    private final int failureThreshold;
+    private final long openMillis;
+
+    private State state = State.CLOSED;
+    private int consecutiveFailures = 0;
+    private long openedAtMillis = 0;
+    private boolean trialInFlight = false;
+    // 시험 요청마다 늘어나는 번호. 취소된 요청이 다른 요청의 시험을 풀지 않도록 구분한다.
+    private long trialId = 0;
+
+    /**
+     * @param failureThreshold 차단기를 여는 연속 실패 수. 0 이하이면 항상 닫혀 있다.
+     * @param openMillis       열린 뒤 시험 요청을 허용하기까지의 시간(ms)
+     */
+    public CircuitBreaker(int failureThreshold, long openMillis) {
+        this.failureThreshold = failureThreshold;
+        this.openMillis = openMillis;
+    }
+
+    /**
+     * @return 요청을 보내도 되면 true. HALF_OPEN 에서는 시험 요청 하나만 허용한다.
+     */
+    public synchronized boolean allowRequest() {
+        return acquire() != REJECTED;
+    }
+
+    /**
+     * {@link #allowRequest()}와 같지만 시험 요청으로 허용되었는지 구분한다.
+     *
+     * @return {@link #REJECTED}, {@link #NOT_TRIAL} 또는 {@link #releaseTrial(long)}에 넘길 시험 요청 번호
+     */
+    synchronized long acquire() {
+        if (failureThreshold <= 0 || state == State.CLOSED)
+            return NOT_TRIAL;
+
+        if (state == State.OPEN) {
+            if (now() - openedAtMillis < openMillis)
+                return REJECTED;
+            state = State.HALF_OPEN;
+            trialInFlight = false;
+        }
+
+        if (trialInFlight)
+            return REJECTED;
+        trialInFlight = true;
+        return ++trialId;
+    }
+
+    public synchronized void onSuccess() {
+        consecutiveFailures = 0;
+        trialInFlight = false;
+        state = State.CLOSED;
+    }
+
+    /**
+     * 시험 요청이 결과 없이 끝났을 때(다른 요청이 이겨 취소된 경우 등) 호출한다. 다음 요청을 다시 시험 요청으로 허용한다.
+     * 그 사이 다른 요청이 시험 요청으로 허용되었으면 그 시험은 그대로 둔다.
+     *
+     * @param trial {@link #acquire()}가 돌려준 번호. 시험 요청이 아니었으면 아무것도 하지 않는다.
+     */
+    synchronized void releaseTrial(long trial) {
+        if (trial > NOT_TRIAL && trial == trialId)
+            trialInFlight = false;
+    }
+
+    public synchronized void onFailure() {
+        if (failureThreshold <= 0)
+            return;
+
+        consecutiveFailures++;
+        trialInFlight = false;
+        if (state == State.HALF_OPEN || consecutiveFailures >= failureThreshold) {
+            state = State.OPEN;
+            openedAtMillis = now();
+        }
+    }
+
+    public synchronized State getState() {
+        if (state == State.OPEN && now() - openedAtMillis >= openMillis)
+            return State.HALF_OPEN;
+        return state;
+    }
+
+    long now() {
+        return System.currentTimeMillis();
+    }
+}
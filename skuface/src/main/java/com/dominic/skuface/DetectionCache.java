@@ -0,0 +1,552 @@
+package com.dominic.skuface;
+
+import android.support.constraint.solver.widgets.Rectangle;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 인코딩된 이미지 내용으로 찾는 분석 결과 캐시
+ * 같은 이미지를 다시 보내면 Azure 호출 없이 결과를 돌려준다.
+ * <p>
+ * 1. 메모리 : 최근 사용 순서의 LRU
+ * 2. 디스크 : 용량 제한이 있는 디렉터리. 앱을 다시 시작해도 유지된다.
+ * 쓰기와 용량 정리는 전용 스레드에서 하므로 응답 스레드는 파일 입출력을 기다리지 않는다.
+ * <p>
+ * 얼굴마다 faceId 를 발급한 엔드포인트를 함께 보관하므로 캐시에서 돌려준 faceId 도 발급한 리전으로 후속 요청을 보낸다.
+ * faceId 는 서비스에서 24시간 후 만료되므로 항목도 그보다 {@link #setSafetyMarginMillis(long)} 먼저 버린다.
+ * 근접 중복 검사를 켜면 해시가 다르더라도 perceptual hash 가 가까운 같은 크기의 이미지를 같은 항목으로 본다.
+ *
+ * @version 0.1
+ * @see FaceApi#setDetectionCache(DetectionCache)
+ */
+public class DetectionCache {
+
+    /**
+     * 서비스의 faceId 유효 시간
+     *
+     * @see FaceIdRegistry#FACE_ID_TTL_MILLIS
+     */
+    public static final long FACE_ID_TTL_MILLIS = FaceIdRegistry.FACE_ID_TTL_MILLIS;
+
+    // 2 : 얼굴마다 faceId 를 발급한 엔드포인트를 함께 저장한다.
+    private static final int DISK_FORMAT_VERSION = 2;
+    private static final String DISK_SUFFIX = ".det";
+
+    // perceptual hash 를 8비트씩 나눈 구간 수. 비트 차이가 7 이하인 두 해시는 적어도 한 구간이 같다.
+    private static final int HASH_BANDS = 8;
+    // 근접 중복 검사 한 번에 비교할 최대 후보 수
+    private static final int MAX_NEAR_DUPLICATE_CANDIDATES = 64;
+
+    private final int maxMemoryEntries;
+    private final File diskDir;
+    private final long maxDiskBytes;
+
+    private long ttlMillis = FACE_ID_TTL_MILLIS;
+    private long safetyMarginMillis = TimeUnit.MINUTES.toMillis(5);
+    private int nearDuplicateDistance = -1;
+
+    private final LinkedHashMap<String, Entry> memory;
+    // 근접 중복 후보. (구간 번호, 구간 값) 마다 그 구간이 같은 메모리 항목들을 넣은 순서대로 둔다.
+    private final Map<Integer, List<Entry>> hashBands = new HashMap<>();
+
+    // 디스크 쓰기와 정리. 한 스레드에서만 하므로 diskBytes 는 이 스레드에서만 바꾼다.
+    private final ExecutorService diskExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "DetectionCache-disk");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    // 디스크 계층의 대략적인 용량. 넘을 때만 디렉터리를 훑어 정리한다.
+    private long diskBytes;
+
+    private final AtomicLong memoryHits = new AtomicLong();
+    private final AtomicLong diskHits = new AtomicLong();
+    private final AtomicLong nearDuplicateHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * @param maxMemoryEntries 메모리에 둘 최대 항목 수
+     * @param diskDir          디스크 계층 디렉터리. null 이면 메모리만 사용한다. (예: {@code new File(context.getCacheDir(), "face-detect")})
+     * @param maxDiskBytes     디스크 계층의 최대 용량
+     */
+    public DetectionCache(final int maxMemoryEntries, File diskDir, long maxDiskBytes) {
+        this.maxMemoryEntries = maxMemoryEntries;
+        this.diskDir = diskDir;
+        this.maxDiskBytes = maxDiskBytes;
+        this.memory = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                if (size() <= DetectionCache.this.maxMemoryEntries)
+                    return false;
+                unindex(eldest.getValue());
+                return true;
+            }
+        };
+
+        if (diskDir != null && !diskDir.isDirectory() && !diskDir.mkdirs())
+            throw new IllegalArgumentException("Cannot create cache directory " + diskDir);
+        if (diskDir != null) {
+            diskExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    trimDisk();
+                }
+            });
+        }
+    }
+
+    /**
+     * @param ttlMillis 항목 유효 시간. {@link #FACE_ID_TTL_MILLIS}를 넘을 수 없다. Default : 24시간
+     */
+    public DetectionCache setTtlMillis(long ttlMillis) {
+        this.ttlMillis = Math.min(FACE_ID_TTL_MILLIS, ttlMillis);
+        return this;
+    }
+
+    /**
+     * @param safetyMarginMillis 돌려준 faceId 가 쓰기 전에 서비스에서 만료되지 않도록 유효 시간보다 먼저 버리는 시간. Default : 5분
+     * @see FaceIdRegistry#setSafetyMarginMillis(long)
+     */
+    public DetectionCache setSafetyMarginMillis(long safetyMarginMillis) {
+        this.safetyMarginMillis = safetyMarginMillis;
+        return this;
+    }
+
+    /**
+     * 근접 중복 검사를 켠다. 메모리 계층에서만 동작한다.
+     * 해시를 8비트 구간으로 나눈 색인에서 한 구간이라도 같은 항목만, 최근에 넣은 것부터 최대 64개 비교한다.
+     * 따라서 7비트 차이까지는 빠짐없이 찾고, 그보다 큰 거리는 구간이 겹치는 항목만 찾는다.
+     *
+     * @param maxDistance 같은 이미지로 볼 perceptual hash 의 최대 비트 차이 (0 ~ 64). 음수이면 끈다. Default : 끔
+     */
+    public DetectionCache setNearDuplicateDistance(int maxDistance) {
+        this.nearDuplicateDistance = maxDistance;
+        return this;
+    }
+
+    boolean isNearDuplicateEnabled() {
+        return nearDuplicateDistance >= 0;
+    }
+
+    /**
+     * @param encodedImage 업로드하려는 이미지
+     * @return 저장된 얼굴들의 복사본. 없으면 null
+     */
+    List<Face> get(EncodedImage encodedImage) {
+        Entry entry = lookup(encodedImage);
+        return entry != null ? copyOf(entry.faces) : null;
+    }
+
+    /**
+     * @return 저장된 얼굴들의 복사본으로 만든 결과. faceId 의 시각은 처음 받은 시각이다. 없으면 null
+     * @see #get(EncodedImage)
+     */
+    DetectionResult get(EncodedImage encodedImage, long seq, String requestId) {
+        Entry entry = lookup(encodedImage);
+        return entry != null ? new DetectionResult(seq, requestId, copyOf(entry.faces), entry.createdAt) : null;
+    }
+
+    private Entry lookup(EncodedImage encodedImage) {
+        String key = encodedImage.getDigest();
+        long now = System.currentTimeMillis();
+        long lifetimeMillis = ttlMillis - safetyMarginMillis;
+
+        synchronized (this) {
+            Entry entry = memory.get(key);
+            if (entry != null) {
+                if (!entry.isExpired(now, lifetimeMillis)) {
+                    memoryHits.incrementAndGet();
+                    return entry;
+                }
+                unindex(memory.remove(key));
+            }
+
+            if (isNearDuplicateEnabled() && encodedImage.hasPerceptualHash()) {
+                Entry candidate = findNearDuplicate(encodedImage, now, lifetimeMillis);
+                if (candidate != null) {
+                    // 찾은 항목도 사용한 것으로 보아 LRU 순서를 갱신한다.
+                    memory.get(candidate.key);
+                    nearDuplicateHits.incrementAndGet();
+                    return candidate;
+                }
+            }
+        }
+
+        Entry entry = readFromDisk(key, now, lifetimeMillis);
+        if (entry != null) {
+            synchronized (this) {
+                putInMemory(entry);
+            }
+            diskHits.incrementAndGet();
+            return entry;
+        }
+
+        misses.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * @param encodedImage 업로드한 이미지
+     * @param faces        원본 좌표로 변환된 응답 얼굴들. 복사되어 보관된다.
+     */
+    void put(EncodedImage encodedImage, List<Face> faces) {
+        final String key = encodedImage.getDigest();
+        final Entry entry = new Entry(key, System.currentTimeMillis(), copyOf(faces),
+                encodedImage.getSourceWidth(), encodedImage.getSourceHeight(),
+                encodedImage.hasPerceptualHash(), encodedImage.getPerceptualHash());
+
+        synchronized (this) {
+            putInMemory(entry);
+        }
+        if (diskDir != null) {
+            diskExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    writeToDisk(key, entry);
+                }
+            });
+        }
+    }
+
+    /**
+     * 메모리와 디스크의 모든 항목을 지운다. 디스크는 앞서 요청된 쓰기가 끝난 뒤 지운다.
+     */
+    public void clear() {
+        synchronized (this) {
+            memory.clear();
+            hashBands.clear();
+        }
+        if (diskDir != null) {
+            diskExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    for (File file : listDiskFiles()) {
+                        file.delete();
+                    }
+                    diskBytes = 0;
+                }
+            });
+        }
+    }
+
+    /**
+     * 지금까지 요청된 디스크 쓰기가 끝날 때까지 기다린다.
+     */
+    void awaitDiskWrites() throws InterruptedException {
+        try {
+            diskExecutor.submit(new Runnable() {
+                @Override
+                public void run() {
+                }
+            }).get();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    public long getMemoryHitCount() {
+        return memoryHits.get();
+    }
+
+    public long getDiskHitCount() {
+        return diskHits.get();
+    }
+
+    public long getNearDuplicateHitCount() {
+        return nearDuplicateHits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    @Override
+    public String toString() {
+        return "DetectionCache{memoryHits=" + memoryHits
+                + ", diskHits=" + diskHits
+                + ", nearDuplicateHits=" + nearDuplicateHits
+                + ", misses=" + misses + "}";
+    }
+
+    /**
+     * 같은 크기이고 해시 거리가 기준 이내인 만료되지 않은 항목. 호출하는 쪽에서 this 로 동기화한다.
+     */
+    private Entry findNearDuplicate(EncodedImage encodedImage, long now, long lifetimeMillis) {
+        long hash = encodedImage.getPerceptualHash();
+        int compared = 0;
+        for (int band = 0; band < HASH_BANDS; band++) {
+            List<Entry> bucket = hashBands.get(bandKey(band, hash));
+            if (bucket == null)
+                continue;
+
+            for (int i = bucket.size() - 1; i >= 0; i--) {
+                if (compared++ >= MAX_NEAR_DUPLICATE_CANDIDATES)
+                    return null;
+
+                Entry candidate = bucket.get(i);
+                if (candidate.sourceWidth == encodedImage.getSourceWidth()
+                        && candidate.sourceHeight == encodedImage.getSourceHeight()
+                        && !candidate.isExpired(now, lifetimeMillis)
+                        && PerceptualHash.distance(candidate.perceptualHash, hash) <= nearDuplicateDistance)
+                    return candidate;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 메모리에 넣고 근접 중복 색인을 갱신한다. 호출하는 쪽에서 this 로 동기화한다.
+     */
+    private void putInMemory(Entry entry) {
+        unindex(memory.put(entry.key, entry));
+        // 최대 항목 수가 0 이면 넣자마자 빠진다.
+        if (!entry.hasPerceptualHash || !memory.containsKey(entry.key))
+            return;
+
+        for (int band = 0; band < HASH_BANDS; band++) {
+            Integer bandKey = bandKey(band, entry.perceptualHash);
+            List<Entry> bucket = hashBands.get(bandKey);
+            if (bucket == null) {
+                bucket = new ArrayList<>(2);
+                hashBands.put(bandKey, bucket);
+            }
+            bucket.add(entry);
+        }
+    }
+
+    /**
+     * 메모리에서 빠진 항목을 근접 중복 색인에서도 뺀다. 호출하는 쪽에서 this 로 동기화한다.
+     */
+    private void unindex(Entry entry) {
+        if (entry == null || !entry.hasPerceptualHash)
+            return;
+
+        for (int band = 0; band < HASH_BANDS; band++) {
+            Integer bandKey = bandKey(band, entry.perceptualHash);
+            List<Entry> bucket = hashBands.get(bandKey);
+            if (bucket == null)
+                continue;
+            bucket.remove(entry);
+            if (bucket.isEmpty())
+                hashBands.remove(bandKey);
+        }
+    }
+
+    private static Integer bandKey(int band, long hash) {
+        return (band << 8) | ((int) (hash >>> (band * 8)) & 0xFF);
+    }
+
+    private Entry readFromDisk(String key, long now, long lifetimeMillis) {
+        if (diskDir == null)
+            return null;
+
+        File file = new File(diskDir, key + DISK_SUFFIX);
+        if (!file.isFile())
+            return null;
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != DISK_FORMAT_VERSION) {
+                file.delete();
+                return null;
+            }
+
+            long createdAt = in.readLong();
+            if (now - createdAt >= lifetimeMillis) {
+                file.delete();
+                return null;
+            }
+
+            int sourceWidth = in.readInt();
+            int sourceHeight = in.readInt();
+            boolean hasPerceptualHash = in.readBoolean();
+            long perceptualHash = in.readLong();
+
+            int count = in.readInt();
+            List<Face> faces = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                String faceId = in.readBoolean() ? in.readUTF() : null;
+                String origin = in.readBoolean() ? in.readUTF() : null;
+
+                Rectangle r = new Rectangle();
+                r.x = in.readInt();
+                r.y = in.readInt();
+                r.width = in.readInt();
+                r.height = in.readInt();
+
+                Face.Emotion emotion = null;
+                if (in.readBoolean()) {
+                    emotion = new Face.Emotion(
+                            in.readDouble(), in.readDouble(), in.readDouble(), in.readDouble(),
+                            in.readDouble(), in.readDouble(), in.readDouble(), in.readDouble());
+                }
+                Face face = new Face(faceId, r, emotion);
+                face.setOrigin(origin);
+                faces.add(face);
+            }
+
+            file.setLastModified(now);
+            return new Entry(key, createdAt, faces, sourceWidth, sourceHeight, hasPerceptualHash, perceptualHash);
+        } catch (IOException e) {
+            e.printStackTrace();
+            file.delete();
+            return null;
+        }
+    }
+
+    private void writeToDisk(String key, Entry entry) {
+        if (diskDir == null)
+            return;
+
+        File file = new File(diskDir, key + DISK_SUFFIX);
+        File temp = new File(diskDir, key + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+            out.writeInt(DISK_FORMAT_VERSION);
+            out.writeLong(entry.createdAt);
+            out.writeInt(entry.sourceWidth);
+            out.writeInt(entry.sourceHeight);
+            out.writeBoolean(entry.hasPerceptualHash);
+            out.writeLong(entry.perceptualHash);
+
+            out.writeInt(entry.faces.size());
+            for (Face face : entry.faces) {
+                out.writeBoolean(face.getFaceId() != null);
+                if (face.getFaceId() != null)
+                    out.writeUTF(face.getFaceId());
+                out.writeBoolean(face.getOrigin() != null);
+                if (face.getOrigin() != null)
+                    out.writeUTF(face.getOrigin());
+
+                Rectangle r = face.getFaceRectangle();
+                out.writeInt(r.x);
+                out.writeInt(r.y);
+                out.writeInt(r.width);
+                out.writeInt(r.height);
+
+                Face.Emotion e = face.getEmotion();
+                out.writeBoolean(e != null);
+                if (e != null) {
+                    out.writeDouble(e.anger);
+                    out.writeDouble(e.contempt);
+                    out.writeDouble(e.disgust);
+                    out.writeDouble(e.fear);
+                    out.writeDouble(e.happiness);
+                    out.writeDouble(e.neutral);
+                    out.writeDouble(e.sadness);
+                    out.writeDouble(e.surprise);
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            temp.delete();
+            return;
+        }
+
+        long replaced = file.length();
+        if (!temp.renameTo(file)) {
+            temp.delete();
+            return;
+        }
+        diskBytes += file.length() - replaced;
+        if (diskBytes > maxDiskBytes)
+            trimDisk();
+    }
+
+    /**
+     * 디스크 용량이 넘으면 가장 오래 사용하지 않은 파일부터 지운다. 디스크 스레드에서만 호출한다.
+     */
+    private void trimDisk() {
+        File[] files = listDiskFiles();
+
+        long total = 0;
+        for (File file : files) {
+            total += file.length();
+        }
+        diskBytes = total;
+        if (total <= maxDiskBytes)
+            return;
+
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File a, File b) {
+                long diff = a.lastModified() - b.lastModified();
+                return diff < 0 ? -1 : diff > 0 ? 1 : 0;
+            }
+        });
+        for (File file : files) {
+            if (total <= maxDiskBytes)
+                break;
+            total -= file.length();
+            file.delete();
+        }
+        diskBytes = total;
+    }
+
+    private File[] listDiskFiles() {
+        File[] files = diskDir.listFiles();
+        if (files == null)
+            return new File[0];
+
+        List<File> result = new ArrayList<>(files.length);
+        for (File file : files) {
+            if (file.getName().endsWith(DISK_SUFFIX))
+                result.add(file);
+        }
+        return result.toArray(new File[result.size()]);
+    }
+
+    private static List<Face> copyOf(List<Face> faces) {
+        List<Face> copy = new ArrayList<>(faces.size());
+        for (Face face : faces) {
+            copy.add(face.copy());
+        }
+        return copy;
+    }
+
+    private static final class Entry {
+        final String key;
+        final long createdAt;
+        final List<Face> faces;
+        final int sourceWidth;
+        final int sourceHeight;
+        final boolean hasPerceptualHash;
+        final long perceptualHash;
+
+        Entry(String key, long createdAt, List<Face> faces, int sourceWidth, int sourceHeight,
+              boolean hasPerceptualHash, long perceptualHash) {
+            this.key = key;
+            this.createdAt = createdAt;
+            this.faces = faces;
+            this.sourceWidth = sourceWidth;
+            this.sourceHeight = sourceHeight;
+            this.hasPerceptualHash = hasPerceptualHash;
+            this.perceptualHash = perceptualHash;
+        }
+
+        boolean isExpired(long now, long lifetimeMillis) {
+            return now - createdAt >= lifetimeMillis;
+        }
+    }
+}
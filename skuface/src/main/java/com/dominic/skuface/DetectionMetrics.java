@@ -0,0 +1,437 @@
+package com.dominic.skuface;
+
+import android.util.Log;
+
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 얼굴 분석 경로의 단계별 소요 시간과 바이트 수를 기록한다.
+ * <p>
+ * 단계마다 {@link Histogram}을 미리 만들어 두므로 기록할 때는 객체를 만들지 않는다.
+ * {@link #getSnapshot()}으로 p50/p95/p99 와 요청 수를 읽거나,
+ * {@link #startReporting(long, OnMetricsListener)}로 주기적으로 전달받는다.
+ *
+ * @version 0.1
+ * @see FaceApi#getMetrics()
+ */
+public class DetectionMetrics {
+
+    private static final String TAG = DetectionMetrics.class.getSimpleName();
+
+    /**
+     * 측정 단계
+     */
+    public enum Stage {
+        /**
+         * 촬영 요청부터 카메라가 이미지를 돌려줄 때까지. 바이트는 카메라 JPEG 크기
+         */
+        CAPTURE,
+        /**
+         * JPEG 을 {@link android.graphics.Bitmap}으로 디코딩
+         */
+        DECODE,
+        /**
+         * 촬영 이미지 회전
+         */
+        ROTATE,
+        /**
+         * 업로드 전 기기 내 얼굴 유무 검사
+         */
+        PREFILTER,
+        /**
+         * 업로드용 JPEG 인코딩. 바이트는 업로드 크기
+         */
+        ENCODE,
+        /**
+         * 요청 전송부터 응답 헤더 수신까지
+         */
+        NETWORK,
+        /**
+         * 응답 JSON 파싱
+         */
+        PARSE,
+        /**
+         * 얼굴 사각형 그리기
+         */
+        RENDER
+    }
+
+    private final EnumMap<Stage, Histogram> latencies = new EnumMap<>(Stage.class);
+    private final EnumMap<Stage, Histogram> sizes = new EnumMap<>(Stage.class);
+
+    private final AtomicLong requestCount = new AtomicLong();
+    private final AtomicLong successCount = new AtomicLong();
+    private final AtomicLong failureCount = new AtomicLong();
+    private final AtomicLong cacheHitCount = new AtomicLong();
+    private final AtomicLong retryCount = new AtomicLong();
+    private final AtomicLong hedgeCount = new AtomicLong();
+    private final AtomicLong rejectedCount = new AtomicLong();
+    private final AtomicLong coalescedCount = new AtomicLong();
+    private volatile long startedAtMillis = System.currentTimeMillis();
+
+    private volatile boolean enabled = true;
+    private ScheduledExecutorService reporter = null;
+
+    public DetectionMetrics() {
+        for (Stage stage : Stage.values()) {
+            latencies.put(stage, new Histogram());
+            sizes.put(stage, new Histogram());
+        }
+    }
+
+    /**
+     * @param enabled false 이면 기록하지 않는다. Default : true
+     */
+    public DetectionMetrics setEnabled(boolean enabled) {
+        this.enabled = enabled;
+        return this;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @param stage      측정 단계
+     * @param startNanos 단계를 시작할 때의 {@link System#nanoTime()}
+     */
+    public void recordSince(Stage stage, long startNanos) {
+        if (enabled)
+            latencies.get(stage).record(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * @param stage      측정 단계
+     * @param startNanos 단계를 시작할 때의 {@link System#nanoTime()}
+     * @param bytes      단계가 만들거나 받은 바이트 수
+     */
+    public void recordSince(Stage stage, long startNanos, long bytes) {
+        if (enabled) {
+            latencies.get(stage).record(System.nanoTime() - startNanos);
+            sizes.get(stage).record(bytes);
+        }
+    }
+
+    void onRequest() {
+        if (enabled)
+            requestCount.incrementAndGet();
+    }
+
+    void onSuccess() {
+        if (enabled)
+            successCount.incrementAndGet();
+    }
+
+    void onFailure() {
+        if (enabled)
+            failureCount.incrementAndGet();
+    }
+
+    void onCacheHit() {
+        if (enabled)
+            cacheHitCount.incrementAndGet();
+    }
+
+    void onRetry() {
+        if (enabled)
+            retryCount.incrementAndGet();
+    }
+
+    void onHedge() {
+        if (enabled)
+            hedgeCount.incrementAndGet();
+    }
+
+    void onRejected() {
+        if (enabled)
+            rejectedCount.incrementAndGet();
+    }
+
+    void onCoalesced() {
+        if (enabled)
+            coalescedCount.incrementAndGet();
+    }
+
+    long getLatencyCount(Stage stage) {
+        return latencies.get(stage).getCount();
+    }
+
+    long getLatencyPercentileNanos(Stage stage, double percentile) {
+        return latencies.get(stage).getPercentile(percentile);
+    }
+
+    /**
+     * 모든 기록을 지운다. 처리량은 이 시점부터 다시 계산된다.
+     */
+    public void reset() {
+        for (Stage stage : Stage.values()) {
+            latencies.get(stage).reset();
+            sizes.get(stage).reset();
+        }
+        requestCount.set(0);
+        successCount.set(0);
+        failureCount.set(0);
+        cacheHitCount.set(0);
+        retryCount.set(0);
+        hedgeCount.set(0);
+        rejectedCount.set(0);
+        coalescedCount.set(0);
+        startedAtMillis = System.currentTimeMillis();
+    }
+
+    /**
+     * @return 현재까지의 기록. 기록 중에 읽으므로 단계 사이의 값이 조금 어긋날 수 있다.
+     */
+    public Snapshot getSnapshot() {
+        EnumMap<Stage, StageStats> stats = new EnumMap<>(Stage.class);
+        for (Stage stage : Stage.values()) {
+            stats.put(stage, new StageStats(latencies.get(stage), sizes.get(stage)));
+        }
+        return new Snapshot(stats, requestCount.get(), successCount.get(), failureCount.get(), cacheHitCount.get(),
+                retryCount.get(), hedgeCount.get(), rejectedCount.get(), coalescedCount.get(),
+                System.currentTimeMillis() - startedAtMillis);
+    }
+
+    /**
+     * 주기적으로 {@link #getSnapshot()}을 전달한다. 이전 주기 작업은 취소된다.
+     *
+     * @param intervalMillis 전달 주기(ms)
+     * @param listener       전달받을 리스너. 별도의 스레드에서 호출된다.
+     */
+    public synchronized void startReporting(long intervalMillis, final OnMetricsListener listener) {
+        stopReporting();
+        reporter = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "DetectionMetrics-reporter");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        reporter.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                listener.onMetrics(getSnapshot());
+            }
+        }, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 주기적으로 {@link Snapshot#toString()}을 로그로 남긴다.
+     *
+     * @param intervalMillis 로그 주기(ms)
+     */
+    public void startLogging(long intervalMillis) {
+        startReporting(intervalMillis, new OnMetricsListener() {
+            @Override
+            public void onMetrics(Snapshot snapshot) {
+                Log.i(TAG, snapshot.toString());
+            }
+        });
+    }
+
+    public synchronized void stopReporting() {
+        if (reporter != null) {
+            reporter.shutdownNow();
+            reporter = null;
+        }
+    }
+
+    public interface OnMetricsListener {
+        void onMetrics(Snapshot snapshot);
+    }
+
+    /**
+     * 한 단계의 기록. 시간은 나노초, 크기는 바이트 단위이다.
+     */
+    public static final class StageStats {
+        private final long count;
+        private final double meanNanos;
+        private final long p50Nanos;
+        private final long p95Nanos;
+        private final long p99Nanos;
+        private final long maxNanos;
+        private final long totalBytes;
+        private final long p50Bytes;
+        private final long p95Bytes;
+
+        StageStats(Histogram latency, Histogram size) {
+            long[] percentiles = latency.getPercentiles(50, 95, 99);
+            this.count = latency.getCount();
+            this.meanNanos = latency.getMean();
+            this.p50Nanos = percentiles[0];
+            this.p95Nanos = percentiles[1];
+            this.p99Nanos = percentiles[2];
+            this.maxNanos = latency.getMax();
+
+            long[] bytes = size.getPercentiles(50, 95);
+            this.totalBytes = size.getSum();
+            this.p50Bytes = bytes[0];
+            this.p95Bytes = bytes[1];
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public double getMeanNanos() {
+            return meanNanos;
+        }
+
+        public long getP50Nanos() {
+            return p50Nanos;
+        }
+
+        public long getP95Nanos() {
+            return p95Nanos;
+        }
+
+        public long getP99Nanos() {
+            return p99Nanos;
+        }
+
+        public long getMaxNanos() {
+            return maxNanos;
+        }
+
+        public long getTotalBytes() {
+            return totalBytes;
+        }
+
+        public long getP50Bytes() {
+            return p50Bytes;
+        }
+
+        public long getP95Bytes() {
+            return p95Bytes;
+        }
+
+        @Override
+        public String toString() {
+            String text = String.format(Locale.US, "n=%d p50=%.1fms p95=%.1fms p99=%.1fms max=%.1fms",
+                    count, p50Nanos / 1e6, p95Nanos / 1e6, p99Nanos / 1e6, maxNanos / 1e6);
+            if (totalBytes > 0)
+                text += String.format(Locale.US, " bytes(p50=%d p95=%d total=%d)", p50Bytes, p95Bytes, totalBytes);
+            return text;
+        }
+    }
+
+    /**
+     * {@link #getSnapshot()} 시점의 기록
+     */
+    public static final class Snapshot {
+        private final Map<Stage, StageStats> stages;
+        private final long requestCount;
+        private final long successCount;
+        private final long failureCount;
+        private final long cacheHitCount;
+        private final long retryCount;
+        private final long hedgeCount;
+        private final long rejectedCount;
+        private final long coalescedCount;
+        private final long elapsedMillis;
+
+        Snapshot(Map<Stage, StageStats> stages, long requestCount, long successCount, long failureCount,
+                 long cacheHitCount, long retryCount, long hedgeCount, long rejectedCount, long coalescedCount,
+                 long elapsedMillis) {
+            this.stages = stages;
+            this.requestCount = requestCount;
+            this.successCount = successCount;
+            this.failureCount = failureCount;
+            this.cacheHitCount = cacheHitCount;
+            this.retryCount = retryCount;
+            this.hedgeCount = hedgeCount;
+            this.rejectedCount = rejectedCount;
+            this.coalescedCount = coalescedCount;
+            this.elapsedMillis = elapsedMillis;
+        }
+
+        public StageStats getStage(Stage stage) {
+            return stages.get(stage);
+        }
+
+        /**
+         * @return 재시도와 헤지 요청을 포함한 네트워크 요청 수. 캐시에서 응답한 요청은 포함하지 않는다.
+         */
+        public long getRequestCount() {
+            return requestCount;
+        }
+
+        public long getSuccessCount() {
+            return successCount;
+        }
+
+        public long getFailureCount() {
+            return failureCount;
+        }
+
+        public long getCacheHitCount() {
+            return cacheHitCount;
+        }
+
+        /**
+         * @return 재시도로 다시 보낸 요청 수
+         */
+        public long getRetryCount() {
+            return retryCount;
+        }
+
+        /**
+         * @return 응답이 늦어 추가로 보낸 헤지 요청 수
+         */
+        public long getHedgeCount() {
+            return hedgeCount;
+        }
+
+        /**
+         * @return 회로 차단기가 열려 보내지 않은 요청 수
+         */
+        public long getRejectedCount() {
+            return rejectedCount;
+        }
+
+        /**
+         * @return 같은 내용의 진행 중인 요청에 붙어 따로 보내지 않은 요청 수
+         */
+        public long getCoalescedCount() {
+            return coalescedCount;
+        }
+
+        /**
+         * @return 생성 또는 {@link #reset()} 이후 흐른 시간(ms)
+         */
+        public long getElapsedMillis() {
+            return elapsedMillis;
+        }
+
+        /**
+         * @return 초당 완료된 요청 수 (성공 + 실패 + 캐시 응답 + 함께 받은 응답)
+         */
+        public double getThroughputPerSecond() {
+            if (elapsedMillis <= 0)
+                return 0;
+            return (successCount + failureCount + cacheHitCount + coalescedCount) * 1000.0 / elapsedMillis;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder builder = new StringBuilder();
+            builder.append(String.format(Locale.US, "requests=%d ok=%d failed=%d cached=%d coalesced=%d retried=%d hedged=%d rejected=%d %.2f/s",
+                    requestCount, successCount, failureCount, cacheHitCount, coalescedCount, retryCount, hedgeCount,
+                    rejectedCount, getThroughputPerSecond()));
+            for (Map.Entry<Stage, StageStats> entry : stages.entrySet()) {
+                if (entry.getValue().getCount() == 0)
+                    continue;
+                builder.append('\n').append(entry.getKey()).append(' ').append(entry.getValue());
+            }
+            return builder.toString();
+        }
+    }
+}
@@ -0,0 +1,353 @@
+package com.dominic.skuface;
+
+import android.graphics.Bitmap;
+import android.os.Handler;
+import android.os.Looper;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+
+/**
+ * 얼굴 분석을 단계별로 나누어 처리하는 파이프라인
+ * <p>
+ * 입력(capture) → 얼굴 유무 검사(prefilter, 선택) → 인코딩(encode) → 업로드(upload) → 파싱(parse) → 그리기(render)
+ * <p>
+ * 인코딩과 업로드는 각각 전용 스레드에서, 파싱은 OkHttp 스레드에서, 그리기는 render {@link Executor}(기본 UI 스레드)에서 진행된다.
+ * 단계 사이는 크기가 제한된 큐로 연결되며, 가득 차면 {@link OverflowPolicy}에 따라 오래된 프레임을 버린다.
+ * 따라서 UI 스레드는 인코딩이나 I/O 를 기다리지 않고, 부하가 높을 때는 지연이 쌓이는 대신 오래된 프레임을 버린다.
+ *
+ * @version 0.1
+ * @see FaceApi#detect(Bitmap, FaceApi.DetectCallback)
+ */
+public class DetectionPipeline {
+
+    /**
+     * 큐가 가득 찼을 때의 동작
+     */
+    public enum OverflowPolicy {
+        /**
+         * 가장 오래된 작업을 버리고 새 작업을 넣는다.
+         */
+        DROP_OLDEST,
+        /**
+         * 새 작업을 버린다.
+         */
+        DROP_NEWEST,
+        /**
+         * 크기 1의 큐로 항상 가장 최근 작업만 남긴다.
+         */
+        LATEST_ONLY
+    }
+
+    private final FaceApi faceApi;
+    private final Executor renderExecutor;
+    private final StageQueue<Job> encodeQueue;
+    private final StageQueue<Job> uploadQueue;
+    private final Semaphore inFlight;
+
+    private final Thread encodeThread;
+    private final Thread uploadThread;
+
+    private volatile OnPipelineListener onPipelineListener = null;
+    private volatile FacePrefilter facePrefilter = null;
+
+    /**
+     * 기본 설정 : 인코딩·업로드 큐 모두 {@link OverflowPolicy#LATEST_ONLY}, 동시 요청 2개, UI 스레드에서 그리기
+     *
+     * @param faceApi 요청에 사용할 {@link FaceApi}
+     */
+    public DetectionPipeline(FaceApi faceApi) {
+        this(faceApi, 1, OverflowPolicy.LATEST_ONLY, 1, OverflowPolicy.LATEST_ONLY, 2, null);
+    }
+
+    /**
+     * @param faceApi        요청에 사용할 {@link FaceApi}
+     * @param encodeCapacity 인코딩 대기 큐 크기
+     * @param encodePolicy   인코딩 대기 큐가 가득 찼을 때의 동작
+     * @param uploadCapacity 업로드 대기 큐 크기
+     * @param uploadPolicy   업로드 대기 큐가 가득 찼을 때의 동작
+     * @param maxInFlight    동시에 진행할 수 있는 요청 수
+     * @param renderExecutor 결과를 전달할 {@link Executor}. null 이면 UI 스레드
+     */
+    public DetectionPipeline(FaceApi faceApi,
+                             int encodeCapacity, OverflowPolicy encodePolicy,
+                             int uploadCapacity, OverflowPolicy uploadPolicy,
+                             int maxInFlight, Executor renderExecutor) {
+        this.faceApi = faceApi;
+        this.renderExecutor = renderExecutor != null ? renderExecutor : new MainThreadExecutor();
+        this.encodeQueue = new StageQueue<>(encodeCapacity, encodePolicy);
+        this.uploadQueue = new StageQueue<>(uploadCapacity, uploadPolicy);
+        this.inFlight = new Semaphore(Math.max(1, maxInFlight));
+
+        this.encodeThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                runEncodeStage();
+            }
+        }, "DetectionPipeline-encode");
+        this.uploadThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                runUploadStage();
+            }
+        }, "DetectionPipeline-upload");
+
+        encodeThread.start();
+        uploadThread.start();
+    }
+
+    /**
+     * 이미지를 파이프라인에 넣는다. 바로 반환되며 인코딩은 인코딩 스레드에서 진행된다.
+     * {@link #setFacePrefilter(FacePrefilter)}가 설정되어 있으면 먼저 얼굴 유무를 검사한다.
+     *
+     * @param bitmap 분석할 이미지. {@link OnPipelineListener#onSourceReleased(Bitmap)}가 호출되기 전까지 recycle 하지 않는다.
+     * @return 결과의 {@link DetectionResult#getRequestId()}와 같은 요청 ID
+     */
+    public String submit(Bitmap bitmap) {
+        return submit(bitmap, true);
+    }
+
+    /**
+     * @param bitmap    분석할 이미지. {@link OnPipelineListener#onSourceReleased(Bitmap)}가 호출되기 전까지 recycle 하지 않는다.
+     * @param prefilter false 이면 얼굴 유무 검사를 건너뛴다. 카메라가 이미 얼굴을 찾은 이미지 등
+     * @return 결과의 {@link DetectionResult#getRequestId()}와 같은 요청 ID
+     */
+    public String submit(Bitmap bitmap, boolean prefilter) {
+        Job job = new Job(faceApi.nextSequence(), bitmap, null);
+        job.prefilter = prefilter;
+        Job dropped = encodeQueue.offer(job);
+        if (dropped != null)
+            drop(dropped);
+        return job.requestId;
+    }
+
+    /**
+     * 이미 인코딩된 미리보기 프레임을 파이프라인에 넣는다. 인코딩 단계를 건너뛴다.
+     *
+     * @param frame 분석할 프레임
+     * @return 결과의 {@link DetectionResult#getRequestId()}와 같은 요청 ID
+     */
+    public String submit(CapturedFrame frame) {
+        Job job = new Job(faceApi.nextSequence(), null, frame.getParts());
+        job.frame = frame;
+        job.options = frame.getDetectOptions();
+        Job dropped = uploadQueue.offer(job);
+        if (dropped != null)
+            drop(dropped);
+        return job.requestId;
+    }
+
+    /**
+     * 대기 중인 작업을 버리고 단계 스레드를 멈춘다. 이미 전송된 요청의 결과는 전달되지 않는다.
+     */
+    public void shutdown() {
+        for (Job job : encodeQueue.close()) {
+            drop(job);
+        }
+        for (Job job : uploadQueue.close()) {
+            drop(job);
+        }
+        encodeThread.interrupt();
+        uploadThread.interrupt();
+        onPipelineListener = null;
+    }
+
+    private void runEncodeStage() {
+        while (!Thread.currentThread().isInterrupted()) {
+            Job job;
+            try {
+                job = encodeQueue.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            if (job == null)
+                return;
+
+            if (job.prefilter && !mayContainFace(job)) {
+                releaseSource(job);
+                deliver(new DetectionResult(job.seq, job.requestId, Collections.<Face>emptyList()));
+                continue;
+            }
+
+            try {
+                job.parts = Collections.singletonList(faceApi.encode(job.bitmap));
+            } catch (RuntimeException e) {
+                releaseSource(job);
+                fail(job, new IOException("Failed to encode image", e));
+                continue;
+            }
+            releaseSource(job);
+
+            Job dropped = uploadQueue.offer(job);
+            if (dropped != null)
+                drop(dropped);
+        }
+    }
+
+    private void runUploadStage() {
+        while (!Thread.currentThread().isInterrupted()) {
+            final Job job;
+            try {
+                // 요청 자리가 생긴 뒤에 작업을 꺼내야 기다리는 동안 새 프레임이 오래된 프레임을 대체할 수 있다.
+                inFlight.acquire();
+                job = uploadQueue.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            if (job == null)
+                return;
+
+            FaceApi.DetectCallback callback = new FaceApi.DetectCallback() {
+                @Override
+                public void onDetected(DetectionResult result) {
+                    inFlight.release();
+                    deliver(result);
+                }
+
+                @Override
+                public void onFailure(IOException e) {
+                    inFlight.release();
+                    fail(job, e);
+                }
+            };
+            if (job.frame != null)
+                faceApi.detectFrame(job.frame, job.seq, job.requestId, job.options, callback);
+            else
+                faceApi.detectParts(job.parts, job.seq, job.requestId, job.options, callback);
+        }
+    }
+
+    /**
+     * @return 검사하지 않았거나 얼굴이 있을 수 있으면 true
+     */
+    private boolean mayContainFace(Job job) {
+        FacePrefilter prefilter = facePrefilter;
+        if (prefilter == null)
+            return true;
+
+        long start = System.nanoTime();
+        boolean result = prefilter.mayContainFace(job.bitmap);
+        faceApi.getMetrics().recordSince(DetectionMetrics.Stage.PREFILTER, start);
+        return result;
+    }
+
+    private void deliver(final DetectionResult result) {
+        faceApi.onRequestCompleted(result);
+        if (!faceApi.publishLatest(result))
+            return;
+
+        renderExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                OnPipelineListener listener = onPipelineListener;
+                if (listener != null && result == faceApi.getLatestResult())
+                    listener.onResult(result);
+            }
+        });
+    }
+
+    private void releaseSource(final Job job) {
+        if (job.bitmap == null)
+            return;
+
+        final Bitmap bitmap = job.bitmap;
+        job.bitmap = null;
+        renderExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                OnPipelineListener listener = onPipelineListener;
+                if (listener != null)
+                    listener.onSourceReleased(bitmap);
+            }
+        });
+    }
+
+    private void drop(final Job job) {
+        releaseSource(job);
+        renderExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                OnPipelineListener listener = onPipelineListener;
+                if (listener != null)
+                    listener.onDropped(job.requestId);
+            }
+        });
+    }
+
+    private void fail(final Job job, final IOException e) {
+        renderExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                OnPipelineListener listener = onPipelineListener;
+                if (listener != null)
+                    listener.onFailure(job.requestId, e);
+            }
+        });
+    }
+
+    /**
+     * 모든 메소드는 render {@link Executor}(기본 UI 스레드)에서 호출된다.
+     */
+    public interface OnPipelineListener {
+        /**
+         * 가장 나중에 넣은 작업의 결과만 전달된다. 늦게 도착한 이전 결과는 전달되지 않는다.
+         */
+        void onResult(DetectionResult result);
+
+        void onFailure(String requestId, IOException e);
+
+        /**
+         * 큐가 가득 차서 작업이 버려졌을 때
+         */
+        void onDropped(String requestId);
+
+        /**
+         * 파이프라인이 더 이상 비트맵을 사용하지 않을 때. 이후 recycle 하거나 {@link BitmapPool}에 돌려줄 수 있다.
+         */
+        void onSourceReleased(Bitmap bitmap);
+    }
+
+    public void setOnPipelineListener(OnPipelineListener onPipelineListener) {
+        this.onPipelineListener = onPipelineListener;
+    }
+
+    /**
+     * 얼굴이 없는 이미지는 요청하지 않고 바로 빈 결과를 전달한다.
+     * {@link #submit(CapturedFrame)}로 넣은 프레임은 검사하지 않는다.
+     *
+     * @param facePrefilter 업로드 전에 사용할 필터. null 이면 검사하지 않는다. Default : null
+     */
+    public void setFacePrefilter(FacePrefilter facePrefilter) {
+        this.facePrefilter = facePrefilter;
+    }
+
+    private static final class Job {
+        final long seq;
+        final String requestId;
+        Bitmap bitmap;
+        List<EncodedImage> parts;
+        // 미리보기 프레임이면 여러 영역을 합친 배치를 가진다.
+        CapturedFrame frame;
+        DetectOptions options;
+        boolean prefilter;
+
+        Job(long seq, Bitmap bitmap, List<EncodedImage> parts) {
+            this.seq = seq;
+            this.requestId = "pipeline-" + seq;
+            this.bitmap = bitmap;
+            this.parts = parts;
+        }
+    }
+
+    private static final class MainThreadExecutor implements Executor {
+        private final Handler handler = new Handler(Looper.getMainLooper());
+
+        @Override
+        public void execute(Runnable command) {
+            handler.post(command);
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package com.dominic.skuface;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 여러 리전 엔드포인트 중 요청을 보낼 곳을 고른다.
+ * <p>
+ * 엔드포인트마다 응답 시간의 지수 이동 평균(EWMA)과 {@link CircuitBreaker}를 두고,
+ * 차단기가 닫힌 엔드포인트 중 평균이 가장 짧은 곳으로 보낸다.
+ * 오래 사용하지 않은 엔드포인트는 가끔 한 번씩 보내 평균을 갱신하며,
+ * 모든 차단기가 열려 있으면 시험 요청을 허용하는 엔드포인트로 보낸다.
+ *
+ * @version 0.1
+ * @see FaceApi#getRoutes()
+ */
+public final class EndpointRouter {
+
+    // 새 응답 시간의 가중치
+    private static final double EWMA_ALPHA = 0.3;
+
+    // 이 시간 동안 사용하지 않은 엔드포인트는 한 번 보내 응답 시간을 다시 잰다.
+    private static final long PROBE_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+    private final List<Route> routes;
+
+    EndpointRouter(List<FaceApiEndpoint> endpoints, int failureThreshold, long openMillis) {
+        List<Route> list = new ArrayList<>(endpoints.size());
+        for (FaceApiEndpoint endpoint : endpoints) {
+            list.add(new Route(endpoint, new CircuitBreaker(failureThreshold, openMillis)));
+        }
+        this.routes = Collections.unmodifiableList(list);
+    }
+
+    public List<Route> getRoutes() {
+        return routes;
+    }
+
+    /**
+     * @param avoid 가능하면 피할 엔드포인트 (이미 실패했거나 요청이 진행 중인 곳)
+     * @return 요청을 보낼 엔드포인트. 모든 차단기가 열려 있으면 null
+     */
+    Selection select(Collection<Route> avoid) {
+        Route route = selectClosed(avoid);
+        if (route != null)
+            return new Selection(route, CircuitBreaker.NOT_TRIAL);
+
+        // 차단기가 열린 엔드포인트 중 시험 요청을 허용하는 곳
+        for (Route r : routes) {
+            if (avoid.contains(r))
+                continue;
+            long trial = r.circuitBreaker.acquire();
+            if (trial != CircuitBreaker.REJECTED)
+                return new Selection(r, trial);
+        }
+        for (Route r : avoid) {
+            long trial = r.circuitBreaker.acquire();
+            if (trial != CircuitBreaker.REJECTED)
+                return new Selection(r, trial);
+        }
+        return null;
+    }
+
+    /**
+     * 차단기가 닫힌 엔드포인트만 고른다. 헤지 요청처럼 장애 중에 요청을 늘리면 안 되는 경우에 사용한다.
+     *
+     * @return 닫힌 엔드포인트가 없으면 null
+     */
+    Route selectClosed(Collection<Route> avoid) {
+        Route route = fastestClosed(avoid);
+        if (route == null && !avoid.isEmpty())
+            route = fastestClosed(Collections.<Route>emptyList());
+        if (route != null)
+            route.markUsed();
+        return route;
+    }
+
+    private synchronized Route fastestClosed(Collection<Route> avoid) {
+        long now = System.nanoTime();
+        Route fastest = null;
+        double fastestLatency = Double.MAX_VALUE;
+
+        for (Route route : routes) {
+            if (avoid.contains(route) || route.circuitBreaker.getState() != CircuitBreaker.State.CLOSED)
+                continue;
+
+            // 한 번도 보내지 않았거나 오래 사용하지 않은 엔드포인트를 먼저 보낸다.
+            if (route.getRequestCount() == 0 || now - route.lastUsedNanos > PROBE_INTERVAL_NANOS)
+                return route;
+
+            // 첫 응답을 기다리는 엔드포인트는 다른 곳이 모두 없을 때만 보낸다.
+            double latency = route.getLatencyNanos();
+            if (latency == 0)
+                latency = Double.MAX_VALUE / 2;
+
+            if (latency < fastestLatency) {
+                fastest = route;
+                fastestLatency = latency;
+            }
+        }
+        return fastest;
+    }
+
+    /**
+     * 고른 엔드포인트와, 차단기가 그 요청을 시험 요청으로 허용했으면 그 번호
+     */
+    static final class Selection {
+        final Route route;
+        final long trial;
+
+        Selection(Route route, long trial) {
+            this.route = route;
+            this.trial = trial;
+        }
+    }
+
+    /**
+     * 엔드포인트 하나의 상태
+     */
+    public static final class Route {
+        private final FaceApiEndpoint endpoint;
+        private final CircuitBreaker circuitBreaker;
+
+        private double latencyNanos = 0;
+        private volatile long lastUsedNanos = System.nanoTime();
+        private long requestCount = 0;
+
+        Route(FaceApiEndpoint endpoint, CircuitBreaker circuitBreaker) {
+            this.endpoint = endpoint;
+            this.circuitBreaker = circuitBreaker;
+        }
+
+        public FaceApiEndpoint getEndpoint() {
+            return endpoint;
+        }
+
+        public CircuitBreaker.State getState() {
+            return circuitBreaker.getState();
+        }
+
+        /**
+         * @return 응답 시간의 지수 이동 평균(ms). 아직 응답이 없으면 0
+         */
+        public synchronized double getLatencyMillis() {
+            return latencyNanos / 1e6;
+        }
+
+        public synchronized long getRequestCount() {
+            return requestCount;
+        }
+
+        synchronized double getLatencyNanos() {
+            return latencyNanos;
+        }
+
+        CircuitBreaker getCircuitBreaker() {
+            return circuitBreaker;
+        }
+
+        synchronized void markUsed() {
+            lastUsedNanos = System.nanoTime();
+            requestCount++;
+        }
+
+        /**
+         * @param nanos 요청을 보낸 뒤 응답(또는 시간 초과)까지 걸린 시간
+         */
+        synchronized void onLatency(long nanos) {
+            latencyNanos = latencyNanos == 0 ? nanos : latencyNanos + EWMA_ALPHA * (nanos - latencyNanos);
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "%s %s %.1fms", endpoint, getState(), getLatencyMillis());
+        }
+    }
+}
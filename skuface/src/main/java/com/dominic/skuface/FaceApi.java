@@ -6,23 +6,38 @@ import android.graphics.Color;
 import android.graphics.Paint;
 import android.support.constraint.solver.widgets.Rectangle;
 
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
-
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Vector;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 import okhttp3.Call;
 import okhttp3.Callback;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
 import okhttp3.MediaType;
 import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
 import okhttp3.Request;
 import okhttp3.RequestBody;
 import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.Buffer;
+import okio.BufferedSource;
 
 /**
  * Created by 박우영 on 2018-03-24.
@@ -34,30 +49,168 @@ import okhttp3.Response;
  */
 public class FaceApi {
 
-    private static FaceApi instance = null;
+    private static volatile FaceApi instance = null;
+
+    private static final MediaType OCTET_STREAM = MediaType.parse("application/octet-stream");
+
+    private static final MediaType JSON = MediaType.parse("application/json");
+
+    private static final int MAX_FACE_ID_ORIGINS = 10_000;
+
+    private final FaceApiConfig config;
+
+    private final OkHttpClient client;
+
+    private final EndpointRouter router;
 
-    private static final String SERVICE_KEY = "insert your key";
+    private final AtomicReference<DetectionResult> latestResult = new AtomicReference<>(DetectionResult.EMPTY);
 
-    private static final String REST_URL = "https://eastasia.api.cognitive.microsoft.com/face/v1.0/detect";
+    private final AtomicLong sequence = new AtomicLong();
+
+    // Bitmap 압축. 앱 종료를 막지 않도록 데몬 스레드를 사용한다.
+    private final ExecutorService encodeExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "FaceApi-encode");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    // 요청 시간 제한, 재시도, 헤지 요청 예약
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "FaceApi-scheduler");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    // DetectionLog 기록. 파일 교체가 응답 스레드를 막지 않도록 한 스레드에서 순서대로 쓴다.
+    private final ExecutorService logExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "FaceApi-log");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
 
-    private Vector<Face> faceList = new Vector<>();
 
     private OnResponseListener onResponseListener = null;
 
-    private FaceApi() {
+    private volatile OnFailureListener onFailureListener = null;
+
+    private ImageEncoder imageEncoder = new AdaptiveJpegEncoder();
+
+    private volatile DetectionCache detectionCache = null;
+
+    private final DetectionMetrics metrics = new DetectionMetrics();
+
+    private final SingleFlight<List<Face>> inFlightRequests = new SingleFlight<>();
+
+    private volatile boolean isCoalescingEnabled = true;
+
+    private volatile DetectOptions detectOptions = new DetectOptions();
+
+    private volatile FaceIdRegistry faceIdRegistry = null;
+
+    private volatile DetectionLog detectionLog = null;
+
+    // faceId 는 발급한 리소스에서만 쓸 수 있으므로 어느 엔드포인트의 응답이었는지 기억한다.
+    // 여기서 밀려난 id 는 FaceIdRegistry 에 보관한 발급 엔드포인트로 찾는다.
+    private final Map<String, FaceApiEndpoint> faceIdOrigins = new LinkedHashMap<String, FaceApiEndpoint>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, FaceApiEndpoint> eldest) {
+            return size() > MAX_FACE_ID_ORIGINS;
+        }
+    };
+
+    // DetectionCache 는 이 옵션의 결과만 보관한다.
+    private static final String CACHEABLE_QUERY = new DetectOptions().toQueryString();
+
+    FaceApi(FaceApiConfig config) {
+        this.config = config;
+        this.router = new EndpointRouter(config.getEndpoints(),
+                config.getCircuitFailureThreshold(), config.getCircuitOpenMillis());
+        this.client = createHttpClient(config);
     }
 
     /**
      * {@link FaceApi} 인스턴스 생성
+     * 기본 {@link FaceApiConfig}를 사용한다.
      *
      * @return FaceApi 인스턴스
      */
     public static FaceApi getInstance() {
-        if(instance == null)
-            instance = new FaceApi();
+        FaceApi faceApi = instance;
+        if (faceApi == null) {
+            synchronized (FaceApi.class) {
+                faceApi = instance;
+                if (faceApi == null)
+                    instance = faceApi = new FaceApi(new FaceApiConfig());
+            }
+        }
+        return faceApi;
+    }
+
+    /**
+     * 주어진 설정으로 {@link FaceApi} 인스턴스를 새로 생성한다.
+     * 이전 인스턴스가 있으면 {@link #shutdown()} 후 교체된다.
+     *
+     * @param config HTTP 전송 계층 설정
+     * @return FaceApi 인스턴스
+     */
+    public static synchronized FaceApi init(FaceApiConfig config) {
+        if (instance != null)
+            instance.shutdown();
+        instance = new FaceApi(config);
         return instance;
     }
 
+    private static OkHttpClient createHttpClient(FaceApiConfig config) {
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(config.getMaxRequests());
+        dispatcher.setMaxRequestsPerHost(config.getMaxRequestsPerHost());
+
+        return new OkHttpClient.Builder()
+                .dispatcher(dispatcher)
+                .connectionPool(new ConnectionPool(
+                        config.getMaxIdleConnections(),
+                        config.getKeepAliveDurationMillis(),
+                        TimeUnit.MILLISECONDS))
+                .protocols(config.isHttp2Enabled()
+                        ? Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1)
+                        : Collections.singletonList(Protocol.HTTP_1_1))
+                .connectTimeout(config.getConnectTimeoutMillis(), TimeUnit.MILLISECONDS)
+                .readTimeout(config.getReadTimeoutMillis(), TimeUnit.MILLISECONDS)
+                .writeTimeout(config.getWriteTimeoutMillis(), TimeUnit.MILLISECONDS)
+                .build();
+    }
+
+    /**
+     * 진행 중인 요청을 취소하고 스레드와 유휴 연결을 정리한다.
+     * 이후 이 인스턴스는 사용할 수 없으며 {@link #getInstance()}는 새 인스턴스를 만든다.
+     */
+    public void shutdown() {
+        synchronized (FaceApi.class) {
+            if (instance == this)
+                instance = null;
+        }
+        encodeExecutor.shutdownNow();
+        scheduler.shutdownNow();
+        // 이미 받은 결과는 기록을 마친다.
+        logExecutor.shutdown();
+        client.dispatcher().cancelAll();
+        client.dispatcher().executorService().shutdown();
+        client.connectionPool().evictAll();
+    }
+
+    OkHttpClient getHttpClient() {
+        return client;
+    }
+
     /**
      * 이미지의 얼굴부분에 사각형 모양을 그려준다.
      *
@@ -65,6 +218,7 @@ public class FaceApi {
      * @param faces 사진 상의 얼굴들에 대한 정보 리스트
      * @return 원본 {@link Bitmap}에서 얼굴 부분에 사격형을 표시를 추가한 {@link Bitmap}
      * @see #getFaceList()
+     * @see FaceOverlayView 비트맵을 복사하지 않고 화면 위에 그린다.
      */
     public static Bitmap drawFaceRectanglesOnBitmap(Bitmap originalBitmap, List<Face> faces) {
         Bitmap bitmap = originalBitmap.copy(Bitmap.Config.ARGB_8888, true);
@@ -79,7 +233,7 @@ public class FaceApi {
         paint.setStrokeWidth(strokeWidth);
 
         if (faces != null) {
-            for (FaceApi.Face face : faces) {
+            for (Face face : faces) {
                 Rectangle faceRectangle = face.getFaceRectangle();
                 canvas.drawRect(
                         faceRectangle.x,
@@ -99,188 +253,999 @@ public class FaceApi {
      * REST API를 사용하여 {@link Bitmap}에 대한 분석을 요청한다.
      * 호출 시 이전 {@link #getFaceList()}는 초기화 된다.
      *
-     * @param imageBitmap 4MBytes 이하의 이미지
+     * 업로드 전 이미지는 {@link #setImageEncoder(ImageEncoder)}로 설정한 인코더를 거치며,
+     * 응답의 얼굴 좌표는 원본 이미지 기준으로 되돌려진다.
+     * 인코딩은 호출한 스레드가 아닌 {@link FaceApi}의 인코딩 스레드에서 진행된다.
+     *
+     * @param imageBitmap 분석할 이미지. 응답이 오기 전까지 recycle 하지 않는다.
+     * @see #detect(Bitmap, DetectCallback)
      */
     public void detectAndFrameRest(final Bitmap imageBitmap) {
-        faceList.clear();
+        final long seq = sequence.incrementAndGet();
+        publishLatest(new DetectionResult(seq, null, Collections.<Face>emptyList()));
 
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        imageBitmap.compress(Bitmap.CompressFormat.JPEG, 100, baos);
+        encodeAndDetect(imageBitmap, seq, null, null, new DetectCallback() {
+            @Override
+            public void onDetected(DetectionResult result) {
+                onRequestCompleted(result);
+                if (!publishLatest(result))
+                    return;
 
-        final OkHttpClient client = new OkHttpClient();
+                // 비트맵 복사는 이전 방식의 리스너가 있을 때만 한다.
+                OnResponseListener listener = onResponseListener;
+                if (listener != null) {
+                    long renderStart = System.nanoTime();
+                    Bitmap framedImage = drawFaceRectanglesOnBitmap(imageBitmap, result.getFaces());
+                    metrics.recordSince(DetectionMetrics.Stage.RENDER, renderStart);
+                    listener.onResponse(framedImage, result.getFaces());
+                }
+            }
 
-        String url = REST_URL
-                + "?returnFaceId=true"
-                + "&returnFaceLandmarks=false"
-                + "&returnFaceAttributes=emotion";
+            @Override
+            public void onFailure(IOException e) {
+                OnFailureListener listener = onFailureListener;
+                if (listener != null)
+                    listener.onFailure(e);
+            }
+        });
+    }
 
-        final Request request = new Request.Builder()
-                .addHeader("Content-Type", "application/octet-stream")
-                .addHeader("Ocp-Apim-Subscription-Key", SERVICE_KEY)
-                .url(url)
-                .post(RequestBody.create(MediaType.parse("application/octet-stream"), baos.toByteArray()))
-                .build();
+    /**
+     * REST API를 사용하여 {@link Bitmap}에 대한 분석을 요청하고 결과를 요청마다 따로 받는다.
+     * 여러 요청을 겹쳐서 보내도 서로의 결과를 덮어쓰지 않으며,
+     * 가장 나중에 보낸 요청의 결과가 {@link #getLatestResult()}로 게시된다.
+     * 인코딩은 호출한 스레드가 아닌 {@link FaceApi}의 인코딩 스레드에서 진행된다.
+     *
+     * @param imageBitmap 분석할 이미지. 결과가 전달되기 전까지 recycle 하지 않는다.
+     * @param callback    결과를 받을 콜백. OkHttp 스레드에서 호출된다.
+     * @return 결과의 {@link DetectionResult#getRequestId()}와 같은 요청 ID
+     * @see DetectionPipeline
+     */
+    public String detect(Bitmap imageBitmap, DetectCallback callback) {
+        return detect(imageBitmap, null, callback);
+    }
+
+    /**
+     * @param imageBitmap 분석할 이미지. 결과가 전달되기 전까지 recycle 하지 않는다.
+     * @param options     이 요청에서 돌려받을 항목. null 이면 {@link #setDetectOptions(DetectOptions)}의 값
+     * @param callback    결과를 받을 콜백. OkHttp 스레드에서 호출된다.
+     * @return 결과의 {@link DetectionResult#getRequestId()}와 같은 요청 ID
+     * @see #detect(Bitmap, DetectCallback)
+     */
+    public String detect(Bitmap imageBitmap, DetectOptions options, DetectCallback callback) {
+        long seq = sequence.incrementAndGet();
+        String requestId = "detect-" + seq;
+
+        encodeAndDetect(imageBitmap, seq, requestId, options, publishing(callback));
+        return requestId;
+    }
+
+    /**
+     * {@link FaceDetectionCamera#CAPTURE_MODE_PREVIEW}로 얻은 프레임을 디코딩 없이 그대로 업로드한다.
+     * 응답의 얼굴 좌표는 {@link CapturedFrame#getRotation()}만큼 돌려 바로 세운 프레임 기준이다.
+     *
+     * @param frame    분석할 프레임
+     * @param callback 결과를 받을 콜백. OkHttp 스레드에서 호출된다.
+     * @return 결과의 {@link DetectionResult#getRequestId()}와 같은 요청 ID
+     * @see #detect(Bitmap, DetectCallback)
+     */
+    public String detect(CapturedFrame frame, DetectCallback callback) {
+        return detect(frame, frame.getDetectOptions(), callback);
+    }
+
+    /**
+     * @param frame    분석할 프레임
+     * @param options  이 요청에서 돌려받을 항목. null 이면 {@link #setDetectOptions(DetectOptions)}의 값
+     * @param callback 결과를 받을 콜백. OkHttp 스레드에서 호출된다.
+     * @return 결과의 {@link DetectionResult#getRequestId()}와 같은 요청 ID
+     * @see #detect(CapturedFrame, DetectCallback)
+     */
+    public String detect(CapturedFrame frame, DetectOptions options, DetectCallback callback) {
+        long seq = sequence.incrementAndGet();
+        String requestId = "detect-" + seq;
+
+        detectFrame(frame, seq, requestId, options, publishing(callback));
+        return requestId;
+    }
+
+    /**
+     * 여러 영역을 합친 프레임은 한 번 업로드하고 타일마다 나눈 얼굴을 프레임 좌표로 되돌린다.
+     * 아니면 {@link #detectParts(List, long, String, DetectOptions, DetectCallback)}와 같다.
+     *
+     * @see CapturedFrame#getLayout()
+     */
+    void detectFrame(final CapturedFrame frame, final long seq, final String requestId,
+                     DetectOptions options, final DetectCallback callback) {
+        final MosaicLayout layout = frame.getLayout();
+        if (layout == null) {
+            detectParts(frame.getParts(), seq, requestId, options, callback);
+            return;
+        }
+
+        detect(frame.getParts().get(0), seq, requestId, options, new DetectCallback() {
+            @Override
+            public void onDetected(DetectionResult result) {
+                // 타일로 나누면 센서 방향의 프레임 좌표가 되므로 프레임 전체의 회전만 적용한다.
+                EncodedImage geometry = new EncodedImage(new byte[0], frame.getWidth(), frame.getHeight(),
+                        frame.getWidth(), frame.getHeight(), frame.getRotation());
+                List<Face> merged = new ArrayList<>();
+                for (List<Face> tile : layout.split(result.getFaces())) {
+                    merged.addAll(toSourceFaces(geometry, tile));
+                }
+                callback.onDetected(new DetectionResult(seq, requestId, merged, result.getFaceIdTimestampMillis()));
+            }
+
+            @Override
+            public void onFailure(IOException e) {
+                callback.onFailure(e);
+            }
+        });
+    }
+
+    /**
+     * 인코딩한 byte[] 없이 {@link Bitmap}을 요청 본문으로 바로 압축하며 업로드한다.
+     * 해상도는 줄이지 않으므로 얼굴 좌표는 그대로 비트맵 기준이다. 큰 촬영 이미지의 임시 메모리를 줄일 때 사용한다.
+     * <p>
+     * precomputeLength 가 true 이면 인코딩 스레드에서 한 번 압축해 보며 Content-Length 와 SHA-256 을 구하고,
+     * 같은 바이트의 요청이 진행 중이면 함께 받는다. false 이면 chunked 로 바로 보낸다.
+     * 어느 쪽이든 재시도할 때는 비트맵을 다시 압축해 보내며, {@link DetectionCache}는 사용하지 않는다.
+     *
+     * @param imageBitmap      분석할 이미지. 결과가 전달되기 전까지 recycle 하지 않는다.
+     * @param quality          JPEG 품질 (0 ~ 100)
+     * @param precomputeLength 보내기 전에 길이를 구할지 여부. 압축을 한 번 더 하는 대신 Content-Length 를 보낸다.
+     * @param callback         결과를 받을 콜백. OkHttp 스레드에서 호출된다.
+     * @return 결과의 {@link DetectionResult#getRequestId()}와 같은 요청 ID
+     * @see BitmapRequestBody
+     */
+    public String detectStreaming(final Bitmap imageBitmap, final int quality, boolean precomputeLength,
+                                  DetectCallback callback) {
+        final long seq = sequence.incrementAndGet();
+        final String requestId = "detect-" + seq;
+        final DetectCallback publishing = publishing(callback);
+        final SingleFlight.Listener<List<Face>> listener = new SingleFlight.Listener<List<Face>>() {
+            @Override
+            public void onSuccess(List<Face> responseFaces) {
+                publishing.onDetected(new DetectionResult(seq, requestId, copyOf(responseFaces)));
+            }
+
+            @Override
+            public void onFailure(IOException e) {
+                publishing.onFailure(e);
+            }
+        };
+
+        final String query = detectOptions.toQueryString();
+        if (!precomputeLength) {
+            upload(new BitmapRequestBody(imageBitmap, quality), query, null, null, listener);
+            return requestId;
+        }
 
-        new Thread() {
+        encodeExecutor.execute(new Runnable() {
             @Override
             public void run() {
-                client.newCall(request).enqueue(new Callback() {
-                    @Override
-                    public void onFailure(Call call, IOException e) {
+                BitmapRequestBody body = new BitmapRequestBody(imageBitmap, quality);
+                long encodeStart = System.nanoTime();
+                try {
+                    body.precompute();
+                } catch (IOException e) {
+                    listener.onFailure(e);
+                    return;
+                }
+                metrics.recordSince(DetectionMetrics.Stage.ENCODE, encodeStart, body.contentLength());
 
-                    }
+                String key = body.getDigest() + query;
+                if (!isCoalescingEnabled)
+                    upload(body, query, null, null, listener);
+                else if (inFlightRequests.join(key, listener))
+                    upload(body, query, null, key, listener);
+                else
+                    metrics.onCoalesced();
+            }
+        });
+        return requestId;
+    }
 
-                    @Override
-                    public void onResponse(Call call, Response response) throws IOException {
-                        try {
-                            final String responseStatus = response.toString();
-                            final JSONArray result = new JSONArray(response.body().string());
-
-                            for (int i = 0; i < result.length(); i++) {
-                                JSONObject face = result.getJSONObject(i);
-
-                                String faceId = face.getString("faceId");
-
-                                JSONObject faceRectangle = face.getJSONObject("faceRectangle");
-                                Rectangle r = new Rectangle();
-                                r.width = faceRectangle.getInt("width");
-                                r.height = faceRectangle.getInt("height");
-                                r.x = faceRectangle.getInt("left");
-                                r.y = faceRectangle.getInt("top");
-
-                                JSONObject faceAttributes = face.getJSONObject("faceAttributes");
-                                JSONObject emotion = faceAttributes.getJSONObject("emotion");
-
-                                FaceApi.Face.Emotion e = new FaceApi.Face.Emotion(
-                                        emotion.getDouble("anger"),
-                                        emotion.getDouble("contempt"),
-                                        emotion.getDouble("disgust"),
-                                        emotion.getDouble("fear"),
-                                        emotion.getDouble("happiness"),
-                                        emotion.getDouble("neutral"),
-                                        emotion.getDouble("sadness"),
-                                        emotion.getDouble("surprise")
-                                );
-
-                                faceList.add(new FaceApi.Face(faceId, r, e));
-                            }
+    /**
+     * 결과를 {@link #getLatestResult()}로 게시한 뒤 전달하는 콜백으로 감싼다.
+     */
+    private DetectCallback publishing(final DetectCallback callback) {
+        return new DetectCallback() {
+            @Override
+            public void onDetected(DetectionResult result) {
+                onRequestCompleted(result);
+                publishLatest(result);
+                callback.onDetected(result);
+            }
 
-                            Bitmap framedImage = drawFaceRectanglesOnBitmap(imageBitmap,getFaceList());
-                            if(onResponseListener != null){
-                                onResponseListener.onResponse(framedImage,getFaceList());
-                            } else {
-                                framedImage.recycle();
-                            }
+            @Override
+            public void onFailure(IOException e) {
+                callback.onFailure(e);
+            }
+        };
+    }
 
-                        } catch (JSONException e) {
-                            e.printStackTrace();
-                        }
-                    }
-                });
+    /**
+     * 인코딩 스레드에서 인코딩한 뒤 요청한다.
+     */
+    private void encodeAndDetect(final Bitmap imageBitmap, final long seq, final String requestId,
+                                 final DetectOptions options, final DetectCallback callback) {
+        encodeExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                EncodedImage encodedImage;
+                try {
+                    encodedImage = encode(imageBitmap);
+                } catch (RuntimeException e) {
+                    callback.onFailure(new IOException("Failed to encode image", e));
+                    return;
+                }
+                detect(encodedImage, seq, requestId, options, callback);
             }
-        }.run();
+        });
     }
 
     /**
-     * {@link #detectAndFrameRest(Bitmap)} 호출 후에 응답이 성공하면 호출된다.
-     * 스레드가 다름으로 UI처리는 {@link android.app.Activity#runOnUiThread(Runnable)}에서 처리한다.
+     * 인코딩된 이미지 하나를 분석한다. {@link #getLatestResult()}는 변경하지 않는다.
+     * 콜백은 OkHttp 스레드에서 호출되며, 얼굴 좌표는 원본 이미지 기준으로 변환되어 있다.
+     * {@link DetectionCache}에 결과가 있으면 네트워크 요청 없이 호출한 스레드에서 바로 콜백한다.
+     * 같은 바이트, 같은 옵션의 요청이 이미 진행 중이면 새로 보내지 않고 그 응답을 함께 받는다.
+     *
+     * @param encodedImage 업로드할 이미지
+     * @param seq          {@link #nextSequence()}로 받은 요청 순서
+     * @param requestId    결과에 담을 요청 ID
+     * @param callback     결과를 받을 콜백
      */
-    public interface OnResponseListener {
-        void onResponse(Bitmap framedImage, List<Face> faceList);
+    void detect(EncodedImage encodedImage, long seq, String requestId, DetectCallback callback) {
+        detect(encodedImage, seq, requestId, null, callback);
     }
 
-    public void setOnResponseListener(OnResponseListener onResponseListener) {
-        this.onResponseListener = onResponseListener;
+    /**
+     * @param options null 이면 {@link #setDetectOptions(DetectOptions)}의 값
+     * @see #detect(EncodedImage, long, String, DetectCallback)
+     */
+    void detect(final EncodedImage encodedImage, final long seq, final String requestId,
+                DetectOptions options, final DetectCallback callback) {
+        final String query = (options != null ? options : detectOptions).toQueryString();
+        // 캐시 항목은 faceId, 사각형, emotion 만 보관하므로 기본 옵션의 요청에만 사용한다.
+        final boolean cacheable = CACHEABLE_QUERY.equals(query);
+
+        DetectionCache cache = detectionCache;
+        if (cache != null && cacheable) {
+            DetectionResult cached = cache.get(encodedImage, seq, requestId);
+            if (cached != null) {
+                metrics.onCacheHit();
+                callback.onDetected(cached);
+                return;
+            }
+        }
+
+        SingleFlight.Listener<List<Face>> listener = new SingleFlight.Listener<List<Face>>() {
+            @Override
+            public void onSuccess(List<Face> responseFaces) {
+                callback.onDetected(new DetectionResult(seq, requestId, toSourceFaces(encodedImage, responseFaces)));
+            }
+
+            @Override
+            public void onFailure(IOException e) {
+                callback.onFailure(e);
+            }
+        };
+
+        EncodedImage cacheImage = cacheable ? encodedImage : null;
+        if (!isCoalescingEnabled) {
+            upload(RequestBody.create(OCTET_STREAM, encodedImage.getData()), query, cacheImage, null, listener);
+            return;
+        }
+
+        String key = encodedImage.getDigest() + query;
+        if (inFlightRequests.join(key, listener))
+            upload(RequestBody.create(OCTET_STREAM, encodedImage.getData()), query, cacheImage, key, listener);
+        else
+            metrics.onCoalesced();
     }
 
-    public List<Face> getFaceList() {
-        return this.faceList;
+    /**
+     * 업로드하고 응답 좌표 그대로의 얼굴을 전달한다.
+     *
+     * @param body         요청 본문
+     * @param query        {@link DetectOptions#toQueryString()}
+     * @param encodedImage null 이 아니면 결과를 {@link DetectionCache}에 넣는다.
+     * @param key          null 이 아니면 응답을 이 키로 기다리는 모든 요청에 전달한다.
+     */
+    private void upload(RequestBody body, String query, final EncodedImage encodedImage, final String key,
+                        final SingleFlight.Listener<List<Face>> listener) {
+        new ResilientCall(this, query, body, new ResilientCall.ResponseCallback() {
+            @Override
+            public void onFailure(IOException e) {
+                metrics.onFailure();
+                if (key != null)
+                    inFlightRequests.fail(key, e);
+                else
+                    listener.onFailure(e);
+            }
+
+            @Override
+            public void onResponse(Response response) {
+                List<Face> faces;
+                long parseStart = System.nanoTime();
+                try (ResponseBody body = response.body()) {
+                    faces = FaceResponseParser.parse(body.source());
+                    metrics.recordSince(DetectionMetrics.Stage.PARSE, parseStart, Math.max(0, body.contentLength()));
+                } catch (IOException e) {
+                    onFailure(e);
+                    return;
+                }
+                metrics.onSuccess();
+                rememberOrigins(response.request().tag(), faces);
+
+                DetectionCache cache = detectionCache;
+                if (cache != null && encodedImage != null)
+                    cache.put(encodedImage, toSourceFaces(encodedImage, faces));
+
+                if (key != null)
+                    inFlightRequests.complete(key, faces);
+                else
+                    listener.onSuccess(faces);
+            }
+        }).start();
     }
 
-    public void clearFaceList() {
-        this.faceList.clear();
+    private static List<Face> copyOf(List<Face> responseFaces) {
+        List<Face> faces = new ArrayList<>(responseFaces.size());
+        for (Face face : responseFaces) {
+            faces.add(face.copy());
+        }
+        return faces;
+    }
+
+    /**
+     * 응답 좌표의 얼굴들을 복사하여 원본 이미지 좌표로 변환한다. 응답은 여러 요청이 나눠 쓰므로 바꾸지 않는다.
+     */
+    private static List<Face> toSourceFaces(EncodedImage encodedImage, List<Face> responseFaces) {
+        List<Face> faces = new ArrayList<>(responseFaces.size());
+        for (Face face : responseFaces) {
+            Face copy = face.copy();
+            encodedImage.toSourceRectangle(copy.getFaceRectangle());
+            if (copy.getLandmarks() != null) {
+                for (float[] point : copy.getLandmarks().values()) {
+                    encodedImage.toSourcePoint(point);
+                }
+            }
+            faces.add(copy);
+        }
+        return faces;
+    }
+
+    /**
+     * 한 이미지에서 잘라낸 여러 영역을 분석하고 하나의 결과로 합친다. 얼굴 좌표는 모두 원본 이미지 기준이다.
+     * 하나라도 실패하면 전체가 실패한다. 한 번의 요청으로 보내려면 캡처할 때 {@link Nv21Mosaic}으로 합친다.
+     */
+    void detectParts(List<EncodedImage> parts, long seq, String requestId,
+                     DetectOptions options, DetectCallback callback) {
+        if (parts.isEmpty()) {
+            callback.onDetected(new DetectionResult(seq, requestId, Collections.<Face>emptyList()));
+            return;
+        }
+        if (parts.size() == 1) {
+            detect(parts.get(0), seq, requestId, options, callback);
+            return;
+        }
+        detectEachPart(parts, seq, requestId, options, callback);
     }
 
     /**
-     * 얼굴들에 대한 정보를 저장하는 클래스
+     * 영역마다 따로 분석하고 하나의 결과로 합친다.
      */
-    public static class Face {
-        private String faceId;
+    private void detectEachPart(List<EncodedImage> parts, final long seq, final String requestId,
+                                DetectOptions options, final DetectCallback callback) {
+        final List<Face> merged = new ArrayList<>();
+        // 캐시에서 받은 영역이 있으면 가장 먼저 받은 faceId 의 시각으로 만료를 계산한다.
+        final long[] faceIdTimestamp = {Long.MAX_VALUE};
+        final AtomicInteger remaining = new AtomicInteger(parts.size());
+        final AtomicBoolean failed = new AtomicBoolean(false);
 
-        /**
-         *  인식된 얼굴의 비트맵 좌표를 나타낸다. 외부에서 접근 할 때 오류가 발생하면 'com.android.support.constraint:constraint-layout:1.0.2'를 'build.gradle'의 'dependencies' 에 추가한다.
-         */
-        private Rectangle faceRectangle;
+        for (EncodedImage part : parts) {
+            detect(part, seq, requestId, options, new DetectCallback() {
+                @Override
+                public void onDetected(DetectionResult result) {
+                    synchronized (merged) {
+                        merged.addAll(result.getFaces());
+                        faceIdTimestamp[0] = Math.min(faceIdTimestamp[0], result.getFaceIdTimestampMillis());
+                    }
+                    if (remaining.decrementAndGet() == 0 && !failed.get()) {
+                        synchronized (merged) {
+                            callback.onDetected(new DetectionResult(seq, requestId, merged, faceIdTimestamp[0]));
+                        }
+                    }
+                }
 
-        private Emotion emotion;
+                @Override
+                public void onFailure(IOException e) {
+                    if (failed.compareAndSet(false, true))
+                        callback.onFailure(e);
+                }
+            });
+        }
+    }
 
-        public Face(String faceId, Rectangle faceRectangle, Emotion emotion) {
-            this.setFaceId(faceId);
-            this.setFaceRectangle(faceRectangle);
-            this.setEmotion(emotion);
+    /**
+     * 두 faceId 가 같은 사람인지 확인한다. 이미지를 다시 올리지 않는다.
+     * 두 id 는 같은 엔드포인트가 발급한 것이어야 하며, 아니면 보내지 않고 실패로 전달한다.
+     *
+     * @see FaceIdRegistry
+     */
+    public void verify(String faceId1, String faceId2,
+                       FaceIdCallback<FaceIdOperations.VerifyResult> callback) {
+        Buffer json = new Buffer();
+        FaceApiEndpoint endpoint;
+        try {
+            endpoint = endpointOf(Arrays.asList(faceId1, faceId2));
+            FaceIdOperations.writeVerify(json, faceId1, faceId2);
+        } catch (IOException e) {
+            callback.onFailure(e);
+            return;
         }
 
-        public String getFaceId() {
-            return faceId;
+        sendFaceIdOperation(endpoint, "verify", json, new ResponseReader<FaceIdOperations.VerifyResult>() {
+            @Override
+            public FaceIdOperations.VerifyResult read(BufferedSource source) throws IOException {
+                return FaceIdOperations.parseVerify(source);
+            }
+        }, callback);
+    }
+
+    /**
+     * 후보 faceId 들 중 faceId 와 비슷한 얼굴을 찾는다.
+     * 후보는 {@link FaceIdOperations#MAX_FIND_SIMILAR_CANDIDATES}개씩 나눠 동시에 요청하고, 응답을 합쳐 비슷한 순서로 전달한다.
+     * faceId 와 후보는 모두 같은 엔드포인트가 발급한 것이어야 하며, 아니면 보내지 않고 실패로 전달한다.
+     *
+     * @param candidateIds  후보 faceId 들. (예: {@link FaceIdRegistry#getFaceIds(java.util.Collection)})
+     * @param maxCandidates 돌려받을 최대 얼굴 수 (1 ~ 1000)
+     */
+    public void findSimilar(final String faceId, List<String> candidateIds, int maxCandidates,
+                            final FaceIdCallback<List<FaceIdOperations.SimilarFace>> callback) {
+        final int limit = Math.max(1, Math.min(FaceIdOperations.MAX_FIND_SIMILAR_CANDIDATES, maxCandidates));
+        if (candidateIds.isEmpty()) {
+            callback.onResult(Collections.<FaceIdOperations.SimilarFace>emptyList());
+            return;
         }
 
-        public void setFaceId(String faceId) {
-            this.faceId = faceId;
+        List<String> faceIds = new ArrayList<>(candidateIds.size() + 1);
+        faceIds.add(faceId);
+        faceIds.addAll(candidateIds);
+        final FaceApiEndpoint endpoint;
+        try {
+            endpoint = endpointOf(faceIds);
+        } catch (IOException e) {
+            callback.onFailure(e);
+            return;
         }
 
-        /**
-         *  인식된 얼굴의 비트맵 좌표를 나타낸다. 외부에서 접근 할 때 오류가 발생하면 'com.android.support.constraint:constraint-layout:1.0.2'를 'build.gradle'의 'dependencies' 에 추가한다.
-         */
-        public Rectangle getFaceRectangle() {
-            return faceRectangle;
+        List<Buffer> requests = new ArrayList<>();
+        for (int from = 0; from < candidateIds.size(); from += FaceIdOperations.MAX_FIND_SIMILAR_CANDIDATES) {
+            List<String> chunk = candidateIds.subList(from,
+                    Math.min(candidateIds.size(), from + FaceIdOperations.MAX_FIND_SIMILAR_CANDIDATES));
+            Buffer json = new Buffer();
+            try {
+                FaceIdOperations.writeFindSimilar(json, faceId, chunk, Math.min(limit, chunk.size()), "matchPerson");
+            } catch (IOException e) {
+                callback.onFailure(e);
+                return;
+            }
+            requests.add(json);
         }
 
-        public void setFaceRectangle(Rectangle faceRectangle) {
-            this.faceRectangle = faceRectangle;
+        final List<FaceIdOperations.SimilarFace> merged = new ArrayList<>();
+        final AtomicInteger remaining = new AtomicInteger(requests.size());
+        final AtomicBoolean failed = new AtomicBoolean(false);
+
+        FaceIdCallback<List<FaceIdOperations.SimilarFace>> partCallback =
+                new FaceIdCallback<List<FaceIdOperations.SimilarFace>>() {
+                    @Override
+                    public void onResult(List<FaceIdOperations.SimilarFace> faces) {
+                        synchronized (merged) {
+                            merged.addAll(faces);
+                        }
+                        if (remaining.decrementAndGet() == 0 && !failed.get()) {
+                            List<FaceIdOperations.SimilarFace> result;
+                            synchronized (merged) {
+                                Collections.sort(merged, new Comparator<FaceIdOperations.SimilarFace>() {
+                                    @Override
+                                    public int compare(FaceIdOperations.SimilarFace a, FaceIdOperations.SimilarFace b) {
+                                        return Double.compare(b.getConfidence(), a.getConfidence());
+                                    }
+                                });
+                                result = new ArrayList<>(merged.subList(0, Math.min(limit, merged.size())));
+                            }
+                            callback.onResult(result);
+                        }
+                    }
+
+                    @Override
+                    public void onFailure(IOException e) {
+                        if (failed.compareAndSet(false, true))
+                            callback.onFailure(e);
+                    }
+                };
+
+        ResponseReader<List<FaceIdOperations.SimilarFace>> reader =
+                new ResponseReader<List<FaceIdOperations.SimilarFace>>() {
+                    @Override
+                    public List<FaceIdOperations.SimilarFace> read(BufferedSource source) throws IOException {
+                        return FaceIdOperations.parseFindSimilar(source);
+                    }
+                };
+        for (Buffer json : requests) {
+            sendFaceIdOperation(endpoint, "findsimilars", json, reader, partCallback);
         }
+    }
 
-        public Emotion getEmotion() {
-            return emotion;
+    /**
+     * faceId 들을 같은 사람끼리 묶는다.
+     * 묶음은 나눠 보낸 요청 사이에서 합칠 수 없으므로 한 번에 {@link FaceIdOperations#MAX_GROUP_FACES}개까지만 받는다.
+     * 모든 id 는 같은 엔드포인트가 발급한 것이어야 하며, 아니면 보내지 않고 실패로 전달한다.
+     *
+     * @throws IllegalArgumentException faceId 가 {@link FaceIdOperations#MAX_GROUP_FACES}개보다 많을 때
+     */
+    public void group(List<String> faceIds, FaceIdCallback<FaceIdOperations.GroupResult> callback) {
+        if (faceIds.size() > FaceIdOperations.MAX_GROUP_FACES)
+            throw new IllegalArgumentException("Too many faceIds for one group request: " + faceIds.size());
+        if (faceIds.isEmpty()) {
+            callback.onResult(new FaceIdOperations.GroupResult(
+                    Collections.<List<String>>emptyList(), Collections.<String>emptyList()));
+            return;
         }
 
-        public void setEmotion(Emotion emotion) {
-            this.emotion = emotion;
+        Buffer json = new Buffer();
+        FaceApiEndpoint endpoint;
+        try {
+            endpoint = endpointOf(faceIds);
+            FaceIdOperations.writeGroup(json, faceIds);
+        } catch (IOException e) {
+            callback.onFailure(e);
+            return;
         }
 
-        public static class Emotion implements Serializable {
-            public double anger;
-            public double contempt;
-            public double disgust;
-            public double fear;
-            public double happiness;
-            public double neutral;
-            public double sadness;
-            public double surprise;
-
-            public Emotion(double anger, double contempt, double disgust, double fear, double happiness, double neutral, double sadness, double surprise) {
-                this.anger = anger;
-                this.contempt = contempt;
-                this.disgust = disgust;
-                this.fear = fear;
-                this.happiness = happiness;
-                this.neutral = neutral;
-                this.sadness = sadness;
-                this.surprise = surprise;
+        sendFaceIdOperation(endpoint, "group", json, new ResponseReader<FaceIdOperations.GroupResult>() {
+            @Override
+            public FaceIdOperations.GroupResult read(BufferedSource source) throws IOException {
+                return FaceIdOperations.parseGroup(source);
+            }
+        }, callback);
+    }
+
+    /**
+     * faceId 들을 발급한 엔드포인트를 찾는다. 최근 응답에서 기억한 것이 없으면 {@link #setFaceIdRegistry(FaceIdRegistry)}에서 찾는다.
+     * 엔드포인트가 하나뿐이면 모르는 id 도 그곳으로 보낸다.
+     *
+     * @throws IOException 서로 다른 엔드포인트가 발급한 id 가 섞였거나, 엔드포인트가 여럿인데 발급한 곳을 모르는 id 가 있을 때.
+     *                     다른 리소스로 보내면 서비스가 잘못된 id 로 거절하므로 보내지 않는다.
+     */
+    private FaceApiEndpoint endpointOf(List<String> faceIds) throws IOException {
+        List<EndpointRouter.Route> routes = router.getRoutes();
+        FaceApiEndpoint origin = null;
+        for (String faceId : faceIds) {
+            FaceApiEndpoint endpoint = originOf(faceId, routes);
+            if (endpoint == null) {
+                if (routes.size() > 1)
+                    throw new IOException("Unknown endpoint for faceId " + faceId);
+                continue;
+            }
+            if (origin == null)
+                origin = endpoint;
+            else if (origin != endpoint)
+                throw new IOException("faceIds were issued by different endpoints: " + origin + ", " + endpoint);
+        }
+        return origin != null ? origin : routes.get(0).getEndpoint();
+    }
+
+    private FaceApiEndpoint originOf(String faceId, List<EndpointRouter.Route> routes) {
+        synchronized (faceIdOrigins) {
+            FaceApiEndpoint endpoint = faceIdOrigins.get(faceId);
+            if (endpoint != null)
+                return endpoint;
+        }
+
+        FaceIdRegistry registry = faceIdRegistry;
+        String url = registry != null ? registry.getOrigin(faceId) : null;
+        return url != null ? endpointOf(url, routes) : null;
+    }
+
+    /**
+     * @return detect URL 이 같은 설정된 엔드포인트. 지금 설정에 없으면 null
+     */
+    private static FaceApiEndpoint endpointOf(String url, List<EndpointRouter.Route> routes) {
+        for (EndpointRouter.Route route : routes) {
+            if (route.getEndpoint().getUrl().equals(url))
+                return route.getEndpoint();
+        }
+        return null;
+    }
+
+    /**
+     * faceId 를 발급한 엔드포인트로 보낸다.
+     * 본문이 작고 재시도해도 결과가 같지 않을 수 있어 {@link ResilientCall}을 거치지 않으며, 지연 시간도 detect 통계에 넣지 않는다.
+     *
+     * @see #endpointOf(List)
+     */
+    private <T> void sendFaceIdOperation(FaceApiEndpoint endpoint, String operation, Buffer json,
+                                         final ResponseReader<T> reader, final FaceIdCallback<T> callback) {
+        Request request = new Request.Builder()
+                .addHeader("Ocp-Apim-Subscription-Key", endpoint.getSubscriptionKey())
+                .url(endpoint.getOperationUrl(operation))
+                .post(RequestBody.create(JSON, json.readByteString()))
+                .build();
+
+        client.newCall(request).enqueue(new Callback() {
+            @Override
+            public void onFailure(Call call, IOException e) {
+                callback.onFailure(e);
             }
 
             @Override
-            public String toString() {
-                return String.format(
-                        "anger\t: %f\n" +
-                                "contempt\t: %f\n" +
-                                "disgust\t: %f\n" +
-                                "fear\t: %f\n" +
-                                "happiness: %f\n" +
-                                "neutral\t: %f\n" +
-                                "sadness\t: %f\n" +
-                                "surprise\t: %f\n",
-                        anger, contempt, disgust, fear, happiness, neutral, sadness, surprise);
+            public void onResponse(Call call, Response response) {
+                T result;
+                try (ResponseBody body = response.body()) {
+                    if (!response.isSuccessful()) {
+                        callback.onFailure(FaceResponseParser.parseError(response.code(), body.source(),
+                                ResilientCall.parseRetryAfter(response.header("Retry-After"))));
+                        return;
+                    }
+                    result = reader.read(body.source());
+                } catch (IOException e) {
+                    callback.onFailure(e);
+                    return;
+                }
+                callback.onResult(result);
+            }
+        });
+    }
+
+    /**
+     * 응답의 얼굴마다 발급한 엔드포인트를 붙이고 기억한다. 캐시와 {@link FaceIdRegistry}에도 얼굴과 함께 보관된다.
+     *
+     * @param tag 요청에 붙인 {@link FaceApiEndpoint}
+     */
+    private void rememberOrigins(Object tag, List<Face> faces) {
+        if (!(tag instanceof FaceApiEndpoint))
+            return;
+
+        FaceApiEndpoint endpoint = (FaceApiEndpoint) tag;
+        synchronized (faceIdOrigins) {
+            for (Face face : faces) {
+                face.setOrigin(endpoint.getUrl());
+                if (face.getFaceId() != null)
+                    faceIdOrigins.put(face.getFaceId(), endpoint);
+            }
+        }
+    }
+
+    /**
+     * 캐시에서 돌려준 결과처럼 이번 응답이 아닌 얼굴의 발급 엔드포인트를 다시 기억한다.
+     */
+    private void rememberOrigins(List<Face> faces) {
+        List<EndpointRouter.Route> routes = router.getRoutes();
+        synchronized (faceIdOrigins) {
+            for (Face face : faces) {
+                if (face.getFaceId() == null || face.getOrigin() == null)
+                    continue;
+                FaceApiEndpoint endpoint = endpointOf(face.getOrigin(), routes);
+                if (endpoint != null)
+                    faceIdOrigins.put(face.getFaceId(), endpoint);
             }
         }
     }
+
+    private interface ResponseReader<T> {
+        T read(BufferedSource source) throws IOException;
+    }
+
+    FaceApiConfig getConfig() {
+        return config;
+    }
+
+    ScheduledExecutorService getScheduler() {
+        return scheduler;
+    }
+
+    EndpointRouter getRouter() {
+        return router;
+    }
+
+    /**
+     * @return 엔드포인트마다의 응답 시간 평균과 회로 차단기 상태
+     * @see FaceApiConfig#addEndpoint(FaceApiEndpoint)
+     */
+    public List<EndpointRouter.Route> getRoutes() {
+        return router.getRoutes();
+    }
+
+    long nextSequence() {
+        return sequence.incrementAndGet();
+    }
+
+    /**
+     * 호출자의 요청 하나가 최종 결과를 받았을 때 한 번 호출한다.
+     * 영역을 나눠 보낸 요청은 합친 결과로, 합친 이미지({@link MosaicBatcher})는 입력마다 호출해야 얼굴 순번이 결과와 맞는다.
+     * 새 응답의 faceId 를 {@link #setFaceIdRegistry(FaceIdRegistry)}에 "요청 id/순번" 키로 보관하고
+     * {@link #setDetectionLog(DetectionLog)}에 기록을 넘긴다.
+     */
+    void onRequestCompleted(final DetectionResult result) {
+        rememberOrigins(result.getFaces());
+
+        FaceIdRegistry registry = faceIdRegistry;
+        if (registry != null && result.getRequestId() != null)
+            registry.putAll(result.getRequestId(), result.getFaces(), result.getFaceIdTimestampMillis());
+
+        final DetectionLog log = detectionLog;
+        if (log == null)
+            return;
+        try {
+            logExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        log.append(result);
+                    } catch (IOException e) {
+                        e.printStackTrace();
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // shutdown() 이후 도착한 응답은 기록하지 않는다.
+        }
+    }
+
+    /**
+     * 결과가 현재 게시된 결과보다 나중에 보낸 요청의 것일 때만 게시한다.
+     * 늦게 도착한 이전 요청의 응답이 최신 결과를 덮어쓰지 않도록 잠금 없이 비교 후 교체한다.
+     *
+     * @return 게시되었으면 true
+     */
+    boolean publishLatest(DetectionResult result) {
+        while (true) {
+            DetectionResult current = latestResult.get();
+            if (current.getSequence() > result.getSequence())
+                return false;
+            if (latestResult.compareAndSet(current, result))
+                return true;
+        }
+    }
+
+    /**
+     * 설정된 {@link ImageEncoder}로 인코딩한다.
+     * 근접 중복 검사를 하는 {@link DetectionCache}가 있으면 perceptual hash 도 함께 계산한다.
+     */
+    EncodedImage encode(Bitmap imageBitmap) {
+        return encode(imageBitmap, true);
+    }
+
+    /**
+     * @param nearDuplicate false 이면 perceptual hash 를 계산하지 않아 근접 중복 검사에서 제외한다.
+     *                      배치가 비슷한 합친 이미지({@link MosaicBatcher}) 등
+     */
+    EncodedImage encode(Bitmap imageBitmap, boolean nearDuplicate) {
+        long encodeStart = System.nanoTime();
+        EncodedImage encodedImage = imageEncoder.encode(imageBitmap);
+        metrics.recordSince(DetectionMetrics.Stage.ENCODE, encodeStart, encodedImage.getData().length);
+
+        DetectionCache cache = detectionCache;
+        if (nearDuplicate && cache != null && cache.isNearDuplicateEnabled())
+            encodedImage.setPerceptualHash(PerceptualHash.dHash(imageBitmap));
+
+        return encodedImage;
+    }
+
+    /**
+     * 합친 이미지를 해상도를 줄이지 않고 인코딩한다. 타일은 이미 검출 가능한 크기로 배치되었으므로 품질만 조절한다.
+     * {@link #setImageEncoder(ImageEncoder)}가 {@link AdaptiveJpegEncoder}이면 그 품질 범위와 예산을 따른다.
+     */
+    EncodedImage encodeMosaic(Bitmap mosaic) {
+        ImageEncoder encoder = imageEncoder;
+        AdaptiveJpegEncoder jpegEncoder = encoder instanceof AdaptiveJpegEncoder
+                ? (AdaptiveJpegEncoder) encoder
+                : new AdaptiveJpegEncoder();
+
+        long encodeStart = System.nanoTime();
+        EncodedImage encodedImage = jpegEncoder.encodeAtFullResolution(mosaic);
+        metrics.recordSince(DetectionMetrics.Stage.ENCODE, encodeStart, encodedImage.getData().length);
+        return encodedImage;
+    }
+
+    /**
+     * 첫 번째 엔드포인트로 보내는 요청을 만든다.
+     *
+     * @see #newDetectCall(FaceApiEndpoint, byte[])
+     */
+    Call newDetectCall(byte[] jpeg) {
+        return newDetectCall(router.getRoutes().get(0).getEndpoint(), jpeg);
+    }
+
+    /**
+     * 공유 {@link OkHttpClient}로 얼굴 분석 요청을 만든다.
+     *
+     * @param endpoint 요청을 보낼 엔드포인트
+     * @param jpeg     업로드할 JPEG 바이트
+     */
+    Call newDetectCall(FaceApiEndpoint endpoint, byte[] jpeg) {
+        return newDetectCall(endpoint, detectOptions.toQueryString(), RequestBody.create(OCTET_STREAM, jpeg));
+    }
+
+    /**
+     * @param endpoint 요청을 보낼 엔드포인트
+     * @param query    {@link DetectOptions#toQueryString()}
+     * @param body     업로드할 본문. 재시도와 헤지 요청에서 다시 쓰인다.
+     */
+    Call newDetectCall(FaceApiEndpoint endpoint, String query, RequestBody body) {
+        String url = endpoint.getUrl() + query;
+
+        Request request = new Request.Builder()
+                .addHeader("Content-Type", "application/octet-stream")
+                .addHeader("Ocp-Apim-Subscription-Key", endpoint.getSubscriptionKey())
+                .url(url)
+                .post(body)
+                .tag(endpoint)
+                .build();
+
+        return client.newCall(request);
+    }
+
+    /**
+     * {@link #detect(Bitmap, DetectCallback)} 요청마다 한 번씩 {@link #onDetected(DetectionResult)}
+     * 또는 {@link #onFailure(IOException)}가 호출된다.
+     * 실패는 재시도 후에도 성공하지 못했을 때 전달되며, 2xx 가 아닌 응답은 {@link FaceApiException}으로 전달된다.
+     * 스레드가 다름으로 UI처리는 {@link android.app.Activity#runOnUiThread(Runnable)}에서 처리한다.
+     */
+    public interface DetectCallback {
+        void onDetected(DetectionResult result);
+
+        void onFailure(IOException e);
+    }
+
+    /**
+     * {@link #verify(String, String, FaceIdCallback)} 등 faceId 작업마다 한 번씩 호출된다.
+     * 2xx 가 아닌 응답은 {@link FaceApiException}으로 전달된다. (예: 만료된 faceId 는 400)
+     * 스레드가 다름으로 UI처리는 {@link android.app.Activity#runOnUiThread(Runnable)}에서 처리한다.
+     */
+    public interface FaceIdCallback<T> {
+        void onResult(T result);
+
+        void onFailure(IOException e);
+    }
+
+    /**
+     * {@link #detectAndFrameRest(Bitmap)} 호출 후에 응답이 성공하면 호출된다.
+     * 스레드가 다름으로 UI처리는 {@link android.app.Activity#runOnUiThread(Runnable)}에서 처리한다.
+     *
+     * @deprecated 응답마다 원본 크기의 비트맵을 복사한다.
+     * {@link #detect(Bitmap, DetectCallback)}와 {@link FaceOverlayView}를 사용한다.
+     */
+    @Deprecated
+    public interface OnResponseListener {
+        void onResponse(Bitmap framedImage, List<Face> faceList);
+    }
+
+    /**
+     * {@link #detectAndFrameRest(Bitmap)} 요청이 재시도 후에도 실패하면 호출된다.
+     * 2xx 가 아닌 응답은 {@link FaceApiException}으로 전달된다.
+     * 스레드가 다름으로 UI처리는 {@link android.app.Activity#runOnUiThread(Runnable)}에서 처리한다.
+     */
+    public interface OnFailureListener {
+        void onFailure(IOException e);
+    }
+
+    /**
+     * 업로드 전 인코딩 단계를 교체한다.
+     *
+     * @param imageEncoder 사용할 인코더. Default : {@link AdaptiveJpegEncoder}
+     */
+    public void setImageEncoder(ImageEncoder imageEncoder) {
+        this.imageEncoder = imageEncoder;
+    }
+
+    /**
+     * 분석 결과를 기록할 로그를 설정한다. 요청 ID 를 source id 로 기록한다.
+     * 모든 요청 경로(파이프라인, 일괄 요청, 합친 이미지 포함)의 최종 결과를 기록하며,
+     * 기록은 전용 스레드에서 순서대로 하므로 파일 교체나 {@link DetectionLog#scan}과 겹쳐도 응답 스레드는 기다리지 않는다.
+     *
+     * @param detectionLog 사용할 로그. null 이면 기록하지 않는다. Default : null
+     */
+    public void setDetectionLog(DetectionLog detectionLog) {
+        this.detectionLog = detectionLog;
+    }
+
+    public DetectionLog getDetectionLog() {
+        return detectionLog;
+    }
+
+    /**
+     * 분석 결과 캐시를 설정한다.
+     *
+     * @param detectionCache 사용할 캐시. null 이면 캐시를 사용하지 않는다. Default : null
+     */
+    public void setDetectionCache(DetectionCache detectionCache) {
+        this.detectionCache = detectionCache;
+    }
+
+    public DetectionCache getDetectionCache() {
+        return detectionCache;
+    }
+
+    /**
+     * @param faceIdRegistry 요청마다 최종 결과의 faceId 를 "요청 id/순번" 키로 보관할 곳. 순번은 {@link DetectionResult#getFaces()}의 순서다.
+     *                       null 이면 보관하지 않는다. Default : null
+     */
+    public void setFaceIdRegistry(FaceIdRegistry faceIdRegistry) {
+        this.faceIdRegistry = faceIdRegistry;
+    }
+
+    public FaceIdRegistry getFaceIdRegistry() {
+        return faceIdRegistry;
+    }
+
+    /**
+     * 옵션을 따로 주지 않은 요청에서 돌려받을 항목을 정한다. {@link DetectionPipeline}, {@link FaceBatchDetector} 등도 이 값을 사용한다.
+     * {@link DetectionCache}는 기본값으로 보낸 요청의 결과만 보관하고 돌려준다.
+     *
+     * @param detectOptions 사용할 옵션. Default : faceId 와 emotion
+     */
+    public void setDetectOptions(DetectOptions detectOptions) {
+        this.detectOptions = detectOptions;
+    }
+
+    public DetectOptions getDetectOptions() {
+        return detectOptions;
+    }
+
+    /**
+     * @param enabled 같은 바이트의 요청이 진행 중일 때 새로 보내지 않고 그 응답을 함께 받을지. Default : true
+     */
+    public void setRequestCoalescingEnabled(boolean enabled) {
+        this.isCoalescingEnabled = enabled;
+    }
+
+    /**
+     * @return 인코딩, 네트워크, 파싱 단계의 소요 시간과 요청 수.
+     * {@link FaceDetectionCamera#setMetrics(DetectionMetrics)}, {@link FaceOverlayView#setMetrics(DetectionMetrics)}에
+     * 넘기면 촬영과 그리기 단계도 함께 기록된다.
+     */
+    public DetectionMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * @deprecated {@link #detect(Bitmap, DetectCallback)}와 {@link FaceOverlayView}를 사용한다.
+     */
+    @Deprecated
+    public void setOnResponseListener(OnResponseListener onResponseListener) {
+        this.onResponseListener = onResponseListener;
+    }
+
+    /**
+     * @param onFailureListener {@link #detectAndFrameRest(Bitmap)} 실패 시 호출할 리스너
+     */
+    public void setOnFailureListener(OnFailureListener onFailureListener) {
+        this.onFailureListener = onFailureListener;
+    }
+
+    /**
+     * @return 가장 나중에 보낸 요청의 결과. 아직 결과가 없으면 빈 결과
+     */
+    public DetectionResult getLatestResult() {
+        return latestResult.get();
+    }
+
+    /**
+     * @return {@link #getLatestResult()}의 변경할 수 없는 얼굴 리스트
+     */
+    public List<Face> getFaceList() {
+        return latestResult.get().getFaces();
+    }
+
+    /**
+     * 게시된 결과를 비운다. 이미 보낸 요청의 결과는 이후에 도착하면 다시 게시된다.
+     */
+    public void clearFaceList() {
+        publishLatest(new DetectionResult(sequence.get(), null, Collections.<Face>emptyList()));
+    }
 }
@@ -0,0 +1,290 @@
+package com.dominic.skuface;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link FaceApi}가 사용하는 엔드포인트와 HTTP 전송 계층 설정
+ * {@link FaceApi}가 살아있는 동안 하나의 {@link okhttp3.OkHttpClient}를 공유하며, 이 설정은 생성 시에 한 번 적용된다.
+ *
+ * @version 0.1
+ * @see FaceApi#init(FaceApiConfig)
+ */
+public class FaceApiConfig {
+
+    /**
+     * Azure Face API detect 엔드포인트
+     */
+    public static final String DEFAULT_ENDPOINT = "https://eastasia.api.cognitive.microsoft.com/face/v1.0/detect";
+
+    private String endpoint = DEFAULT_ENDPOINT;
+    private String subscriptionKey = "insert your key";
+    private final List<FaceApiEndpoint> endpoints = new ArrayList<>();
+
+    private long connectTimeoutMillis = 10_000;
+    private long readTimeoutMillis = 30_000;
+    private long writeTimeoutMillis = 30_000;
+
+    private int maxRequests = 64;
+    private int maxRequestsPerHost = 8;
+
+    private int maxIdleConnections = 5;
+    private long keepAliveDurationMillis = TimeUnit.MINUTES.toMillis(5);
+
+    private boolean http2Enabled = true;
+
+    private long attemptTimeoutMillis = 10_000;
+    private long deadlineMillis = 30_000;
+    private int maxAttempts = 3;
+    private long retryBaseDelayMillis = 200;
+    private long retryMaxDelayMillis = 5_000;
+
+    private double hedgePercentile = 0;
+    private long hedgeMinDelayMillis = 50;
+
+    private int circuitFailureThreshold = 5;
+    private long circuitOpenMillis = 30_000;
+
+    public String getEndpoint() {
+        return endpoint;
+    }
+
+    /**
+     * @param endpoint detect 요청을 보낼 URL. 다른 리전이나 테스트용 서버를 가리킬 때 사용한다. Default : {@link #DEFAULT_ENDPOINT}
+     */
+    public FaceApiConfig setEndpoint(String endpoint) {
+        this.endpoint = endpoint;
+        return this;
+    }
+
+    public String getSubscriptionKey() {
+        return subscriptionKey;
+    }
+
+    /**
+     * @param subscriptionKey Ocp-Apim-Subscription-Key 헤더로 보낼 구독 키
+     */
+    public FaceApiConfig setSubscriptionKey(String subscriptionKey) {
+        this.subscriptionKey = subscriptionKey;
+        return this;
+    }
+
+    /**
+     * 요청을 나눠 보낼 리전 엔드포인트를 추가한다.
+     * 하나라도 추가하면 {@link #setEndpoint(String)}, {@link #setSubscriptionKey(String)} 대신 추가한 엔드포인트들을 사용하며,
+     * 요청마다 응답이 가장 빠르고 정상인 엔드포인트로 보낸다.
+     *
+     * @see EndpointRouter
+     */
+    public FaceApiConfig addEndpoint(FaceApiEndpoint endpoint) {
+        this.endpoints.add(endpoint);
+        return this;
+    }
+
+    /**
+     * @return {@link #addEndpoint(FaceApiEndpoint)}로 추가한 엔드포인트들. 없으면 {@link #getEndpoint()} 하나
+     */
+    public List<FaceApiEndpoint> getEndpoints() {
+        if (endpoints.isEmpty())
+            return Collections.singletonList(new FaceApiEndpoint(endpoint, subscriptionKey));
+        return Collections.unmodifiableList(new ArrayList<>(endpoints));
+    }
+
+    public long getConnectTimeoutMillis() {
+        return connectTimeoutMillis;
+    }
+
+    /**
+     * @param connectTimeoutMillis TCP/TLS 연결 제한 시간(ms). 0이면 제한 없음. Default : 10초
+     */
+    public FaceApiConfig setConnectTimeoutMillis(long connectTimeoutMillis) {
+        this.connectTimeoutMillis = connectTimeoutMillis;
+        return this;
+    }
+
+    public long getReadTimeoutMillis() {
+        return readTimeoutMillis;
+    }
+
+    /**
+     * @param readTimeoutMillis 응답 읽기 제한 시간(ms). 0이면 제한 없음. Default : 30초
+     */
+    public FaceApiConfig setReadTimeoutMillis(long readTimeoutMillis) {
+        this.readTimeoutMillis = readTimeoutMillis;
+        return this;
+    }
+
+    public long getWriteTimeoutMillis() {
+        return writeTimeoutMillis;
+    }
+
+    /**
+     * @param writeTimeoutMillis 이미지 업로드 제한 시간(ms). 0이면 제한 없음. Default : 30초
+     */
+    public FaceApiConfig setWriteTimeoutMillis(long writeTimeoutMillis) {
+        this.writeTimeoutMillis = writeTimeoutMillis;
+        return this;
+    }
+
+    public int getMaxRequests() {
+        return maxRequests;
+    }
+
+    /**
+     * @param maxRequests 동시에 진행할 수 있는 전체 요청 수. Default : 64
+     * @see okhttp3.Dispatcher#setMaxRequests(int)
+     */
+    public FaceApiConfig setMaxRequests(int maxRequests) {
+        this.maxRequests = maxRequests;
+        return this;
+    }
+
+    public int getMaxRequestsPerHost() {
+        return maxRequestsPerHost;
+    }
+
+    /**
+     * @param maxRequestsPerHost 호스트 하나에 동시에 진행할 수 있는 요청 수. Default : 8
+     * @see okhttp3.Dispatcher#setMaxRequestsPerHost(int)
+     */
+    public FaceApiConfig setMaxRequestsPerHost(int maxRequestsPerHost) {
+        this.maxRequestsPerHost = maxRequestsPerHost;
+        return this;
+    }
+
+    public int getMaxIdleConnections() {
+        return maxIdleConnections;
+    }
+
+    /**
+     * @param maxIdleConnections 재사용을 위해 유지할 유휴 연결 수. Default : 5
+     */
+    public FaceApiConfig setMaxIdleConnections(int maxIdleConnections) {
+        this.maxIdleConnections = maxIdleConnections;
+        return this;
+    }
+
+    public long getKeepAliveDurationMillis() {
+        return keepAliveDurationMillis;
+    }
+
+    /**
+     * @param keepAliveDurationMillis 유휴 연결을 닫기 전까지 유지하는 시간(ms). Default : 5분
+     */
+    public FaceApiConfig setKeepAliveDurationMillis(long keepAliveDurationMillis) {
+        this.keepAliveDurationMillis = keepAliveDurationMillis;
+        return this;
+    }
+
+    public boolean isHttp2Enabled() {
+        return http2Enabled;
+    }
+
+    /**
+     * @param http2Enabled 서버가 지원하면 HTTP/2 로 하나의 연결에서 여러 요청을 다중화한다. Default : true
+     */
+    public FaceApiConfig setHttp2Enabled(boolean http2Enabled) {
+        this.http2Enabled = http2Enabled;
+        return this;
+    }
+
+    public long getAttemptTimeoutMillis() {
+        return attemptTimeoutMillis;
+    }
+
+    /**
+     * @param attemptTimeoutMillis 요청 한 번의 제한 시간(ms). 넘으면 취소하고 재시도한다. 0이면 제한 없음. Default : 10초
+     */
+    public FaceApiConfig setAttemptTimeoutMillis(long attemptTimeoutMillis) {
+        this.attemptTimeoutMillis = attemptTimeoutMillis;
+        return this;
+    }
+
+    public long getDeadlineMillis() {
+        return deadlineMillis;
+    }
+
+    /**
+     * @param deadlineMillis 재시도를 포함한 전체 제한 시간(ms). 다음 재시도가 이 시간을 넘기면 바로 실패한다. 0이면 제한 없음. Default : 30초
+     */
+    public FaceApiConfig setDeadlineMillis(long deadlineMillis) {
+        this.deadlineMillis = deadlineMillis;
+        return this;
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    /**
+     * @param maxAttempts 재시도와 헤지 요청을 포함한 최대 요청 수. 1이면 재시도하지 않는다. Default : 3
+     */
+    public FaceApiConfig setMaxAttempts(int maxAttempts) {
+        this.maxAttempts = maxAttempts;
+        return this;
+    }
+
+    public long getRetryBaseDelayMillis() {
+        return retryBaseDelayMillis;
+    }
+
+    public long getRetryMaxDelayMillis() {
+        return retryMaxDelayMillis;
+    }
+
+    /**
+     * 재시도 간격은 baseDelayMillis 부터 두 배씩 늘어나며 maxDelayMillis 를 넘지 않는다. (지터 포함)
+     * 응답에 Retry-After 헤더가 있으면 그 값을 따른다.
+     *
+     * @param baseDelayMillis 첫 재시도 간격(ms). Default : 200ms
+     * @param maxDelayMillis  최대 재시도 간격(ms). Default : 5초
+     */
+    public FaceApiConfig setRetryBackoff(long baseDelayMillis, long maxDelayMillis) {
+        this.retryBaseDelayMillis = baseDelayMillis;
+        this.retryMaxDelayMillis = maxDelayMillis;
+        return this;
+    }
+
+    public double getHedgePercentile() {
+        return hedgePercentile;
+    }
+
+    public long getHedgeMinDelayMillis() {
+        return hedgeMinDelayMillis;
+    }
+
+    /**
+     * 요청이 최근 네트워크 지연 시간의 백분위를 넘도록 응답이 없으면 같은 요청을 하나 더 보내고 먼저 도착한 응답을 사용한다.
+     *
+     * @param percentile     헤지 요청을 보낼 백분위 (예: 95). 0이면 헤지하지 않는다. Default : 0
+     * @param minDelayMillis 헤지 요청을 보내기 전 최소 대기 시간(ms). Default : 50ms
+     */
+    public FaceApiConfig setHedging(double percentile, long minDelayMillis) {
+        this.hedgePercentile = percentile;
+        this.hedgeMinDelayMillis = minDelayMillis;
+        return this;
+    }
+
+    public int getCircuitFailureThreshold() {
+        return circuitFailureThreshold;
+    }
+
+    public long getCircuitOpenMillis() {
+        return circuitOpenMillis;
+    }
+
+    /**
+     * 차단기는 엔드포인트마다 따로 동작한다.
+     *
+     * @param failureThreshold 회로 차단기를 여는 연속 실패 수(5xx, 시간 초과, 연결 실패). 0이면 사용하지 않는다. Default : 5
+     * @param openMillis       차단기가 열린 뒤 시험 요청을 보내기까지의 시간(ms). Default : 30초
+     * @see CircuitBreaker
+     */
+    public FaceApiConfig setCircuitBreaker(int failureThreshold, long openMillis) {
+        this.circuitFailureThreshold = failureThreshold;
+        this.circuitOpenMillis = openMillis;
+        return this;
+    }
+}
@@ -0,0 +1,45 @@
+package com.dominic.skuface;
+
+/**
+ * detect 요청을 보낼 리전 엔드포인트와 그 리전의 구독 키
+ *
+ * @version 0.1
+ * @see FaceApiConfig#addEndpoint(FaceApiEndpoint)
+ */
+public final class FaceApiEndpoint {
+
+    private final String url;
+    private final String subscriptionKey;
+
+    /**
+     * @param url             detect URL (예: https://westus.api.cognitive.microsoft.com/face/v1.0/detect)
+     * @param subscriptionKey 이 리전의 Ocp-Apim-Subscription-Key
+     */
+    public FaceApiEndpoint(String url, String subscriptionKey) {
+        this.url = url;
+        this.subscriptionKey = subscriptionKey;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public String getSubscriptionKey() {
+        return subscriptionKey;
+    }
+
+    /**
+     * detect URL 의 마지막 경로를 바꿔 같은 리전의 다른 작업 URL 을 만든다.
+     *
+     * @param operation 작업 경로 (예: verify, findsimilars, group)
+     */
+    String getOperationUrl(String operation) {
+        int slash = url.lastIndexOf('/');
+        return url.substring(0, slash + 1) + operation;
+    }
+
+    @Override
+    public String toString() {
+        return url;
+    }
+}
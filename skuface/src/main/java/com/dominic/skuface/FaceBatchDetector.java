@@ -0,0 +1,176 @@
+package com.dominic.skuface;
+
+import android.graphics.Bitmap;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 여러 이미지를 동시에 분석하기 위한 클래스
+ * 동시에 진행 중인 요청 수를 제한하고 {@link TokenBucket}으로 초당 요청 수를 맞춘다.
+ * 토큰은 보내기 직전에 입력마다 하나씩 쓰며, {@link FaceApiConfig#setMaxAttempts(int)}의 재시도와 {@link FaceApiConfig#setHedging(double, long)}의 헤지 요청은
+ * 버킷을 거치지 않지만 과금되므로 구독 한도에 여유를 둔다.
+ * 결과는 입력마다 하나씩, 요청 ID를 담은 {@link DetectionResult}로 전달되며 {@link FaceApi#getLatestResult()}에는 영향을 주지 않는다.
+ *
+ * @version 0.1
+ * @see FaceApi#detectAndFrameRest(Bitmap)
+ */
+public class FaceBatchDetector {
+
+    private final FaceApi faceApi;
+    private final TokenBucket rateLimiter;
+    private final Semaphore inFlight;
+    private final ExecutorService executor;
+    private final AtomicLong sequence = new AtomicLong();
+
+    private volatile OnBatchResultListener onBatchResultListener = null;
+
+    /**
+     * @param faceApi     요청에 사용할 {@link FaceApi}
+     * @param maxInFlight 동시에 진행할 수 있는 최대 요청 수
+     * @param rateLimiter 초당 요청 수 제한. null 이면 제한하지 않는다.
+     */
+    public FaceBatchDetector(FaceApi faceApi, int maxInFlight, TokenBucket rateLimiter) {
+        if (maxInFlight <= 0)
+            throw new IllegalArgumentException("maxInFlight must be positive");
+
+        this.faceApi = faceApi;
+        this.rateLimiter = rateLimiter;
+        this.inFlight = new Semaphore(maxInFlight);
+        this.executor = Executors.newFixedThreadPool(maxInFlight);
+    }
+
+    /**
+     * 이미지 하나를 대기열에 넣는다. 요청 ID는 자동으로 부여된다.
+     *
+     * @param bitmap 분석할 이미지. 결과가 전달되기 전까지 recycle 하지 않는다.
+     * @return 결과와 짝을 맞추기 위한 요청 ID
+     */
+    public String submit(Bitmap bitmap) {
+        String requestId = "batch-" + sequence.incrementAndGet();
+        submit(requestId, bitmap);
+        return requestId;
+    }
+
+    /**
+     * @param requestId 결과와 짝을 맞추기 위한 요청 ID
+     * @param bitmap    분석할 이미지. 결과가 전달되기 전까지 recycle 하지 않는다.
+     */
+    public void submit(String requestId, Bitmap bitmap) {
+        enqueue(requestId, bitmap, null);
+    }
+
+    /**
+     * 이미 인코딩한 이미지를 대기열에 넣는다.
+     *
+     * @param requestId    결과와 짝을 맞추기 위한 요청 ID
+     * @param encodedImage 업로드할 이미지
+     */
+    void submit(String requestId, EncodedImage encodedImage) {
+        enqueue(requestId, null, encodedImage);
+    }
+
+    /**
+     * 진행 중인 요청 자리를 먼저 얻고, 인코딩한 뒤 보내기 직전에 토큰을 얻는다.
+     * 토큰을 먼저 얻으면 자리를 기다리는 동안 토큰이 쓰이지 않은 채 사라져 초당 요청 수를 채우지 못한다.
+     */
+    private void enqueue(final String requestId, final Bitmap bitmap, final EncodedImage encoded) {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    inFlight.acquire();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    dispatchFailure(requestId, new IOException("Batch request interrupted", e));
+                    return;
+                }
+
+                EncodedImage encodedImage = encoded;
+                if (encodedImage == null) {
+                    try {
+                        encodedImage = faceApi.encode(bitmap);
+                    } catch (RuntimeException e) {
+                        inFlight.release();
+                        dispatchFailure(requestId, new IOException("Failed to encode image", e));
+                        return;
+                    }
+                }
+
+                try {
+                    if (rateLimiter != null)
+                        rateLimiter.acquire();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    inFlight.release();
+                    dispatchFailure(requestId, new IOException("Batch request interrupted", e));
+                    return;
+                }
+
+                faceApi.detect(encodedImage, faceApi.nextSequence(), requestId, new FaceApi.DetectCallback() {
+                    @Override
+                    public void onDetected(DetectionResult result) {
+                        inFlight.release();
+                        faceApi.onRequestCompleted(result);
+                        OnBatchResultListener listener = onBatchResultListener;
+                        if (listener != null)
+                            listener.onResult(result);
+                    }
+
+                    @Override
+                    public void onFailure(IOException e) {
+                        inFlight.release();
+                        dispatchFailure(requestId, e);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * @param bitmaps 분석할 이미지들
+     * @return 입력 순서와 같은 순서의 요청 ID
+     */
+    public List<String> submitAll(List<Bitmap> bitmaps) {
+        List<String> requestIds = new ArrayList<>(bitmaps.size());
+        for (Bitmap bitmap : bitmaps) {
+            requestIds.add(submit(bitmap));
+        }
+        return requestIds;
+    }
+
+    /**
+     * 대기 중인 요청을 버리고 작업 스레드를 정리한다. 이미 전송된 요청의 결과는 계속 전달된다.
+     */
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private void dispatchFailure(String requestId, IOException e) {
+        OnBatchResultListener listener = onBatchResultListener;
+        if (listener != null)
+            listener.onFailure(requestId, e);
+    }
+
+    /**
+     * 요청마다 한 번씩 {@link #onResult(DetectionResult)} 또는 {@link #onFailure(String, IOException)}가 호출된다.
+     * 스레드가 다름으로 UI처리는 {@link android.app.Activity#runOnUiThread(Runnable)}에서 처리한다.
+     */
+    public interface OnBatchResultListener {
+        /**
+         * @param result {@link DetectionResult#getRequestId()}로 입력과 짝을 맞춘다.
+         */
+        void onResult(DetectionResult result);
+
+        void onFailure(String requestId, IOException e);
+    }
+
+    public void setOnBatchResultListener(OnBatchResultListener onBatchResultListener) {
+        this.onBatchResultListener = onBatchResultListener;
+    }
+}
@@ -2,13 +2,21 @@ package com.dominic.skuface;
 
 import android.content.Context;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
-import android.graphics.Matrix;
+import android.graphics.ImageFormat;
+import android.graphics.Rect;
+import android.graphics.YuvImage;
 import android.hardware.Camera;
+import android.support.constraint.solver.widgets.Rectangle;
 import android.util.Log;
 import android.view.SurfaceView;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 
 /**
  * Created by 박우영 on 2018-03-23.
@@ -24,12 +32,48 @@ public class FaceDetectionCamera implements Camera.FaceDetectionListener {
 
     private static final String TAG = FaceDetectionCamera.class.getSimpleName();
 
+    /**
+     * 안면인식 시 {@link Camera#takePicture}로 촬영하여 {@link Bitmap}으로 전달한다. (기본값)
+     *
+     * @see OnFaceDetectedListener
+     */
+    public static final int CAPTURE_MODE_PICTURE = 0;
+
+    /**
+     * 안면인식 시 미리보기 프레임(NV21)을 {@link Bitmap} 없이 바로 JPEG 으로 변환하여 전달한다.
+     * 미리보기가 멈추지 않으며 프레임 버퍼는 재사용된다.
+     *
+     * @see OnFrameCapturedListener
+     */
+    public static final int CAPTURE_MODE_PREVIEW = 1;
+
     private Context context;
     private Camera mCamera = null;
     private boolean isFaceDetectionRunning = false;
     private int cameraId = Camera.CameraInfo.CAMERA_FACING_FRONT;
     private OnFaceDetectedListener onFaceDetectedListener = null;
 
+    private int captureMode = CAPTURE_MODE_PICTURE;
+    private int previewBufferCount = 3;
+    private int previewJpegQuality = 80;
+    private int frameRotation = 0;
+    private int previewWidth = 0;
+    private int previewHeight = 0;
+    private byte[][] previewBuffers = null;
+    private volatile boolean isFrameRequested = false;
+    private volatile Camera.Face[] requestedFaces = null;
+    private volatile DetectOptions requestedOptions = null;
+    private boolean isRoiEnabled = false;
+    private float roiPadding = 0.5f;
+    private ExecutorService frameEncoder = null;
+    private OnFrameCapturedListener onFrameCapturedListener = null;
+    private FaceTracker faceTracker = null;
+    private BitmapPool bitmapPool = null;
+    private int captureTargetWidth = 1280;
+    private int captureTargetHeight = 1280;
+    private volatile DetectionMetrics metrics = null;
+    private volatile long frameRequestedAtNanos = 0;
+
     /**
      * @deprecated 결합성 문제로 사용안함.
      */
@@ -51,6 +95,7 @@ public class FaceDetectionCamera implements Camera.FaceDetectionListener {
             Camera.getCameraInfo(cameraId, cameraInfo);
             if (cameraInfo.facing == this.cameraId) {
                 mCamera = Camera.open(cameraId);
+                frameRotation = cameraInfo.orientation;
             }
         }
 
@@ -66,6 +111,73 @@ public class FaceDetectionCamera implements Camera.FaceDetectionListener {
         this.cameraId = cameraId;
     }
 
+    /**
+     * 안면인식 시 화면을 얻는 방법 선택
+     *
+     * @param captureMode {@link #CAPTURE_MODE_PICTURE} 또는 {@link #CAPTURE_MODE_PREVIEW}. Default : CAPTURE_MODE_PICTURE
+     */
+    public void setCaptureMode(int captureMode) {
+        this.captureMode = captureMode;
+    }
+
+    /**
+     * @param previewBufferCount {@link #CAPTURE_MODE_PREVIEW}에서 돌려 쓰는 프레임 버퍼 수. Default : 3
+     * @param previewJpegQuality 미리보기 프레임의 JPEG 품질. Default : 80
+     */
+    public void setPreviewCaptureOptions(int previewBufferCount, int previewJpegQuality) {
+        this.previewBufferCount = Math.max(2, previewBufferCount);
+        this.previewJpegQuality = previewJpegQuality;
+    }
+
+    /**
+     * {@link #CAPTURE_MODE_PREVIEW}에서 프레임 전체 대신 기기가 검출한 얼굴 주변만 잘라서 보낸다.
+     * 응답 좌표는 전체 프레임 기준으로 되돌려지므로 {@link FaceApi#drawFaceRectanglesOnBitmap(Bitmap, java.util.List)}와
+     * 터치 좌표 비교는 그대로 동작한다.
+     *
+     * @param enabled ROI 사용 여부. Default : false
+     * @param padding 얼굴 크기에 대한 여백 비율. Default : 0.5
+     */
+    public void setRegionOfInterestEnabled(boolean enabled, float padding) {
+        this.isRoiEnabled = enabled;
+        this.roiPadding = padding;
+    }
+
+    /**
+     * 프레임 사이에서 얼굴을 추적하여 새 얼굴이 나타나거나 감정 결과가 오래되었을 때만 촬영한다.
+     * 결과를 받으면 {@link FaceTracker#onDetected(CapturedFrame, DetectionResult)}로 트랙에 붙여준다.
+     * 미리보기 모드에서는 트래커가 고른 옵션을 {@link CapturedFrame#getDetectOptions()}로 프레임에 붙인다.
+     *
+     * @param faceTracker 사용할 트래커. null 이면 얼굴이 보일 때마다 촬영한다. Default : null
+     */
+    public void setFaceTracker(FaceTracker faceTracker) {
+        this.faceTracker = faceTracker;
+    }
+
+    /**
+     * {@link #CAPTURE_MODE_PICTURE}에서 촬영한 사진을 디코딩하는 방법을 설정한다.
+     * 사진은 필요한 크기 이상을 유지하는 범위에서 줄여서 디코딩되며, 풀이 있으면 비트맵 메모리를 재사용한다.
+     * 전달받은 비트맵을 다 사용하면 {@link BitmapPool#put(Bitmap)}으로 돌려준다.
+     *
+     * @param bitmapPool   재사용할 비트맵 풀. Default : null
+     * @param targetWidth  필요한 최소 너비. Default : 1280
+     * @param targetHeight 필요한 최소 높이. Default : 1280
+     */
+    public void setBitmapDecoding(BitmapPool bitmapPool, int targetWidth, int targetHeight) {
+        this.bitmapPool = bitmapPool;
+        this.captureTargetWidth = targetWidth;
+        this.captureTargetHeight = targetHeight;
+    }
+
+    /**
+     * 촬영, 디코딩, 회전, 미리보기 프레임 인코딩 단계의 소요 시간을 기록한다.
+     *
+     * @param metrics 기록할 곳. null 이면 기록하지 않는다. Default : null
+     * @see FaceApi#getMetrics()
+     */
+    public void setMetrics(DetectionMetrics metrics) {
+        this.metrics = metrics;
+    }
+
     /**
      * 안면인식 감지 시 이벤트를 설정
      *
@@ -95,10 +207,17 @@ public class FaceDetectionCamera implements Camera.FaceDetectionListener {
             mCamera.setFaceDetectionListener(this);
         }
 
+        if (faceTracker != null) {
+            // 촬영 모드의 비트맵은 270도 회전되어 전달된다.
+            faceTracker.setRotation(captureMode == CAPTURE_MODE_PREVIEW ? frameRotation : 270);
+        }
+
         try {
             if (mCamera.getParameters().getMaxNumDetectedFaces() > 0) {
                 SurfaceView view = new SurfaceView(context);
                 mCamera.setPreviewDisplay(view.getHolder());
+                if (captureMode == CAPTURE_MODE_PREVIEW)
+                    startPreviewCallback();
                 mCamera.startPreview();
                 mCamera.startFaceDetection();
                 isFaceDetectionRunning = true;
@@ -122,33 +241,191 @@ public class FaceDetectionCamera implements Camera.FaceDetectionListener {
 
         Log.i(TAG, "Face Detection Stopped");
         mCamera.stopFaceDetection();
+        mCamera.setPreviewCallbackWithBuffer(null);
+        isFrameRequested = false;
+        if (frameEncoder != null) {
+            // 변환 중인 프레임은 마저 끝내고 스레드를 정리한다. 다시 시작하면 새로 만든다.
+            frameEncoder.shutdown();
+            frameEncoder = null;
+        }
         mCamera.stopPreview();
         isFaceDetectionRunning = false;
         mCamera.setFaceDetectionListener(null);
         mCamera = null;
     }
 
+    /**
+     * 미리보기 프레임 버퍼를 준비하고 콜백을 등록한다.
+     * 버퍼는 같은 크기이면 다음 시작 시에도 재사용된다.
+     */
+    private void startPreviewCallback() {
+        Camera.Parameters parameters = mCamera.getParameters();
+        parameters.setPreviewFormat(ImageFormat.NV21);
+        mCamera.setParameters(parameters);
+
+        Camera.Size size = parameters.getPreviewSize();
+        previewWidth = size.width;
+        previewHeight = size.height;
+        int bufferSize = size.width * size.height * ImageFormat.getBitsPerPixel(ImageFormat.NV21) / 8;
+
+        if (previewBuffers == null || previewBuffers.length != previewBufferCount
+                || previewBuffers[0].length != bufferSize) {
+            previewBuffers = new byte[previewBufferCount][bufferSize];
+        }
+        for (byte[] buffer : previewBuffers) {
+            mCamera.addCallbackBuffer(buffer);
+        }
+
+        if (frameEncoder == null) {
+            frameEncoder = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "FaceDetectionCamera-encode");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+
+        mCamera.setPreviewCallbackWithBuffer(previewCallback);
+    }
+
+    private final Camera.PreviewCallback previewCallback = new Camera.PreviewCallback() {
+        private final ByteArrayOutputStream jpegBuffer = new ByteArrayOutputStream(64 * 1024);
+        private byte[] mosaicBuffer = null;
+
+        @Override
+        public void onPreviewFrame(final byte[] data, final Camera camera) {
+            ExecutorService encoder = frameEncoder;
+            if (!isFrameRequested || onFrameCapturedListener == null || encoder == null) {
+                camera.addCallbackBuffer(data);
+                return;
+            }
+            isFrameRequested = false;
+
+            final int width = previewWidth;
+            final int height = previewHeight;
+            final int rotation = frameRotation;
+            final Camera.Face[] faces = isRoiEnabled ? requestedFaces : null;
+            final DetectOptions options = requestedOptions;
+            final DetectionMetrics metrics = FaceDetectionCamera.this.metrics;
+            if (metrics != null)
+                metrics.recordSince(DetectionMetrics.Stage.CAPTURE, frameRequestedAtNanos);
+
+            // 버퍼는 변환이 끝난 뒤에 카메라로 돌려준다. 그동안 카메라는 나머지 버퍼를 사용한다.
+            // 콜백과 stopFaceDetection() 은 같은 스레드에서 불리므로 encoder 는 아직 멈추지 않았다.
+            encoder.execute(new Runnable() {
+                @Override
+                public void run() {
+                    long encodeStart = System.nanoTime();
+                    CapturedFrame frame;
+                    try {
+                        YuvImage yuvImage = new YuvImage(data, ImageFormat.NV21, width, height, null);
+                        List<Rectangle> regions = faces == null
+                                ? null
+                                : FaceRegions.fromCameraFaces(faces, width, height, roiPadding);
+                        MosaicLayout layout = regions == null || regions.size() < 2
+                                ? null
+                                : Nv21Mosaic.layout(regions, width, height, Nv21Mosaic.GUTTER,
+                                Math.max(Nv21Mosaic.MAX_SIZE, Math.max(width, height)));
+
+                        if (regions == null) {
+                            jpegBuffer.reset();
+                            yuvImage.compressToJpeg(new Rect(0, 0, width, height), previewJpegQuality, jpegBuffer);
+                            frame = new CapturedFrame(jpegBuffer.toByteArray(), width, height, rotation);
+                        } else if (layout != null) {
+                            // 여러 얼굴 주변을 NV21 그대로 한 장에 옮기고 한 번만 압축해 한 번의 요청으로 보낸다.
+                            mosaicBuffer = Nv21Mosaic.compose(data, width, height, layout, mosaicBuffer);
+                            int mosaicWidth = layout.getWidth();
+                            int mosaicHeight = layout.getHeight();
+                            jpegBuffer.reset();
+                            new YuvImage(mosaicBuffer, ImageFormat.NV21, mosaicWidth, mosaicHeight, null)
+                                    .compressToJpeg(new Rect(0, 0, mosaicWidth, mosaicHeight), previewJpegQuality, jpegBuffer);
+                            EncodedImage mosaic = new EncodedImage(jpegBuffer.toByteArray(),
+                                    mosaicWidth, mosaicHeight, mosaicWidth, mosaicHeight);
+                            frame = new CapturedFrame(width, height, rotation, mosaic, layout);
+                        } else {
+                            // 얼굴 주변만 잘라서 JPEG 으로 만든다. 픽셀 복사 없이 NV21 에서 바로 자른다.
+                            List<EncodedImage> parts = new ArrayList<>(regions.size());
+                            for (Rectangle region : regions) {
+                                jpegBuffer.reset();
+                                yuvImage.compressToJpeg(
+                                        new Rect(region.x, region.y, region.x + region.width, region.y + region.height),
+                                        previewJpegQuality, jpegBuffer);
+                                parts.add(new EncodedImage(jpegBuffer.toByteArray(), region.width, region.height,
+                                        region, width, height, rotation));
+                            }
+                            frame = new CapturedFrame(width, height, rotation, parts);
+                        }
+                    } catch (RuntimeException e) {
+                        Log.w(TAG, "Failed to encode preview frame", e);
+                        return;
+                    } finally {
+                        // 변환에 실패해도 버퍼를 돌려주어야 카메라가 버퍼 부족으로 멈추지 않는다.
+                        try {
+                            camera.addCallbackBuffer(data);
+                        } catch (RuntimeException e) {
+                            Log.w(TAG, "Camera released before frame buffer was returned");
+                        }
+                    }
+
+                    frame.setDetectOptions(options);
+                    if (metrics != null)
+                        metrics.recordSince(DetectionMetrics.Stage.ENCODE, encodeStart, frame.getByteCount());
+
+                    OnFrameCapturedListener listener = onFrameCapturedListener;
+                    if (listener != null)
+                        listener.onFrameCaptured(frame);
+                }
+            });
+        }
+    };
+
     @Override
     public void onFaceDetection(Camera.Face[] faces, Camera camera) {
         if (faces.length <= 0) return;
 
+        if (faceTracker != null && !faceTracker.update(faces))
+            return;
+
+        if (captureMode == CAPTURE_MODE_PREVIEW) {
+            // 다음 미리보기 프레임을 변환하도록 표시만 한다.
+            requestedFaces = faces;
+            requestedOptions = faceTracker != null ? faceTracker.getRequestOptions() : null;
+            frameRequestedAtNanos = System.nanoTime();
+            isFrameRequested = true;
+            return;
+        }
+
         camera.enableShutterSound(false);
+        final long captureStart = System.nanoTime();
         camera.takePicture(null, null, new Camera.PictureCallback() {
             @Override
             public void onPictureTaken(byte[] bytes, Camera camera) {
-                Bitmap captured = BitmapFactory.decodeByteArray(bytes, 0, bytes.length);
-
-                int width = captured.getWidth();
-                int height = captured.getHeight();
+                DetectionMetrics metrics = FaceDetectionCamera.this.metrics;
+                if (metrics != null)
+                    metrics.recordSince(DetectionMetrics.Stage.CAPTURE, captureStart, bytes.length);
 
-                Matrix matrix = new Matrix();
-                matrix.postRotate(270);
+                long decodeStart = System.nanoTime();
+                Bitmap captured = BitmapDecoder.decode(bytes, captureTargetWidth, captureTargetHeight, bitmapPool);
+                if (captured == null) {
+                    Log.e(TAG, "Failed to decode captured picture");
+                    return;
+                }
+                if (metrics != null)
+                    metrics.recordSince(DetectionMetrics.Stage.DECODE, decodeStart);
 
-                Bitmap resizedBitmap = Bitmap.createBitmap(captured, 0, 0, width, height, matrix, true);
+                long rotateStart = System.nanoTime();
+                Bitmap resizedBitmap = BitmapDecoder.rotate(captured, 270, bitmapPool);
+                if (metrics != null)
+                    metrics.recordSince(DetectionMetrics.Stage.ROTATE, rotateStart);
                 if (onFaceDetectedListener != null)
                     onFaceDetectedListener.onFaceDetected(resizedBitmap);
 
-                captured.recycle();
+                if (bitmapPool != null)
+                    bitmapPool.put(captured);
+                else
+                    captured.recycle();
             }
         });
     }
@@ -166,4 +443,16 @@ public class FaceDetectionCamera implements Camera.FaceDetectionListener {
     public void setOnFaceDetectedListener(OnFaceDetectedListener onFaceDetectedListener) {
         this.onFaceDetectedListener = onFaceDetectedListener;
     }
+
+    /**
+     * {@link #CAPTURE_MODE_PREVIEW}에서 안면인식 시의 이벤트를 작성한다.
+     * 프레임 변환 스레드에서 호출되며 {@link FaceApi#detect(CapturedFrame, FaceApi.DetectCallback)}로 바로 넘길 수 있다.
+     */
+    public interface OnFrameCapturedListener {
+        void onFrameCaptured(CapturedFrame frame);
+    }
+
+    public void setOnFrameCapturedListener(OnFrameCapturedListener onFrameCapturedListener) {
+        this.onFrameCapturedListener = onFrameCapturedListener;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,164 @@
+package com.dominic.skuface;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.support.constraint.solver.widgets.Rectangle;
+import android.util.AttributeSet;
+import android.view.View;
+import android.widget.ImageView;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * {@link ImageView} 위에 얼굴 사각형과 감정을 그리는 뷰
+ * 원본 비트맵을 복사하지 않고 {@link ImageView#getImageMatrix()}로 비트맵 좌표를 화면 좌표로 바꿔 그린다.
+ * {@link ImageView}와 같은 위치, 같은 크기로 겹쳐서 배치한다. (예: FrameLayout)
+ *
+ * @version 0.1
+ * @see FaceApi#drawFaceRectanglesOnBitmap(android.graphics.Bitmap, List)
+ */
+public class FaceOverlayView extends View {
+
+    private final Paint rectPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint labelPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+
+    private final RectF mapped = new RectF();
+    private final Rect dirty = new Rect();
+    private final Rect bounds = new Rect();
+
+    private ImageView imageView = null;
+    private List<Face> faces = Collections.emptyList();
+    private boolean isEmotionLabelEnabled = false;
+    private DetectionMetrics metrics = null;
+
+    public FaceOverlayView(Context context) {
+        this(context, null);
+    }
+
+    public FaceOverlayView(Context context, AttributeSet attrs) {
+        super(context, attrs);
+
+        float density = getResources().getDisplayMetrics().density;
+
+        rectPaint.setStyle(Paint.Style.STROKE);
+        rectPaint.setColor(Color.RED);
+        rectPaint.setStrokeWidth(3 * density);
+
+        labelPaint.setColor(Color.RED);
+        labelPaint.setTextSize(14 * density);
+    }
+
+    /**
+     * @param imageView 얼굴 좌표의 기준이 되는 비트맵을 보여주는 {@link ImageView}
+     */
+    public void setImageView(ImageView imageView) {
+        this.imageView = imageView;
+        invalidate();
+    }
+
+    /**
+     * @param enabled 사각형 위에 가장 높은 감정을 표시할지 여부. Default : false
+     */
+    public void setEmotionLabelEnabled(boolean enabled) {
+        this.isEmotionLabelEnabled = enabled;
+        invalidate();
+    }
+
+    /**
+     * @param metrics 그리기 소요 시간을 {@link DetectionMetrics.Stage#RENDER}로 기록할 곳. null 이면 기록하지 않는다. Default : null
+     * @see FaceApi#getMetrics()
+     */
+    public void setMetrics(DetectionMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * 결과를 갱신한다. 이전 결과와 새 결과가 차지하는 영역만 다시 그린다.
+     * UI 스레드에서 호출한다.
+     *
+     * @param result 비트맵 좌표의 얼굴들
+     */
+    public void setResult(DetectionResult result) {
+        setFaces(result.getFaces());
+    }
+
+    /**
+     * @param faces 비트맵 좌표의 얼굴들. null 이면 지운다.
+     * @see #setResult(DetectionResult)
+     */
+    public void setFaces(List<Face> faces) {
+        dirty.setEmpty();
+        unionBounds(this.faces);
+        this.faces = faces == null ? Collections.<Face>emptyList() : faces;
+        unionBounds(this.faces);
+
+        if (!dirty.isEmpty())
+            invalidate(dirty);
+    }
+
+    public void clear() {
+        setFaces(null);
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        super.onDraw(canvas);
+
+        if (imageView == null)
+            return;
+
+        long drawStart = System.nanoTime();
+        for (Face face : faces) {
+            mapToView(face.getFaceRectangle(), mapped);
+            canvas.drawRect(mapped, rectPaint);
+
+            Face.Emotion emotion = face.getEmotion();
+            if (isEmotionLabelEnabled && emotion != null) {
+                canvas.drawText(emotion.getDominantEmotion(), mapped.left,
+                        mapped.top - labelPaint.descent(), labelPaint);
+            }
+        }
+        if (metrics != null && !faces.isEmpty())
+            metrics.recordSince(DetectionMetrics.Stage.RENDER, drawStart);
+    }
+
+    /**
+     * 비트맵 좌표의 사각형을 이 뷰의 좌표로 바꾼다.
+     */
+    private void mapToView(Rectangle r, RectF out) {
+        out.set(r.x, r.y, r.x + r.width, r.y + r.height);
+
+        Matrix matrix = imageView.getImageMatrix();
+        matrix.mapRect(out);
+        out.offset(
+                imageView.getLeft() + imageView.getPaddingLeft() - getLeft(),
+                imageView.getTop() + imageView.getPaddingTop() - getTop());
+    }
+
+    /**
+     * 얼굴들이 화면에서 차지하는 영역(선 두께와 글자 포함)을 {@link #dirty}에 더한다.
+     */
+    private void unionBounds(List<Face> faces) {
+        if (imageView == null)
+            return;
+
+        int inset = (int) Math.ceil(rectPaint.getStrokeWidth());
+        int labelHeight = isEmotionLabelEnabled ? (int) Math.ceil(labelPaint.getTextSize() * 1.5f) : 0;
+        int labelWidth = isEmotionLabelEnabled ? (int) Math.ceil(labelPaint.measureText("happiness")) : 0;
+
+        for (Face face : faces) {
+            mapToView(face.getFaceRectangle(), mapped);
+            mapped.roundOut(bounds);
+            bounds.inset(-inset, -inset);
+            bounds.top -= labelHeight;
+            bounds.right = Math.max(bounds.right, bounds.left + labelWidth);
+            dirty.union(bounds);
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package com.dominic.skuface;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.media.FaceDetector;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 업로드 전에 기기 안에서 얼굴이 있는지 확인하는 필터
+ * 작게 줄인 RGB_565 복사본에 {@link FaceDetector}를 돌려 얼굴이 하나도 없으면 요청을 보내지 않는다.
+ * 풍경, 문서 사진 등 얼굴이 없는 갤러리 이미지에 API 호출을 쓰지 않기 위한 것이다.
+ * <p>
+ * {@link FaceDetector}는 정면 얼굴만 찾으므로 옆모습이나 아주 작은 얼굴은 놓칠 수 있다.
+ * 놓치는 얼굴이 많으면 {@link #setMaxDimension(int)}을 키우거나 {@link #setMinConfidence(float)}를 낮춘다.
+ *
+ * @version 0.1
+ * @see DetectionPipeline#setFacePrefilter(FacePrefilter)
+ */
+public class FacePrefilter {
+
+    private int maxDimension = 320;
+    private float minConfidence = FaceDetector.Face.CONFIDENCE_THRESHOLD;
+    private int maxFaces = 4;
+
+    private final AtomicLong checkedCount = new AtomicLong();
+    private final AtomicLong skippedCount = new AtomicLong();
+    private final AtomicLong errorCount = new AtomicLong();
+
+    /**
+     * @param maxDimension 검사용 복사본의 긴 변 길이(px). 클수록 작은 얼굴도 찾지만 느려진다. Default : 320
+     */
+    public FacePrefilter setMaxDimension(int maxDimension) {
+        this.maxDimension = maxDimension;
+        return this;
+    }
+
+    /**
+     * @param minConfidence 얼굴로 인정할 최소 신뢰도. {@link FaceDetector.Face#CONFIDENCE_THRESHOLD}보다 낮은 값은 의미가 없다.
+     *                      Default : {@link FaceDetector.Face#CONFIDENCE_THRESHOLD}
+     */
+    public FacePrefilter setMinConfidence(float minConfidence) {
+        this.minConfidence = minConfidence;
+        return this;
+    }
+
+    /**
+     * @param maxFaces 한 번에 찾을 최대 얼굴 수. 하나만 찾아도 통과하므로 작게 두어도 된다. Default : 4
+     */
+    public FacePrefilter setMaxFaces(int maxFaces) {
+        this.maxFaces = Math.max(1, maxFaces);
+        return this;
+    }
+
+    /**
+     * 검사에 실패하면 얼굴이 있는 것으로 보고 요청을 보내도록 true 를 돌려준다.
+     *
+     * @param bitmap 검사할 이미지. 변경되지 않는다.
+     * @return 얼굴이 있을 수 있으면 true, 확실히 없으면 false
+     */
+    public boolean mayContainFace(Bitmap bitmap) {
+        checkedCount.incrementAndGet();
+
+        Bitmap small = null;
+        try {
+            small = downsample(bitmap);
+            FaceDetector.Face[] faces = new FaceDetector.Face[maxFaces];
+            int found = new FaceDetector(small.getWidth(), small.getHeight(), maxFaces).findFaces(small, faces);
+
+            for (int i = 0; i < found; i++) {
+                if (faces[i] != null && faces[i].confidence() >= minConfidence)
+                    return true;
+            }
+            skippedCount.incrementAndGet();
+            return false;
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+            errorCount.incrementAndGet();
+            return true;
+        } finally {
+            if (small != null)
+                small.recycle();
+        }
+    }
+
+    /**
+     * {@link FaceDetector}가 요구하는 짝수 너비의 RGB_565 복사본
+     */
+    private Bitmap downsample(Bitmap bitmap) {
+        float scale = Math.min(1f, (float) maxDimension / Math.max(bitmap.getWidth(), bitmap.getHeight()));
+        int width = Math.max(2, Math.round(bitmap.getWidth() * scale) & ~1);
+        int height = Math.max(1, Math.round(bitmap.getHeight() * scale));
+
+        Bitmap small = Bitmap.createBitmap(width, height, Bitmap.Config.RGB_565);
+        new Canvas(small).drawBitmap(bitmap, null, new Rect(0, 0, width, height), new Paint(Paint.FILTER_BITMAP_FLAG));
+        return small;
+    }
+
+    /**
+     * @return 검사한 이미지 수
+     */
+    public long getCheckedCount() {
+        return checkedCount.get();
+    }
+
+    /**
+     * @return 얼굴이 없어 보내지 않은 요청 수
+     */
+    public long getSkippedCount() {
+        return skippedCount.get();
+    }
+
+    /**
+     * @return 검사에 실패해 그대로 보낸 요청 수
+     */
+    public long getErrorCount() {
+        return errorCount.get();
+    }
+
+    @Override
+    public String toString() {
+        return "FacePrefilter{checked=" + checkedCount
+                + ", skipped=" + skippedCount
+                + ", errors=" + errorCount + "}";
+    }
+}
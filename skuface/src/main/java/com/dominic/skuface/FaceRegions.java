@@ -0,0 +1,148 @@
+package com.dominic.skuface;
+
+import android.hardware.Camera;
+import android.support.constraint.solver.widgets.Rectangle;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 기기의 안면인식 결과({@link Camera.Face})로부터 업로드할 영역(ROI)을 계산한다.
+ * {@link Camera.Face#rect}는 센서 방향의 (-1000, -1000) ~ (1000, 1000) 좌표이다.
+ *
+ * @version 0.1
+ * @see FaceDetectionCamera#setRegionOfInterestEnabled(boolean, float)
+ */
+final class FaceRegions {
+
+    /**
+     * 잘라낸 영역이 이보다 많으면 하나의 영역으로 합친다.
+     */
+    static final int MAX_REGIONS = 4;
+
+    /**
+     * 잘라낸 영역의 넓이 합이 프레임의 이 비율을 넘으면 전체 프레임을 보내는 편이 낫다.
+     */
+    static final float MAX_AREA_RATIO = 0.6f;
+
+    private FaceRegions() {
+    }
+
+    /**
+     * @param faces       기기가 검출한 얼굴들
+     * @param frameWidth  프레임 너비 (센서 방향)
+     * @param frameHeight 프레임 높이 (센서 방향)
+     * @param padding     얼굴 크기에 대한 여백 비율 (예: 0.5 이면 상하좌우로 얼굴 크기의 50%씩)
+     * @return 겹치지 않는 프레임 좌표의 영역들. 전체 프레임을 보내야 하면 null
+     */
+    static List<Rectangle> fromCameraFaces(Camera.Face[] faces, int frameWidth, int frameHeight, float padding) {
+        List<Rectangle> regions = new ArrayList<>(faces.length);
+        for (Camera.Face face : faces) {
+            regions.add(toFrameRegion(face.rect.left, face.rect.top, face.rect.right, face.rect.bottom,
+                    frameWidth, frameHeight, padding));
+        }
+        return select(regions, frameWidth, frameHeight);
+    }
+
+    /**
+     * 기기 좌표의 얼굴 영역을 여백을 포함한 프레임 좌표로 바꾼다.
+     * NV21 자르기를 위해 좌표와 크기를 짝수로 맞춘다.
+     */
+    static Rectangle toFrameRegion(int left, int top, int right, int bottom,
+                                   int frameWidth, int frameHeight, float padding) {
+        float x0 = (left + 1000) / 2000f * frameWidth;
+        float y0 = (top + 1000) / 2000f * frameHeight;
+        float x1 = (right + 1000) / 2000f * frameWidth;
+        float y1 = (bottom + 1000) / 2000f * frameHeight;
+
+        float padX = (x1 - x0) * padding;
+        float padY = (y1 - y0) * padding;
+
+        int l = clamp((int) (x0 - padX), frameWidth) & ~1;
+        int t = clamp((int) (y0 - padY), frameHeight) & ~1;
+        int r = clamp((int) Math.ceil(x1 + padX), frameWidth);
+        int b = clamp((int) Math.ceil(y1 + padY), frameHeight);
+
+        // 최소 크기로 넓힌 영역이 프레임 밖으로 나가지 않도록 시작점을 당긴다.
+        int width = Math.min(Math.max(2, (r - l) & ~1), frameWidth & ~1);
+        int height = Math.min(Math.max(2, (b - t) & ~1), frameHeight & ~1);
+        l = Math.min(l, frameWidth - width) & ~1;
+        t = Math.min(t, frameHeight - height) & ~1;
+
+        Rectangle region = new Rectangle();
+        region.setBounds(l, t, width, height);
+        return region;
+    }
+
+    /**
+     * 겹치는 영역을 합치고, 영역이 너무 많거나 넓으면 합치거나 전체 프레임을 선택한다.
+     *
+     * @return 업로드할 영역들. 전체 프레임을 보내야 하면 null
+     */
+    static List<Rectangle> select(List<Rectangle> regions, int frameWidth, int frameHeight) {
+        if (regions.isEmpty())
+            return null;
+
+        List<Rectangle> merged = merge(regions);
+        if (merged.size() > MAX_REGIONS) {
+            Rectangle bounds = merged.get(0);
+            for (int i = 1; i < merged.size(); i++) {
+                bounds = union(bounds, merged.get(i));
+            }
+            merged.clear();
+            merged.add(bounds);
+        }
+
+        long area = 0;
+        for (Rectangle r : merged) {
+            area += (long) r.width * r.height;
+        }
+        if (area > (long) frameWidth * frameHeight * MAX_AREA_RATIO)
+            return null;
+
+        return merged;
+    }
+
+    /**
+     * 겹치는 영역이 없어질 때까지 합친다.
+     */
+    static List<Rectangle> merge(List<Rectangle> regions) {
+        List<Rectangle> result = new ArrayList<>(regions);
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            outer:
+            for (int i = 0; i < result.size(); i++) {
+                for (int j = i + 1; j < result.size(); j++) {
+                    if (intersects(result.get(i), result.get(j))) {
+                        result.set(i, union(result.get(i), result.get(j)));
+                        result.remove(j);
+                        changed = true;
+                        break outer;
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    private static boolean intersects(Rectangle a, Rectangle b) {
+        return a.x < b.x + b.width && b.x < a.x + a.width
+                && a.y < b.y + b.height && b.y < a.y + a.height;
+    }
+
+    private static Rectangle union(Rectangle a, Rectangle b) {
+        int l = Math.min(a.x, b.x);
+        int t = Math.min(a.y, b.y);
+        int r = Math.max(a.x + a.width, b.x + b.width);
+        int bottom = Math.max(a.y + a.height, b.y + b.height);
+
+        Rectangle union = new Rectangle();
+        union.setBounds(l, t, r - l, bottom - t);
+        return union;
+    }
+
+    private static int clamp(int value, int max) {
+        return Math.max(0, Math.min(max, value));
+    }
+}
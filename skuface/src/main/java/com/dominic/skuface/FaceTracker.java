@@ -0,0 +1,406 @@
+package com.dominic.skuface;
+
+import android.hardware.Camera;
+import android.support.constraint.solver.widgets.Rectangle;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 프레임 사이에서 같은 사람을 추적하여 한 사람을 한 번만 Face API 로 보내기 위한 클래스
+ * {@link Camera.Face#id}가 있으면 id 로, 없으면(-1) 이전 위치와의 IoU 로 같은 얼굴인지 판단한다.
+ * 새 트랙이 나타나거나 트랙의 마지막 감정 결과가 {@link #setEmotionTtlMillis(long)}보다 오래되었을 때만 요청한다.
+ * {@link #setPositionRefreshMillis(long)}를 켜면 그 사이에는 사각형만 돌려받는 가벼운 요청으로 위치를 갱신한다.
+ * 요청했는데 결과가 붙지 않은 트랙(옆모습, 너무 작은 얼굴, 기기의 오검출 등)은 {@link #setRetryBackoffMillis(long)}가 지난 뒤에만 다시 요청한다.
+ * <p>
+ * 좌표는 모두 바로 세운 화면 기준의 0 ~ 1 정규화 좌표로 비교한다.
+ *
+ * @version 0.1
+ * @see FaceDetectionCamera#setFaceTracker(FaceTracker)
+ */
+public class FaceTracker {
+
+    private float iouThreshold = 0.3f;
+    private long emotionTtlMillis = TimeUnit.SECONDS.toMillis(30);
+    private long lostTimeoutMillis = TimeUnit.SECONDS.toMillis(2);
+    private long requestTimeoutMillis = TimeUnit.SECONDS.toMillis(10);
+    private long positionRefreshMillis = 0;
+    private long retryBackoffMillis = TimeUnit.SECONDS.toMillis(5);
+
+    private int rotation = 0;
+    private int nextTrackId = 1;
+    private long requestedAt = 0;
+    private DetectOptions requestOptions = null;
+    private FaceIdRegistry faceIdRegistry = null;
+    private EmotionAggregator emotionAggregator = null;
+
+    private final List<Track> tracks = new ArrayList<>();
+
+    /**
+     * @param iouThreshold id 가 없을 때 같은 얼굴로 볼 최소 IoU. Default : 0.3
+     */
+    public FaceTracker setIouThreshold(float iouThreshold) {
+        this.iouThreshold = iouThreshold;
+        return this;
+    }
+
+    /**
+     * @param emotionTtlMillis 트랙의 감정 결과를 다시 요청하기까지의 시간. Default : 30초
+     */
+    public FaceTracker setEmotionTtlMillis(long emotionTtlMillis) {
+        this.emotionTtlMillis = emotionTtlMillis;
+        return this;
+    }
+
+    /**
+     * @param lostTimeoutMillis 보이지 않는 트랙을 버리기까지의 시간. Default : 2초
+     */
+    public FaceTracker setLostTimeoutMillis(long lostTimeoutMillis) {
+        this.lostTimeoutMillis = lostTimeoutMillis;
+        return this;
+    }
+
+    /**
+     * @param positionRefreshMillis 감정 결과가 아직 유효한 트랙의 위치를 {@link DetectOptions#rectanglesOnly()}로 다시 요청하는 간격.
+     *                              0이면 위치만 갱신하는 요청을 보내지 않는다. Default : 0
+     */
+    public FaceTracker setPositionRefreshMillis(long positionRefreshMillis) {
+        this.positionRefreshMillis = positionRefreshMillis;
+        return this;
+    }
+
+    /**
+     * @param retryBackoffMillis 요청했지만 결과가 붙지 않았거나 요청이 실패한 트랙을 다시 요청하기까지의 시간. Default : 5초
+     */
+    public FaceTracker setRetryBackoffMillis(long retryBackoffMillis) {
+        this.retryBackoffMillis = retryBackoffMillis;
+        return this;
+    }
+
+    /**
+     * @param faceIdRegistry 트랙이 faceId 를 받을 때마다 "track-트랙 id" 키로 보관할 곳. null 이면 보관하지 않는다.
+     * @see FaceApi#findSimilar(String, List, int, FaceApi.FaceIdCallback)
+     */
+    public synchronized FaceTracker setFaceIdRegistry(FaceIdRegistry faceIdRegistry) {
+        this.faceIdRegistry = faceIdRegistry;
+        return this;
+    }
+
+    /**
+     * @param emotionAggregator 트랙이 감정을 받을 때마다 트랙 id 로 누적할 곳. 사라진 트랙은 함께 지운다. null 이면 누적하지 않는다.
+     */
+    public synchronized FaceTracker setEmotionAggregator(EmotionAggregator emotionAggregator) {
+        this.emotionAggregator = emotionAggregator;
+        return this;
+    }
+
+    /**
+     * @return {@link #setFaceIdRegistry(FaceIdRegistry)}에 보관하는 트랙의 키
+     */
+    public static String registryKey(int trackId) {
+        return "track-" + trackId;
+    }
+
+    /**
+     * @param rotation 센서 프레임을 바로 세우기 위해 시계 방향으로 돌려야 하는 각도
+     */
+    synchronized void setRotation(int rotation) {
+        this.rotation = ((rotation % 360) + 360) % 360;
+    }
+
+    /**
+     * 기기의 안면인식 결과로 트랙을 갱신한다.
+     *
+     * @param faces 기기가 검출한 얼굴들
+     * @return Face API 요청이 필요하면 true. true 를 반환하면 결과가 오거나 실패할 때까지 요청 중으로 표시된다.
+     */
+    public synchronized boolean update(Camera.Face[] faces) {
+        long now = System.currentTimeMillis();
+
+        for (Camera.Face face : faces) {
+            float[] box = toUpright(face.rect.left, face.rect.top, face.rect.right, face.rect.bottom);
+            Track track = match(face.id, box);
+            if (track == null) {
+                track = new Track(nextTrackId++, face.id);
+                tracks.add(track);
+            }
+            track.cameraFaceId = face.id;
+            track.box = box;
+            track.lastSeenMillis = now;
+        }
+
+        for (int i = tracks.size() - 1; i >= 0; i--) {
+            if (now - tracks.get(i).lastSeenMillis > lostTimeoutMillis) {
+                Track lost = tracks.remove(i);
+                if (emotionAggregator != null)
+                    emotionAggregator.remove(lost.trackId);
+            }
+        }
+
+        if (requestedAt != 0 && now - requestedAt < requestTimeoutMillis)
+            return false;
+
+        boolean needsEmotion = false;
+        for (Track track : tracks) {
+            if (track.lastSeenMillis == now && !isBackingOff(track, now)
+                    && (track.emotion == null || now - track.emotionTimestampMillis > emotionTtlMillis)) {
+                track.lastRequestedMillis = now;
+                needsEmotion = true;
+            }
+        }
+        if (needsEmotion) {
+            requestedAt = now;
+            requestOptions = null;
+            return true;
+        }
+
+        if (positionRefreshMillis > 0) {
+            boolean needsPosition = false;
+            for (Track track : tracks) {
+                if (track.lastSeenMillis == now && !isBackingOff(track, now)
+                        && now - track.positionTimestampMillis > positionRefreshMillis) {
+                    track.lastRequestedMillis = now;
+                    needsPosition = true;
+                }
+            }
+            if (needsPosition) {
+                requestedAt = now;
+                requestOptions = DetectOptions.rectanglesOnly();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return 최근에 요청한 트랙이면 true. 결과가 붙었으면 감정이나 위치의 시각으로, 아니면 이 시간으로 다시 요청을 늦춘다.
+     */
+    private boolean isBackingOff(Track track, long now) {
+        return track.lastRequestedMillis != 0 && now - track.lastRequestedMillis < retryBackoffMillis;
+    }
+
+    /**
+     * @return 마지막으로 true 를 반환한 {@link #update(Camera.Face[])}의 요청에 사용할 옵션.
+     * 새 얼굴이나 감정이 오래된 얼굴이 있으면 null (기본 옵션), 위치만 갱신하면 {@link DetectOptions#rectanglesOnly()}
+     */
+    public synchronized DetectOptions getRequestOptions() {
+        return requestOptions;
+    }
+
+    /**
+     * 미리보기 프레임의 결과를 트랙에 붙인다.
+     *
+     * @param frame  요청한 프레임
+     * @param result 프레임의 분석 결과
+     */
+    public void onDetected(CapturedFrame frame, DetectionResult result) {
+        boolean swap = frame.getRotation() % 180 != 0;
+        onDetected(result,
+                swap ? frame.getHeight() : frame.getWidth(),
+                swap ? frame.getWidth() : frame.getHeight());
+    }
+
+    /**
+     * 분석 결과를 위치가 가장 많이 겹치는 트랙에 붙인다.
+     * 사각형만 요청한 결과이면 위치만 갱신하고 faceId 와 감정은 유지한다.
+     *
+     * @param result      분석 결과. 좌표는 바로 세운 이미지 기준이어야 한다.
+     * @param imageWidth  바로 세운 이미지의 너비
+     * @param imageHeight 바로 세운 이미지의 높이
+     */
+    public synchronized void onDetected(DetectionResult result, int imageWidth, int imageHeight) {
+        long now = System.currentTimeMillis();
+        requestedAt = 0;
+
+        for (Face face : result.getFaces()) {
+            Rectangle r = face.getFaceRectangle();
+            float[] box = {
+                    (float) r.x / imageWidth,
+                    (float) r.y / imageHeight,
+                    (float) (r.x + r.width) / imageWidth,
+                    (float) (r.y + r.height) / imageHeight
+            };
+
+            Track best = null;
+            float bestIou = 0;
+            for (Track track : tracks) {
+                float iou = iou(track.box, box);
+                if (iou > bestIou) {
+                    bestIou = iou;
+                    best = track;
+                }
+            }
+            if (best != null && bestIou >= iouThreshold) {
+                best.box = box;
+                best.positionTimestampMillis = now;
+                if (face.getFaceId() != null) {
+                    best.faceId = face.getFaceId();
+                    if (faceIdRegistry != null)
+                        faceIdRegistry.put(registryKey(best.trackId), best.faceId, result.getFaceIdTimestampMillis(), face.getOrigin());
+                }
+                if (face.getEmotion() != null) {
+                    best.emotion = face.getEmotion();
+                    best.emotionTimestampMillis = now;
+                    if (emotionAggregator != null)
+                        emotionAggregator.update(best.trackId, now, best.emotion);
+                }
+            }
+        }
+    }
+
+    /**
+     * 요청이 실패했을 때 호출한다. 요청한 트랙은 {@link #setRetryBackoffMillis(long)}가 지난 뒤에 다시 요청한다.
+     */
+    public synchronized void onFailed() {
+        requestedAt = 0;
+    }
+
+    /**
+     * @return 현재 트랙들의 복사본
+     */
+    public synchronized List<Track> getTracks() {
+        List<Track> copy = new ArrayList<>(tracks.size());
+        for (Track track : tracks) {
+            copy.add(track.copy());
+        }
+        return Collections.unmodifiableList(copy);
+    }
+
+    public synchronized void clear() {
+        tracks.clear();
+        requestedAt = 0;
+    }
+
+    private Track match(int cameraFaceId, float[] box) {
+        if (cameraFaceId != -1) {
+            for (Track track : tracks) {
+                if (track.cameraFaceId == cameraFaceId)
+                    return track;
+            }
+        }
+
+        Track best = null;
+        float bestIou = iouThreshold;
+        for (Track track : tracks) {
+            float iou = iou(track.box, box);
+            if (iou >= bestIou) {
+                bestIou = iou;
+                best = track;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * 센서 방향의 (-1000 ~ 1000) 좌표를 바로 세운 0 ~ 1 좌표 {left, top, right, bottom}으로 바꾼다.
+     */
+    private float[] toUpright(int left, int top, int right, int bottom) {
+        float l = (left + 1000) / 2000f;
+        float t = (top + 1000) / 2000f;
+        float r = (right + 1000) / 2000f;
+        float b = (bottom + 1000) / 2000f;
+
+        switch (rotation) {
+            case 90:
+                return new float[]{1 - b, l, 1 - t, r};
+            case 180:
+                return new float[]{1 - r, 1 - b, 1 - l, 1 - t};
+            case 270:
+                return new float[]{t, 1 - r, b, 1 - l};
+            default:
+                return new float[]{l, t, r, b};
+        }
+    }
+
+    static float iou(float[] a, float[] b) {
+        float w = Math.min(a[2], b[2]) - Math.max(a[0], b[0]);
+        float h = Math.min(a[3], b[3]) - Math.max(a[1], b[1]);
+        if (w <= 0 || h <= 0)
+            return 0;
+
+        float intersection = w * h;
+        float union = (a[2] - a[0]) * (a[3] - a[1]) + (b[2] - b[0]) * (b[3] - b[1]) - intersection;
+        return union > 0 ? intersection / union : 0;
+    }
+
+    /**
+     * 추적 중인 한 사람
+     */
+    public static class Track {
+        private final int trackId;
+        private int cameraFaceId;
+        private float[] box;
+        private long lastSeenMillis;
+        private String faceId;
+        private Face.Emotion emotion;
+        private long emotionTimestampMillis;
+        private long positionTimestampMillis;
+        private long lastRequestedMillis;
+
+        Track(int trackId, int cameraFaceId) {
+            this.trackId = trackId;
+            this.cameraFaceId = cameraFaceId;
+        }
+
+        public int getTrackId() {
+            return trackId;
+        }
+
+        /**
+         * @return 바로 세운 화면 기준 0 ~ 1 좌표 {left, top, right, bottom}
+         */
+        public float[] getBox() {
+            return box.clone();
+        }
+
+        public long getLastSeenMillis() {
+            return lastSeenMillis;
+        }
+
+        /**
+         * @return 마지막으로 받은 faceId. 아직 결과가 없으면 null
+         */
+        public String getFaceId() {
+            return faceId;
+        }
+
+        /**
+         * @return 마지막으로 받은 감정 결과. 아직 결과가 없으면 null
+         */
+        public Face.Emotion getEmotion() {
+            return emotion;
+        }
+
+        public long getEmotionTimestampMillis() {
+            return emotionTimestampMillis;
+        }
+
+        /**
+         * @return Face API 로 마지막으로 위치를 확인한 시각. 아직 없으면 0
+         */
+        public long getPositionTimestampMillis() {
+            return positionTimestampMillis;
+        }
+
+        /**
+         * @return 이 트랙 때문에 마지막으로 요청한 시각. 아직 없으면 0
+         */
+        public long getLastRequestedMillis() {
+            return lastRequestedMillis;
+        }
+
+        Track copy() {
+            Track copy = new Track(trackId, cameraFaceId);
+            copy.box = box;
+            copy.lastSeenMillis = lastSeenMillis;
+            copy.faceId = faceId;
+            copy.emotion = emotion;
+            copy.emotionTimestampMillis = emotionTimestampMillis;
+            copy.positionTimestampMillis = positionTimestampMillis;
+            copy.lastRequestedMillis = lastRequestedMillis;
+            return copy;
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package com.dominic.skuface;
+
+import android.graphics.Bitmap;
+
+/**
+ * 업로드 전에 {@link Bitmap}을 전송할 바이트로 변환하는 단계
+ * {@link FaceApi#setImageEncoder(ImageEncoder)}로 교체할 수 있다.
+ *
+ * @version 0.1
+ * @see AdaptiveJpegEncoder
+ */
+public interface ImageEncoder {
+
+    /**
+     * @param source 원본 이미지. 인코더는 원본을 변경하거나 recycle 하지 않는다.
+     * @return 업로드할 바이트와 원본 좌표로 되돌리기 위한 배율
+     */
+    EncodedImage encode(Bitmap source);
+}
@@ -0,0 +1,500 @@
+package com.dominic.skuface;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.support.constraint.solver.widgets.Rectangle;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 여러 이미지의 얼굴 영역을 하나의 이미지로 합쳐 한 번의 요청으로 분석하는 클래스
+ * 서비스는 요청(트랜잭션) 단위로 과금하고 초당 요청 수를 제한하지만 한 번의 응답에 최대 100개의 얼굴을 돌려주므로,
+ * 군중 사진처럼 얼굴이 많은 작업에서 같은 요청 한도로 더 많은 얼굴을 분석할 수 있다.
+ * <p>
+ * 넣은 영역은 바로 잘라 {@link #setMaxTileSize(int)} 이하로 줄인 타일로 보관하고,
+ * 타일이 {@link #setMaxTiles(int)}개 모이거나 합친 이미지가 가득 차거나 첫 타일 후 {@link #setMaxDelayMillis(long)}가 지나면
+ * {@link MosaicLayout}으로 배치해 보낸다. 응답의 얼굴은 타일마다 나누어 원래 이미지 좌표로 되돌린 뒤
+ * 입력마다 하나의 {@link DetectionResult}로 전달한다.
+ * <p>
+ * 서비스는 36px 보다 작은 얼굴을 찾지 못하므로 타일 안의 얼굴이 그보다 크도록 영역과 타일 크기를 정한다.
+ * 영역 없이 넣은 이미지 전체는 얼굴이 작아지지 않도록 {@link #setMaxTileSize(int)}로 줄이지 않고 합친 이미지에 들어갈 만큼만 줄인다.
+ * 합친 이미지는 배치한 크기 그대로 JPEG 품질만 조절해 인코딩하므로 타일이 보낸 뒤에 다시 작아지지 않는다.
+ * <p>
+ * 응답이 {@link #MAX_FACES_PER_RESPONSE}개의 얼굴을 담고 있으면 잘린 것일 수 있으므로 타일을 반으로 나누어 다시 보내고,
+ * 타일 하나로도 가득 차면 그 입력은 실패로 전달한다.
+ *
+ * @version 0.1
+ * @see FaceBatchDetector
+ */
+public class MosaicBatcher {
+
+    /**
+     * 서비스가 응답 하나에 돌려주는 최대 얼굴 수
+     */
+    public static final int MAX_FACES_PER_RESPONSE = 100;
+
+    private final FaceApi faceApi;
+    private final TokenBucket rateLimiter;
+    // 합친 이미지 그리기와 인코딩. 앱 종료를 막지 않도록 데몬 스레드를 사용한다.
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "MosaicBatcher");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+    private final AtomicLong sequence = new AtomicLong();
+
+    private int mosaicWidth = 1920;
+    private int mosaicHeight = 1920;
+    private int gutter = 16;
+    private int maxTileSize = 256;
+    private int maxTiles = 32;
+    private long maxDelayMillis = 200;
+
+    private final ArrayDeque<Tile> pendingTiles = new ArrayDeque<>();
+    private ScheduledFuture<?> scheduledFlush = null;
+
+    private final AtomicLong mosaicCount = new AtomicLong();
+    private final AtomicLong tileCount = new AtomicLong();
+
+    private volatile FaceBatchDetector.OnBatchResultListener onBatchResultListener = null;
+
+    /**
+     * @param faceApi     요청에 사용할 {@link FaceApi}
+     * @param rateLimiter 초당 요청 수 제한. null 이면 제한하지 않는다.
+     */
+    public MosaicBatcher(FaceApi faceApi, TokenBucket rateLimiter) {
+        this.faceApi = faceApi;
+        this.rateLimiter = rateLimiter;
+    }
+
+    /**
+     * @param width  합친 이미지의 최대 너비. Default : 1920
+     * @param height 합친 이미지의 최대 높이. Default : 1920
+     * @param gutter 타일 사이의 빈 공간(px). Default : 16
+     */
+    public synchronized MosaicBatcher setMosaicSize(int width, int height, int gutter) {
+        this.mosaicWidth = width;
+        this.mosaicHeight = height;
+        this.gutter = gutter;
+        return this;
+    }
+
+    /**
+     * @param maxTileSize 영역 타일의 긴 변 최대 길이(px). 영역이 더 크면 줄인다. 이미지 전체에는 적용하지 않는다. Default : 256
+     */
+    public synchronized MosaicBatcher setMaxTileSize(int maxTileSize) {
+        this.maxTileSize = maxTileSize;
+        return this;
+    }
+
+    /**
+     * @param maxTiles 요청 하나에 담을 최대 타일 수. 타일마다 얼굴이 여럿이어도 {@link #MAX_FACES_PER_RESPONSE}를 넘지 않게 둔다. Default : 32
+     */
+    public synchronized MosaicBatcher setMaxTiles(int maxTiles) {
+        this.maxTiles = Math.max(1, maxTiles);
+        return this;
+    }
+
+    /**
+     * @param maxDelayMillis 첫 타일이 들어온 뒤 다른 타일을 기다리는 최대 시간(ms). Default : 200ms
+     */
+    public synchronized MosaicBatcher setMaxDelayMillis(long maxDelayMillis) {
+        this.maxDelayMillis = maxDelayMillis;
+        return this;
+    }
+
+    /**
+     * 이미지 전체를 타일 하나로 넣는다. 합친 이미지보다 크지 않으면 줄이지 않는다.
+     *
+     * @param bitmap 분석할 이미지. 반환된 뒤에는 recycle 해도 된다.
+     * @return 결과와 짝을 맞추기 위한 요청 ID
+     */
+    public String submit(Bitmap bitmap) {
+        return submit(bitmap, null);
+    }
+
+    /**
+     * @param bitmap  분석할 이미지. 반환된 뒤에는 recycle 해도 된다.
+     * @param regions 얼굴이 있는 이미지 좌표 영역들 (기기 안면인식 결과에 여백을 더한 것 등). null 이거나 비어 있으면 이미지 전체
+     * @return 결과와 짝을 맞추기 위한 요청 ID
+     */
+    public String submit(Bitmap bitmap, List<Rectangle> regions) {
+        String requestId = "mosaic-" + sequence.incrementAndGet();
+        submit(requestId, bitmap, regions);
+        return requestId;
+    }
+
+    /**
+     * @param requestId 결과와 짝을 맞추기 위한 요청 ID
+     * @param bitmap    분석할 이미지. 반환된 뒤에는 recycle 해도 된다.
+     * @param regions   얼굴이 있는 이미지 좌표 영역들. null 이거나 비어 있으면 이미지 전체
+     */
+    public void submit(String requestId, Bitmap bitmap, List<Rectangle> regions) {
+        boolean wholeImage = regions == null || regions.isEmpty();
+        if (wholeImage) {
+            Rectangle whole = new Rectangle();
+            whole.setBounds(0, 0, bitmap.getWidth(), bitmap.getHeight());
+            regions = Collections.singletonList(whole);
+        }
+
+        Request request = new Request(faceApi.nextSequence(), requestId, regions.size());
+        List<Tile> tiles = new ArrayList<>(regions.size());
+        int tileLimit;
+        synchronized (this) {
+            tileLimit = Math.min(mosaicWidth, mosaicHeight) - 2 * gutter;
+            // 영역은 얼굴이 대부분을 차지하므로 줄여도 되지만, 이미지 전체를 줄이면 얼굴이 최소 크기 아래로 작아진다.
+            if (!wholeImage)
+                tileLimit = Math.min(maxTileSize, tileLimit);
+        }
+        for (Rectangle region : regions) {
+            Rectangle clipped = clip(region, bitmap.getWidth(), bitmap.getHeight());
+            if (clipped == null) {
+                request.onTile(Collections.<Face>emptyList(), Long.MAX_VALUE);
+                continue;
+            }
+            tiles.add(new Tile(request, clipped, cropTile(bitmap, clipped, tileLimit)));
+        }
+        if (tiles.isEmpty()) {
+            deliver(request);
+            return;
+        }
+
+        synchronized (this) {
+            pendingTiles.addAll(tiles);
+            if (pendingTiles.size() >= maxTiles) {
+                flushLater(0);
+            } else if (scheduledFlush == null) {
+                flushLater(maxDelayMillis);
+            }
+        }
+    }
+
+    /**
+     * 대기 중인 타일을 기다리지 않고 보낸다.
+     */
+    public synchronized void flush() {
+        if (!pendingTiles.isEmpty())
+            flushLater(0);
+    }
+
+    /**
+     * 대기 중인 타일을 버리고 작업 스레드를 정리한다. 이미 전송된 요청의 결과는 계속 전달된다.
+     */
+    public void shutdown() {
+        synchronized (this) {
+            if (scheduledFlush != null)
+                scheduledFlush.cancel(false);
+            for (Tile tile : pendingTiles) {
+                tile.bitmap.recycle();
+            }
+            pendingTiles.clear();
+        }
+        executor.shutdownNow();
+    }
+
+    /**
+     * @return 보낸 합친 이미지(요청) 수
+     */
+    public long getMosaicCount() {
+        return mosaicCount.get();
+    }
+
+    /**
+     * @return 합친 이미지에 담아 보낸 타일 수. {@link #getMosaicCount()}로 나누면 요청 하나가 대신한 요청 수가 된다.
+     */
+    public long getTileCount() {
+        return tileCount.get();
+    }
+
+    private void flushLater(long delayMillis) {
+        if (scheduledFlush != null)
+            scheduledFlush.cancel(false);
+        scheduledFlush = faceApi.getScheduler().schedule(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    executor.execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            sendMosaic();
+                        }
+                    });
+                } catch (RejectedExecutionException e) {
+                    // shutdown() 이후
+                }
+            }
+        }, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 대기 중인 타일을 들어가는 만큼 배치해 보낸다. 남은 타일은 바로 다음 이미지로 보낸다.
+     */
+    private void sendMosaic() {
+        final MosaicLayout layout;
+        final List<Tile> tiles = new ArrayList<>();
+        List<Tile> oversized = new ArrayList<>();
+        synchronized (this) {
+            scheduledFlush = null;
+            layout = new MosaicLayout(mosaicWidth, mosaicHeight, gutter);
+            while (!pendingTiles.isEmpty() && tiles.size() < maxTiles) {
+                Tile tile = pendingTiles.peek();
+                if (layout.add(tile.region, tile.bitmap.getWidth(), tile.bitmap.getHeight()) < 0) {
+                    if (!tiles.isEmpty())
+                        break;
+                    // 빈 이미지에도 들어가지 않는 타일 (타일을 넣은 뒤 크기 설정이 바뀐 경우)
+                    oversized.add(pendingTiles.poll());
+                    continue;
+                }
+                tiles.add(pendingTiles.poll());
+            }
+            if (!pendingTiles.isEmpty())
+                flushLater(pendingTiles.size() >= maxTiles ? 0 : maxDelayMillis);
+        }
+        if (!oversized.isEmpty()) {
+            recycle(oversized);
+            fail(oversized, new IOException("Tile does not fit in the mosaic"));
+        }
+        if (!tiles.isEmpty())
+            send(layout, tiles);
+    }
+
+    /**
+     * 배치한 타일을 합친 이미지 하나로 보낸다. 타일 비트맵은 응답을 받은 뒤 정리한다.
+     */
+    private void send(final MosaicLayout layout, final List<Tile> tiles) {
+        try {
+            if (rateLimiter != null)
+                rateLimiter.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            recycle(tiles);
+            fail(tiles, new IOException("Mosaic request interrupted", e));
+            return;
+        }
+
+        EncodedImage encodedImage;
+        try {
+            Bitmap mosaic = draw(layout, tiles);
+            encodedImage = faceApi.encodeMosaic(mosaic);
+            mosaic.recycle();
+        } catch (RuntimeException e) {
+            recycle(tiles);
+            fail(tiles, new IOException("Failed to encode mosaic", e));
+            return;
+        }
+
+        mosaicCount.incrementAndGet();
+        tileCount.addAndGet(tiles.size());
+
+        faceApi.detect(encodedImage, faceApi.nextSequence(), "mosaic", new FaceApi.DetectCallback() {
+            @Override
+            public void onDetected(DetectionResult result) {
+                if (result.getFaces().size() >= MAX_FACES_PER_RESPONSE) {
+                    onTruncated(tiles);
+                    return;
+                }
+                recycle(tiles);
+                List<List<Face>> faces = layout.split(result.getFaces());
+                for (int i = 0; i < tiles.size(); i++) {
+                    Request request = tiles.get(i).request;
+                    if (request.onTile(faces.get(i), result.getFaceIdTimestampMillis()))
+                        deliver(request);
+                }
+            }
+
+            @Override
+            public void onFailure(IOException e) {
+                recycle(tiles);
+                fail(tiles, e);
+            }
+        });
+    }
+
+    /**
+     * 응답이 얼굴 수 제한에 닿아 잘렸을 수 있는 타일들을 반으로 나누어 다시 보낸다.
+     */
+    private void onTruncated(List<Tile> tiles) {
+        if (tiles.size() == 1) {
+            recycle(tiles);
+            fail(tiles, new IOException("Mosaic response reached " + MAX_FACES_PER_RESPONSE + " faces"));
+            return;
+        }
+        int half = tiles.size() / 2;
+        resend(new ArrayList<>(tiles.subList(0, half)));
+        resend(new ArrayList<>(tiles.subList(half, tiles.size())));
+    }
+
+    private void resend(final List<Tile> tiles) {
+        try {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    MosaicLayout layout;
+                    synchronized (MosaicBatcher.this) {
+                        layout = new MosaicLayout(mosaicWidth, mosaicHeight, gutter);
+                    }
+                    for (Tile tile : tiles) {
+                        if (layout.add(tile.region, tile.bitmap.getWidth(), tile.bitmap.getHeight()) < 0) {
+                            recycle(tiles);
+                            fail(tiles, new IOException("Tile does not fit in the mosaic"));
+                            return;
+                        }
+                    }
+                    send(layout, tiles);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            recycle(tiles);
+            fail(tiles, new IOException("MosaicBatcher is shut down"));
+        }
+    }
+
+    private static Bitmap draw(MosaicLayout layout, List<Tile> tiles) {
+        Bitmap mosaic = Bitmap.createBitmap(layout.getWidth(), layout.getHeight(), Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(mosaic);
+        canvas.drawColor(Color.GRAY);
+
+        Paint paint = new Paint(Paint.FILTER_BITMAP_FLAG);
+        for (int i = 0; i < tiles.size(); i++) {
+            Rectangle placement = layout.getPlacement(i);
+            canvas.drawBitmap(tiles.get(i).bitmap, placement.x, placement.y, paint);
+        }
+        return mosaic;
+    }
+
+    /**
+     * 영역을 잘라 긴 변이 maxSize 이하가 되도록 줄인 새 비트맵
+     */
+    private static Bitmap cropTile(Bitmap bitmap, Rectangle region, int maxSize) {
+        float scale = Math.min(1f, (float) maxSize / Math.max(region.width, region.height));
+        Matrix matrix = new Matrix();
+        matrix.setScale(scale, scale);
+
+        Bitmap tile = Bitmap.createBitmap(bitmap, region.x, region.y, region.width, region.height, matrix, true);
+        // 줄이지 않으면 원본을 그대로 돌려줄 수 있으므로 복사한다.
+        return tile == bitmap ? bitmap.copy(Bitmap.Config.ARGB_8888, false) : tile;
+    }
+
+    /**
+     * @return 이미지 안으로 자른 영역. 겹치는 부분이 없으면 null
+     */
+    private static Rectangle clip(Rectangle region, int width, int height) {
+        int left = Math.max(0, region.x);
+        int top = Math.max(0, region.y);
+        int right = Math.min(width, region.x + region.width);
+        int bottom = Math.min(height, region.y + region.height);
+        if (right <= left || bottom <= top)
+            return null;
+
+        Rectangle clipped = new Rectangle();
+        clipped.setBounds(left, top, right - left, bottom - top);
+        return clipped;
+    }
+
+    private static void recycle(List<Tile> tiles) {
+        for (Tile tile : tiles) {
+            tile.bitmap.recycle();
+        }
+    }
+
+    private void fail(List<Tile> tiles, IOException e) {
+        for (Tile tile : tiles) {
+            if (tile.request.onFailure()) {
+                FaceBatchDetector.OnBatchResultListener listener = onBatchResultListener;
+                if (listener != null)
+                    listener.onFailure(tile.request.requestId, e);
+            }
+        }
+    }
+
+    private void deliver(Request request) {
+        DetectionResult result = request.toResult();
+        faceApi.onRequestCompleted(result);
+
+        FaceBatchDetector.OnBatchResultListener listener = onBatchResultListener;
+        if (listener != null)
+            listener.onResult(result);
+    }
+
+    /**
+     * 입력마다 한 번씩 {@link FaceBatchDetector.OnBatchResultListener#onResult(DetectionResult)} 또는
+     * {@link FaceBatchDetector.OnBatchResultListener#onFailure(String, IOException)}가 OkHttp 스레드에서 호출된다.
+     */
+    public void setOnBatchResultListener(FaceBatchDetector.OnBatchResultListener onBatchResultListener) {
+        this.onBatchResultListener = onBatchResultListener;
+    }
+
+    /**
+     * 입력 하나. 영역이 여러 합친 이미지로 나뉘어 보내질 수 있으므로 모든 타일의 결과가 모이면 전달한다.
+     */
+    private static final class Request {
+        final long seq;
+        final String requestId;
+        final List<Face> faces = new ArrayList<>();
+        // 캐시에서 받은 합친 이미지가 있으면 가장 먼저 받은 faceId 의 시각으로 만료를 계산한다.
+        long faceIdTimestampMillis = Long.MAX_VALUE;
+        int remainingTiles;
+        boolean failed;
+
+        Request(long seq, String requestId, int tiles) {
+            this.seq = seq;
+            this.requestId = requestId;
+            this.remainingTiles = tiles;
+        }
+
+        /**
+         * @return 마지막 타일이면 true
+         */
+        synchronized boolean onTile(List<Face> tileFaces, long tileFaceIdTimestampMillis) {
+            if (failed)
+                return false;
+            faces.addAll(tileFaces);
+            faceIdTimestampMillis = Math.min(faceIdTimestampMillis, tileFaceIdTimestampMillis);
+            return --remainingTiles == 0;
+        }
+
+        synchronized DetectionResult toResult() {
+            return new DetectionResult(seq, requestId, faces,
+                    faceIdTimestampMillis == Long.MAX_VALUE ? 0 : faceIdTimestampMillis);
+        }
+
+        /**
+         * @return 처음 실패한 타일이면 true
+         */
+        synchronized boolean onFailure() {
+            if (failed || remainingTiles == 0)
+                return false;
+            failed = true;
+            return true;
+        }
+    }
+
+    private static final class Tile {
+        final Request request;
+        final Rectangle region;
+        final Bitmap bitmap;
+
+        Tile(Request request, Rectangle region, Bitmap bitmap) {
+            this.request = request;
+            this.region = region;
+            this.bitmap = bitmap;
+        }
+    }
+}
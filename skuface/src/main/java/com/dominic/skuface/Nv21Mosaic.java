@@ -0,0 +1,82 @@
+package com.dominic.skuface;
+
+import android.support.constraint.solver.widgets.Rectangle;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * NV21 프레임의 여러 영역을 {@link MosaicLayout} 배치대로 하나의 NV21 이미지로 옮긴다.
+ * 픽셀을 행 단위로 복사만 하므로 {@link android.graphics.Bitmap}을 만들지 않고, 결과는 한 번만 JPEG 으로 압축하면 된다.
+ * <p>
+ * NV21 은 2x2 픽셀이 색차 값 하나를 공유하므로 영역과 배치의 좌표와 크기, 간격은 모두 짝수여야 한다.
+ *
+ * @version 0.1
+ * @see FaceDetectionCamera#setRegionOfInterestEnabled(boolean, float)
+ */
+final class Nv21Mosaic {
+
+    // 합친 이미지의 최대 크기와 타일 사이 간격 (서비스 이미지 한도 4096px 안쪽)
+    static final int MAX_SIZE = 1920;
+    static final int GUTTER = 16;
+
+    // 타일 사이 빈 공간의 밝기와 색차 (회색)
+    private static final byte GRAY = (byte) 128;
+
+    private Nv21Mosaic() {
+    }
+
+    /**
+     * @param regions     프레임 좌표의 영역들. 짝수 좌표와 크기여야 한다.
+     * @param frameWidth  프레임 너비
+     * @param frameHeight 프레임 높이
+     * @param gutter      타일 사이 간격. 짝수여야 한다.
+     * @param maxSize     합친 이미지의 최대 변 길이
+     * @return 영역 순서대로 놓은 배치. 한 장에 들어가지 않으면 null
+     */
+    static MosaicLayout layout(List<Rectangle> regions, int frameWidth, int frameHeight, int gutter, int maxSize) {
+        MosaicLayout layout = new MosaicLayout(maxSize, maxSize, gutter);
+        for (Rectangle region : regions) {
+            if ((region.x | region.y | region.width | region.height) % 2 != 0
+                    || region.x + region.width > frameWidth || region.y + region.height > frameHeight)
+                return null;
+            if (layout.add(region, region.width, region.height) < 0)
+                return null;
+        }
+        return layout;
+    }
+
+    /**
+     * @param nv21        프레임
+     * @param frameWidth  프레임 너비
+     * @param frameHeight 프레임 높이
+     * @param layout      {@link #layout(List, int, int, int, int)}로 만든 배치
+     * @param buffer      다시 쓸 버퍼. 작거나 null 이면 새로 만든다.
+     * @return 합친 NV21 이미지. 크기는 {@link MosaicLayout#getWidth()} x {@link MosaicLayout#getHeight()}이며
+     * 길이가 그보다 긴 buffer 를 그대로 돌려줄 수 있다.
+     */
+    static byte[] compose(byte[] nv21, int frameWidth, int frameHeight, MosaicLayout layout, byte[] buffer) {
+        int width = layout.getWidth();
+        int height = layout.getHeight();
+        int size = width * height * 3 / 2;
+        byte[] out = buffer != null && buffer.length >= size ? buffer : new byte[size];
+        Arrays.fill(out, 0, size, GRAY);
+
+        int frameChroma = frameWidth * frameHeight;
+        int outChroma = width * height;
+        for (int i = 0; i < layout.getTileCount(); i++) {
+            Rectangle source = layout.getSourceRegion(i);
+            Rectangle placement = layout.getPlacement(i);
+            for (int row = 0; row < source.height; row++) {
+                System.arraycopy(nv21, (source.y + row) * frameWidth + source.x,
+                        out, (placement.y + row) * width + placement.x, source.width);
+            }
+            // VU 가 번갈아 놓인 색차 평면은 세로로 절반이며 한 행의 바이트 수는 너비와 같다.
+            for (int row = 0; row < source.height / 2; row++) {
+                System.arraycopy(nv21, frameChroma + (source.y / 2 + row) * frameWidth + source.x,
+                        out, outChroma + (placement.y / 2 + row) * width + placement.x, source.width);
+            }
+        }
+        return out;
+    }
+}
@@ -0,0 +1,48 @@
+package com.dominic.skuface;
+
+import android.graphics.Bitmap;
+import android.graphics.Color;
+
+/**
+ * 거의 같은 이미지(연속된 카메라 프레임 등)를 찾기 위한 64비트 difference hash (dHash)
+ * 9x8 회색조로 줄인 뒤 가로로 이웃한 픽셀의 밝기 차이를 비트로 기록한다.
+ *
+ * @version 0.1
+ */
+final class PerceptualHash {
+
+    private static final int HASH_WIDTH = 9;
+    private static final int HASH_HEIGHT = 8;
+
+    private PerceptualHash() {
+    }
+
+    static long dHash(Bitmap bitmap) {
+        Bitmap small = Bitmap.createScaledBitmap(bitmap, HASH_WIDTH, HASH_HEIGHT, true);
+        int[] pixels = new int[HASH_WIDTH * HASH_HEIGHT];
+        small.getPixels(pixels, 0, HASH_WIDTH, 0, 0, HASH_WIDTH, HASH_HEIGHT);
+        if (small != bitmap)
+            small.recycle();
+
+        long hash = 0;
+        for (int y = 0; y < HASH_HEIGHT; y++) {
+            for (int x = 0; x < HASH_WIDTH - 1; x++) {
+                int left = luminance(pixels[y * HASH_WIDTH + x]);
+                int right = luminance(pixels[y * HASH_WIDTH + x + 1]);
+                hash = (hash << 1) | (left > right ? 1 : 0);
+            }
+        }
+        return hash;
+    }
+
+    /**
+     * @return 두 해시 간 다른 비트 수 (0 ~ 64)
+     */
+    static int distance(long a, long b) {
+        return Long.bitCount(a ^ b);
+    }
+
+    private static int luminance(int color) {
+        return (Color.red(color) * 299 + Color.green(color) * 587 + Color.blue(color) * 114) / 1000;
+    }
+}
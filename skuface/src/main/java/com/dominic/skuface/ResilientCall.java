@@ -0,0 +1,357 @@
+package com.dominic.skuface;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.TimeZone;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+/**
+ * detect 요청 하나를 시간 제한, 재시도, 헤지 요청, 회로 차단기와 함께 보낸다.
+ * <p>
+ * 요청마다 {@link FaceApiConfig#getAttemptTimeoutMillis()}가 지나면 취소하고,
+ * 429·5xx·연결 실패는 지수 백오프(또는 Retry-After) 후 다시 보낸다.
+ * 헤지를 켜면 응답이 최근 지연 시간의 백분위를 넘도록 오지 않을 때 같은 요청을 하나 더 보내 먼저 온 응답을 사용한다.
+ * 요청마다 {@link EndpointRouter}가 고른 엔드포인트로 보내며, 재시도와 헤지 요청은 가능하면 다른 엔드포인트로 보낸다.
+ * 콜백은 요청마다 정확히 한 번 호출된다.
+ *
+ * @version 0.1
+ */
+final class ResilientCall {
+
+    // 헤지 지연 시간을 계산하기 위한 최소 표본 수
+    private static final int HEDGE_MIN_SAMPLES = 20;
+
+    private static final Random JITTER = new Random();
+
+    /**
+     * 2xx 응답 또는 최종 실패를 전달받는다. OkHttp 스레드 또는 재시도 스레드에서 호출된다.
+     */
+    interface ResponseCallback {
+        /**
+         * @param response 2xx 응답. 받은 쪽에서 닫는다.
+         */
+        void onResponse(Response response);
+
+        void onFailure(IOException e);
+    }
+
+    private final FaceApi faceApi;
+    private final FaceApiConfig config;
+    private final EndpointRouter router;
+    private final ScheduledExecutorService scheduler;
+    private final DetectionMetrics metrics;
+    private final String query;
+    private final RequestBody body;
+    private final ResponseCallback callback;
+    private final long deadlineNanos;
+
+    // 진행 중인 요청과 그 엔드포인트
+    private final List<Call> calls = new ArrayList<>(2);
+    private final List<EndpointRouter.Route> inFlightRoutes = new ArrayList<>(2);
+    // 실패한 엔드포인트. 재시도는 가능하면 다른 곳으로 보낸다.
+    private final List<EndpointRouter.Route> failedRoutes = new ArrayList<>(2);
+    private int attempts = 0;
+    private int inFlight = 0;
+    private boolean done = false;
+
+    /**
+     * @param query {@link DetectOptions#toQueryString()}
+     * @param body  요청마다 다시 쓸 수 있는 본문. 헤지 요청이 있으면 동시에 두 번 쓰일 수 있다.
+     */
+    ResilientCall(FaceApi faceApi, String query, RequestBody body, ResponseCallback callback) {
+        this.faceApi = faceApi;
+        this.config = faceApi.getConfig();
+        this.router = faceApi.getRouter();
+        this.scheduler = faceApi.getScheduler();
+        this.metrics = faceApi.getMetrics();
+        this.query = query;
+        this.body = body;
+        this.callback = callback;
+        this.deadlineNanos = config.getDeadlineMillis() > 0
+                ? System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(config.getDeadlineMillis())
+                : 0;
+    }
+
+    void start() {
+        EndpointRouter.Selection selection = router.select(Collections.<EndpointRouter.Route>emptyList());
+        if (selection == null) {
+            reject();
+            return;
+        }
+        launch(selection.route, selection.trial);
+    }
+
+    /**
+     * 요청 하나를 보낸다. 헤지가 켜져 있으면 헤지 요청을 예약한다.
+     *
+     * @param trial 차단기가 이 요청을 시험 요청으로 허용했으면 그 번호, 아니면 {@link CircuitBreaker#NOT_TRIAL}
+     */
+    private void launch(final EndpointRouter.Route route, final long trial) {
+        final Call call;
+        final long attemptTimeoutMillis;
+        synchronized (this) {
+            if (done)
+                return;
+            attempts++;
+            inFlight++;
+            call = faceApi.newDetectCall(route.getEndpoint(), query, body);
+            calls.add(call);
+            inFlightRoutes.add(route);
+            attemptTimeoutMillis = attemptTimeoutMillis();
+        }
+
+        metrics.onRequest();
+        final long start = System.nanoTime();
+        final AtomicBoolean timedOut = new AtomicBoolean(false);
+        final ScheduledFuture<?> timeout = attemptTimeoutMillis <= 0 ? null : scheduler.schedule(new Runnable() {
+            @Override
+            public void run() {
+                timedOut.set(true);
+                call.cancel();
+            }
+        }, attemptTimeoutMillis, TimeUnit.MILLISECONDS);
+
+        call.enqueue(new Callback() {
+            @Override
+            public void onFailure(Call c, IOException e) {
+                if (timeout != null)
+                    timeout.cancel(false);
+
+                if (timedOut.get()) {
+                    InterruptedIOException timeoutException =
+                            new InterruptedIOException("Attempt timed out after " + attemptTimeoutMillis + "ms");
+                    timeoutException.initCause(e);
+                    e = timeoutException;
+                }
+                onAttemptFailed(call, route, trial, System.nanoTime() - start, e, true, -1);
+            }
+
+            @Override
+            public void onResponse(Call c, Response response) {
+                if (timeout != null)
+                    timeout.cancel(false);
+                long elapsed = System.nanoTime() - start;
+                metrics.recordSince(DetectionMetrics.Stage.NETWORK, start);
+
+                if (response.isSuccessful()) {
+                    onAttemptSucceeded(call, route, elapsed, response);
+                    return;
+                }
+
+                FaceApiException error;
+                try (ResponseBody body = response.body()) {
+                    error = FaceResponseParser.parseError(response.code(), body.source(),
+                            parseRetryAfter(response.header("Retry-After")));
+                }
+                onAttemptFailed(call, route, trial, elapsed, error, error.isRetryable(), error.getRetryAfterMillis());
+            }
+        });
+
+        scheduleHedge();
+    }
+
+    private void onAttemptSucceeded(Call call, EndpointRouter.Route route, long elapsedNanos, Response response) {
+        route.onLatency(elapsedNanos);
+        route.getCircuitBreaker().onSuccess();
+
+        List<Call> losers;
+        synchronized (this) {
+            if (done) {
+                response.close();
+                return;
+            }
+            done = true;
+            inFlight--;
+            losers = new ArrayList<>(calls);
+            losers.remove(call);
+        }
+
+        for (Call loser : losers) {
+            loser.cancel();
+        }
+        callback.onResponse(response);
+    }
+
+    private void onAttemptFailed(Call call, EndpointRouter.Route route, long trial, long elapsedNanos,
+                                 IOException e, boolean retryable, long retryAfterMillis) {
+        boolean cancelled;
+        synchronized (this) {
+            cancelled = done;
+            if (!cancelled) {
+                inFlight--;
+                calls.remove(call);
+                inFlightRoutes.remove(route);
+                if (!failedRoutes.contains(route))
+                    failedRoutes.add(route);
+            }
+        }
+        // 이긴 요청이 취소한 요청은 엔드포인트의 실패로 세지 않는다. 시험 요청이었으면 다음 요청이 다시 시험할 수 있게 한다.
+        if (cancelled) {
+            route.getCircuitBreaker().releaseTrial(trial);
+            return;
+        }
+
+        // 시간 초과와 연결 실패도 응답 시간에 반영해 느린 엔드포인트를 피한다.
+        route.onLatency(elapsedNanos);
+        // 서버 장애로 볼 수 있는 실패만 회로 차단기에 센다. 429 와 4xx 는 서버가 정상 응답한 것이므로 성공으로 센다.
+        if (e instanceof FaceApiException && ((FaceApiException) e).getStatusCode() < 500)
+            route.getCircuitBreaker().onSuccess();
+        else
+            route.getCircuitBreaker().onFailure();
+
+        long delayMillis;
+        boolean finished;
+        synchronized (this) {
+            // 헤지한 다른 요청이 아직 진행 중이면 그 결과를 기다린다.
+            if (inFlight > 0)
+                return;
+
+            // 다른 엔드포인트가 있으면 바로 넘어간다. Retry-After 는 그 엔드포인트에만 해당한다.
+            boolean failover = router.getRoutes().size() > failedRoutes.size();
+            delayMillis = failover ? 0 : retryAfterMillis >= 0 ? retryAfterMillis : backoffMillis(attempts);
+            finished = !retryable || attempts >= config.getMaxAttempts() || exceedsDeadline(delayMillis);
+            if (finished)
+                done = true;
+        }
+
+        if (finished) {
+            callback.onFailure(e);
+            return;
+        }
+
+        metrics.onRetry();
+        scheduler.schedule(new Runnable() {
+            @Override
+            public void run() {
+                EndpointRouter.Selection next;
+                synchronized (ResilientCall.this) {
+                    next = router.select(new ArrayList<>(failedRoutes));
+                }
+                if (next == null) {
+                    reject();
+                    return;
+                }
+                launch(next.route, next.trial);
+            }
+        }, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void scheduleHedge() {
+        double percentile = config.getHedgePercentile();
+        if (percentile <= 0 || metrics.getLatencyCount(DetectionMetrics.Stage.NETWORK) < HEDGE_MIN_SAMPLES)
+            return;
+
+        synchronized (this) {
+            if (attempts >= config.getMaxAttempts())
+                return;
+        }
+
+        long delayMillis = Math.max(config.getHedgeMinDelayMillis(), TimeUnit.NANOSECONDS.toMillis(
+                metrics.getLatencyPercentileNanos(DetectionMetrics.Stage.NETWORK, percentile)));
+        if (exceedsDeadline(delayMillis))
+            return;
+
+        scheduler.schedule(new Runnable() {
+            @Override
+            public void run() {
+                List<EndpointRouter.Route> avoid;
+                synchronized (ResilientCall.this) {
+                    if (done || inFlight != 1 || attempts >= config.getMaxAttempts())
+                        return;
+                    avoid = new ArrayList<>(inFlightRoutes);
+                }
+                // 장애 중에는 요청을 늘리지 않도록 차단기가 닫힌 엔드포인트로만 보낸다.
+                EndpointRouter.Route route = router.selectClosed(avoid);
+                if (route == null)
+                    return;
+
+                metrics.onHedge();
+                launch(route, CircuitBreaker.NOT_TRIAL);
+            }
+        }, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void reject() {
+        synchronized (this) {
+            if (done)
+                return;
+            done = true;
+        }
+        metrics.onRejected();
+        callback.onFailure(new FaceApiException(0, FaceApiException.CIRCUIT_OPEN,
+                "Circuit breaker is open", -1));
+    }
+
+    /**
+     * 요청 한 번의 제한 시간. 전체 제한 시간이 더 먼저 끝나면 그 시간까지만 기다린다.
+     */
+    private long attemptTimeoutMillis() {
+        long timeout = config.getAttemptTimeoutMillis();
+        if (deadlineNanos == 0)
+            return timeout;
+
+        long remaining = Math.max(1, TimeUnit.NANOSECONDS.toMillis(deadlineNanos - System.nanoTime()));
+        return timeout > 0 ? Math.min(timeout, remaining) : remaining;
+    }
+
+    private boolean exceedsDeadline(long delayMillis) {
+        return deadlineNanos != 0
+                && System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delayMillis) >= deadlineNanos;
+    }
+
+    /**
+     * base * 2^(attempt-1) 을 넘지 않는 범위에서 절반 이상을 임의로 고른다.
+     */
+    private long backoffMillis(int attempt) {
+        long base = config.getRetryBaseDelayMillis();
+        long max = config.getRetryMaxDelayMillis();
+        long exponential = base << Math.min(attempt - 1, 20);
+        long capped = Math.min(max, exponential > 0 ? exponential : max);
+
+        double jitter;
+        synchronized (JITTER) {
+            jitter = JITTER.nextDouble();
+        }
+        return capped / 2 + (long) (capped / 2 * jitter);
+    }
+
+    /**
+     * @param value Retry-After 헤더. 초 단위 숫자 또는 HTTP 날짜
+     * @return 기다릴 시간(ms). 없거나 읽을 수 없으면 -1
+     */
+    static long parseRetryAfter(String value) {
+        if (value == null)
+            return -1;
+
+        value = value.trim();
+        try {
+            return Math.max(0, Long.parseLong(value) * 1000);
+        } catch (NumberFormatException e) {
+            // HTTP 날짜 형식
+        }
+
+        SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("GMT"));
+        try {
+            return Math.max(0, format.parse(value).getTime() - System.currentTimeMillis());
+        } catch (ParseException e) {
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package com.dominic.skuface;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 같은 키의 요청이 이미 진행 중이면 새로 보내지 않고 진행 중인 요청의 결과를 함께 받는다.
+ * <p>
+ * 처음 {@link #join(String, Listener)}한 쪽이 요청을 보내고 {@link #complete(String, Object)} 또는
+ * {@link #fail(String, IOException)}를 호출하며, 그 사이에 같은 키로 들어온 리스너는 모두 같은 결과를 받는다.
+ * 완료된 뒤에 들어온 요청은 새로 보낸다.
+ *
+ * @param <T> 요청 결과
+ * @version 0.1
+ */
+final class SingleFlight<T> {
+
+    interface Listener<T> {
+        void onSuccess(T value);
+
+        void onFailure(IOException e);
+    }
+
+    private final ConcurrentHashMap<String, Flight<T>> flights = new ConcurrentHashMap<>();
+
+    /**
+     * @return true 이면 호출한 쪽이 요청을 보내야 한다. false 이면 진행 중인 요청에 붙었다.
+     */
+    boolean join(String key, Listener<T> listener) {
+        while (true) {
+            Flight<T> flight = flights.get(key);
+            if (flight == null) {
+                flight = new Flight<>(listener);
+                if (flights.putIfAbsent(key, flight) == null)
+                    return true;
+                continue;
+            }
+
+            if (flight.add(listener))
+                return false;
+            // 방금 완료된 요청이다. 맵에서 빠지면 새로 보낸다.
+            flights.remove(key, flight);
+        }
+    }
+
+    void complete(String key, T value) {
+        for (Listener<T> listener : finish(key)) {
+            listener.onSuccess(value);
+        }
+    }
+
+    void fail(String key, IOException e) {
+        for (Listener<T> listener : finish(key)) {
+            listener.onFailure(e);
+        }
+    }
+
+    int getInFlightCount() {
+        return flights.size();
+    }
+
+    private List<Listener<T>> finish(String key) {
+        Flight<T> flight = flights.remove(key);
+        if (flight == null)
+            throw new IllegalStateException("No request in flight for " + key);
+        return flight.finish();
+    }
+
+    private static final class Flight<T> {
+        private final List<Listener<T>> listeners = new ArrayList<>(2);
+        private boolean finished = false;
+
+        Flight(Listener<T> leader) {
+            listeners.add(leader);
+        }
+
+        synchronized boolean add(Listener<T> listener) {
+            if (finished)
+                return false;
+            listeners.add(listener);
+            return true;
+        }
+
+        synchronized List<Listener<T>> finish() {
+            finished = true;
+            return listeners;
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.dominic.skuface;
+
+import java.util.ArrayDeque;
+
+/**
+ * {@link DetectionPipeline}의 단계 사이를 잇는 크기 제한 큐
+ * 가득 찼을 때의 동작은 {@link DetectionPipeline.OverflowPolicy}를 따른다.
+ *
+ * @param <T> 단계 사이에 전달되는 작업
+ * @version 0.1
+ */
+final class StageQueue<T> {
+
+    private final ArrayDeque<T> items;
+    private final int capacity;
+    private final DetectionPipeline.OverflowPolicy policy;
+    private boolean closed = false;
+
+    StageQueue(int capacity, DetectionPipeline.OverflowPolicy policy) {
+        this.policy = policy;
+        this.capacity = policy == DetectionPipeline.OverflowPolicy.LATEST_ONLY ? 1 : Math.max(1, capacity);
+        this.items = new ArrayDeque<>(this.capacity);
+    }
+
+    /**
+     * @param item 넣을 작업
+     * @return 큐가 가득 차서 버려진 작업 (새 작업 또는 가장 오래된 작업). 버려진 작업이 없으면 null
+     */
+    synchronized T offer(T item) {
+        if (closed)
+            return item;
+
+        T dropped = null;
+        if (items.size() >= capacity) {
+            if (policy == DetectionPipeline.OverflowPolicy.DROP_NEWEST)
+                return item;
+            dropped = items.pollFirst();
+        }
+        items.addLast(item);
+        notifyAll();
+        return dropped;
+    }
+
+    /**
+     * 작업이 들어올 때까지 기다린다.
+     *
+     * @return 가장 오래된 작업. 큐가 닫혔으면 null
+     */
+    synchronized T take() throws InterruptedException {
+        while (items.isEmpty() && !closed) {
+            wait();
+        }
+        return items.pollFirst();
+    }
+
+    /**
+     * 큐를 닫고 남아있던 작업을 돌려준다.
+     */
+    synchronized ArrayDeque<T> close() {
+        closed = true;
+        ArrayDeque<T> remaining = new ArrayDeque<>(items);
+        items.clear();
+        notifyAll();
+        return remaining;
+    }
+}
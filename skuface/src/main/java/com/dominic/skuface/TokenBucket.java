@@ -0,0 +1,75 @@
+package com.dominic.skuface;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 클라이언트 측 요청 속도 제한기
+ * 초당 {@code permitsPerSecond}개씩 토큰이 채워지며 최대 {@code burst}개까지 모아둘 수 있다.
+ * Azure 구독 등급의 초당 트랜잭션 수(TPS)에 맞춰 설정한다. (예: Free 20회/분, S0 10회/초)
+ *
+ * @version 0.1
+ */
+public class TokenBucket {
+
+    private final double permitsPerNano;
+    private final double burst;
+
+    private double tokens;
+    private long lastRefillNanos;
+
+    /**
+     * @param permitsPerSecond 초당 허용 요청 수
+     * @param burst            한 번에 몰아서 보낼 수 있는 최대 요청 수
+     */
+    public TokenBucket(double permitsPerSecond, int burst) {
+        if (permitsPerSecond <= 0 || burst <= 0)
+            throw new IllegalArgumentException("permitsPerSecond and burst must be positive");
+
+        this.permitsPerNano = permitsPerSecond / TimeUnit.SECONDS.toNanos(1);
+        this.burst = burst;
+        this.tokens = burst;
+        this.lastRefillNanos = System.nanoTime();
+    }
+
+    /**
+     * 토큰을 하나 얻을 때까지 기다린다.
+     *
+     * @throws InterruptedException 기다리는 중 인터럽트 된 경우
+     */
+    public void acquire() throws InterruptedException {
+        long waitNanos;
+        while ((waitNanos = reserve()) > 0) {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+    }
+
+    /**
+     * @return 토큰을 바로 얻었으면 true
+     */
+    public synchronized boolean tryAcquire() {
+        refill();
+        if (tokens >= 1) {
+            tokens -= 1;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return 토큰을 얻었으면 0, 아니면 다음 토큰까지 남은 시간(ns)
+     */
+    private synchronized long reserve() {
+        refill();
+        if (tokens >= 1) {
+            tokens -= 1;
+            return 0;
+        }
+        return (long) Math.ceil((1 - tokens) / permitsPerNano);
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        tokens = Math.min(burst, tokens + (now - lastRefillNanos) * permitsPerNano);
+        lastRefillNanos = now;
+    }
+}
@@ -0,0 +1,47 @@
+package com.dominic.skuface;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * {@link CircuitBreaker}가 시험 요청을 하나만 허용하고, 그 시험 요청만 시험 자리를 풀 수 있는지 확인한다.
+ */
+public class CircuitBreakerTest {
+
+    @Test
+    public void cancelledLoser_doesNotReleaseAnotherTrial() {
+        FakeClockBreaker breaker = new FakeClockBreaker();
+        breaker.onFailure();
+        breaker.nowMillis += 1000;
+
+        long first = breaker.acquire();
+        assertTrue(first > CircuitBreaker.NOT_TRIAL);
+        assertEquals(CircuitBreaker.REJECTED, breaker.acquire());
+
+        // 시험 요청이 아닌 요청의 취소는 시험 자리를 풀지 않는다.
+        breaker.releaseTrial(CircuitBreaker.NOT_TRIAL);
+        assertFalse(breaker.allowRequest());
+
+        breaker.releaseTrial(first);
+        long second = breaker.acquire();
+        assertTrue(second > first);
+
+        // 이미 풀린 예전 시험 요청이 늦게 취소되어도 새 시험은 그대로 남는다.
+        breaker.releaseTrial(first);
+        assertFalse(breaker.allowRequest());
+    }
+
+    private static final class FakeClockBreaker extends CircuitBreaker {
+        long nowMillis = 0;
+
+        FakeClockBreaker() {
+            super(1, 1000);
+        }
+
+        @Override
+        long now() {
+            return nowMillis;
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package com.dominic.skuface;
+
+import android.support.constraint.solver.widgets.Rectangle;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * {@link DetectionCache}의 LRU, 만료, 디스크 계층, 근접 중복 검사를 확인한다.
+ */
+public class DetectionCacheTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void memory_evictsLeastRecentlyUsed() {
+        DetectionCache cache = new DetectionCache(2, null, 0);
+        EncodedImage a = image(1);
+        EncodedImage b = image(2);
+        EncodedImage c = image(3);
+
+        cache.put(a, faces("a"));
+        cache.put(b, faces("b"));
+        assertNotNull(cache.get(a));
+        cache.put(c, faces("c"));
+
+        assertNull(cache.get(b));
+        assertEquals("a", cache.get(a).get(0).getFaceId());
+        assertEquals("c", cache.get(c).get(0).getFaceId());
+    }
+
+    @Test
+    public void entries_expireAfterTtl() throws Exception {
+        DetectionCache cache = new DetectionCache(8, null, 0).setTtlMillis(100).setSafetyMarginMillis(0);
+        EncodedImage a = image(1);
+        cache.put(a, faces("a"));
+        assertNotNull(cache.get(a));
+
+        Thread.sleep(150);
+
+        assertNull(cache.get(a));
+        assertEquals(1, cache.getMissCount());
+    }
+
+    @Test
+    public void entries_expireSafetyMarginBeforeTtl() {
+        DetectionCache cache = new DetectionCache(8, null, 0).setTtlMillis(60000).setSafetyMarginMillis(60000);
+        EncodedImage a = image(1);
+        cache.put(a, faces("a"));
+
+        assertNull(cache.get(a));
+    }
+
+    @Test
+    public void disk_survivesNewInstance() throws Exception {
+        File dir = folder.newFolder("cache");
+        DetectionCache first = new DetectionCache(8, dir, 1024 * 1024);
+        Face face = new Face("a", rectangle(10, 20, 30, 40), new Face.Emotion(0.1, 0, 0, 0, 0.7, 0.2, 0, 0));
+        face.setOrigin("https://westus/detect");
+        first.put(image(1), Collections.singletonList(face));
+        first.awaitDiskWrites();
+
+        DetectionCache second = new DetectionCache(8, dir, 1024 * 1024);
+        List<Face> restored = second.get(image(1));
+
+        assertNotNull(restored);
+        assertEquals(1, second.getDiskHitCount());
+        Face copy = restored.get(0);
+        assertEquals("a", copy.getFaceId());
+        assertEquals("https://westus/detect", copy.getOrigin());
+        assertEquals(10, copy.getFaceRectangle().x);
+        assertEquals(20, copy.getFaceRectangle().y);
+        assertEquals(30, copy.getFaceRectangle().width);
+        assertEquals(40, copy.getFaceRectangle().height);
+        assertEquals(0.7, copy.getEmotion().happiness, 0);
+        assertEquals(0.2, copy.getEmotion().neutral, 0);
+    }
+
+    @Test
+    public void disk_isTrimmedToMaxBytes() throws Exception {
+        File dir = folder.newFolder("cache");
+        DetectionCache cache = new DetectionCache(8, dir, 200);
+        for (int i = 0; i < 10; i++) {
+            cache.put(image(i), faces("face-" + i));
+        }
+        cache.awaitDiskWrites();
+
+        long total = 0;
+        for (File file : dir.listFiles()) {
+            total += file.length();
+        }
+        assertTrue("disk usage " + total, total <= 200);
+    }
+
+    @Test
+    public void nearDuplicate_matchesCloseHashOfSameSize() {
+        DetectionCache cache = new DetectionCache(8, null, 0).setNearDuplicateDistance(4);
+        EncodedImage stored = image(1, 640, 480);
+        stored.setPerceptualHash(0xF0F0F0F0F0F0F0F0L);
+        cache.put(stored, faces("a"));
+
+        EncodedImage close = image(2, 640, 480);
+        close.setPerceptualHash(0xF0F0F0F0F0F0F0F0L ^ 0x7L);
+        assertEquals("a", cache.get(close).get(0).getFaceId());
+        assertEquals(1, cache.getNearDuplicateHitCount());
+
+        EncodedImage far = image(3, 640, 480);
+        far.setPerceptualHash(~0xF0F0F0F0F0F0F0F0L);
+        assertNull(cache.get(far));
+
+        EncodedImage otherSize = image(4, 320, 240);
+        otherSize.setPerceptualHash(0xF0F0F0F0F0F0F0F0L);
+        assertNull(cache.get(otherSize));
+    }
+
+    @Test
+    public void nearDuplicateHit_refreshesLeastRecentlyUsedOrder() {
+        DetectionCache cache = new DetectionCache(2, null, 0).setNearDuplicateDistance(4);
+        EncodedImage a = image(1);
+        a.setPerceptualHash(0xF0F0F0F0F0F0F0F0L);
+        EncodedImage b = image(2);
+        b.setPerceptualHash(0x0F0F0F0F0F0F0F0FL);
+        cache.put(a, faces("a"));
+        cache.put(b, faces("b"));
+
+        EncodedImage closeToA = image(3);
+        closeToA.setPerceptualHash(0xF0F0F0F0F0F0F0F0L ^ 0x3L);
+        assertEquals("a", cache.get(closeToA).get(0).getFaceId());
+
+        // 근접 중복으로 찾은 a 가 최근 사용 항목이 되어 b 가 먼저 빠진다.
+        cache.put(image(4), faces("c"));
+        assertNull(cache.get(b));
+        assertEquals("a", cache.get(a).get(0).getFaceId());
+
+        // 빠진 항목은 근접 중복으로도 찾지 않는다.
+        EncodedImage closeToB = image(5);
+        closeToB.setPerceptualHash(0x0F0F0F0F0F0F0F0FL ^ 0x1L);
+        assertNull(cache.get(closeToB));
+    }
+
+    private static EncodedImage image(int seed) {
+        return image(seed, 640, 480);
+    }
+
+    private static EncodedImage image(int seed, int width, int height) {
+        byte[] data = new byte[64];
+        data[0] = (byte) seed;
+        return new EncodedImage(data, width, height, width, height);
+    }
+
+    private static List<Face> faces(String faceId) {
+        return Collections.singletonList(new Face(faceId, rectangle(0, 0, 50, 50), null));
+    }
+
+    private static Rectangle rectangle(int x, int y, int width, int height) {
+        Rectangle r = new Rectangle();
+        r.setBounds(x, y, width, height);
+        return r;
+    }
+}
@@ -0,0 +1,153 @@
+package com.dominic.skuface;
+
+import android.support.constraint.solver.widgets.Rectangle;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * 같은 바이트를 동시에 요청하면 하나의 요청만 보내고 결과를 나눠 받는지 확인한다.
+ */
+public class FaceApiCoalescingTest {
+
+    private static final int CALLERS = 16;
+
+    private FaceApiStandInServer server;
+    private FaceApi faceApi;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new FaceApiStandInServer().setLatency(300, 0);
+        server.start();
+        faceApi = new FaceApi(server.newConfig());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        faceApi.shutdown();
+        server.shutdown();
+    }
+
+    @Test
+    public void identicalConcurrentRequests_sendOneUpstreamRequest() throws Exception {
+        byte[] jpeg = new byte[4 * 1024];
+        List<DetectionResult> results = detectConcurrently(jpeg, true);
+
+        assertEquals(CALLERS, results.size());
+        assertEquals(1, server.getRequestCount());
+        assertEquals(CALLERS - 1, faceApi.getMetrics().getSnapshot().getCoalescedCount());
+
+        // 모두 같은 얼굴을 받지만 객체는 서로 공유하지 않는다.
+        Face first = results.get(0).getFaces().get(0);
+        for (DetectionResult result : results) {
+            Face face = result.getFaces().get(0);
+            assertEquals(first.getFaceId(), face.getFaceId());
+            assertEquals(first.getFaceRectangle().x, face.getFaceRectangle().x);
+            if (result != results.get(0)) {
+                assertNotSame(first, face);
+                assertNotSame(first.getFaceRectangle(), face.getFaceRectangle());
+            }
+        }
+    }
+
+    @Test
+    public void differentPayloads_areNotCoalesced() throws Exception {
+        List<DetectionResult> results = detectConcurrently(new byte[4 * 1024], false);
+
+        assertEquals(CALLERS, results.size());
+        assertEquals(CALLERS, server.getRequestCount());
+        assertEquals(0, faceApi.getMetrics().getSnapshot().getCoalescedCount());
+    }
+
+    @Test
+    public void coalescedRequests_mapToTheirOwnRegion() throws Exception {
+        byte[] jpeg = new byte[1024];
+        Rectangle region = new Rectangle();
+        region.setBounds(100, 50, 640, 480);
+
+        EncodedImage full = new EncodedImage(jpeg, 640, 480, 640, 480);
+        EncodedImage cropped = new EncodedImage(jpeg, 640, 480, region, 1280, 960, 0);
+
+        DetectionResult[] results = new DetectionResult[2];
+        CountDownLatch latch = new CountDownLatch(2);
+        faceApi.detect(full, faceApi.nextSequence(), "full", collect(results, 0, latch));
+        faceApi.detect(cropped, faceApi.nextSequence(), "cropped", collect(results, 1, latch));
+        assertTrue(latch.await(10, TimeUnit.SECONDS));
+
+        assertEquals(1, server.getRequestCount());
+        Rectangle a = results[0].getFaces().get(0).getFaceRectangle();
+        Rectangle b = results[1].getFaces().get(0).getFaceRectangle();
+        assertEquals(a.x + 100, b.x);
+        assertEquals(a.y + 50, b.y);
+    }
+
+    /**
+     * @param identical false 이면 요청마다 첫 바이트를 바꿔 보낸다.
+     */
+    private List<DetectionResult> detectConcurrently(final byte[] jpeg, final boolean identical) throws Exception {
+        final List<DetectionResult> results = Collections.synchronizedList(new ArrayList<DetectionResult>());
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(CALLERS);
+
+        for (int i = 0; i < CALLERS; i++) {
+            final int index = i;
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    byte[] data = jpeg.clone();
+                    if (!identical)
+                        data[0] = (byte) index;
+                    EncodedImage image = new EncodedImage(data, 640, 480, 640, 480);
+
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    faceApi.detect(image, faceApi.nextSequence(), "caller-" + index, new FaceApi.DetectCallback() {
+                        @Override
+                        public void onDetected(DetectionResult result) {
+                            results.add(result);
+                            done.countDown();
+                        }
+
+                        @Override
+                        public void onFailure(IOException e) {
+                            done.countDown();
+                        }
+                    });
+                }
+            }).start();
+        }
+
+        start.countDown();
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        return results;
+    }
+
+    private static FaceApi.DetectCallback collect(final DetectionResult[] results, final int index,
+                                                  final CountDownLatch latch) {
+        return new FaceApi.DetectCallback() {
+            @Override
+            public void onDetected(DetectionResult result) {
+                results[index] = result;
+                latch.countDown();
+            }
+
+            @Override
+            public void onFailure(IOException e) {
+                latch.countDown();
+            }
+        };
+    }
+}
@@ -0,0 +1,74 @@
+package com.dominic.skuface;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import okhttp3.Response;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+import static org.junit.Assert.*;
+
+/**
+ * {@link FaceApi}가 여러 요청에 걸쳐 하나의 연결을 재사용하는지 확인한다.
+ */
+public class FaceApiConnectionReuseTest {
+
+    private static final int CALLS = 20;
+
+    private MockWebServer server;
+    private FaceApi faceApi;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new MockWebServer();
+        server.start();
+        faceApi = new FaceApi(new FaceApiConfig().setEndpoint(server.url("/face/v1.0/detect").toString()));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        faceApi.shutdown();
+        server.shutdown();
+    }
+
+    @Test
+    public void detectCalls_reuseSingleConnection() throws Exception {
+        byte[] jpeg = new byte[]{(byte) 0xFF, (byte) 0xD8, (byte) 0xFF, (byte) 0xD9};
+
+        for (int i = 0; i < CALLS; i++) {
+            server.enqueue(new MockResponse().setBody("[]"));
+        }
+
+        for (int i = 0; i < CALLS; i++) {
+            Response response = faceApi.newDetectCall(jpeg).execute();
+            assertEquals(200, response.code());
+            response.body().close();
+        }
+
+        for (int i = 0; i < CALLS; i++) {
+            RecordedRequest request = server.takeRequest();
+            // 같은 연결에서 i 번째 요청이어야 한다.
+            assertEquals(i, request.getSequenceNumber());
+            assertEquals("application/octet-stream", request.getHeader("Content-Type"));
+        }
+
+        assertEquals(CALLS, server.getRequestCount());
+        assertEquals(1, faceApi.getHttpClient().connectionPool().connectionCount());
+    }
+
+    @Test
+    public void shutdown_releasesConnections() throws Exception {
+        server.enqueue(new MockResponse().setBody("[]"));
+
+        Response response = faceApi.newDetectCall(new byte[1]).execute();
+        response.body().close();
+        assertEquals(1, faceApi.getHttpClient().connectionPool().idleConnectionCount());
+
+        faceApi.shutdown();
+        assertEquals(0, faceApi.getHttpClient().connectionPool().connectionCount());
+        assertTrue(faceApi.getHttpClient().dispatcher().executorService().isShutdown());
+    }
+}
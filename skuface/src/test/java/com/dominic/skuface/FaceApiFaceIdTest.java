@@ -0,0 +1,200 @@
+package com.dominic.skuface;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+import static org.junit.Assert.*;
+
+/**
+ * faceId 만 보내는 verify, findsimilars, group 요청을 확인한다.
+ */
+public class FaceApiFaceIdTest {
+
+    private static final Pattern CANDIDATE = Pattern.compile("\"cand-(\\d+)\"");
+
+    private final MockWebServer server = new MockWebServer();
+    private final AtomicInteger findSimilarCount = new AtomicInteger();
+    private FaceApi faceApi;
+
+    @Before
+    public void setUp() throws Exception {
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                String body = request.getBody().readUtf8();
+                if (request.getPath().endsWith("/findsimilars")) {
+                    findSimilarCount.incrementAndGet();
+                    return json(200, findSimilarResponse(body));
+                }
+                if (request.getPath().endsWith("/verify")) {
+                    if (body.contains("expired"))
+                        return json(400, "{\"error\":{\"code\":\"BadArgument\",\"message\":\"Face ID is invalid.\"}}");
+                    return json(200, "{\"isIdentical\":true,\"confidence\":0.9}");
+                }
+                return json(404, "{\"error\":{\"code\":\"NotFound\",\"message\":\"Resource not found.\"}}");
+            }
+        });
+        server.start();
+        faceApi = new FaceApi(new FaceApiConfig()
+                .setEndpoint(server.url(FaceApiStandInServer.PATH).toString())
+                .setSubscriptionKey(FaceApiStandInServer.SUBSCRIPTION_KEY));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        faceApi.shutdown();
+        server.shutdown();
+    }
+
+    @Test
+    public void findSimilar_batchesCandidatesAndMergesTopMatches() throws Exception {
+        List<String> candidates = new ArrayList<>();
+        for (int i = 0; i < 2500; i++) {
+            candidates.add("cand-" + i);
+        }
+
+        Outcome<List<FaceIdOperations.SimilarFace>> outcome = new Outcome<>();
+        faceApi.findSimilar("query", candidates, 3, outcome);
+        List<FaceIdOperations.SimilarFace> faces = outcome.await();
+
+        assertEquals(3, findSimilarCount.get());
+        assertEquals(3, faces.size());
+        assertEquals("cand-2001", faces.get(0).getFaceId());
+        assertEquals("cand-2000", faces.get(1).getFaceId());
+        assertEquals("cand-1001", faces.get(2).getFaceId());
+    }
+
+    @Test
+    public void verify_parsesResultAndReportsErrors() throws Exception {
+        Outcome<FaceIdOperations.VerifyResult> ok = new Outcome<>();
+        faceApi.verify("a", "b", ok);
+        FaceIdOperations.VerifyResult result = ok.await();
+        assertTrue(result.isIdentical());
+        assertEquals(0.9, result.getConfidence(), 1e-9);
+
+        Outcome<FaceIdOperations.VerifyResult> failed = new Outcome<>();
+        faceApi.verify("a", "expired", failed);
+        IOException error = failed.awaitFailure();
+        assertTrue(error instanceof FaceApiException);
+        assertEquals(400, ((FaceApiException) error).getStatusCode());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void group_rejectsMoreThanOneRequestWorth() {
+        List<String> faceIds = new ArrayList<>();
+        for (int i = 0; i <= FaceIdOperations.MAX_GROUP_FACES; i++) {
+            faceIds.add("id-" + i);
+        }
+        faceApi.group(faceIds, new Outcome<FaceIdOperations.GroupResult>());
+    }
+
+    @Test
+    public void faceIdOperations_goToIssuingEndpoint() throws Exception {
+        MockWebServer other = new MockWebServer();
+        other.enqueue(json(200, "{\"isIdentical\":false,\"confidence\":0.1}"));
+        other.start();
+        String otherUrl = other.url(FaceApiStandInServer.PATH).toString();
+        FaceIdRegistry registry = new FaceIdRegistry();
+        FaceApi routed = new FaceApi(new FaceApiConfig()
+                .addEndpoint(new FaceApiEndpoint(server.url(FaceApiStandInServer.PATH).toString(),
+                        FaceApiStandInServer.SUBSCRIPTION_KEY))
+                .addEndpoint(new FaceApiEndpoint(otherUrl, FaceApiStandInServer.SUBSCRIPTION_KEY)));
+        routed.setFaceIdRegistry(registry);
+        try {
+            long now = System.currentTimeMillis();
+            registry.put("a", "id-a", now, server.url(FaceApiStandInServer.PATH).toString());
+            registry.put("b", "id-b", now, otherUrl);
+            registry.put("c", "id-c", now, otherUrl);
+
+            // 두 번째 엔드포인트가 발급한 id 는 첫 번째가 아니라 그곳으로 보낸다.
+            Outcome<FaceIdOperations.VerifyResult> sameOrigin = new Outcome<>();
+            routed.verify("id-b", "id-c", sameOrigin);
+            assertFalse(sameOrigin.await().isIdentical());
+            assertEquals(1, other.getRequestCount());
+            assertTrue(other.takeRequest().getPath().endsWith("/verify"));
+
+            // 발급한 곳이 다르거나 모르는 id 는 보내지 않는다.
+            Outcome<FaceIdOperations.VerifyResult> mixed = new Outcome<>();
+            routed.verify("id-a", "id-b", mixed);
+            mixed.awaitFailure();
+            Outcome<FaceIdOperations.VerifyResult> unknown = new Outcome<>();
+            routed.verify("id-b", "unknown", unknown);
+            unknown.awaitFailure();
+
+            assertEquals(0, server.getRequestCount());
+            assertEquals(1, other.getRequestCount());
+        } finally {
+            routed.shutdown();
+            other.shutdown();
+        }
+    }
+
+    /**
+     * 요청에 담긴 후보 중 앞의 두 개를 번호에 비례한 confidence 로 돌려준다.
+     */
+    private static String findSimilarResponse(String body) {
+        Matcher matcher = CANDIDATE.matcher(body);
+        StringBuilder sb = new StringBuilder("[");
+        for (int i = 0; i < 2 && matcher.find(); i++) {
+            if (i > 0)
+                sb.append(',');
+            int n = Integer.parseInt(matcher.group(1));
+            sb.append("{\"faceId\":\"cand-").append(n).append("\",\"confidence\":").append(n / 10000.0).append('}');
+        }
+        return sb.append(']').toString();
+    }
+
+    private static MockResponse json(int code, String body) {
+        return new MockResponse()
+                .setResponseCode(code)
+                .setHeader("Content-Type", "application/json; charset=utf-8")
+                .setBody(body);
+    }
+
+    private static final class Outcome<T> implements FaceApi.FaceIdCallback<T> {
+        private final CountDownLatch done = new CountDownLatch(1);
+        private final AtomicReference<T> result = new AtomicReference<>();
+        private final AtomicReference<IOException> failure = new AtomicReference<>();
+
+        @Override
+        public void onResult(T value) {
+            result.set(value);
+            done.countDown();
+        }
+
+        @Override
+        public void onFailure(IOException e) {
+            failure.set(e);
+            done.countDown();
+        }
+
+        T await() throws Exception {
+            assertTrue(done.await(10, TimeUnit.SECONDS));
+            if (failure.get() != null)
+                throw failure.get();
+            return result.get();
+        }
+
+        IOException awaitFailure() throws Exception {
+            assertTrue(done.await(10, TimeUnit.SECONDS));
+            assertNotNull(failure.get());
+            return failure.get();
+        }
+    }
+}
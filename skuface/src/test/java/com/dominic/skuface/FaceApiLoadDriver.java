@@ -0,0 +1,160 @@
+package com.dominic.skuface;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@link FaceApi}에 목표 요청률로 부하를 주고 달성한 처리량과 지연 시간 백분위를 보고한다.
+ * <p>
+ * 직접 실행하면 {@link FaceApiStandInServer}를 띄워 부하를 준다.
+ * <pre>
+ * 인자 : [요청률(/s)] [시간(s)] [서버 지연(ms)] [오류 비율] [429 비율] [이미지 크기(byte)]
+ * </pre>
+ */
+class FaceApiLoadDriver {
+
+    private final FaceApi faceApi;
+
+    FaceApiLoadDriver(FaceApi faceApi) {
+        this.faceApi = faceApi;
+    }
+
+    /**
+     * 요청을 보내는 동안 블록된다. 보낸 요청이 모두 끝나거나 drainMillis 가 지나면 반환한다.
+     *
+     * @param image          매 요청에 업로드할 이미지. 같은 요청으로 합쳐지지 않도록 요청마다 끝 8바이트에 번호를 넣어 보낸다.
+     * @param targetRate     목표 요청률 (초당 요청 수)
+     * @param durationMillis 요청을 보내는 시간(ms)
+     * @param drainMillis    보낸 뒤 응답을 기다리는 최대 시간(ms)
+     */
+    Report run(EncodedImage image, double targetRate, long durationMillis, long drainMillis) throws InterruptedException {
+        TokenBucket pacer = new TokenBucket(targetRate, 1);
+        final Histogram latency = new Histogram();
+        final AtomicLong succeeded = new AtomicLong();
+        final AtomicLong failed = new AtomicLong();
+        final AtomicLong faces = new AtomicLong();
+
+        int expected = (int) Math.ceil(targetRate * durationMillis / 1000.0) + 1;
+        final CountDownLatch done = new CountDownLatch(expected);
+
+        long start = System.nanoTime();
+        long end = start + TimeUnit.MILLISECONDS.toNanos(durationMillis);
+        int sent = 0;
+        while (System.nanoTime() < end && sent < expected) {
+            pacer.acquire();
+
+            final long requestStart = System.nanoTime();
+            faceApi.detect(stamp(image, sent), faceApi.nextSequence(), "load-" + sent, new FaceApi.DetectCallback() {
+                @Override
+                public void onDetected(DetectionResult result) {
+                    latency.record(System.nanoTime() - requestStart);
+                    faces.addAndGet(result.getFaces().size());
+                    succeeded.incrementAndGet();
+                    done.countDown();
+                }
+
+                @Override
+                public void onFailure(IOException e) {
+                    latency.record(System.nanoTime() - requestStart);
+                    failed.incrementAndGet();
+                    done.countDown();
+                }
+            });
+            sent++;
+        }
+        for (int i = sent; i < expected; i++) {
+            done.countDown();
+        }
+
+        done.await(drainMillis, TimeUnit.MILLISECONDS);
+        long elapsedNanos = System.nanoTime() - start;
+
+        long[] percentiles = latency.getPercentiles(50, 95, 99);
+        return new Report(targetRate, sent, succeeded.get(), failed.get(), faces.get(), elapsedNanos,
+                percentiles[0], percentiles[1], percentiles[2], latency.getMax());
+    }
+
+    /**
+     * 서로 다른 프레임처럼 보이도록 바이트 끝에 요청 번호를 넣은 복사본
+     */
+    private static EncodedImage stamp(EncodedImage image, long number) {
+        byte[] data = Arrays.copyOf(image.getData(), Math.max(8, image.getData().length));
+        for (int i = 0; i < 8; i++) {
+            data[data.length - 1 - i] = (byte) (number >>> (i * 8));
+        }
+        return new EncodedImage(data, image.getWidth(), image.getHeight(), image.getSourceWidth(), image.getSourceHeight());
+    }
+
+    static final class Report {
+        final double targetRate;
+        final long sent;
+        final long succeeded;
+        final long failed;
+        final long faces;
+        final long elapsedNanos;
+        final long p50Nanos;
+        final long p95Nanos;
+        final long p99Nanos;
+        final long maxNanos;
+
+        Report(double targetRate, long sent, long succeeded, long failed, long faces, long elapsedNanos,
+               long p50Nanos, long p95Nanos, long p99Nanos, long maxNanos) {
+            this.targetRate = targetRate;
+            this.sent = sent;
+            this.succeeded = succeeded;
+            this.failed = failed;
+            this.faces = faces;
+            this.elapsedNanos = elapsedNanos;
+            this.p50Nanos = p50Nanos;
+            this.p95Nanos = p95Nanos;
+            this.p99Nanos = p99Nanos;
+            this.maxNanos = maxNanos;
+        }
+
+        /**
+         * @return 초당 완료된 요청 수 (성공 + 실패)
+         */
+        double getThroughput() {
+            return (succeeded + failed) * 1e9 / elapsedNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US,
+                    "target=%.1f/s achieved=%.1f/s sent=%d ok=%d failed=%d faces=%d "
+                            + "p50=%.1fms p95=%.1fms p99=%.1fms max=%.1fms",
+                    targetRate, getThroughput(), sent, succeeded, failed, faces,
+                    p50Nanos / 1e6, p95Nanos / 1e6, p99Nanos / 1e6, maxNanos / 1e6);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        double rate = args.length > 0 ? Double.parseDouble(args[0]) : 50;
+        long seconds = args.length > 1 ? Long.parseLong(args[1]) : 10;
+        long latencyMillis = args.length > 2 ? Long.parseLong(args[2]) : 100;
+        double errorRate = args.length > 3 ? Double.parseDouble(args[3]) : 0;
+        double throttleRate = args.length > 4 ? Double.parseDouble(args[4]) : 0;
+        int imageBytes = args.length > 5 ? Integer.parseInt(args[5]) : 64 * 1024;
+
+        FaceApiStandInServer server = new FaceApiStandInServer()
+                .setLatency(latencyMillis, latencyMillis / 2)
+                .setErrorRate(errorRate)
+                .setThrottleRate(throttleRate, 1);
+        server.start();
+
+        FaceApi faceApi = new FaceApi(server.newConfig());
+        try {
+            EncodedImage image = new EncodedImage(new byte[imageBytes], 1280, 960, 1280, 960);
+            Report report = new FaceApiLoadDriver(faceApi).run(image, rate, seconds * 1000, 30 * 1000);
+            System.out.println(report);
+            System.out.println(faceApi.getMetrics().getSnapshot());
+        } finally {
+            faceApi.shutdown();
+            server.shutdown();
+        }
+    }
+}
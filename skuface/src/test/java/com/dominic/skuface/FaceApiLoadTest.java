@@ -0,0 +1,72 @@
+package com.dominic.skuface;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * {@link FaceApiStandInServer}와 {@link FaceApiLoadDriver}로 짧은 부하를 주고 결과를 확인한다.
+ */
+public class FaceApiLoadTest {
+
+    private FaceApiStandInServer server;
+    private FaceApi faceApi;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new FaceApiStandInServer();
+        server.start();
+        faceApi = new FaceApi(server.newConfig());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        faceApi.shutdown();
+        server.shutdown();
+    }
+
+    @Test
+    public void sustainedLoad_completesEveryRequest() throws Exception {
+        server.setLatency(20, 0).setFaceDensity(1024, 64);
+
+        EncodedImage image = new EncodedImage(new byte[8 * 1024], 640, 480, 640, 480);
+        FaceApiLoadDriver.Report report = new FaceApiLoadDriver(faceApi).run(image, 100, 1000, 5000);
+
+        // 처리량은 기기 부하에 따라 달라지므로 시간 대신 개수를 확인한다.
+        assertTrue(report.toString(), report.sent > 0);
+        assertEquals(report.toString(), 0, report.failed);
+        assertEquals(report.toString(), report.sent, report.succeeded);
+        // 응답의 얼굴 수는 업로드 크기에 비례한다.
+        assertEquals(8 * report.succeeded, report.faces);
+        assertTrue(report.toString(), report.p50Nanos >= 20 * 1000 * 1000);
+    }
+
+    @Test
+    public void throttledAndFailedRequests_reachFailureCallback() throws Exception {
+        server.setErrorRate(0.1).setThrottleRate(0.2, 1);
+        // 서버가 보낸 오류 수와 맞춰보기 위해 재시도와 회로 차단기를 끈다.
+        faceApi.shutdown();
+        faceApi = new FaceApi(server.newConfig().setMaxAttempts(1).setCircuitBreaker(0, 0));
+
+        EncodedImage image = new EncodedImage(new byte[1024], 640, 480, 640, 480);
+        FaceApiLoadDriver.Report report = new FaceApiLoadDriver(faceApi).run(image, 200, 1000, 5000);
+
+        assertEquals(report.sent, report.succeeded + report.failed);
+        assertEquals(server.getErrorCount() + server.getThrottleCount(), report.failed);
+        assertTrue(report.toString(), report.failed > 0);
+    }
+
+    @Test
+    public void wrongSubscriptionKey_fails() throws Exception {
+        faceApi.shutdown();
+        faceApi = new FaceApi(server.newConfig().setSubscriptionKey("wrong"));
+
+        EncodedImage image = new EncodedImage(new byte[1024], 640, 480, 640, 480);
+        FaceApiLoadDriver.Report report = new FaceApiLoadDriver(faceApi).run(image, 20, 200, 5000);
+
+        assertEquals(0, report.succeeded);
+        assertEquals(report.sent, report.failed);
+    }
+}
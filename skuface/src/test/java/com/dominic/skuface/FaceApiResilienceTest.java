@@ -0,0 +1,223 @@
+package com.dominic.skuface;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+import static org.junit.Assert.*;
+
+/**
+ * {@link ResilientCall}의 재시도, 시간 제한, 헤지 요청, 회로 차단기를 확인한다.
+ */
+public class FaceApiResilienceTest {
+
+    private static final String ONE_FACE = FaceApiStandInServer.detectResponse(1, 0);
+
+    private MockWebServer server;
+    private FaceApi faceApi;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new MockWebServer();
+        server.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (faceApi != null)
+            faceApi.shutdown();
+        server.shutdown();
+    }
+
+    @Test
+    public void serverError_isRetried() throws Exception {
+        faceApi = newFaceApi(new FaceApiConfig().setRetryBackoff(10, 50));
+        server.enqueue(error(503));
+        server.enqueue(new MockResponse().setBody(ONE_FACE));
+
+        Outcome outcome = detect();
+
+        assertNull(outcome.error);
+        assertEquals(1, outcome.result.getFaces().size());
+        assertEquals(2, server.getRequestCount());
+        assertEquals(1, faceApi.getMetrics().getSnapshot().getRetryCount());
+    }
+
+    @Test
+    public void tooManyRequests_waitsForRetryAfter() throws Exception {
+        faceApi = newFaceApi(new FaceApiConfig().setRetryBackoff(10, 50));
+        server.enqueue(error(429).setHeader("Retry-After", "1"));
+        server.enqueue(new MockResponse().setBody(ONE_FACE));
+
+        long start = System.nanoTime();
+        Outcome outcome = detect();
+
+        assertNull(outcome.error);
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(900));
+        assertEquals(2, server.getRequestCount());
+    }
+
+    @Test
+    public void clientError_isNotRetried() throws Exception {
+        faceApi = newFaceApi(new FaceApiConfig());
+        server.enqueue(error(400));
+
+        Outcome outcome = detect();
+
+        assertTrue(outcome.error instanceof FaceApiException);
+        FaceApiException error = (FaceApiException) outcome.error;
+        assertEquals(400, error.getStatusCode());
+        assertEquals("BadArgument", error.getErrorCode());
+        assertEquals(1, server.getRequestCount());
+    }
+
+    @Test
+    public void slowAttempt_timesOutAndFails() throws Exception {
+        faceApi = newFaceApi(new FaceApiConfig()
+                .setAttemptTimeoutMillis(100)
+                .setMaxAttempts(2)
+                .setRetryBackoff(10, 10));
+        server.setDispatcher(delayed(1000, 0));
+
+        long start = System.nanoTime();
+        Outcome outcome = detect();
+
+        assertTrue(outcome.error instanceof InterruptedIOException);
+        assertEquals(2, server.getRequestCount());
+        assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(900));
+    }
+
+    @Test
+    public void slowAttempt_isHedged() throws Exception {
+        faceApi = newFaceApi(new FaceApiConfig().setHedging(90, 50));
+        // 21 번째 요청만 느리다.
+        server.setDispatcher(delayed(2000, 21));
+
+        for (int i = 0; i < 20; i++) {
+            assertNull(detect().error);
+        }
+
+        long start = System.nanoTime();
+        Outcome outcome = detect();
+
+        assertNull(outcome.error);
+        assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(1000));
+        assertEquals(1, faceApi.getMetrics().getSnapshot().getHedgeCount());
+        assertEquals(22, server.getRequestCount());
+    }
+
+    @Test
+    public void repeatedFailures_openCircuit() throws Exception {
+        faceApi = newFaceApi(new FaceApiConfig()
+                .setMaxAttempts(1)
+                .setCircuitBreaker(2, 60 * 1000));
+        server.enqueue(error(500));
+        server.enqueue(error(500));
+
+        assertNotNull(detect().error);
+        assertNotNull(detect().error);
+        assertEquals(CircuitBreaker.State.OPEN, faceApi.getRoutes().get(0).getState());
+
+        Outcome outcome = detect();
+        assertTrue(outcome.error instanceof FaceApiException);
+        assertEquals(FaceApiException.CIRCUIT_OPEN, ((FaceApiException) outcome.error).getErrorCode());
+        assertEquals(2, server.getRequestCount());
+    }
+
+    @Test
+    public void throttledTrial_closesCircuit() throws Exception {
+        faceApi = newFaceApi(new FaceApiConfig()
+                .setMaxAttempts(1)
+                .setCircuitBreaker(1, 50));
+        server.enqueue(error(500));
+        server.enqueue(error(429).setHeader("Retry-After", "1"));
+        server.enqueue(new MockResponse().setBody(ONE_FACE));
+
+        assertNotNull(detect().error);
+        assertEquals(CircuitBreaker.State.OPEN, faceApi.getRoutes().get(0).getState());
+        Thread.sleep(100);
+
+        // 시험 요청이 429 를 받아도 서버는 응답하고 있으므로 차단기가 닫힌다.
+        Outcome throttled = detect();
+        assertEquals(429, ((FaceApiException) throttled.error).getStatusCode());
+        assertEquals(CircuitBreaker.State.CLOSED, faceApi.getRoutes().get(0).getState());
+
+        Outcome outcome = detect();
+        assertNull(outcome.error);
+        assertEquals(3, server.getRequestCount());
+    }
+
+    @Test
+    public void retryAfter_parsesSecondsAndDates() {
+        assertEquals(3000, ResilientCall.parseRetryAfter("3"));
+        assertEquals(-1, ResilientCall.parseRetryAfter(null));
+        assertEquals(-1, ResilientCall.parseRetryAfter("soon"));
+        assertEquals(0, ResilientCall.parseRetryAfter("Wed, 21 Oct 2015 07:28:00 GMT"));
+    }
+
+    private FaceApi newFaceApi(FaceApiConfig config) {
+        return new FaceApi(config.setEndpoint(server.url("/face/v1.0/detect").toString()));
+    }
+
+    private Outcome detect() throws InterruptedException {
+        final CountDownLatch latch = new CountDownLatch(1);
+        final Outcome outcome = new Outcome();
+        EncodedImage image = new EncodedImage(new byte[16], 640, 480, 640, 480);
+
+        faceApi.detect(image, faceApi.nextSequence(), null, new FaceApi.DetectCallback() {
+            @Override
+            public void onDetected(DetectionResult result) {
+                outcome.result = result;
+                latch.countDown();
+            }
+
+            @Override
+            public void onFailure(IOException e) {
+                outcome.error = e;
+                latch.countDown();
+            }
+        });
+
+        assertTrue(latch.await(10, TimeUnit.SECONDS));
+        return outcome;
+    }
+
+    private static MockResponse error(int code) {
+        return new MockResponse()
+                .setResponseCode(code)
+                .setBody("{\"error\":{\"code\":\"BadArgument\",\"message\":\"Test error.\"}}");
+    }
+
+    /**
+     * @param delayMillis 지연시킬 시간(ms)
+     * @param onlyRequest 이 번째(1부터) 요청만 지연시킨다. 0이면 모든 요청
+     */
+    private static Dispatcher delayed(final long delayMillis, final int onlyRequest) {
+        final AtomicInteger count = new AtomicInteger();
+        return new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                int n = count.incrementAndGet();
+                if (onlyRequest == 0 || onlyRequest == n)
+                    Thread.sleep(delayMillis);
+                return new MockResponse().setBody(ONE_FACE);
+            }
+        };
+    }
+
+    private static final class Outcome {
+        volatile DetectionResult result;
+        volatile IOException error;
+    }
+}
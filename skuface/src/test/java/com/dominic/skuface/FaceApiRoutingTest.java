@@ -0,0 +1,125 @@
+package com.dominic.skuface;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+/**
+ * 지연 시간이 다른 {@link FaceApiStandInServer} 여러 대로 {@link EndpointRouter}의 경로 선택과 장애 조치를 확인한다.
+ */
+public class FaceApiRoutingTest {
+
+    private FaceApiStandInServer slow;
+    private FaceApiStandInServer fast;
+    private FaceApiStandInServer medium;
+    private FaceApi faceApi;
+
+    @Before
+    public void setUp() throws Exception {
+        slow = new FaceApiStandInServer().setLatency(150, 0);
+        fast = new FaceApiStandInServer().setLatency(10, 0);
+        medium = new FaceApiStandInServer().setLatency(60, 0);
+        slow.start();
+        fast.start();
+        medium.start();
+
+        faceApi = new FaceApi(new FaceApiConfig()
+                .addEndpoint(endpointOf(slow))
+                .addEndpoint(endpointOf(fast))
+                .addEndpoint(endpointOf(medium))
+                .setRetryBackoff(10, 50)
+                .setCircuitBreaker(2, 60 * 1000));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        faceApi.shutdown();
+        slow.shutdown();
+        fast.shutdown();
+        medium.shutdown();
+    }
+
+    @Test
+    public void fastestEndpoint_receivesMostRequests() throws Exception {
+        for (int i = 0; i < 30; i++) {
+            assertNull(detect());
+        }
+
+        // 엔드포인트마다 한 번씩 잰 뒤에는 가장 빠른 곳으로만 보낸다.
+        assertEquals(1, slow.getRequestCount());
+        assertEquals(1, medium.getRequestCount());
+        assertEquals(28, fast.getRequestCount());
+        assertTrue(faceApi.getRoutes().get(1).getLatencyMillis() < faceApi.getRoutes().get(2).getLatencyMillis());
+    }
+
+    @Test
+    public void failingEndpoint_failsOverAndOpensCircuit() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            assertNull(detect());
+        }
+
+        long before = fast.getRequestCount();
+        fast.setErrorRate(1);
+        for (int i = 0; i < 10; i++) {
+            assertNull(detect());
+        }
+
+        assertEquals(CircuitBreaker.State.OPEN, faceApi.getRoutes().get(1).getState());
+        assertEquals(CircuitBreaker.State.CLOSED, faceApi.getRoutes().get(2).getState());
+        // 차단기가 열린 뒤에는 고장난 엔드포인트로 보내지 않는다.
+        assertEquals(before + 2, fast.getRequestCount());
+        assertTrue(medium.getRequestCount() >= 10);
+    }
+
+    @Test
+    public void allEndpointsFailing_reachesFailureCallback() throws Exception {
+        slow.setErrorRate(1);
+        fast.setErrorRate(1);
+        medium.setErrorRate(1);
+
+        IOException error = detect();
+
+        assertTrue(error instanceof FaceApiException);
+        assertEquals(500, ((FaceApiException) error).getStatusCode());
+        // 기본 최대 요청 수 3 번을 모두 다른 엔드포인트로 보낸다.
+        assertEquals(1, slow.getRequestCount());
+        assertEquals(1, fast.getRequestCount());
+        assertEquals(1, medium.getRequestCount());
+    }
+
+    private static FaceApiEndpoint endpointOf(FaceApiStandInServer server) {
+        return new FaceApiEndpoint(server.url().toString(), FaceApiStandInServer.SUBSCRIPTION_KEY);
+    }
+
+    /**
+     * @return 실패하면 오류, 성공하면 null
+     */
+    private IOException detect() throws InterruptedException {
+        final CountDownLatch latch = new CountDownLatch(1);
+        final AtomicReference<IOException> error = new AtomicReference<>();
+        EncodedImage image = new EncodedImage(new byte[16], 640, 480, 640, 480);
+
+        faceApi.detect(image, faceApi.nextSequence(), null, new FaceApi.DetectCallback() {
+            @Override
+            public void onDetected(DetectionResult result) {
+                latch.countDown();
+            }
+
+            @Override
+            public void onFailure(IOException e) {
+                error.set(e);
+                latch.countDown();
+            }
+        });
+
+        assertTrue(latch.await(10, TimeUnit.SECONDS));
+        return error.get();
+    }
+}
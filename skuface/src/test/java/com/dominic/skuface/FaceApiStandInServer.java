@@ -0,0 +1,191 @@
+package com.dominic.skuface;
+
+import java.io.IOException;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+import okhttp3.HttpUrl;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+/**
+ * 부하 테스트용 /face/v1.0/detect 대역 서버
+ * <p>
+ * 실제 API 와 같은 모양의 응답을 돌려주며 지연 시간, 오류 비율, 429 비율을 설정할 수 있다.
+ * 응답의 얼굴 수는 업로드한 이미지 크기에 비례한다.
+ */
+class FaceApiStandInServer {
+
+    static final String PATH = "/face/v1.0/detect";
+    static final String SUBSCRIPTION_KEY = "stand-in-key";
+
+    private static final String[] EMOTION_NAMES =
+            {"anger", "contempt", "disgust", "fear", "happiness", "neutral", "sadness", "surprise"};
+
+    private final MockWebServer server = new MockWebServer();
+    private final Random random = new Random(0);
+
+    private volatile long latencyMillis = 0;
+    private volatile long latencyJitterMillis = 0;
+    private volatile double errorRate = 0;
+    private volatile double throttleRate = 0;
+    private volatile int retryAfterSeconds = 1;
+    private volatile int bytesPerFace = 16 * 1024;
+    private volatile int maxFaces = 64;
+
+    private final AtomicLong requestCount = new AtomicLong();
+    private final AtomicLong errorCount = new AtomicLong();
+    private final AtomicLong throttleCount = new AtomicLong();
+
+    FaceApiStandInServer() {
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                return respond(request);
+            }
+        });
+    }
+
+    void start() throws IOException {
+        server.start();
+    }
+
+    void shutdown() throws IOException {
+        server.shutdown();
+    }
+
+    /**
+     * @return 이 서버를 가리키는 설정
+     */
+    FaceApiConfig newConfig() {
+        return new FaceApiConfig()
+                .setEndpoint(url().toString())
+                .setSubscriptionKey(SUBSCRIPTION_KEY);
+    }
+
+    HttpUrl url() {
+        return server.url(PATH);
+    }
+
+    /**
+     * @param latencyMillis 응답 전 대기 시간(ms)
+     * @param jitterMillis  대기 시간에 더할 0 ~ jitterMillis 사이의 임의 시간(ms)
+     */
+    FaceApiStandInServer setLatency(long latencyMillis, long jitterMillis) {
+        this.latencyMillis = latencyMillis;
+        this.latencyJitterMillis = jitterMillis;
+        return this;
+    }
+
+    /**
+     * @param errorRate 500 으로 응답할 비율 (0 ~ 1)
+     */
+    FaceApiStandInServer setErrorRate(double errorRate) {
+        this.errorRate = errorRate;
+        return this;
+    }
+
+    /**
+     * @param throttleRate      429 로 응답할 비율 (0 ~ 1)
+     * @param retryAfterSeconds 429 응답의 Retry-After 값(초)
+     */
+    FaceApiStandInServer setThrottleRate(double throttleRate, int retryAfterSeconds) {
+        this.throttleRate = throttleRate;
+        this.retryAfterSeconds = retryAfterSeconds;
+        return this;
+    }
+
+    /**
+     * @param bytesPerFace 업로드 크기 몇 바이트마다 얼굴 하나를 돌려줄지. 최소 1개
+     * @param maxFaces     한 응답의 최대 얼굴 수
+     */
+    FaceApiStandInServer setFaceDensity(int bytesPerFace, int maxFaces) {
+        this.bytesPerFace = bytesPerFace;
+        this.maxFaces = maxFaces;
+        return this;
+    }
+
+    long getRequestCount() {
+        return requestCount.get();
+    }
+
+    long getErrorCount() {
+        return errorCount.get();
+    }
+
+    long getThrottleCount() {
+        return throttleCount.get();
+    }
+
+    private MockResponse respond(RecordedRequest request) throws InterruptedException {
+        long requestNumber = requestCount.incrementAndGet();
+
+        if (!request.getPath().startsWith(PATH))
+            return error(404, "NotFound", "Resource not found.");
+        if (!SUBSCRIPTION_KEY.equals(request.getHeader("Ocp-Apim-Subscription-Key")))
+            return error(401, "Unspecified", "Access denied due to invalid subscription key.");
+
+        double errorRoll;
+        double throttleRoll;
+        long jitter;
+        synchronized (random) {
+            errorRoll = random.nextDouble();
+            throttleRoll = random.nextDouble();
+            jitter = latencyJitterMillis > 0 ? (long) (random.nextDouble() * latencyJitterMillis) : 0;
+        }
+
+        if (throttleRoll < throttleRate) {
+            throttleCount.incrementAndGet();
+            return error(429, "RateLimitExceeded", "Rate limit is exceeded.")
+                    .setHeader("Retry-After", String.valueOf(retryAfterSeconds));
+        }
+
+        // 서버 처리 시간. 연결마다 디스패치 스레드가 따로 있으므로 다른 연결의 요청은 막지 않는다.
+        long delay = latencyMillis + jitter;
+        if (delay > 0)
+            Thread.sleep(delay);
+
+        if (errorRoll < errorRate) {
+            errorCount.incrementAndGet();
+            return error(500, "InternalServerError", "Internal server error.");
+        }
+
+        int faceCount = (int) Math.max(1, Math.min(maxFaces, request.getBodySize() / Math.max(1, bytesPerFace)));
+        return new MockResponse()
+                .setHeader("Content-Type", "application/json; charset=utf-8")
+                .setBody(detectResponse(faceCount, requestNumber));
+    }
+
+    private static MockResponse error(int code, String errorCode, String message) {
+        return new MockResponse()
+                .setResponseCode(code)
+                .setHeader("Content-Type", "application/json; charset=utf-8")
+                .setBody("{\"error\":{\"code\":\"" + errorCode + "\",\"message\":\"" + message + "\"}}");
+    }
+
+    static String detectResponse(int faceCount, long seed) {
+        Random random = new Random(seed);
+        StringBuilder sb = new StringBuilder("[");
+        for (int i = 0; i < faceCount; i++) {
+            if (i > 0)
+                sb.append(',');
+            sb.append("{\"faceId\":\"").append(String.format(Locale.US, "c5c24a82-6845-4031-%04d-%012d", seed % 10000, i)).append("\",");
+            sb.append("\"faceRectangle\":{\"top\":").append(random.nextInt(600))
+                    .append(",\"left\":").append(random.nextInt(800))
+                    .append(",\"width\":").append(36 + random.nextInt(200))
+                    .append(",\"height\":").append(36 + random.nextInt(200)).append("},");
+            sb.append("\"faceAttributes\":{\"emotion\":{");
+            for (int n = 0; n < EMOTION_NAMES.length; n++) {
+                if (n > 0)
+                    sb.append(',');
+                sb.append('"').append(EMOTION_NAMES[n]).append("\":").append(random.nextInt(1000) / 1000.0);
+            }
+            sb.append("}}}");
+        }
+        sb.append(']');
+        return sb.toString();
+    }
+}
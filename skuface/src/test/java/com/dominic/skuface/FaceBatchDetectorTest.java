@@ -0,0 +1,87 @@
+package com.dominic.skuface;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * 동시에 보낸 요청의 결과가 입력마다 하나씩, 자기 요청 ID 로 돌아오는지 확인한다.
+ */
+public class FaceBatchDetectorTest {
+
+    private static final int INPUTS = 24;
+    private static final int BYTES_PER_FACE = 1024;
+
+    private FaceApiStandInServer server;
+    private FaceApi faceApi;
+    private FaceBatchDetector batchDetector;
+
+    @Before
+    public void setUp() throws Exception {
+        // 응답 순서가 보낸 순서와 달라지도록 지연을 흩뜨린다.
+        server = new FaceApiStandInServer().setLatency(10, 80).setFaceDensity(BYTES_PER_FACE, 64);
+        server.start();
+        faceApi = new FaceApi(server.newConfig());
+        batchDetector = new FaceBatchDetector(faceApi, 4, null);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        batchDetector.shutdown();
+        faceApi.shutdown();
+        server.shutdown();
+    }
+
+    @Test
+    public void eachInput_receivesItsOwnResult() throws Exception {
+        final CountDownLatch done = new CountDownLatch(INPUTS);
+        final Map<String, Integer> faceCounts = Collections.synchronizedMap(new HashMap<String, Integer>());
+        final Map<String, Integer> deliveries = Collections.synchronizedMap(new HashMap<String, Integer>());
+        batchDetector.setOnBatchResultListener(new FaceBatchDetector.OnBatchResultListener() {
+            @Override
+            public void onResult(DetectionResult result) {
+                faceCounts.put(result.getRequestId(), result.getFaces().size());
+                countDelivery(result.getRequestId());
+            }
+
+            @Override
+            public void onFailure(String requestId, IOException e) {
+                countDelivery(requestId);
+            }
+
+            private void countDelivery(String requestId) {
+                synchronized (deliveries) {
+                    Integer count = deliveries.get(requestId);
+                    deliveries.put(requestId, count == null ? 1 : count + 1);
+                }
+                done.countDown();
+            }
+        });
+
+        // 입력마다 크기가 달라 서버가 돌려주는 얼굴 수로 어느 입력의 응답인지 알 수 있다.
+        for (int i = 1; i <= INPUTS; i++) {
+            EncodedImage image = new EncodedImage(new byte[i * BYTES_PER_FACE], 640, 480, 640, 480);
+            batchDetector.submit("input-" + i, image);
+        }
+
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        Thread.sleep(100);
+
+        assertEquals(INPUTS, deliveries.size());
+        for (int i = 1; i <= INPUTS; i++) {
+            String requestId = "input-" + i;
+            assertEquals(requestId, Integer.valueOf(1), deliveries.get(requestId));
+            assertEquals(requestId, Integer.valueOf(i), faceCounts.get(requestId));
+        }
+        assertEquals(INPUTS, server.getRequestCount());
+    }
+}
@@ -0,0 +1,70 @@
+package com.dominic.skuface;
+
+import android.support.constraint.solver.widgets.Rectangle;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class Nv21MosaicTest {
+
+    private static final int FRAME_WIDTH = 8;
+    private static final int FRAME_HEIGHT = 8;
+
+    @Test
+    public void compose_copiesLumaAndChromaOfEachRegion() {
+        // 각 픽셀 값이 프레임 안의 위치가 되도록 채운다.
+        byte[] frame = new byte[FRAME_WIDTH * FRAME_HEIGHT * 3 / 2];
+        for (int i = 0; i < frame.length; i++) {
+            frame[i] = (byte) i;
+        }
+
+        MosaicLayout layout = Nv21Mosaic.layout(
+                Arrays.asList(region(0, 0, 2, 2), region(4, 2, 4, 4)), FRAME_WIDTH, FRAME_HEIGHT, 2, 64);
+        assertNotNull(layout);
+        byte[] mosaic = Nv21Mosaic.compose(frame, FRAME_WIDTH, FRAME_HEIGHT, layout, null);
+
+        int width = layout.getWidth();
+        int height = layout.getHeight();
+        for (int tile = 0; tile < layout.getTileCount(); tile++) {
+            Rectangle source = layout.getSourceRegion(tile);
+            Rectangle placement = layout.getPlacement(tile);
+            for (int row = 0; row < source.height; row++) {
+                for (int col = 0; col < source.width; col++) {
+                    assertEquals(frame[(source.y + row) * FRAME_WIDTH + source.x + col],
+                            mosaic[(placement.y + row) * width + placement.x + col]);
+                }
+            }
+            for (int row = 0; row < source.height / 2; row++) {
+                for (int col = 0; col < source.width; col++) {
+                    assertEquals(frame[FRAME_WIDTH * FRAME_HEIGHT + (source.y / 2 + row) * FRAME_WIDTH + source.x + col],
+                            mosaic[width * height + (placement.y / 2 + row) * width + placement.x + col]);
+                }
+            }
+        }
+        // 간격은 회색으로 채운다.
+        assertEquals((byte) 128, mosaic[0]);
+    }
+
+    @Test
+    public void layout_rejectsOddRegions() {
+        assertNull(Nv21Mosaic.layout(Arrays.asList(region(1, 0, 2, 2), region(4, 4, 2, 2)),
+                FRAME_WIDTH, FRAME_HEIGHT, 2, 64));
+    }
+
+    @Test
+    public void layout_rejectsRegionsThatDoNotFit() {
+        assertNull(Nv21Mosaic.layout(Arrays.asList(region(0, 0, 8, 8), region(0, 0, 8, 8)),
+                FRAME_WIDTH, FRAME_HEIGHT, 2, 16));
+    }
+
+    private static Rectangle region(int x, int y, int width, int height) {
+        Rectangle region = new Rectangle();
+        region.setBounds(x, y, width, height);
+        return region;
+    }
+}
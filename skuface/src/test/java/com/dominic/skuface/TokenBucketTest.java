@@ -0,0 +1,65 @@
+package com.dominic.skuface;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * {@link TokenBucket}이 burst 만큼 바로 허용하고 이후에는 초당 허용 수에 맞춰 채우는지 확인한다.
+ */
+public class TokenBucketTest {
+
+    @Test
+    public void burst_isAvailableImmediately() {
+        TokenBucket bucket = new TokenBucket(1, 3);
+
+        assertTrue(bucket.tryAcquire());
+        assertTrue(bucket.tryAcquire());
+        assertTrue(bucket.tryAcquire());
+        assertFalse(bucket.tryAcquire());
+    }
+
+    @Test
+    public void tokens_refillOverTime() throws Exception {
+        TokenBucket bucket = new TokenBucket(20, 1);
+        assertTrue(bucket.tryAcquire());
+        assertFalse(bucket.tryAcquire());
+
+        // 50ms 마다 하나. 여유를 두고 기다린다.
+        Thread.sleep(120);
+        assertTrue(bucket.tryAcquire());
+    }
+
+    @Test
+    public void refill_isCappedAtBurst() throws Exception {
+        TokenBucket bucket = new TokenBucket(100, 2);
+        Thread.sleep(100);
+
+        assertTrue(bucket.tryAcquire());
+        assertTrue(bucket.tryAcquire());
+        assertFalse(bucket.tryAcquire());
+    }
+
+    @Test
+    public void acquire_waitsForNextToken() throws Exception {
+        TokenBucket bucket = new TokenBucket(10, 1);
+        bucket.acquire();
+
+        long start = System.nanoTime();
+        bucket.acquire();
+        long waitedMillis = (System.nanoTime() - start) / 1000000;
+
+        // 다음 토큰은 100ms 뒤에 생긴다. 잠드는 시간은 짧아지지 않으므로 아래쪽만 확인한다.
+        assertTrue("waited " + waitedMillis + "ms", waitedMillis >= 90);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void nonPositiveRate_isRejected() {
+        new TokenBucket(0, 1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void nonPositiveBurst_isRejected() {
+        new TokenBucket(1, 0);
+    }
+}